@@ -0,0 +1,54 @@
+package firtree;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import firtree.bench.BenchData;
+import mltk.core.Instances;
+import mltk.core.Pointers;
+import mltk.core.io.AttrInfo;
+
+/**
+ * Benchmarks partitioning a node for a split point. This class is in package firtree
+ * to reach the protected {@link InteractionTreeLearnerGAMMC#split}.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SplitBenchmark {
+
+	@Param({"200000"})
+	int numRows;
+
+	Instances instances;
+
+	@Setup
+	public void setup() throws Exception {
+		AttrInfo ainfo = BenchData.readAttrInfo(BenchData.createDir(5));
+		instances = BenchData.parse(ainfo, BenchData.generateLines(numRows, 5, 20, 1));
+	}
+
+	@Benchmark
+	public Pointers split() {
+		Pointers left = new Pointers();
+		Pointers right = new Pointers();
+		InteractionTreeLearnerGAMMC.split(instances, 0, 0.1, left, right);
+		return left;
+	}
+
+}
@@ -0,0 +1,183 @@
+package firtree.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import firtree.FirTree;
+import firtree.utilities.Instance;
+import firtree.utilities.RankList;
+import mltk.core.Instances;
+import mltk.core.io.AttrInfo;
+import mltk.core.io.AttributesReader;
+import mltk.core.io.InstancesReader;
+
+/**
+ * Synthetic datasets with the shapes of FirTree training data: a binary response in
+ * the first column, numeric features, and a group id in the last column. Data are
+ * generated from a fixed seed so that runs are comparable.
+ *
+ */
+public class BenchData {
+
+	/**
+	 * The name of the group id attribute.
+	 */
+	public static final String GROUP = "g";
+
+	/**
+	 * Creates a directory with an attribute file for a number of features.
+	 *
+	 * @param numAtts the number of features.
+	 * @return the directory.
+	 * @throws IOException
+	 */
+	public static File createDir(int numAtts) throws IOException {
+		File dir = Files.createTempDirectory("firtree-bench").toFile();
+		StringBuilder sb = new StringBuilder();
+		sb.append("y: cont (class)\n");
+		for (int a = 0; a < numAtts; a++) {
+			sb.append("f").append(a).append(": cont\n");
+		}
+		sb.append(GROUP).append(": cont\n");
+		sb.append("contexts:\n");
+		sb.append(GROUP).append(" never\n");
+		write(new File(dir, "fir.attr"), sb.toString());
+		return dir;
+	}
+
+	/**
+	 * Reads the attribute file of a directory created by {@link #createDir(int)}.
+	 *
+	 * @param dir the directory.
+	 * @return the attribute information.
+	 * @throws IOException
+	 */
+	public static AttrInfo readAttrInfo(File dir) throws IOException {
+		return AttributesReader.read(new File(dir, "fir.attr").getPath());
+	}
+
+	/**
+	 * Generates the lines of a dataset. Features are rounded to 3 decimals so that they
+	 * have ties, like the binned features of real data.
+	 *
+	 * @param numRows the number of rows.
+	 * @param numAtts the number of features.
+	 * @param groupSize the number of rows per group.
+	 * @param seed the random seed.
+	 * @return the lines without line breaks.
+	 */
+	public static String[] generateLines(int numRows, int numAtts, int groupSize, long seed) {
+		Random random = new Random(seed);
+		String[] lines = new String[numRows];
+		double[] x = new double[numAtts];
+		for (int i = 0; i < numRows; i++) {
+			double score = 0;
+			for (int a = 0; a < numAtts; a++) {
+				x[a] = Math.round(random.nextGaussian() * 1000) / 1000.0;
+				score += (a % 2 == 0 ? 1 : -0.5) * x[a] / (a + 1);
+			}
+			double p = 1 / (1 + Math.exp(-score));
+			StringBuilder sb = new StringBuilder();
+			sb.append(random.nextDouble() < p ? 1 : 0);
+			for (int a = 0; a < numAtts; a++) {
+				sb.append('\t').append(x[a]);
+			}
+			sb.append('\t').append(i / groupSize);
+			lines[i] = sb.toString();
+		}
+		return lines;
+	}
+
+	/**
+	 * Writes lines to a data file.
+	 *
+	 * @param dir the directory.
+	 * @param name the name of the file.
+	 * @param lines the lines.
+	 * @return the file.
+	 * @throws IOException
+	 */
+	public static File writeData(File dir, String name, String[] lines) throws IOException {
+		File file = new File(dir, name);
+		Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+		return file;
+	}
+
+	/**
+	 * Parses lines into a dataset.
+	 *
+	 * @param ainfo the attribute information.
+	 * @param lines the lines.
+	 * @return the dataset.
+	 */
+	public static Instances parse(AttrInfo ainfo, String[] lines) {
+		Instances instances = new Instances(ainfo);
+		for (String line : lines) {
+			instances.add(InstancesReader.parseDenseInstance(line.split("\t"), ainfo, false));
+		}
+		return instances;
+	}
+
+	/**
+	 * Generates rank lists with binary targets and random predictions.
+	 *
+	 * @param numGroups the number of rank lists.
+	 * @param groupSize the number of instances per rank list.
+	 * @param seed the random seed.
+	 * @return the rank lists.
+	 */
+	public static RankList[] generateRankLists(int numGroups, int groupSize, long seed) {
+		Random random = new Random(seed);
+		RankList[] rankLists = new RankList[numGroups];
+		for (int g = 0; g < numGroups; g++) {
+			RankList rankList = new RankList(String.valueOf(g));
+			for (int i = 0; i < groupSize; i++) {
+				Instance instance = new Instance(random.nextInt(4) == 0 ? 1 : 0);
+				instance.setPrediction(Math.round(random.nextGaussian() * 100) / 100.0);
+				rankList.add(instance);
+			}
+			rankList.setWeight();
+			rankLists[g] = rankList;
+		}
+		return rankLists;
+	}
+
+	/**
+	 * Writes a FirTree with three leaves (two regression leaves on features f0-f3 and
+	 * one constant leaf) and its parameters, and loads it.
+	 *
+	 * @param dir the directory created by {@link #createDir(int)} with at least 4 features.
+	 * @param ainfo the attribute information.
+	 * @return the model.
+	 * @throws Exception
+	 */
+	public static FirTree createFirTree(File dir, AttrInfo ainfo) throws Exception {
+		String treelog = "Root\nBest feature: f0\nBest split: 0.1\n\n"
+				+ "Root_L\nCore features:\n\tf1\n\tf2\nRegression leaf\n\n"
+				+ "Root_R\nBest feature: f1\nBest split: -0.2\n\n"
+				+ "Root_R_L\nConstant leaf\n\n"
+				+ "Root_R_R\nCore features:\n\tf0\n\tf3\nRegression leaf\n";
+		write(new File(dir, "treelog.txt"), treelog);
+		writeParams(dir, "Root_L", "model.txt",
+				"intercept\t0.12\nf1\t0.7\t-1.3\t-2\t2\nf2\t1.1\t0.37\t-2\t2\n");
+		writeParams(dir, "Root_R_L", "model_const.txt", "Constant: 0.45\n");
+		writeParams(dir, "Root_R_R", "model.txt",
+				"intercept\t-0.3\nf0\t0.17\t2.3\t-0.5\t2\nf3\t-1.1\t0.07\t-1\t1.5\n");
+		return new FirTree(ainfo, new File(dir, "treelog.txt").getPath(), 2, "model");
+	}
+
+	private static void writeParams(File dir, String node, String name, String content) throws IOException {
+		File nodeDir = new File(dir, "Node_" + node);
+		nodeDir.mkdirs();
+		write(new File(nodeDir, name), content);
+	}
+
+	private static void write(File file, String content) throws IOException {
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+}
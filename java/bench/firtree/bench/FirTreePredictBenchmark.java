@@ -0,0 +1,105 @@
+package firtree.bench;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import firtree.CompiledFirTree;
+import firtree.FirTree;
+import firtree.utilities.Instance;
+import mltk.core.io.AttrInfo;
+import mltk.core.io.InstancesReader;
+
+/**
+ * Benchmarks scoring a FirTree from raw lines, from cached instances and with the
+ * compiled model.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FirTreePredictBenchmark {
+
+	@Param({"100000"})
+	int numRows;
+
+	@Param({"20"})
+	int numAtts;
+
+	FirTree model;
+	CompiledFirTree compiled;
+	String[] lines;
+	Instance[] instances;
+	double[][] rows;
+	double[] out;
+
+	@Setup
+	public void setup() throws Exception {
+		File dir = BenchData.createDir(numAtts);
+		AttrInfo ainfo = BenchData.readAttrInfo(dir);
+		model = BenchData.createFirTree(dir, ainfo);
+		compiled = model.compile();
+		lines = BenchData.generateLines(numRows, numAtts, 20, 1);
+
+		// Instances are loaded as in CoorAscentOnLeaves.loadRankList
+		instances = new Instance[numRows];
+		rows = new double[numRows][ainfo.getColN()];
+		out = new double[numRows];
+		for (int i = 0; i < numRows; i++) {
+			String[] data = lines[i].split("\t");
+			int nodeIndex = model.indexLeaf(data);
+			List<Integer> attIdList = model.nodeAttIdList.get(nodeIndex);
+			Map<String, Integer> nameToId = new HashMap<>();
+			for (int j = 0; j < attIdList.size(); j++) {
+				nameToId.put(ainfo.idToName(attIdList.get(j)), j);
+			}
+			instances[i] = new Instance(InstancesReader.parseDenseInstance(data, ainfo, attIdList, false), nameToId);
+			instances[i].setNodeIndex(nodeIndex);
+			for (int col = 0; col < data.length; col++) {
+				rows[i][col] = Double.parseDouble(data[col]);
+			}
+		}
+	}
+
+	@Benchmark
+	public double predictString() {
+		double sum = 0;
+		for (String line : lines) {
+			sum += model.predict(line);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double predictInstance() {
+		double sum = 0;
+		for (Instance instance : instances) {
+			sum += model.predict(instance);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double[] predictCompiled() {
+		compiled.predict(rows, out);
+		return out;
+	}
+
+}
@@ -0,0 +1,90 @@
+package firtree.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mltk.core.FeatureIndex;
+import mltk.core.Instances;
+import mltk.core.Pointers;
+import mltk.core.io.AttrInfo;
+import mltk.predictor.function.Function1D;
+import mltk.predictor.function.LineCutter;
+import mltk.predictor.gam.GAM;
+import mltk.predictor.gam.GAMLearner;
+import mltk.predictor.evaluation.RMSE;
+
+/**
+ * Benchmarks GAM training on pointers and single LineCutter fits, with and without a
+ * feature index.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class LearnerBenchmark {
+
+	@Param({"50000"})
+	int numRows;
+
+	@Param({"10"})
+	int numAtts;
+
+	@Param({"false", "true"})
+	boolean indexed;
+
+	Instances trainSet;
+	Instances validSet;
+	Pointers trainPtr;
+	Pointers validPtr;
+	double[] targets;
+	GAMLearner learner;
+	LineCutter lineCutter;
+
+	@Setup
+	public void setup() throws Exception {
+		AttrInfo ainfo = BenchData.readAttrInfo(BenchData.createDir(numAtts));
+		trainSet = BenchData.parse(ainfo, BenchData.generateLines(numRows, numAtts, 20, 1));
+		validSet = BenchData.parse(ainfo, BenchData.generateLines(numRows / 4, numAtts, 20, 2));
+		trainPtr = Pointers.range(trainSet.size());
+		validPtr = Pointers.range(validSet.size());
+		targets = new double[trainSet.size()];
+		for (int i = 0; i < targets.length; i++) {
+			targets[i] = trainSet.get(i).getTarget();
+		}
+		FeatureIndex featureIndex = indexed ? new FeatureIndex(trainSet) : null;
+
+		learner = new GAMLearner();
+		learner.setMetric(new RMSE());
+		learner.setLearningRate(0.01);
+		learner.setBaggingIters(0);
+		learner.setFeatureIndex(featureIndex);
+
+		lineCutter = new LineCutter();
+		lineCutter.setFeatureIndex(featureIndex);
+	}
+
+	@Benchmark
+	public GAM gamBuildRegressor() {
+		return learner.buildRegressor(trainSet, trainPtr, validSet, validPtr, 100, 3);
+	}
+
+	@Benchmark
+	public Function1D lineCutterBuild() {
+		return lineCutter.build(trainSet, targets, trainPtr, 0, 3);
+	}
+
+}
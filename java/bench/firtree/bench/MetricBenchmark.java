@@ -0,0 +1,104 @@
+package firtree.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import firtree.metric.GAUCScorer;
+import firtree.metric.NDCGScorer;
+import firtree.utilities.RankList;
+import mltk.predictor.evaluation.AUC;
+
+/**
+ * Benchmarks AUC over a whole dataset and GAUC/NDCG over rank lists. Before each
+ * invocation a few instances per rank list get new predictions, as in a coordinate
+ * ascent probe.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricBenchmark {
+
+	@Param({"10000"})
+	int numGroups;
+
+	@Param({"20", "200"})
+	int groupSize;
+
+	RankList[] rankLists;
+	GAUCScorer gauc;
+	NDCGScorer ndcg;
+	AUC auc;
+	double[] preds;
+	double[] targets;
+	double[] weights;
+	Random random;
+
+	@Setup
+	public void setup() {
+		rankLists = BenchData.generateRankLists(numGroups, groupSize, 1);
+		gauc = new GAUCScorer();
+		ndcg = new NDCGScorer(10);
+		auc = new AUC();
+		int n = numGroups * groupSize;
+		preds = new double[n];
+		targets = new double[n];
+		weights = new double[n];
+		for (int g = 0, i = 0; g < numGroups; g++) {
+			for (int j = 0; j < groupSize; j++, i++) {
+				preds[i] = rankLists[g].get(j).getPrediction();
+				targets[i] = rankLists[g].get(j).getTarget();
+				weights[i] = rankLists[g].get(j).getWeight();
+			}
+		}
+		random = new Random(2);
+	}
+
+	@Setup(Level.Invocation)
+	public void perturb() {
+		for (RankList rankList : rankLists) {
+			int i = random.nextInt(rankList.size());
+			rankList.get(i).setPrediction(rankList.get(i).getPrediction() + random.nextGaussian() * 0.01);
+		}
+	}
+
+	@Benchmark
+	public double aucEval() {
+		return auc.eval(preds, targets, weights);
+	}
+
+	@Benchmark
+	public double gaucScore() {
+		double sum = 0;
+		for (RankList rankList : rankLists) {
+			sum += gauc.score(rankList);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double ndcgScore() {
+		double sum = 0;
+		for (RankList rankList : rankLists) {
+			sum += ndcg.score(rankList);
+		}
+		return sum;
+	}
+
+}
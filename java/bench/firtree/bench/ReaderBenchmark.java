@@ -0,0 +1,72 @@
+package firtree.bench;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mltk.core.Instances;
+import mltk.core.io.AttrInfo;
+import mltk.core.io.ColumnarData;
+import mltk.core.io.InstancesReader;
+import mltk.core.io.RowReader;
+
+/**
+ * Benchmarks reading a dataset from a text file and from the same data in the columnar format.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReaderBenchmark {
+
+	@Param({"200000"})
+	int numRows;
+
+	@Param({"50"})
+	int numAtts;
+
+	AttrInfo ainfo;
+	String dataPath;
+	String colPath;
+
+	@Setup
+	public void setup() throws Exception {
+		File dir = BenchData.createDir(numAtts);
+		ainfo = BenchData.readAttrInfo(dir);
+		dataPath = BenchData.writeData(dir, "fir.dta", BenchData.generateLines(numRows, numAtts, 20, 1)).getPath();
+		colPath = new File(dir, "fir" + ColumnarData.EXTENSION).getPath();
+		String attText = new String(Files.readAllBytes(new File(dir, "fir.attr").toPath()));
+		try (ColumnarData.Writer writer = new ColumnarData.Writer(colPath, attText, AttrInfo.GROUP_UNSET);
+				RowReader reader = RowReader.open(dataPath, true)) {
+			while (reader.next()) {
+				writer.add(reader.row());
+			}
+		}
+	}
+
+	@Benchmark
+	public Instances instancesReaderRead() throws Exception {
+		return InstancesReader.read(ainfo, dataPath, "\t+", true);
+	}
+
+	@Benchmark
+	public Instances columnarRead() throws Exception {
+		return InstancesReader.read(ainfo, colPath, "\t+", true);
+	}
+
+}
@@ -0,0 +1,153 @@
+package firtree;
+
+/**
+ * Array-based form of a trained {@link FirTree} for fast inference. Split nodes are
+ * navigated through flat arrays of columns, thresholds and child indices, and the
+ * leaf models are packed into one block of coefficients. Predictions are identical
+ * to {@link FirTree#predict(String)}: leaf models are evaluated term by term in the
+ * same order and with the same powers.
+ *
+ * <p>Rows are indexed by the columns of the data file. Only the columns returned by
+ * {@link #getUsedColumns()} are read.</p>
+ *
+ */
+public class CompiledFirTree {
+
+	private int polyDegree;
+
+	// Split nodes; a leaf has left index -1
+	private int[] splitCol;
+	private double[] splitVal;
+	private int[] left;
+	private int[] right;
+
+	// Leaves: a constant leaf has no attributes
+	private double[] base;
+	private int[] attStart;
+	private int[] attEnd;
+
+	// Per attribute of a leaf model: column, min, max and polyDegree coefficients
+	private int[] attCol;
+	private double[] attMin;
+	private double[] attMax;
+	private double[] coefs;
+
+	private int[] usedColumns;
+
+	CompiledFirTree(int polyDegree, int[] splitCol, double[] splitVal, int[] left, int[] right,
+			double[] base, int[] attStart, int[] attEnd, int[] attCol, double[] attMin, double[] attMax,
+			double[] coefs) {
+		this.polyDegree = polyDegree;
+		this.splitCol = splitCol;
+		this.splitVal = splitVal;
+		this.left = left;
+		this.right = right;
+		this.base = base;
+		this.attStart = attStart;
+		this.attEnd = attEnd;
+		this.attCol = attCol;
+		this.attMin = attMin;
+		this.attMax = attMax;
+		this.coefs = coefs;
+
+		int maxCol = -1;
+		for (int node = 0; node < left.length; node++) {
+			maxCol = Math.max(maxCol, splitCol[node]);
+		}
+		for (int col : attCol) {
+			maxCol = Math.max(maxCol, col);
+		}
+		boolean[] used = new boolean[maxCol + 1];
+		int n = 0;
+		for (int node = 0; node < left.length; node++) {
+			if (left[node] >= 0 && ! used[splitCol[node]]) {
+				used[splitCol[node]] = true;
+				n++;
+			}
+		}
+		for (int col : attCol) {
+			if (! used[col]) {
+				used[col] = true;
+				n++;
+			}
+		}
+		usedColumns = new int[n];
+		for (int col = 0, k = 0; col < used.length; col++) {
+			if (used[col]) {
+				usedColumns[k++] = col;
+			}
+		}
+	}
+
+	/**
+	 * Returns the columns read by this model in ascending order.
+	 *
+	 * @return the columns read by this model.
+	 */
+	public int[] getUsedColumns() {
+		return usedColumns;
+	}
+
+	/**
+	 * Returns the index of the leaf a row falls in.
+	 *
+	 * @param row the values indexed by column.
+	 * @return the index of the leaf.
+	 */
+	public int indexLeaf(double[] row) {
+		int node = 0;
+		while (left[node] >= 0) {
+			node = row[splitCol[node]] <= splitVal[node] ? left[node] : right[node];
+		}
+		return node;
+	}
+
+	/**
+	 * Predicts a row.
+	 *
+	 * @param row the values indexed by column.
+	 * @return the prediction.
+	 */
+	public double predict(double[] row) {
+		int node = indexLeaf(row);
+		double val = base[node];
+		for (int a = attStart[node]; a < attEnd[node]; a++) {
+			double x = row[attCol[a]];
+			if (x < attMin[a]) {
+				x = attMin[a];
+			}
+			if (x > attMax[a]) {
+				x = attMax[a];
+			}
+			int offset = a * polyDegree;
+			for (int i = 0; i < polyDegree; i++) {
+				val += coefs[offset + i] * Math.pow(x, i + 1);
+			}
+		}
+		return val;
+	}
+
+	/**
+	 * Predicts a batch of rows.
+	 *
+	 * @param rows the rows, each indexed by column.
+	 * @param out the predictions.
+	 */
+	public void predict(double[][] rows, double[] out) {
+		predict(rows, rows.length, out);
+	}
+
+	/**
+	 * Predicts the first n rows of a batch.
+	 *
+	 * @param rows the rows, each indexed by column.
+	 * @param n the number of rows to predict.
+	 * @param out the predictions.
+	 */
+	public void predict(double[][] rows, int n, double[] out) {
+		for (int i = 0; i < n; i++) {
+			out[i] = predict(rows[i]);
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+package firtree;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import mltk.cmdline.Argument;
+import mltk.cmdline.CmdLineParser;
+import mltk.core.io.AttrInfo;
+import mltk.core.io.AttributesReader;
+import mltk.core.io.ColumnarData;
+import mltk.core.io.RowReader;
+
+/**
+ * Converts a data file between the tab separated text format read by the TreeExtra tools
+ * and the columnar format. The direction is decided by the format of the input file.
+ *
+ */
+public class ConvertData {
+
+	static class Options {
+		@Argument(name = "-r", description = "attribute file (required when the input is text)")
+		String attPath = "";
+
+		@Argument(name = "-i", description = "input data file (text or columnar)", required = true)
+		String inputPath = "";
+
+		@Argument(name = "-o", description = "output data file", required = true)
+		String outputPath = "";
+
+		@Argument(name = "-g", description = "name of the attribute with the group id (default: \"\")")
+		String group = "";
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options opts = new Options();
+		CmdLineParser parser = new CmdLineParser(ConvertData.class, opts);
+		try {
+			parser.parse(args);
+		} catch (IllegalArgumentException e) {
+			parser.printUsage();
+			System.exit(1);
+		}
+
+		long start = System.currentTimeMillis();
+		if (ColumnarData.isColumnar(opts.inputPath)) {
+			ColumnarData data = ColumnarData.open(opts.inputPath);
+			try (OutputStream out = new BufferedOutputStream(new FileOutputStream(opts.outputPath), 1 << 16)) {
+				data.writeText(out, Charset.defaultCharset());
+			}
+			System.out.printf("Converted %d rows to text\n", data.size());
+			data.close();
+		} else {
+			if (opts.attPath.isEmpty()) {
+				System.err.println("Error: the attribute file is required to convert a text file.");
+				System.exit(1);
+			}
+			String attText = new String(Files.readAllBytes(Paths.get(opts.attPath)));
+			AttrInfo ainfo = AttributesReader.parse(attText);
+			int groupCol = AttrInfo.GROUP_UNSET;
+			if (!opts.group.isEmpty()) {
+				if (!ainfo.nameToCol.containsKey(opts.group)) {
+					System.err.println("Error: the feature with the name " + opts.group + " does not exist.");
+					System.exit(1);
+				}
+				groupCol = ainfo.nameToCol.get(opts.group);
+			}
+			ColumnarData.Writer writer = new ColumnarData.Writer(opts.outputPath, attText, groupCol);
+			RowReader reader = RowReader.open(opts.inputPath, false);
+			long line = 0;
+			while (reader.next()) {
+				line++;
+				if (reader.row().size() != ainfo.getColN()) {
+					System.err.println("Error: The number of values in line " + line + " does not match the number of attributes specified by the attribute file.");
+					System.exit(1);
+				}
+				try {
+					writer.add(reader.row());
+				} catch (NumberFormatException e) {
+					System.err.println("Error: line " + line + " contains a text value in a numeric column: " + e.getMessage());
+					System.exit(1);
+				}
+			}
+			reader.close();
+			writer.close();
+			System.out.printf("Converted %d rows to the columnar format\n", writer.size());
+		}
+		long end = System.currentTimeMillis();
+		System.out.println("Finished all in " + (end - start) / 1000.0 + " (s).");
+	}
+
+}
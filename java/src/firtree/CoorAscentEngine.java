@@ -0,0 +1,376 @@
+package firtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import firtree.metric.MetricScorer;
+import firtree.utilities.Instance;
+import firtree.utilities.LeafIndex;
+import firtree.utilities.RankList;
+
+/**
+ * Engine for scoring the rank lists of coordinate ascent in parallel. Rank lists are
+ * partitioned into shards of a fixed size, each shard sums the weighted scores of its
+ * rank lists, and the partial sums are reduced in shard order. Scores therefore do not
+ * depend on the number of threads.
+ *
+ * <p>A probe changes the model and the cached predictions together: the model is
+ * changed once on the calling thread, then the shards update the predictions of their
+ * instances while only reading the model, and the probe returns after all shards are
+ * done. Before the first probe of a parameter, its value and the predictions and scores
+ * of the rank lists in its leaf are saved. Every probe of the parameter starts from the
+ * saved predictions, so rounding errors do not build up over the probes, and the probes
+ * end with {@link #commit()}, which keeps the last one, or {@link #rollback()}, which
+ * restores the saved state exactly.</p>
+ *
+ * <p>A probe of a leaf only visits the rank lists with instances in the leaf, as given
+ * by a {@link LeafIndex}. The weighted score of the other rank lists does not change
+ * while the same leaf is probed, so it is summed once per shard and reused.</p>
+ *
+ */
+public class CoorAscentEngine {
+
+	/**
+	 * The number of rank lists per shard.
+	 */
+	static final int SHARD_SIZE = 1024;
+
+	private interface ShardTask {
+
+		void run(int shard);
+
+	}
+
+	private static final int PARAM = 0;
+	private static final int MIN = 1;
+	private static final int MAX = 2;
+
+	private FirTree model;
+	private MetricScorer scorer;
+	private LeafIndex leafIndex;
+	private RankList[] rankLists;
+	private int numShards;
+	private TaskScheduler scheduler;
+
+	// Partial sums of the last evaluation per shard
+	private double[] totals;
+	private double[] weights;
+
+	// Partial sums of the rank lists without instances in restNode per shard
+	private int restNode;
+	private double[] restTotals;
+	private double[] restWeights;
+
+	// State saved before the first probe of the active parameter; savedNode is -1 if
+	// no probe is pending
+	private int savedNode;
+	private int savedKind;
+	private int savedIndex;
+	private double savedValue;
+	private double[][] savedPredictions;
+	private double[] savedScores;
+	private double[] savedTotals;
+	private double[] savedWeights;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param model the model.
+	 * @param leafIndex the rank lists indexed by leaf.
+	 * @param scorer the metric.
+	 * @param nThreads the number of threads.
+	 */
+	public CoorAscentEngine(FirTree model, LeafIndex leafIndex, MetricScorer scorer, int nThreads) {
+		this.model = model;
+		this.scorer = scorer;
+		this.leafIndex = leafIndex;
+		rankLists = leafIndex.getRankLists();
+		numShards = (rankLists.length + SHARD_SIZE - 1) / SHARD_SIZE;
+		totals = new double[numShards];
+		weights = new double[numShards];
+		restNode = -1;
+		restTotals = new double[numShards];
+		restWeights = new double[numShards];
+		savedNode = -1;
+		if (nThreads > 1) {
+			scheduler = new TaskScheduler(nThreads);
+		}
+	}
+
+	/**
+	 * Returns the metric.
+	 *
+	 * @return the metric.
+	 */
+	public MetricScorer getScorer() {
+		return scorer;
+	}
+
+	/**
+	 * Predicts all instances from scratch and returns the score. This resets numerical
+	 * errors accumulated by incremental updates.
+	 *
+	 * @return the score.
+	 * @throws IllegalStateException if probes are neither committed nor rolled back.
+	 */
+	public double score() {
+		if (savedNode >= 0) {
+			throw new IllegalStateException("Probes must be committed or rolled back before scoring");
+		}
+		Consumer<Instance> update = instance -> model.predict(instance);
+		run(shard -> {
+			double total = 0;
+			double weight = 0;
+			for (int i = shard * SHARD_SIZE; i < end(shard); i ++) {
+				RankList rankList = rankLists[i];
+				for (Instance instance : rankList.getInstances()) {
+					update.accept(instance);
+				}
+				rankList.setScore(scorer.score(rankList));
+				double score = rankList.getScore();
+				if (! Double.isNaN(score)) {
+					// If tp_fn and fp_tn are never 0 when computing AUC
+					total += score;
+					weight += rankList.getWeight();
+				}
+			}
+			totals[shard] = total;
+			weights[shard] = weight;
+		});
+		restNode = -1;
+		return reduce();
+	}
+
+	/**
+	 * Changes a parameter of a leaf model and returns the score. The change is pending
+	 * until {@link #commit()} or {@link #rollback()}.
+	 *
+	 * @param activeNode the index of the leaf.
+	 * @param activeParam the index of the parameter.
+	 * @param paramDelta the change of the parameter.
+	 * @return the score.
+	 */
+	public double probeParam(int activeNode, int activeParam, double paramDelta) {
+		double value = model.getParamValue(activeNode, activeParam) + paramDelta;
+		save(activeNode, PARAM, activeParam, model.getParamValue(activeNode, activeParam));
+		model.assignParamValue(activeNode, activeParam, value);
+		double delta = value - savedValue;
+		return probe(activeNode, instance -> model.predict(instance, activeNode, activeParam, delta));
+	}
+
+	/**
+	 * Changes the min or max value of a feature of a leaf model and returns the score.
+	 *
+	 * @param activeNode the index of the leaf.
+	 * @param activeAtt the index of the feature.
+	 * @param delta the change of the bound.
+	 * @param type min or max.
+	 * @return the score.
+	 */
+	public double probeBound(int activeNode, int activeAtt, double delta, String type) {
+		double value = 0;
+		if (type.equals("min")) {
+			value = model.getMinValue(activeNode, activeAtt) + delta;
+			save(activeNode, MIN, activeAtt, model.getMinValue(activeNode, activeAtt));
+			model.assignMinValue(activeNode, activeAtt, value);
+		} else if (type.equals("max")) {
+			value = model.getMaxValue(activeNode, activeAtt) + delta;
+			save(activeNode, MAX, activeAtt, model.getMaxValue(activeNode, activeAtt));
+			model.assignMaxValue(activeNode, activeAtt, value);
+		} else {
+			System.err.printf("Unknown type %s in CoorAscentEngine.probeBound\n", type);
+			System.exit(1);
+		}
+		double boundDelta = value - savedValue;
+		return probe(activeNode, instance -> model.predict(instance, activeNode, activeAtt, boundDelta, type));
+	}
+
+	/**
+	 * Keeps the last probe of the active parameter.
+	 */
+	public void commit() {
+		savedNode = -1;
+		savedPredictions = null;
+	}
+
+	/**
+	 * Restores the active parameter, the cached predictions and the scores saved before
+	 * its first probe, and returns the score. Does nothing but return the score if no
+	 * probe is pending.
+	 *
+	 * @return the score.
+	 */
+	public double rollback() {
+		if (savedNode >= 0) {
+			if (savedKind == PARAM) {
+				model.assignParamValue(savedNode, savedIndex, savedValue);
+			} else if (savedKind == MIN) {
+				model.assignMinValue(savedNode, savedIndex, savedValue);
+			} else {
+				model.assignMaxValue(savedNode, savedIndex, savedValue);
+			}
+			int[] lists = leafIndex.getLists(savedNode);
+			for (int k = 0; k < lists.length; k ++) {
+				RankList rankList = rankLists[lists[k]];
+				int[] offsets = leafIndex.getOffsets(savedNode, k);
+				for (int o = 0; o < offsets.length; o ++) {
+					rankList.get(offsets[o]).setPrediction(savedPredictions[k][o]);
+				}
+				rankList.setScore(savedScores[k]);
+			}
+			System.arraycopy(savedTotals, 0, totals, 0, numShards);
+			System.arraycopy(savedWeights, 0, weights, 0, numShards);
+			commit();
+		}
+		return reduce();
+	}
+
+	/**
+	 * Shuts down the threads of this engine.
+	 *
+	 * @throws InterruptedException
+	 */
+	public void shutdown() throws InterruptedException {
+		if (scheduler != null) {
+			scheduler.shutdown();
+		}
+	}
+
+	/**
+	 * Saves the state before the first probe of a parameter.
+	 */
+	private void save(int activeNode, int kind, int index, double value) {
+		if (savedNode >= 0) {
+			if (savedNode != activeNode || savedKind != kind || savedIndex != index) {
+				throw new IllegalStateException("Probes of another parameter must be committed or rolled back first");
+			}
+			return;
+		}
+		int[] lists = leafIndex.getLists(activeNode);
+		savedPredictions = new double[lists.length][];
+		savedScores = new double[lists.length];
+		for (int k = 0; k < lists.length; k ++) {
+			RankList rankList = rankLists[lists[k]];
+			int[] offsets = leafIndex.getOffsets(activeNode, k);
+			double[] predictions = new double[offsets.length];
+			for (int o = 0; o < offsets.length; o ++) {
+				predictions[o] = rankList.get(offsets[o]).getPrediction();
+			}
+			savedPredictions[k] = predictions;
+			savedScores[k] = rankList.getScore();
+		}
+		savedTotals = totals.clone();
+		savedWeights = weights.clone();
+		savedNode = activeNode;
+		savedKind = kind;
+		savedIndex = index;
+		savedValue = value;
+	}
+
+	/**
+	 * Updates the instances in the active node from their saved predictions and the scores
+	 * of their rank lists, and returns the weighted score of all rank lists.
+	 */
+	private double probe(int activeNode, Consumer<Instance> update) {
+		int[] lists = leafIndex.getLists(activeNode);
+		if (restNode != activeNode) {
+			// Sum the rank lists that probes of this node never change
+			run(shard -> {
+				double total = 0;
+				double weight = 0;
+				int k = lowerBound(lists, shard * SHARD_SIZE);
+				for (int i = shard * SHARD_SIZE; i < end(shard); i ++) {
+					if (k < lists.length && lists[k] == i) {
+						k ++;
+						continue;
+					}
+					double score = rankLists[i].getScore();
+					if (! Double.isNaN(score)) {
+						total += score;
+						weight += rankLists[i].getWeight();
+					}
+				}
+				restTotals[shard] = total;
+				restWeights[shard] = weight;
+			});
+			restNode = activeNode;
+		}
+		run(shard -> {
+			double total = restTotals[shard];
+			double weight = restWeights[shard];
+			int to = lowerBound(lists, end(shard));
+			for (int k = lowerBound(lists, shard * SHARD_SIZE); k < to; k ++) {
+				// There is one of the rank list's instances that falls in the active node
+				RankList rankList = rankLists[lists[k]];
+				int[] offsets = leafIndex.getOffsets(activeNode, k);
+				double[] predictions = savedPredictions[k];
+				for (int o = 0; o < offsets.length; o ++) {
+					Instance instance = rankList.get(offsets[o]);
+					instance.setPrediction(predictions[o]);
+					update.accept(instance);
+				}
+				rankList.setScore(scorer.score(rankList));
+				double score = rankList.getScore();
+				if (! Double.isNaN(score)) {
+					// If tp_fn and fp_tn are never 0 when computing AUC
+					total += score;
+					weight += rankList.getWeight();
+				}
+			}
+			totals[shard] = total;
+			weights[shard] = weight;
+		});
+		return reduce();
+	}
+
+	private int end(int shard) {
+		return Math.min(rankLists.length, (shard + 1) * SHARD_SIZE);
+	}
+
+	private static int lowerBound(int[] a, int key) {
+		int pos = Arrays.binarySearch(a, key);
+		return pos >= 0 ? pos : -pos - 1;
+	}
+
+	// Reduces in shard order regardless of completion order
+	private double reduce() {
+		double total = 0;
+		double weight = 0;
+		for (int shard = 0; shard < numShards; shard ++) {
+			total += totals[shard];
+			weight += weights[shard];
+		}
+		return total / weight;
+	}
+
+	private void run(ShardTask task) {
+		if (scheduler == null) {
+			for (int shard = 0; shard < numShards; shard ++) {
+				task.run(shard);
+			}
+			return;
+		}
+		TaskScheduler.Phase<Void> phase = scheduler.newPhase("Coordinate ascent probe");
+		List<Future<Void>> futures = new ArrayList<>(numShards);
+		for (int shard = 0; shard < numShards; shard ++) {
+			int s = shard;
+			futures.add(phase.submit(() -> {
+				task.run(s);
+				return null;
+			}));
+		}
+		try {
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			System.err.println("Failed to score rank lists: " + e);
+			System.exit(1);
+		}
+	}
+
+}
@@ -20,12 +20,16 @@ import firtree.metric.MetricScorer;
 import firtree.metric.NDCGScorer;
 import firtree.utilities.FileUtils;
 import firtree.utilities.Instance;
+import firtree.utilities.LeafIndex;
 import firtree.utilities.RankList;
 import mltk.cmdline.Argument;
 import mltk.cmdline.CmdLineParser;
 import mltk.core.io.AttrInfo;
 import mltk.core.io.AttributesReader;
 import mltk.core.io.InstancesReader;
+import mltk.core.io.ColumnarData;
+import mltk.core.io.Row;
+import mltk.core.io.RowReader;
 import mltk.util.tuple.IntPair;
 
 /**
@@ -65,6 +69,9 @@ public class CoorAscentOnLeaves {
 		// This argument comes from InteractionTreeLearnerGAMMC
 		@Argument(name = "-c", description = "(gauc|ndcg) - metric to optimize (default: gauc)")
 		String metricStr = "gauc";
+		
+		@Argument(name = "-n", description = "number of threads (default: 1)")
+		int nThreads = 1;
 	}
 	
 	public static void main(String[] args) throws Exception {
@@ -121,7 +128,7 @@ public class CoorAscentOnLeaves {
 		}
 		
 		// Load training data
-		Map<String, RankList> rankLists = loadRankList(opts, ainfo, model);
+		LeafIndex leafIndex = loadRankList(opts, ainfo, model);
 
 		MetricScorer scorer;
 		if (opts.metricStr.equals("gauc")) {
@@ -134,15 +141,17 @@ public class CoorAscentOnLeaves {
 			scorer = new NDCGScorer(k);
 		}
 
+		CoorAscentEngine engine = new CoorAscentEngine(model, leafIndex, scorer, opts.nThreads);
 		if (opts.algorithm.equals("params")) {
 			timeStamp("Tune values of model parameters");
 			// Tune parameter values of leaf nodes of type MODEL
-			tuneParams(opts, model, rankLists, scorer);
+			tuneParams(opts, model, engine);
 		} else if (opts.algorithm.equals("minmax")) {
 			timeStamp("Tune min and max values of features");
 			// Tune min and max values of features
-			tuneMinMax(opts, model, rankLists, scorer);
+			tuneMinMax(opts, model, engine);
 		}
+		engine.shutdown();
 		
 		long end = System.currentTimeMillis();
 		System.out.println("Finished all in " + (end - start) / 1000.0 + " (s).");
@@ -155,10 +164,10 @@ public class CoorAscentOnLeaves {
 	protected static void tuneMinMax(
 			Options opts,
 			FirTree model, 
-			Map<String, RankList> rankLists,
-			MetricScorer scorer
+			CoorAscentEngine engine
 			) throws Exception {
 		timeStamp("Start to tune min and max values");
+		MetricScorer scorer = engine.getScorer();
 		boolean verbose = false; // Print debugging information, which is verbose
 		boolean correct = false; // Use time-consuming but correct implementation
 		double tolerance = 5 * Math.pow(10, -3);
@@ -169,7 +178,7 @@ public class CoorAscentOnLeaves {
 		int nIter = 0;
 		while (true) {
 			// Reset cached predictions helps prevent numerical issues 
-			double scoreTrain = getScore(model, rankLists, scorer);
+			double scoreTrain = engine.score();
 			timeStamp(String.format("Training %s is %f at the start of iteration %d", 
 					scorer.name(), scoreTrain, nIter));
 			//System.exit(0);
@@ -213,10 +222,9 @@ public class CoorAscentOnLeaves {
 					if (correct) {
 						// This code snippet is time-consuming
 						model.setMinValue(activeNode, activeAtt, minDelta);
-						scoreTrain = getScore(model, rankLists, scorer);
+						scoreTrain = engine.score();
 					} else {
-						scoreTrain = getScore(
-								model, rankLists, scorer, activeNode, activeAtt, minDelta, "min");
+						scoreTrain = engine.probeBound(activeNode, activeAtt, minDelta, "min");
 					}
 					//*/ Ablative Debug End
 					///*
@@ -234,16 +242,17 @@ public class CoorAscentOnLeaves {
 					prevMin = currMin;
 				}
 				
-				// Set the active attribute to the best min value
+				// Roll back the probes and set the active attribute to the best min value
+				engine.rollback();
 				double minDelta = bestMin - model.getMinValue(activeNode, activeAtt);
 				///* Ablative Debug Start
 				if (true) {
 					// This code snippet is time-consuming
 					model.setMinValue(activeNode, activeAtt, minDelta);
-					scoreTrain = getScore(model, rankLists, scorer);
+					scoreTrain = engine.score();
 				} else {
-					scoreTrain = getScore(
-							model, rankLists, scorer, activeNode, activeAtt, minDelta, "min");
+					scoreTrain = engine.probeBound(activeNode, activeAtt, minDelta, "min");
+					engine.commit();
 				}
 				if (Math.abs(scoreTrain - bestScoreTrain) > tolerance) {
 					System.err.printf("%s: estimated %f v.s. real %f if setting min to %f\n",
@@ -270,10 +279,9 @@ public class CoorAscentOnLeaves {
 					if (correct) {
 						// This code snippet is time-consuming
 						model.setMaxValue(activeNode, activeAtt, maxDelta);
-						scoreTrain = getScore(model, rankLists, scorer);
+						scoreTrain = engine.score();
 					} else {
-						scoreTrain = getScore(
-								model, rankLists, scorer, activeNode, activeAtt, maxDelta, "max");
+						scoreTrain = engine.probeBound(activeNode, activeAtt, maxDelta, "max");
 					}
 					//*/ Ablative Debug End
 					if (verbose && false) {
@@ -290,16 +298,17 @@ public class CoorAscentOnLeaves {
 					prevMax = currMax;
 				}
 				
-				// Set the active attribute to the best max value
+				// Roll back the probes and set the active attribute to the best max value
+				engine.rollback();
 				double maxDelta = bestMax - model.getMaxValue(activeNode, activeAtt);
 				///* Ablative Debug Start
 				if (true) {
 					// This code snippet is time-consuming
 					model.setMaxValue(activeNode, activeAtt, maxDelta);
-					scoreTrain = getScore(model, rankLists, scorer);
+					scoreTrain = engine.score();
 				} else {
-					scoreTrain = getScore(
-							model, rankLists, scorer, activeNode, activeAtt, maxDelta, "max");
+					scoreTrain = engine.probeBound(activeNode, activeAtt, maxDelta, "max");
+					engine.commit();
 				}
 				if (Math.abs(scoreTrain - bestScoreTrain) > 5 * Math.pow(10, -3)) {
 					System.err.printf("%s: estimated %f v.s. real %f if setting min to %f\n",
@@ -332,49 +341,6 @@ public class CoorAscentOnLeaves {
 		model.save(-1);
 	}
 	
-	protected static double getScore(
-			FirTree model, 
-			Map<String, RankList> rankLists, 
-			MetricScorer scorer,
-			int activeNode,
-			int activeAtt,
-			double delta,
-			String type
-			) {
-		double total = 0;
-		double weight = 0;
-		if (type.equals("min")) {
-			model.setMinValue(activeNode, activeAtt, delta);
-		} else if (type.equals("max")) {
-			model.setMaxValue(activeNode, activeAtt, delta);
-		} else {
-			System.err.printf("Unknown type %s in CoorAscentOnLeaves.getScore\n", type);
-			System.exit(1);
-		}
-		for (RankList rankList : rankLists.values()) {
-			if (isActive(rankList, activeNode)) {
-				// There is one of the rank list's instances that falls in the active node
-				for (Instance instance : rankList.getInstances()) {
-					///* Ablative Debug Start
-					model.predict(instance, activeNode, activeAtt, delta, type);
-					//*/
-					/*// This code snippet is time-consuming
-					model.predict(instance);
-					*/// Ablative Debug End
-				}
-				// Set is easily forgot
-				rankList.setScore(scorer.score(rankList));
-			}
-			double score = rankList.getScore();
-			if (! Double.isNaN(score)) {
-				// If tp_fn and fp_tn are never 0 when computing AUC
-				total += score;
-				weight += rankList.getWeight();
-			}
-		}
-		return total / weight;
-	}
-	
 	// The hyper-parameters of training model parameters by coordinate ascent
 	// delta = [ deltaUnit * deltaBase^0, ..., deltaUnit * deltaBase^deltaMaxPower ]
 	public static double deltaUnit = 0.001;
@@ -394,10 +360,10 @@ public class CoorAscentOnLeaves {
 	protected static void tuneParams(
 			Options opts,
 			FirTree model, 
-			Map<String, RankList> rankLists,
-			MetricScorer scorer
+			CoorAscentEngine engine
 			) throws Exception {
 		timeStamp("Start to tune parameters of linear models");
+		MetricScorer scorer = engine.getScorer();
 		
 		// Create log directory and delete all previous log files
 		String dir = Paths.get(opts.logPath).getParent().toString();
@@ -414,7 +380,7 @@ public class CoorAscentOnLeaves {
 		int nIter = 0;
 		while (true) {
 			// Reset cached predictions helps prevent numerical issues 
-			double scoreTrain = getScore(model, rankLists, scorer);
+			double scoreTrain = engine.score();
 			System.out.printf("Training %s is %f at the start of iteration %d\n", 
 					scorer.name(), scoreTrain, nIter);
 			//System.exit(0);
@@ -442,12 +408,11 @@ public class CoorAscentOnLeaves {
 					double paramDelta = posDelta;
 					
 					///* Ablative Debug Start
-					scoreTrain = getScore(
-							model, rankLists, scorer, activeNode, activeParam, paramDelta);
+					scoreTrain = engine.probeParam(activeNode, activeParam, paramDelta);
 					//*/
 					/*// This code snippet is time-consuming
 					model.setParamValue(activeNode, activeParam, paramDelta);
-					scoreTrain = getScore(model, rankLists, scorer);
+					scoreTrain = engine.score();
 					*/// Ablative Debug End
 					
 					// Log parameter value and score
@@ -472,16 +437,15 @@ public class CoorAscentOnLeaves {
 					double paramDelta = negDelta;
 					if (j == 0) {
 						// Need to first restore active parameter's value to its original value
-						paramDelta += origParamValue - model.getParamValue(activeNode, activeParam);
+						engine.rollback();
 					}
 					
 					///* Ablative Debug Start
-					scoreTrain = getScore(
-							model, rankLists, scorer, activeNode, activeParam, paramDelta);
+					scoreTrain = engine.probeParam(activeNode, activeParam, paramDelta);
 					//*/
 					/*// This code snippet is time-consuming
 					model.setParamValue(activeNode, activeParam, paramDelta);
-					scoreTrain = getScore(model, rankLists, scorer);
+					scoreTrain = engine.score();
 					*/// Ablative Debug End
 					
 					// Log parameter value and score
@@ -503,16 +467,19 @@ public class CoorAscentOnLeaves {
 				
 				// Remove features easily causes numerical issues
 	
-				// Set the active parameter to the best value
+				// Roll back the probes and set the active parameter to the best value
+				scoreTrain = engine.rollback();
 				double paramDelta = bestParamValue - model.getParamValue(activeNode, activeParam);
 
 				///* Ablative Debug Start
-				scoreTrain = getScore(
-						model, rankLists, scorer, activeNode, activeParam, paramDelta);
+				if (paramDelta != 0) {
+					scoreTrain = engine.probeParam(activeNode, activeParam, paramDelta);
+				}
+				engine.commit();
 				//*/
 				/*// This code snippet is time-consuming
 				model.setParamValue(activeNode, activeParam, paramDelta);
-				scoreTrain = getScore(model, rankLists, scorer);
+				scoreTrain = engine.score();
 				*/// Ablative Debug End
 				
 				System.out.printf("\t%s:%f orig:%+.12f best:%+.12f (%02d, %02d)\n", 
@@ -547,72 +514,6 @@ public class CoorAscentOnLeaves {
 		model.save(-1);
 	}
 		
-	protected static double getScore(
-			FirTree model, 
-			Map<String, RankList> rankLists, 
-			MetricScorer scorer,
-			int activeNode,
-			int activeParam,
-			double paramDelta
-			) {
-		double total = 0;
-		double weight = 0;
-		model.setParamValue(activeNode, activeParam, paramDelta);
-		for (RankList rankList : rankLists.values()) {
-			if (isActive(rankList, activeNode)) {
-				// There is one of the rank list's instances that falls in the active node
-				for (Instance instance : rankList.getInstances()) {
-					///* Ablative Debug Start
-					model.predict(instance, activeNode, activeParam, paramDelta);
-					//*/
-					/*// This code snippet is time-consuming
-					model.predict(instance);
-					*/// Ablative Debug End
-				}
-				// Set is easily forgot
-				rankList.setScore(scorer.score(rankList));
-			}
-			double score = rankList.getScore();
-			if (! Double.isNaN(score)) {
-				// If tp_fn and fp_tn are never 0 when computing AUC
-				total += score;
-				weight += rankList.getWeight();
-			}
-		}
-		return total / weight;
-	}
-
-	protected static double getScore(
-			FirTree model, 
-			Map<String, RankList> rankLists, 
-			MetricScorer scorer
-			) {
-		double total = 0;
-		double weight = 0;
-		for (RankList rankList : rankLists.values()) {
-			for (Instance instance : rankList.getInstances()) {
-				model.predict(instance);
-			}
-			// Set is easily forgot
-			rankList.setScore(scorer.score(rankList));
-			double score = rankList.getScore();
-			if (! Double.isNaN(score)) {
-				// If tp_fn and fp_tn are never 0 when computing AUC
-				total += score;
-				weight += rankList.getWeight();
-			}
-		}
-		return total / weight;
-	}
-
-	protected static boolean isActive(RankList rankList, int activeNode) {
-		for (Instance instance : rankList.getInstances()) {
-			if (instance.getNodeIndex() == activeNode)
-				return true;
-		}
-		return false;
-	}
-	
 	protected static double initDelta(double origParamValue, int sign) {
 		double absDelta = deltaUnit;
 		if (origParamValue != 0.0 && absDelta > 0.5 * Math.abs(origParamValue)) {
@@ -621,7 +522,7 @@ public class CoorAscentOnLeaves {
 		return absDelta * sign;
 	}
 
-	protected static Map<String, RankList> loadRankList(
+	protected static LeafIndex loadRankList(
 			Options opts,
 			AttrInfo ainfo,
 			FirTree model
@@ -632,21 +533,21 @@ public class CoorAscentOnLeaves {
 		Map<String, RankList> rankLists = new HashMap<>();
 		List<String> allLeaves = model.getAllLeaves();
 		for (String leafName : allLeaves) {
-			String dataPath = Paths.get(dir, "Node_" + leafName, "fir.dta").toString();
+			String dataPath = getNodeDataPath(dir, leafName);
 			Map<String, Integer> nameToId = new HashMap<>();
 			int leafIndex = model.nodeIndexes.get(leafName);
 			List<Integer> attIdList = model.nodeAttIdList.get(leafIndex);
 			for (int i = 0; i < attIdList.size(); i ++) {
 				nameToId.put(ainfo.idToName(attIdList.get(i)), i);
 			}
-			BufferedReader br = new BufferedReader(new FileReader(dataPath));
-			for (String line = br.readLine(); line != null; line = br.readLine()) {
-				String[] data = line.split("\t");
+			RowReader reader = RowReader.open(dataPath, false);
+			while (reader.next()) {
+				Row data = reader.row();
 				Instance instance = new Instance(
 						InstancesReader.parseDenseInstance(data, ainfo, attIdList, false),
 						nameToId
 						);
-				String groupId = data[ainfo.nameToCol.get(opts.group)];
+				String groupId = data.getString(ainfo.nameToCol.get(opts.group));
 				instance.setGroupId(groupId);
 				
 				// Predict index of the node (must be a leaf) the instance falls in
@@ -664,14 +565,14 @@ public class CoorAscentOnLeaves {
 				}
 				rankLists.get(groupId).add(instance);
 				
-				if (Math.abs(model.predict(line) - model.predict(instance)) > Math.pow(10, -10)) {
+				if (Math.abs(model.predict(data) - model.predict(instance)) > Math.pow(10, -10)) {
 					System.err.println("Diffferent versions of FirTree.predict are inconsistent");
 					System.exit(1);
 				}
 				
 				model.addAttIdToValSet(attIdList, data);
 			}
-			br.close();
+			reader.close();
 		}
 		
 		// Set the weight of a rank list
@@ -680,13 +581,26 @@ public class CoorAscentOnLeaves {
 		
 		model.addAttIdToValList();
 		
-		return rankLists;
+		// Index the rank lists by leaf so that probes of a leaf only visit its rank lists
+		return new LeafIndex(rankLists.values());
 	}
 	
 	static String getNodeDir(String dir, String node) {
 		return Paths.get(dir, "Node_" + node).toString();
 	}
 	
+	/**
+	 * Returns the path of the data of a node: fir.col in the columnar format if it exists,
+	 * otherwise fir.dta.
+	 */
+	static String getNodeDataPath(String dir, String node) {
+		Path colPath = Paths.get(getNodeDir(dir, node), "fir" + ColumnarData.EXTENSION);
+		if (new File(colPath.toString()).exists()) {
+			return colPath.toString();
+		}
+		return Paths.get(getNodeDir(dir, node), "fir.dta").toString();
+	}
+	
 	static List<Path> getDataPaths(String dir, String node) {
 		List<Path> dataPaths = new ArrayList<Path>();
 		String left = getNodeDir(dir, node) + "_L";
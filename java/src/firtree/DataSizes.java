@@ -1,15 +0,0 @@
-package firtree;
-
-public class DataSizes {
-	public int left_size;
-	public int right_size;
-	public int left_zero_size;
-	public int right_zero_size;
-	
-	public DataSizes(int ln, int rn, int lz, int rz) {
-		this.left_size = ln;
-		this.right_size = rn;
-		this.left_zero_size = lz;
-		this.right_zero_size = rz;
-	}
-}
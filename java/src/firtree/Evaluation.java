@@ -15,6 +15,7 @@ import mltk.cmdline.Argument;
 import mltk.cmdline.CmdLineParser;
 import mltk.core.io.AttrInfo;
 import mltk.core.io.AttributesReader;
+import mltk.core.io.Tokenizer;
 
 public class Evaluation {
 	
@@ -53,6 +54,7 @@ public class Evaluation {
 		BufferedReader brT = new BufferedReader(new FileReader(opts.testPath));
 		BufferedReader brO = new BufferedReader(new FileReader(opts.outputPath));
 		int nLine = 0;
+		Tokenizer data = new Tokenizer(false);
 		while (true) {
 			String lineT = brT.readLine();
 			String lineO = brO.readLine();
@@ -67,12 +69,12 @@ public class Evaluation {
 			if ((lineT == null) && (lineO == null))
 				break;
 
-			String[] data = lineT.split("\t");
-			double target = Double.parseDouble(data[ainfo.getClsCol()]);
+			data.reset(lineT);
+			double target = data.getDoubleStrict(ainfo.getClsCol());
 			Instance instance = new Instance(target);
-			String groupId = data[ainfo.nameToCol.get(opts.group)];
+			String groupId = data.getString(ainfo.nameToCol.get(opts.group));
 			instance.setGroupId(groupId);
-			instance.setPrediction(Double.parseDouble(lineO));
+			instance.setPrediction(Tokenizer.parseDouble(lineO, 0, lineO.length()));
 			
 			if (! rankLists.containsKey(groupId))
 				rankLists.put(groupId, new RankList(groupId));
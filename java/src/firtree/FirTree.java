@@ -19,6 +19,8 @@ import java.util.Set;
 
 import firtree.utilities.Instance;
 import mltk.core.io.AttrInfo;
+import mltk.core.io.Row;
+import mltk.core.io.Tokenizer;
 import mltk.util.tuple.IntPair;
 
 public class FirTree {
@@ -60,6 +62,9 @@ public class FirTree {
 
 	// XW
 	private int INTERCEPT = -1;
+
+	// Tokenizer of each thread for predict(String)
+	private static final ThreadLocal<Tokenizer> tokenizer = ThreadLocal.withInitial(() -> new Tokenizer(false));
 	
 	public FirTree(AttrInfo ainfo, String logPath) throws Exception {
 		// XW. We won't load model parameters when override is 1
@@ -548,9 +553,97 @@ public class FirTree {
 		java_out.close();
 	}
 
+	// Array-based snapshot of the tree and the current parameters for fast inference
+	public CompiledFirTree compile() {
+		if (lr_coefs == null || lr_coefs.size() < nodeN) {
+			System.err.println("Model parameters must be loaded to compile a FirTree");
+			System.exit(1);
+		}
+		int[] splitCol = new int[nodeN];
+		double[] splitVal = new double[nodeN];
+		int[] left = new int[nodeN];
+		int[] right = new int[nodeN];
+		double[] base = new double[nodeN];
+		int[] attStart = new int[nodeN];
+		int[] attEnd = new int[nodeN];
+		int attN = 0;
+		for (int nodeNo = 0; nodeNo < nodeN; nodeNo++) {
+			if (node_type.get(nodeNo) == NodeType.MODEL) {
+				attN += lr_attr_ids.get(nodeNo).size();
+			}
+		}
+		int[] attCol = new int[attN];
+		double[] attMin = new double[attN];
+		double[] attMax = new double[attN];
+		double[] coefs = new double[attN * polyDegree];
+		int a = 0;
+		for (int nodeNo = 0; nodeNo < nodeN; nodeNo++) {
+			NodeType type = node_type.get(nodeNo);
+			attStart[nodeNo] = a;
+			if (type == NodeType.SPLIT) {
+				splitCol[nodeNo] = ainfo.idToCol(split_attr_id.get(nodeNo));
+				splitVal[nodeNo] = split_val.get(nodeNo);
+				left[nodeNo] = node_name.indexOf(node_name.get(nodeNo) + "_L");
+				right[nodeNo] = node_name.indexOf(node_name.get(nodeNo) + "_R");
+			} else {
+				left[nodeNo] = -1;
+				right[nodeNo] = -1;
+				if (type == NodeType.CONST) {
+					base[nodeNo] = const_val[nodeNo];
+				} else {
+					base[nodeNo] = intercept_val[nodeNo];
+					ArrayList<Integer> attrIds = lr_attr_ids.get(nodeNo);
+					ArrayList<ArrayList<Double>> nodeCoefs = lr_coefs.get(nodeNo);
+					for (int i_attr = 0; i_attr < attrIds.size(); i_attr++, a++) {
+						attCol[a] = ainfo.idToCol(attrIds.get(i_attr));
+						attMin[a] = nodeCoefs.get(i_attr).get(polyDegree);
+						attMax[a] = nodeCoefs.get(i_attr).get(polyDegree + 1);
+						for (int i = 0; i < polyDegree; i++) {
+							coefs[a * polyDegree + i] = nodeCoefs.get(i_attr).get(i);
+						}
+					}
+				}
+			}
+			attEnd[nodeNo] = a;
+		}
+		return new CompiledFirTree(polyDegree, splitCol, splitVal, left, right,
+				base, attStart, attEnd, attCol, attMin, attMax, coefs);
+	}
+
+	// Array-based snapshot of the tree structure only, for routing rows to leaves.
+	// Model parameters are not needed; every leaf predicts 0.
+	public CompiledFirTree compileSplits() {
+		int[] splitCol = new int[nodeN];
+		double[] splitVal = new double[nodeN];
+		int[] left = new int[nodeN];
+		int[] right = new int[nodeN];
+		for (int nodeNo = 0; nodeNo < nodeN; nodeNo++) {
+			if (node_type.get(nodeNo) == NodeType.SPLIT) {
+				splitCol[nodeNo] = ainfo.idToCol(split_attr_id.get(nodeNo));
+				splitVal[nodeNo] = split_val.get(nodeNo);
+				left[nodeNo] = node_name.indexOf(node_name.get(nodeNo) + "_L");
+				right[nodeNo] = node_name.indexOf(node_name.get(nodeNo) + "_R");
+			} else {
+				left[nodeNo] = -1;
+				right[nodeNo] = -1;
+			}
+		}
+		return new CompiledFirTree(polyDegree, splitCol, splitVal, left, right, new double[nodeN],
+				new int[nodeN], new int[nodeN], new int[0], new double[0], new double[0], new double[0]);
+	}
+
 	public double predict(String data_str) {
-		String[] data = data_str.split("\t");
-		if(data.length != ainfo.getColN())
+		return predict(tokenizer.get().reset(data_str));
+	}
+
+	/**
+	 * Predicts a row. Only the columns used by the tree are parsed.
+	 *
+	 * @param data the fields of the row.
+	 * @return the prediction.
+	 */
+	public double predict(Row data) {
+		if(data.size() != ainfo.getColN())
 		{ 
 			System.err.println("The number of columns in the data does not match the number of attributes in the file.");
 			System.exit(1);
@@ -565,7 +658,7 @@ public class FirTree {
 			if(current_type == NodeType.SPLIT) {
 				// identify the data point falls in which node (L or R) on this split.
 				int current_col = ainfo.idToCol(split_attr_id.get(current_index));
-				double current_val = Double.parseDouble(data[current_col]);
+				double current_val = data.getDoubleStrict(current_col);
 				double current_split = split_val.get(current_index);
 				if(current_val <= current_split) {
 					next_node = current_node + "_L";
@@ -586,7 +679,7 @@ public class FirTree {
 					ArrayList<Integer> current_lr_attr_ids = lr_attr_ids.get(current_index);
 					ArrayList<ArrayList<Double>> current_lr_coefs = lr_coefs.get(current_index);
 					for(int i_attr = 0; i_attr < current_lr_attr_ids.size(); i_attr++){
-						double current_x = Double.parseDouble(data[ainfo.idToCol(current_lr_attr_ids.get(i_attr))]);
+						double current_x = data.getDoubleStrict(ainfo.idToCol(current_lr_attr_ids.get(i_attr)));
 						double current_feature_min = current_lr_coefs.get(i_attr).get(polyDegree);
 						double current_feature_max = current_lr_coefs.get(i_attr).get(polyDegree + 1);
 						if(current_x < current_feature_min){
@@ -887,10 +980,55 @@ public class FirTree {
 		return currentIndex;
 	}
 	
+	/**
+	 * Decides which leaf node a row falls in. Only the split columns
+	 * are parsed.
+	 *
+	 * @param data the fields of the row.
+	 * @return the index of the leaf node.
+	 */
+	public int indexLeaf(Row data) {
+		if (data.size() != ainfo.getColN()) {
+			System.err.println("FirTree.indexLeaf: The number of columns in the data does not match the number of attributes in the file");
+			System.exit(1);
+		}
+		
+		int currentIndex = 0;
+		String nextNode = new String();
+
+		while(true){
+			String currentNode = node_name.get(currentIndex);
+			NodeType currentType = node_type.get(currentIndex);
+
+			if(currentType == NodeType.SPLIT) {
+				// Find which of the current node's children (L or R) the instance falls in
+				int currentCol = ainfo.idToCol(split_attr_id.get(currentIndex));
+				double currentVal = data.getDoubleStrict(currentCol);
+				double currentSplit = split_val.get(currentIndex);
+				if(currentVal <= currentSplit) {
+					nextNode = currentNode + "_L";
+				} else {
+					nextNode = currentNode + "_R";
+				}
+				int nextIndex = nodeIndexes.get(nextNode);
+				currentIndex = nextIndex;
+			} else {
+				// Fall in a leaf node of type MODEL or CONST
+				break;
+			}
+		}
+		
+		return currentIndex;
+	}
+	
 	// XW
 	public String getNodeName(int nodeIndex) {
 		return node_name.get(nodeIndex);
 	}
+
+	public int getNumNodes() {
+		return nodeN;
+	}
 	
 	// XW
 	public List<IntPair> getParamIdPairs() {
@@ -957,6 +1095,17 @@ public class FirTree {
 		}
 	}
 	
+	// Sets a parameter to a value, so that a saved value is restored exactly
+	public void assignParamValue(int activeNode, int activeParam, double value) {
+		if (activeParam == INTERCEPT) {
+			intercept_val[activeNode] = value;
+		} else {
+			int attIndex = getAttIndex(activeNode, activeParam);
+			int polyIndex = getPolyIndex(activeNode, activeParam);
+			lr_coefs.get(activeNode).get(attIndex).set(polyIndex, value);
+		}
+	}
+	
 	// XW
 	public String getParamName(int activeNode, int activeParam) {
 		if (activeParam == INTERCEPT) {
@@ -1071,6 +1220,15 @@ public class FirTree {
 	}
 	
 	Map<Integer, Set<Integer>> attIdToValSet = new HashMap<>();
+	public void addAttIdToValSet(List<Integer> attIdList, Row data) {
+		for (Integer attId : attIdList) {
+			if (! attIdToValSet.containsKey(attId)) {
+				attIdToValSet.put(attId, new HashSet<>());
+			}
+			attIdToValSet.get(attId).add(Integer.parseInt(data.getString(ainfo.idToCol(attId))));
+		}
+	}
+
 	public void addAttIdToValSet(List<Integer> attIdList, String[] data) {
 		for (Integer attId : attIdList) {
 			if (! attIdToValSet.containsKey(attId)) {
@@ -1121,6 +1279,14 @@ public class FirTree {
 				polyIndex, lr_coefs.get(activeNode).get(activeAtt).get(polyIndex) + maxDelta);
 	}
 	
+	public void assignMinValue(int activeNode, int activeAtt, double value) {
+		lr_coefs.get(activeNode).get(activeAtt).set(polyDegree, value);
+	}
+	
+	public void assignMaxValue(int activeNode, int activeAtt, double value) {
+		lr_coefs.get(activeNode).get(activeAtt).set(polyDegree + 1, value);
+	}
+	
 	public int getMinIndex(int nodeIndex, int attIndex) {
 		double min = getMinValue(nodeIndex, attIndex);
 		int attId = lr_attr_ids.get(nodeIndex).get(attIndex);
@@ -7,13 +7,14 @@ import java.util.concurrent.TimeUnit;
 
 import firtree.metric.MetricScorer;
 import firtree.utilities.RankList;
+import mltk.core.BinStats;
 import mltk.core.Instance;
 import mltk.core.Instances;
-import mltk.core.Pointer;
 import mltk.core.Pointers;
 import mltk.predictor.evaluation.Metric;
 import mltk.predictor.gam.GAM;
 import mltk.predictor.gam.GAMLearner;
+import mltk.util.Random;
 
 public class GAMLearningTask implements Callable<GAMLearningResult> {
 	
@@ -22,6 +23,7 @@ public class GAMLearningTask implements Callable<GAMLearningResult> {
 	String tmpDir;
 	Instances trainSet;
 	Instances validSet;
+	BinStats parentStats;
 	GAMLearner learner;
 	Metric metric;
 	MetricScorer scorer;
@@ -29,6 +31,9 @@ public class GAMLearningTask implements Callable<GAMLearningResult> {
 	String featureName;
 	FeatureSplit split;
 	double splitPoint;
+	SplitSweep sweep;
+	int splitIndex;
+	Random random;
 	
 	// Returned results
 	double parentScore;
@@ -39,18 +44,22 @@ public class GAMLearningTask implements Callable<GAMLearningResult> {
 			String tmpDir, 
 			Instances trainSet, 
 			Instances validSet, 
+			BinStats parentStats, 
 			GAMLearner learner, 
 			Metric metric,
-			MetricScorer scorer
+			MetricScorer scorer,
+			Random random
 			) {
 		this.isParent = true;
 		this.app = app;
 		this.tmpDir = tmpDir;
 		this.trainSet = trainSet;
 		this.validSet = validSet;
+		this.parentStats = parentStats;
 		this.learner = learner;
 		this.metric = metric;
 		this.scorer = scorer;
+		this.random = random;
 	}
 	
 	public GAMLearningTask(
@@ -64,7 +73,9 @@ public class GAMLearningTask implements Callable<GAMLearningResult> {
 			int attIndex, 
 			String featureName, 
 			FeatureSplit split, 
-			double splitPoint
+			SplitSweep sweep, 
+			int splitIndex,
+			Random random
 			) {
 		this.isParent = false;
 		this.app = app;
@@ -77,32 +88,43 @@ public class GAMLearningTask implements Callable<GAMLearningResult> {
 		this.attIndex = attIndex;
 		this.featureName = featureName;
 		this.split = split;
-		this.splitPoint = splitPoint;
+		this.sweep = sweep;
+		this.splitIndex = splitIndex;
+		this.splitPoint = sweep.getSplitPoint(splitIndex);
+		this.random = random;
 	}
 	
 	@Override
 	public GAMLearningResult call() throws Exception {
+		Random previous = Random.setCurrent(null);
+		try {
+			return learn();
+		} finally {
+			Random.setCurrent(previous);
+		}
+	}
+	
+	private GAMLearningResult learn() throws Exception {
 		long sleep = 16; 
 		while (true) {
 			try {
+				// A rerun draws the same random numbers as the first run
+				Random.setCurrent(new Random(random.getSeed()));
 				
 				if (isParent) {
 					// Learn a parent GAM
 
 					long start = System.currentTimeMillis();
 					
-					Pointers trainPtr = new Pointers();
-					for (int i = 0; i < trainSet.size(); i ++)
-						trainPtr.add(new Pointer(i));
-					Pointers validPtr = new Pointers();
-					for (int i = 0; i < validSet.size(); i ++)
-						validPtr.add(new Pointer(i));
+					Pointers trainPtr = parentStats.getPointers();
+					Pointers validPtr = Pointers.range(validSet.size());
 					
 					GAM gam;
 					if(app.getRegression()) {
 						gam = learner.buildRegressor(
 								trainSet, 
 								trainPtr,
+								parentStats,
 								validSet,
 								validPtr,
 								InteractionTreeLearnerGAMMC.getMaxNumItersGAM(),
@@ -112,6 +134,7 @@ public class GAMLearningTask implements Callable<GAMLearningResult> {
 						gam = learner.buildClassifier(
 								trainSet, 
 								trainPtr,
+								parentStats,
 								validSet,
 								validPtr,
 								InteractionTreeLearnerGAMMC.getMaxNumItersGAM(),
@@ -121,11 +144,10 @@ public class GAMLearningTask implements Callable<GAMLearningResult> {
 					
 					if (scorer == null) {
 						double[] targetsValid = new double[validSet.size()];
-						double[] predsValid = new double[validSet.size()];
+						double[] predsValid = gam.regress(validSet, null, learner.getValidFeatureIndex());
 						double[] weightsValid = new double[validSet.size()];
 						int vNo = 0;
 						for (Instance instance : validSet) {
-							predsValid[vNo] = gam.regress(instance);
 							targetsValid[vNo] = instance.getTarget();
 							weightsValid[vNo] = instance.getWeight();
 							vNo++;
@@ -180,9 +202,9 @@ public class GAMLearningTask implements Callable<GAMLearningResult> {
 							learner, 
 							metric, 
 							scorer,
-							attIndex, 
 							split, 
-							splitPoint
+							sweep, 
+							splitIndex
 							);
 					long stop = System.currentTimeMillis();
 					long elapse = (stop - start) / (1000 * 60) + 1;
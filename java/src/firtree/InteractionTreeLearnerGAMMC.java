@@ -3,19 +3,26 @@ package firtree;
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 
+import firtree.data.ChunkReader;
+import firtree.data.GroupSampler;
+import firtree.data.NodeData;
+import firtree.data.RowStore;
 import firtree.metric.GAUCScorer;
 import firtree.metric.MetricScorer;
 import firtree.metric.NDCGScorer;
 import firtree.utilities.RankList;
 import mltk.cmdline.Argument;
 import mltk.cmdline.CmdLineParser;
+import mltk.core.BinStats;
+import mltk.core.FeatureIndex;
 import mltk.core.Instance;
 import mltk.core.Instances;
-import mltk.core.Pointer;
 import mltk.core.Pointers;
 import mltk.core.io.*;
 import mltk.predictor.evaluation.AUC;
@@ -41,34 +48,47 @@ public class InteractionTreeLearnerGAMMC {
 		InteractionTreeLearnerGAMMC app;
 		int data_size_min;
 		String prefix;
-		int data_size; 
-		int zero_size;
-		boolean tree_size_limit_reached;
+		NodeData data;
+		Random random;
+		CompletableFuture<Boolean> tree_size_limit_reached;
 		int nThread;
 		InteractionTreeNode node;
+		BlockingQueue<NodeCreationThread> finished;
+		NodeCreationThread left;
+		NodeCreationThread right;
+		boolean processed;
 		
 		NodeCreationThread(
 				Options opts, 
 				InteractionTreeLearnerGAMMC app, 
-				int data_size, 
-				int zero_size, 
+				NodeData data, 
 				String prefix, 
-				boolean tree_size_limit_reached,
-				int nThread
+				Random random,
+				CompletableFuture<Boolean> tree_size_limit_reached,
+				int nThread,
+				BlockingQueue<NodeCreationThread> finished
 				) {
 			this.opts = opts;
 			this.app = app;
-			this.data_size = data_size;
-			this.zero_size = zero_size;
+			this.data = data;
 			this.prefix = prefix;
+			this.random = random;
 			this.tree_size_limit_reached = tree_size_limit_reached;
 			this.nThread = nThread;
+			this.finished = finished;
 			node = null;
 		}
 		
 		public void run() {
+			// Everything random in the node draws from the node's own random object
+			Random.setCurrent(random);
 			try {
-				node = app.createNode(data_size, zero_size, prefix, tree_size_limit_reached, nThread);
+				app.nodeSlots.acquire();
+				try {
+					node = app.createNode(data, prefix, tree_size_limit_reached, nThread);
+				} finally {
+					app.nodeSlots.release();
+				}
 			} catch (Exception e) {
 				e.printStackTrace();
 				try {
@@ -79,6 +99,8 @@ public class InteractionTreeLearnerGAMMC {
 					pw.flush();
 					pw.close();
 				} catch (IOException uncatched) {}
+			} finally {
+				finished.add(this);
 			}
 		}
 	}
@@ -90,7 +112,6 @@ public class InteractionTreeLearnerGAMMC {
 	private static String BT = "";
 	private static String VIS_EFFECT = "";
 	private static String VIS_IPLOT = "";
-	private static String RND = "";
 	private static String tempDir = "";
 	private static String VIS_MV = "";
 	private static String VIS_SPLIT = "";
@@ -122,18 +143,27 @@ public class InteractionTreeLearnerGAMMC {
 
 		@Argument(name = "-n", description = "number of parallel split evaluations (default: #cores)")
 		int nSplitEvaluation = Runtime.getRuntime().availableProcessors();
+
+		@Argument(name = "-w", description = "max number of nodes built at the same time (default: 2)")
+		int nodeWidth = 2;
 		
 		@Argument(name = "-l", description = "min leaf size (default: 70)")
 		int leafSize = 70;
 
 		@Argument(name = "-m", description = "max number of leaves(default: 11)")
 		int maxLeaves = 11;
+
+		@Argument(name = "-sample", description = "(bernoulli|reservoir) - how groups are sampled for train and validation sets (default: bernoulli)")
+		String sampleMode = "bernoulli";
 	}
 	
 	private Options opts;
 	private AttrInfo ainfo;
 	private int group_col;
+	private GroupSampler sampler;
 	private Boolean regression;
+	private TaskScheduler scheduler;
+	private Semaphore nodeSlots;
 	
 	static int maxNumItersGAM = 100;
 	static int maxNumLeavesGAM = 3;
@@ -152,6 +182,14 @@ public class InteractionTreeLearnerGAMMC {
 			}
 		}
 		regression = opts.metricStr.equals("rms");
+		GroupSampler.Mode mode = null;
+		try {
+			mode = GroupSampler.Mode.get(opts.sampleMode);
+		} catch (IllegalArgumentException e) {
+			System.err.println("Error: " + e.getMessage());
+			System.exit(1);
+		}
+		sampler = new GroupSampler(group_col - 1, ainfo.clsAttr.getColumn(), mode);
 	}
 	
 	public static void main(String[] args) throws Exception {
@@ -199,7 +237,6 @@ public class InteractionTreeLearnerGAMMC {
 		BT = opts.prefix + "bt.sh";
 		VIS_EFFECT = opts.prefix + "vis_effect.sh";
 		VIS_IPLOT = opts.prefix + "vis_iplot.sh";
-		RND = opts.prefix + "rnd.sh";
 		VIS_MV = opts.prefix + "vis_mv.sh";
 		VIS_SPLIT = opts.prefix + "vis_split.sh";
 		tempDir = opts.dir + File.separator + "Node";
@@ -210,53 +247,108 @@ public class InteractionTreeLearnerGAMMC {
 		}
  		FileSystem fs = FileSystems.getDefault();
  		String attrDest = tempDir + "_Root" + File.separator + "fir.attr";
- 		String dataDest = tempDir + "_Root" + File.separator + "fir.dta";		
  
 		Files.copy(fs.getPath(opts.attPath), fs.getPath(attrDest), StandardCopyOption.REPLACE_EXISTING);
-		BufferedReader br = new BufferedReader(new FileReader(opts.trainPath), 65535);
-		BufferedWriter data_out = new BufferedWriter(new FileWriter(dataDest));
 
 		long start = System.currentTimeMillis();
 		InteractionTreeLearnerGAMMC app = new InteractionTreeLearnerGAMMC(opts);
 		
 		timeStamp("Initial scan of the data.");
 
-		int data_size = 0;
-		int zero_size = 0;
 		int clsColNo = app.ainfo.getClsCol();
+		int colN = app.ainfo.getColN();
+		boolean regression = app.regression;
+		RowStore store = new RowStore(colN);
+		List<double[]> cls = new ArrayList<>();
+		int[] counts = new int[2]; // lines, zeros
 
- 		for (String line = br.readLine(); line != null; data_size++) {
- 			String[] datapoint = line.split("\t+");
- 			if(datapoint.length != app.ainfo.getColN()) {
-					System.err.println("Error: The number of values in line " + (data_size + 1) + " does not match the number of attributes specified by the attribute file.");
-					System.exit(1);  				
- 			}
- 			try {
- 				double clsValue = Double.parseDouble(datapoint[clsColNo]);
- 				if(clsValue == 0)
- 					zero_size++;
- 				if(!app.regression && ((clsValue < 0) || (clsValue > 1))) {
- 					System.err.println("Error: The response column contains value \"" + datapoint[clsColNo] + "\" in line " + (data_size + 1) + ". Not compatible with the AUC metric.");
- 					System.exit(1); 					
- 				}
-			} catch(java.lang.NumberFormatException e) {
-				System.err.println("Error: The response column contains a text value \"" + datapoint[clsColNo] + "\" in line " + (data_size + 1));
-				System.exit(1);
-			}	
- 			data_out.write(line + "\n");
-			line = br.readLine();
+		// Blocks are read by one thread, validated by all cores and added in file order
+		ChunkReader reader = new ChunkReader(new FileInputStream(opts.trainPath), RowStore.BLOCK_SIZE);
+		reader.process(Runtime.getRuntime().availableProcessors(), 
+				chunk -> new RootChunk(chunk, colN, clsColNo, regression), 
+				(chunk, parsed) -> {
+					if (parsed.error != null) {
+						System.err.println(parsed.error[0] + (counts[0] + parsed.n + 1) + parsed.error[1]);
+						System.exit(1);
+					}
+					store.addBlock(chunk.data, parsed.starts, parsed.n, chunk.length);
+					cls.add(Arrays.copyOf(parsed.cls, parsed.n));
+					counts[0] += parsed.n;
+					counts[1] += parsed.zeros;
+				});
+		reader.close();
+		double[] clsColumn = new double[counts[0]];
+		int offset = 0;
+		for (double[] values : cls) {
+			System.arraycopy(values, 0, clsColumn, offset, values.length);
+			offset += values.length;
 		}
-		br.close();			
-		data_out.flush();
-		data_out.close();
+		store.setColumn(clsColNo, clsColumn);
 
-		app.build(data_size, zero_size);
+		app.build(new NodeData(store, clsColNo, counts[1]));
 		long end = System.currentTimeMillis();
 		
 		System.out.println("Finished building tree in " + (end - start) / 1000.0 + " (s).");
 	}
 	
-	public void printLog(StringBuilder text) throws Exception{
+	/**
+	 * Validated lines of a block of the training set: the start of each line and its response.
+	 * Parsing stops at the first invalid line; the error is kept as the text before and after
+	 * the line number, which is only known when the blocks before are counted.
+	 */
+	private static class RootChunk {
+		int[] starts;
+		double[] cls;
+		int n;
+		int zeros;
+		String[] error;
+
+		RootChunk(ChunkReader.Chunk chunk, int colN, int clsCol, boolean regression) {
+			byte[] data = chunk.data;
+			Tokenizer tokenizer = new Tokenizer(true);
+			starts = new int[1024];
+			cls = new double[1024];
+			for (int pos = 0; pos < chunk.length; ) {
+				int start = pos;
+				int end = start;
+				while (data[end] != '\n') {
+					end++;
+				}
+				pos = end + 1;
+				if (end > start && data[end - 1] == '\r') {
+					end--;
+				}
+				tokenizer.reset(data, start, end);
+				if (tokenizer.size() != colN) {
+					error = new String[] { "Error: The number of values in line ", " does not match the number of attributes specified by the attribute file." };
+					return;
+				}
+				double clsValue;
+				try {
+					clsValue = tokenizer.getDoubleStrict(clsCol);
+				} catch (NumberFormatException e) {
+					error = new String[] { "Error: The response column contains a text value \"" + tokenizer.getString(clsCol) + "\" in line ", "" };
+					return;
+				}
+				if (!regression && ((clsValue < 0) || (clsValue > 1))) {
+					error = new String[] { "Error: The response column contains value \"" + tokenizer.getString(clsCol) + "\" in line ", ". Not compatible with the AUC metric." };
+					return;
+				}
+				if (n == starts.length) {
+					starts = Arrays.copyOf(starts, n * 2);
+					cls = Arrays.copyOf(cls, n * 2);
+				}
+				starts[n] = start;
+				cls[n] = clsValue;
+				if (clsValue == 0) {
+					zeros++;
+				}
+				n++;
+			}
+		}
+	}
+
+	public synchronized void printLog(StringBuilder text) throws Exception{
 		System.out.println(text);
 		PrintWriter log = new PrintWriter(new BufferedWriter(new FileWriter(opts.dir + "/treelog.txt", true)));
 		log.println(text);
@@ -264,94 +356,124 @@ public class InteractionTreeLearnerGAMMC {
 		log.close();
 	}
 
-	public void build(int data_size, int zero_size) throws Exception {
+	/**
+	 * Builds the tree. A node starts as soon as its parent is split, so nodes of different
+	 * levels are built at the same time. The leaf-count limit of a node depends on the nodes
+	 * before it in breadth-first order; it is resolved in that order, which keeps the tree
+	 * the same as when the nodes are built one level at a time.
+	 */
+	public void build(NodeData rootData) throws Exception {
 		int nProcessor = Runtime.getRuntime().availableProcessors();
-		Map<InteractionTreeNode, String> prefix = new HashMap<>();
+		int nThread = Math.max(1, nProcessor / opts.nodeWidth);
+		scheduler = new TaskScheduler(opts.nSplitEvaluation);
+		nodeSlots = new Semaphore(opts.nodeWidth, true);
+		BlockingQueue<NodeCreationThread> finished = new LinkedBlockingQueue<>();
+		
 		int leafN = 1;
-		InteractionTreeNode root = createNode(
-					data_size, 
-					zero_size, 
+		NodeCreationThread root = new NodeCreationThread(
+					opts, 
+					this, 
+					rootData, 
 					"Root", 
-					leafN >= opts.maxLeaves,
-					nProcessor
+					Random.getGlobalInstance().derive(0),
+					CompletableFuture.completedFuture(leafN >= opts.maxLeaves),
+					nProcessor,
+					finished
 					);
-		prefix.put(root, "Root");
-		Queue<InteractionTreeNode> q = new Queue<>(); //queue of internal nodes
-		if(!root.isLeaf()) {			
-			q.enqueue(root);
-			leafN++;
-		}
+		// Nodes in breadth-first order; the first "resolved" of them are finished
+		List<NodeCreationThread> nodes = new ArrayList<>();
+		nodes.add(root);
+		int resolved = 0;
+		Queue<NodeCreationThread> q = new Queue<>(); //queue of resolved internal nodes
+		root.start();
+		int running = 1;
 		
-		// q.dequeue(); // TODO: Only create the root node
-		
-		while (!q.isEmpty()) {
-			InteractionTreeNode node = q.dequeue();
-			
-			String pre = prefix.get(node);
-			InteractionTreeInteriorNode interiorNode = 
-					(InteractionTreeInteriorNode) node;
-			String dirStr_cur = tempDir + "_" + pre;
-			String dirStr_L = tempDir + "_" + pre + "_L";
-			String dirStr_R = tempDir + "_" + pre + "_R";
-			
-			File left_dir = new File(dirStr_L);
-			if (!left_dir.exists()) {
-				left_dir.mkdir();
+		while (running > 0) {
+			NodeCreationThread done = finished.take();
+			running--;
+			if (done.node == null) {
+				throw new IllegalStateException("Failed to create node " + done.prefix);
 			}
-			File right_dir = new File(dirStr_R);
-			if (!right_dir.exists()) {
-				right_dir.mkdir();
+			if (!done.node.isLeaf()) {
+				String pre = done.prefix;
+				InteractionTreeInteriorNode interiorNode = 
+						(InteractionTreeInteriorNode) done.node;
+				String dirStr_cur = tempDir + "_" + pre;
+				String dirStr_L = tempDir + "_" + pre + "_L";
+				String dirStr_R = tempDir + "_" + pre + "_R";
+				
+				File left_dir = new File(dirStr_L);
+				if (!left_dir.exists()) {
+					left_dir.mkdir();
+				}
+				File right_dir = new File(dirStr_R);
+				if (!right_dir.exists()) {
+					right_dir.mkdir();
+				}
+		 		String attrSrc = tempDir + "_Root" + File.separator + "fir.attr";
+		 		String attrDestL = dirStr_L + File.separator + "fir.attr";
+		 		String attrDestR = dirStr_R + File.separator + "fir.attr";
+		 		FileSystem fs = FileSystems.getDefault();
+				Files.copy(fs.getPath(attrSrc), fs.getPath(attrDestL), StandardCopyOption.REPLACE_EXISTING);				
+				Files.copy(fs.getPath(attrSrc), fs.getPath(attrDestR), StandardCopyOption.REPLACE_EXISTING);				
+				
+				Pair<NodeData, NodeData> children = done.data.split(
+						ainfo.attributes.get(interiorNode.attIndex).getColumn(), interiorNode.splitPoint);
+				
+				//delete the data from the internal node
+				File data = new File(dirStr_cur + File.separator + "fir.dta");
+				data.delete();
+		
+				// The limits are completed once all the nodes before them are resolved.
+				// Children take negative keys, as the split evaluation tasks of a node take 0, 1, ...
+				done.left = new NodeCreationThread(
+						opts, 
+						this, 
+						children.v1, 
+						pre + "_L", 
+						done.random.derive(-1),
+						new CompletableFuture<>(),
+						nThread,
+						finished
+						);
+				done.right = new NodeCreationThread(
+						opts, 
+						this, 
+						children.v2, 
+						pre + "_R", 
+						done.random.derive(-2),
+						new CompletableFuture<>(),
+						nThread,
+						finished
+						);
+				done.left.start();
+				done.right.start();
+				running += 2;
 			}
-	 		String attrSrc = tempDir + "_Root" + File.separator + "fir.attr";
-	 		String attrDestL = dirStr_L + File.separator + "fir.attr";
-	 		String attrDestR = dirStr_R + File.separator + "fir.attr";
-	 		FileSystem fs = FileSystems.getDefault();
-			Files.copy(fs.getPath(attrSrc), fs.getPath(attrDestL), StandardCopyOption.REPLACE_EXISTING);				
-			Files.copy(fs.getPath(attrSrc), fs.getPath(attrDestR), StandardCopyOption.REPLACE_EXISTING);				
-			
-			String fileName = File.separator + "fir.dta";
-			String dataStr = dirStr_cur + fileName;
-			String dataStrL = dirStr_L + fileName;
-			String dataStrR = dirStr_R + fileName;
-			
-			DataSizes sizes = split(ainfo.attributes.get(interiorNode.attIndex).getColumn(), 
-					interiorNode.splitPoint, dataStr, dataStrL, dataStrR);
-	
-			NodeCreationThread lThread = new NodeCreationThread(
-					opts, 
-					this, 
-					sizes.left_size, 
-					sizes.left_zero_size, 
-					pre + "_L", 
-					leafN >= opts.maxLeaves,
-					nProcessor / 2
-					);
-			NodeCreationThread rThread = new NodeCreationThread(
-					opts, 
-					this, 
-					sizes.right_size, 
-					sizes.right_zero_size, 
-					pre + "_R", 
-					leafN >= opts.maxLeaves,
-					nProcessor / 2
-					);
-			lThread.start();
-			rThread.start();
-			lThread.join();
-			rThread.join();
-			
-			prefix.put(lThread.node, pre + "_L");
-			prefix.put(rThread.node, pre + "_R");
+			done.data = null;
+			done.processed = true;
 			
-			if (!lThread.node.isLeaf()) {
-				q.enqueue(lThread.node);
-				leafN++;
-			}
-			if (!rThread.node.isLeaf()) {
-				q.enqueue(rThread.node);
-				leafN++;
+			for (;;) {
+				while (resolved < nodes.size() && nodes.get(resolved).processed) {
+					NodeCreationThread node = nodes.get(resolved++);
+					if (!node.node.isLeaf()) {
+						q.enqueue(node);
+						leafN++;
+					}
+				}
+				if (resolved < nodes.size() || q.isEmpty()) {
+					break;
+				}
+				NodeCreationThread node = q.dequeue();
+				node.left.tree_size_limit_reached.complete(leafN >= opts.maxLeaves);
+				node.right.tree_size_limit_reached.complete(leafN >= opts.maxLeaves);
+				nodes.add(node.left);
+				nodes.add(node.right);
 			}
-		}			
+		}
+		
+		scheduler.shutdown();
+		timeStamp(scheduler.report());
 	}
 	
 	protected static void split(
@@ -361,15 +483,10 @@ public class InteractionTreeLearnerGAMMC {
 			Pointers left, 
 			Pointers right
 			) {
-		for (int i = 0; i < instances.size(); i ++) {
-			Instance instance = instances.get(i);
-			if ((instance.getValue(attIndex) <= splitPoint) || 
-					Double.isNaN(splitPoint) && Double.isNaN(instance.getValue(attIndex))) {
-				left.add(new Pointer(i));
-			} else {
-				right.add(new Pointer(i));
-			}
-		}
+		Pointers.range(instances.size()).partition(i -> {
+			double value = instances.get(i).getValue(attIndex);
+			return (value <= splitPoint) || Double.isNaN(splitPoint) && Double.isNaN(value);
+		}, left, right);
 	}
 	
 	protected static void split(Instances instances, int attIndex, double splitPoint, 
@@ -384,56 +501,12 @@ public class InteractionTreeLearnerGAMMC {
 		}
 	}
 	
-	protected DataSizes split(int splitCol, double splitPoint, 
-			String dataFile, String outLeftFile, String outRightFile) throws IOException {
-		
-		BufferedReader br = new BufferedReader(new FileReader(dataFile), 65535);
-		BufferedWriter outLeft = new BufferedWriter(new FileWriter(outLeftFile));
-		BufferedWriter outRight = new BufferedWriter(new FileWriter(outRightFile));
-		DataSizes sizes = new DataSizes(0,0,0,0);
-		int clsCol = ainfo.getClsCol();
-			
-		String line = br.readLine();
-		while (line != null) {
-			String[] data = line.split("\t+");
-			line += "\n";
-			double value = data[splitCol].equals("?") ?
-							Double.NaN :
-							Double.parseDouble(data[splitCol]);
-			double clsValue = Double.parseDouble(data[clsCol]);
-			if ((value <= splitPoint) || Double.isNaN(splitPoint) && Double.isNaN(value)) {
-				outLeft.write(line);
-				sizes.left_size++;
-				if(clsValue == 0)
-					sizes.left_zero_size++;
-			} else {
-				outRight.write(line);
-				sizes.right_size++;
-				if(clsValue == 0)
-					sizes.right_zero_size++;
-			}
-			line = br.readLine();
-		}
-
-		br.close();			
-		outLeft.flush();
-		outLeft.close();
-		outRight.flush();
-		outRight.close();
-		
-		//delete the data from the internal node
-		File data = new File(dataFile);
-		data.delete();
-		
-		return sizes;
-	}
-	
 	protected static void timeStamp(String msg){
 		Date tmpDate = new Date();
 		System.out.println("TIMESTAMP >>>> ".concat(tmpDate.toString()).concat(": ").concat(msg));
 	}
 
-	private void subsample(int data_size, int zero_size, double train_coef, int train_abs, int valid_abs, File dir, String dtaAG, int tar_col, int seed) throws Exception	{
+	private GroupSampler.Spec subsample(int data_size, int zero_size, double train_coef, int train_abs, int valid_abs, int seed) {
 		
 		if (zero_size <= data_size / 2)
 		{
@@ -442,8 +515,7 @@ public class InteractionTreeLearnerGAMMC {
 			
 			double portion_train = (double) train_size / data_size;
 			double portion_valid = (double) valid_size /  data_size;
-			runProcess(dir, RND, "--input " + dtaAG + " --stem fir --group-method 1 --group " + group_col + 
-							" --valid " + portion_valid + " --train " + portion_train + " --rand " + seed);
+			return new GroupSampler.Spec(portion_train, portion_valid, seed);
 		} else 
 		{			
 			int nonzero_size = data_size - zero_size;			
@@ -457,20 +529,24 @@ public class InteractionTreeLearnerGAMMC {
 			double portion_zero_valid = zero_valid_size / (double) zero_size;
 			double portion_nonzero_valid = nonzero_valid_size / (double) nonzero_size;
 			
-			runProcess(dir, RND, "--input " + dtaAG + " --stem fir --group-method 1 --group " + group_col + " --target " + tar_col +
-					" --valid " + portion_nonzero_valid + " --train " + portion_nonzero_train + 
-					" --valid-zero " + portion_zero_valid + " --train-zero " + portion_zero_train + " --rand " + seed);		
+			return new GroupSampler.Spec(portion_nonzero_train, portion_nonzero_valid, 
+					portion_zero_train, portion_zero_valid, seed);
 		}	
 	}
 	
 	protected InteractionTreeNode createNode(
-				int data_size, 
-				int zero_size, 
+				NodeData nodeData, 
 				String prefix, 
-				boolean tree_size_limit_reached,
+				Future<Boolean> tree_size_limit_reached,
 				int nThread
 				)
 			throws Exception {
+		int data_size = nodeData.size();
+		int zero_size = nodeData.zeroSize();
+		String tmpDir = tempDir + "_" + prefix;
+		String dtaAG = tmpDir + File.separator + "fir.dta";
+		nodeData.write(dtaAG);
+
 		StringBuilder sb = new StringBuilder();
 		sb.append(prefix + "\n");
 		if (data_size < opts.leafSize) {
@@ -479,48 +555,39 @@ public class InteractionTreeLearnerGAMMC {
 			return new InteractionTreeLeaf();
 		}
 
-		String tmpDir = tempDir + "_" + prefix;
 		File dir = new File(tmpDir);
 		String attr = tmpDir + File.separator + "fir.attr";
 		String attrfs12 = tmpDir + File.separator + "fir.fs.attr";
 		String attrfsfs = tmpDir + File.separator + "fir.fs.fs.attr";
-		String dtaAG = tmpDir + File.separator + "fir.dta";
 		String trainAG = tmpDir + File.separator + "fir.train.ag";
 		String validAG = tmpDir + File.separator + "fir.valid.ag";
 		String train = tmpDir + File.separator + "fir.train.dta";
 		String valid = tmpDir + File.separator + "fir.valid.dta";
 		String core = tmpDir + File.separator + "core_features.txt";
-		int tar_col = ainfo.clsAttr.getColumn() + 1;		
 
  		FileSystem fs = FileSystems.getDefault();
 
-		// 1. Create datasets
-		// 1.1. Create datasets for ag
- 		
- 		timeStamp("Prepare train and test data for AG.");
-		subsample(data_size, zero_size, 1.0/3.0, 30000, 500000, dir, dtaAG, tar_col, 1); 
-		
-		Files.move(fs.getPath(train), fs.getPath(trainAG), StandardCopyOption.REPLACE_EXISTING); 
-		Files.move(fs.getPath(valid), fs.getPath(validAG), StandardCopyOption.REPLACE_EXISTING); 
+		// 1. Create datasets for ag, bt and gam in one pass over the node
+ 		timeStamp("Prepare train and test data for AG, BT and GAM.");
+		List<Pair<NodeData, NodeData>> samples = sampler.sample(nodeData, 
+				subsample(data_size, zero_size, 1.0/3.0, 30000, 500000, 1), 
+				subsample(data_size, zero_size, 2.0/3.0, 200000, 500000, 2));
+		Pair<NodeData, NodeData> agSample = samples.get(0);
+		Pair<NodeData, NodeData> gamSample = samples.get(1);
 
-		Instances agTrain = InstancesReader.read(ainfo, trainAG, "\t+", true);
-		boolean allSame = true;
-		for (int i = 1; i < agTrain.size(); i++) {
-			Instance instance = agTrain.get(i);
-			if (instance.getTarget() != agTrain.get(0).getTarget()) {
-				allSame = false;
-					break;
-			}
-		}
-		if (allSame) {
+		// 1.1. Datasets for ag
+		if (agSample.v1.isPure()) {
 			sb.append("Constant leaf. All data points have the same label.\n");
 			printLog(sb);
 			return new InteractionTreeLeaf();
 		}
 
-		// 1.2 Create datasets for bt and gam 
-		timeStamp("Prepare train and test data for BT and GAM.");
-		subsample(data_size, zero_size, 2.0/3.0, 200000, 500000, dir, dtaAG, tar_col, 2); 
+		agSample.v1.write(trainAG);
+		agSample.v2.write(validAG);
+
+		// 1.2 Datasets for bt and gam 
+		gamSample.v1.write(train);
+		gamSample.v2.write(valid);
 		
 		// 2. Fast feature selection
 		timeStamp("Select 12 features and add up to 4 split features for AG.");
@@ -575,7 +642,7 @@ public class InteractionTreeLearnerGAMMC {
 
 		// TODO: No need to run ag_interactions in fast_interactions
 		//3a. If number of leaves or height limit reached, stop here.
-		if (tree_size_limit_reached)
+		if (awaitLimit(tree_size_limit_reached))
 		{
 			visAllEffectPlots(
 					tmpDir, 
@@ -613,8 +680,8 @@ public class InteractionTreeLearnerGAMMC {
 		// TODO: Train parent GAM and child GAMs in parallel
 		// 5. Build a GAM for parent
 		// 5. Prepare train set and valid set for GAM
- 		Instances trainSet = InstancesReader.read(ainfo, train, "\t+", true);
-		Instances validSet = InstancesReader.read(ainfo, valid, "\t+", true);
+ 		Instances trainSet = gamSample.v1.toInstances(ainfo);
+		Instances validSet = gamSample.v2.toInstances(ainfo);
 
 		//timeStamp("Build a GAM for the parent node.");
 		
@@ -631,6 +698,9 @@ public class InteractionTreeLearnerGAMMC {
 			scorer = new GAUCScorer();
 		if (opts.metricEval.equals("ndcg"))
 			scorer = new NDCGScorer(10);
+		if (scorer != null) {
+			checkGroups(validSet, prefix);
+		}
 		
 		learner.setMetric(metric);
 		learner.setLearningRate(0.01);
@@ -645,6 +715,10 @@ public class InteractionTreeLearnerGAMMC {
 			for(int a = 0; a < attrN; a++)
 				if(Double.isNaN(instance.getValue(a)))
 					instance.setValue(a, 0);	
+		FeatureIndex featureIndex = new FeatureIndex(trainSet);
+		learner.setFeatureIndex(featureIndex);
+		learner.setValidFeatureIndex(new FeatureIndex(validSet));
+		BinStats parentStats = BinStats.compute(featureIndex, Pointers.range(trainSet.size()));
 
 		//6. Plots
 		timeStamp("Visualization.");
@@ -668,8 +742,10 @@ public class InteractionTreeLearnerGAMMC {
 		double bestSplit = -1;
 		double bestScore = metric.worstValue();
 		
-		List<Future<GAMLearningResult>> results = new ArrayList<>();
-		ExecutorService executor = Executors.newFixedThreadPool(opts.nSplitEvaluation);
+		TaskScheduler.Phase<GAMLearningResult> phase = scheduler.newPhase(prefix + " split evaluation");
+		Map<Future<GAMLearningResult>, Integer> order = new HashMap<>();
+		// Every task draws from its own random object, derived from the node's by the submission order
+		Random random = Random.getInstance();
 		// Parent GAM
 		timeStamp("Training parent is added to thread pool");
 		{
@@ -678,12 +754,13 @@ public class InteractionTreeLearnerGAMMC {
 					tmpDir, 
 					trainSet, 
 					validSet, 
+					parentStats, 
 					learner, 
 					metric,
-					scorer
+					scorer,
+					random.derive(order.size())
 					);
-			Future<GAMLearningResult> result = executor.submit(task);
-			results.add(result);
+			order.put(phase.submit(task), order.size());
 		}
 		// Child GAMs
 		for (int i = 0; i < candidateFeatures.size(); i++) {
@@ -691,7 +768,12 @@ public class InteractionTreeLearnerGAMMC {
 			int attIndex = ainfo.nameToId.get(featureName);
 			FeatureSplit split = new FeatureSplit(candidateFeatures.get(i));		
 			for (int j = 0; j < split.splits.length; j++) {
-				double splitPoint = (split.feature.centers[j] + split.feature.centers[j + 1]) / 2;
+				split.splits[j] = (split.feature.centers[j] + split.feature.centers[j + 1]) / 2;
+			}
+			// All split points of the feature share one sweep
+			SplitSweep sweep = new SplitSweep(trainSet, validSet, parentStats, attIndex, split.splits);
+			for (int j = 0; j < split.splits.length; j++) {
+				double splitPoint = split.splits[j];
 				timeStamp("Evaluating feature " + featureName + " split " + splitPoint + " is added to thread pool");
 				GAMLearningTask task = new GAMLearningTask(
 						this, 
@@ -704,29 +786,36 @@ public class InteractionTreeLearnerGAMMC {
 						attIndex, 
 						featureName, 
 						split, 
-						splitPoint
+						sweep, 
+						j,
+						random.derive(order.size())
 						);
-				Future<GAMLearningResult> future = executor.submit(task);
-				results.add(future);
+				order.put(phase.submit(task), order.size());
 			}
 		}
-		executor.shutdown();
-		while (! executor.isTerminated());
 		
+		// Results arrive in completion order; ties go to the split submitted first
 		double parentScore = Double.NaN;
-		for (Future<GAMLearningResult> result : results) {
-			if (result.get().isParent) {
-				parentScore = result.get().parentScore;
+		int bestOrder = -1;
+		while (phase.hasPending()) {
+			Future<GAMLearningResult> future = phase.take();
+			GAMLearningResult result = future.get();
+			if (result.isParent) {
+				parentScore = result.parentScore;
 			} else {
 				timeStamp(String.format("Evaluating feature %s split %f is terminated with score %f", 
-						ainfo.idToName(result.get().attIndex), result.get().splitPoint, result.get().splitScore));
-				if (metric.isFirstBetter(result.get().splitScore, bestScore)) {
-					bestAtt = result.get().attIndex;
-					bestSplit = result.get().splitPoint;
-					bestScore = result.get().splitScore;
+						ainfo.idToName(result.attIndex), result.splitPoint, result.splitScore));
+				int resultOrder = order.get(future);
+				if (metric.isFirstBetter(result.splitScore, bestScore) || 
+						(result.splitScore == bestScore && resultOrder < bestOrder)) {
+					bestAtt = result.attIndex;
+					bestSplit = result.splitPoint;
+					bestScore = result.splitScore;
+					bestOrder = resultOrder;
 				}
 			}
 		}
+		timeStamp(phase.report());
 		if (scorer == null) {
 			sb.append("Parent " + metric.toString() + ": " + parentScore + "\n");
 		} else {
@@ -798,6 +887,40 @@ public class InteractionTreeLearnerGAMMC {
 		}		
 	}
 	
+	/**
+	 * Checks that the rows of a validation set carry their group ids, which the group-wise
+	 * scorers rank by. A set with a single group degenerates to a global ranking.
+	 */
+	private void checkGroups(Instances validSet, String prefix) {
+		Set<String> groups = new HashSet<>();
+		for (Instance instance : validSet) {
+			if (instance.getGroupId() == null) {
+				System.err.println("Error: The validation set of node " + prefix + " has rows without a group id. Set the group attribute with -g.");
+				System.exit(1);
+			}
+			groups.add(instance.getGroupId());
+		}
+		if (groups.size() < 2 && validSet.size() > 1) {
+			timeStamp("Warning: The validation set of node " + prefix + " has " + groups.size() + " group(s); " + opts.metricEval + " is computed over a single ranking.");
+		}
+	}
+
+	/**
+	 * Waits for the leaf-count limit of a node. The node gives up its slot while waiting,
+	 * so that the nodes the limit depends on can proceed.
+	 */
+	private boolean awaitLimit(Future<Boolean> tree_size_limit_reached) throws Exception {
+		if (!tree_size_limit_reached.isDone()) {
+			nodeSlots.release();
+			try {
+				tree_size_limit_reached.get();
+			} finally {
+				nodeSlots.acquire();
+			}
+		}
+		return tree_size_limit_reached.get();
+	}
+	
 	private void visAllEffectPlots(
 			String tmpDir, 
 			File dir, 
@@ -824,20 +947,19 @@ public class InteractionTreeLearnerGAMMC {
 			GAMLearner learner, 
 			Metric metric, 
 			MetricScorer scorer,
-			int attIndex, 
 			FeatureSplit split, 
-			double splitPoint
+			SplitSweep sweep, 
+			int splitIndex
 			) throws OutOfMemoryError {
 		PrintWriter out;
+		double splitPoint = sweep.getSplitPoint(splitIndex);
 
 		// 8.1 Split the dataset
-		Pointers trainLeft = new Pointers();
-		Pointers trainRight = new Pointers();
-		split(trainSet, attIndex, splitPoint, trainLeft, trainRight);
-
-		Pointers validLeft = new Pointers();
-		Pointers validRight = new Pointers();
-		split(validSet, attIndex, splitPoint, validLeft, validRight);
+		SplitSweep.Split children = sweep.getSplit(splitIndex);
+		Pointers trainLeft = children.trainLeft;
+		Pointers trainRight = children.trainRight;
+		Pointers validLeft = children.validLeft;
+		Pointers validRight = children.validRight;
 
 		//8.2.1 Build GAM models
 		GAM gamL;
@@ -845,6 +967,7 @@ public class InteractionTreeLearnerGAMMC {
 			gamL = learner.buildRegressor(
 					trainSet, 
 					trainLeft, 
+					children.leftStats, 
 					validSet, 
 					validLeft, 
 					maxNumItersGAM, 
@@ -854,6 +977,7 @@ public class InteractionTreeLearnerGAMMC {
 			gamL = learner.buildClassifier(
 					trainSet, 
 					trainLeft, 
+					children.leftStats, 
 					validSet, 
 					validLeft, 
 					maxNumItersGAM, 
@@ -866,6 +990,7 @@ public class InteractionTreeLearnerGAMMC {
 			gamR = learner.buildRegressor(
 					trainSet, 
 					trainRight, 
+					children.rightStats, 
 					validSet, 
 					validRight, 
 					maxNumItersGAM, 
@@ -875,6 +1000,7 @@ public class InteractionTreeLearnerGAMMC {
 			gamR = learner.buildClassifier(
 					trainSet, 
 					trainRight, 
+					children.rightStats, 
 					validSet, 
 					validRight, 
 					maxNumItersGAM, 
@@ -883,6 +1009,8 @@ public class InteractionTreeLearnerGAMMC {
 		}
 		
 		double splitScore = Double.NaN;
+		double[] predsL = gamL.regress(validSet, validLeft, learner.getValidFeatureIndex());
+		double[] predsR = gamR.regress(validSet, validRight, learner.getValidFeatureIndex());
 		if (scorer == null) {
 			int vNo = 0;
 			int actual_valid_size = validLeft.size() + validRight.size();
@@ -890,17 +1018,17 @@ public class InteractionTreeLearnerGAMMC {
 			double[] preds = new double[actual_valid_size];
 			double[] weights = new double[actual_valid_size];
 		
-			for (Pointer pointer : validLeft) {
-				Instance instance = validSet.get(pointer.getIndex());
+			for (int i = 0; i < validLeft.size(); i++) {
+				Instance instance = validSet.get(validLeft.getIndex(i));
 				targets[vNo] = instance.getTarget();
-				preds[vNo] = gamL.regress(instance);
+				preds[vNo] = predsL[i];
 				weights[vNo] = instance.getWeight();
 				vNo++;
 			}
-			for (Pointer pointer : validRight) {
-				Instance instance = validSet.get(pointer.getIndex());
+			for (int i = 0; i < validRight.size(); i++) {
+				Instance instance = validSet.get(validRight.getIndex(i));
 				targets[vNo] = instance.getTarget();
-				preds[vNo] = gamR.regress(instance);
+				preds[vNo] = predsR[i];
 				weights[vNo] = instance.getWeight();
 				vNo++;
 			}
@@ -909,25 +1037,25 @@ public class InteractionTreeLearnerGAMMC {
 		} else {
 			Map<String, RankList> rankLists = new HashMap<String, RankList>();
 			
-			for (Pointer pointer : validLeft) {
-				Instance allIns = validSet.get(pointer.getIndex());
+			for (int i = 0; i < validLeft.size(); i++) {
+				Instance allIns = validSet.get(validLeft.getIndex(i));
 				String groupId = allIns.getGroupId();
 				if (! rankLists.containsKey(groupId)) {
 					rankLists.put(groupId, new RankList(groupId));
 				}
 				firtree.utilities.Instance subIns = new firtree.utilities.Instance(allIns.getTarget());
-				subIns.setPrediction(gamL.regress(allIns));
+				subIns.setPrediction(predsL[i]);
 				subIns.setWeight(allIns.getWeight());
 				rankLists.get(groupId).add(subIns);
 			}
-			for (Pointer pointer : validRight) {
-				Instance allIns = validSet.get(pointer.getIndex());
+			for (int i = 0; i < validRight.size(); i++) {
+				Instance allIns = validSet.get(validRight.getIndex(i));
 				String groupId = allIns.getGroupId();
 				if (! rankLists.containsKey(groupId)) {
 					rankLists.put(groupId, new RankList(groupId));
 				}
 				firtree.utilities.Instance subIns = new firtree.utilities.Instance(allIns.getTarget());
-				subIns.setPrediction(gamR.regress(allIns));
+				subIns.setPrediction(predsR[i]);
 				subIns.setWeight(allIns.getWeight());
 				rankLists.get(groupId).add(subIns);
 			}
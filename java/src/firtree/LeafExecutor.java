@@ -0,0 +1,188 @@
+package firtree;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import mltk.core.io.ColumnarData;
+
+/**
+ * Class for training the leaves of a FirTree in parallel under a memory budget. Every
+ * leaf declares an estimate of the memory its training needs; a leaf starts only when
+ * its estimate fits into what the running leaves left of the budget, so that large
+ * leaves do not run out of memory together. A leaf larger than the whole budget runs
+ * alone. Leaves are started largest first, so that the run is not bound by a large
+ * leaf started last.
+ *
+ */
+public class LeafExecutor {
+
+	/**
+	 * Interface for the training of a leaf.
+	 */
+	public interface Job {
+
+		void run() throws Exception;
+
+	}
+
+	private static class Entry {
+
+		String leaf;
+		long bytes;
+		Job job;
+
+		Entry(String leaf, long bytes, Job job) {
+			this.leaf = leaf;
+			this.bytes = bytes;
+			this.job = job;
+		}
+
+	}
+
+	// Budget in units of 1 MB, as permits of a semaphore
+	private static final int UNIT = 1 << 20;
+
+	private int threadN;
+	private int budget;
+	private List<Entry> entries;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param threadN the max number of leaves trained at the same time.
+	 * @param budgetMB the memory budget in MB for the leaves trained at the same time.
+	 */
+	public LeafExecutor(int threadN, int budgetMB) {
+		this.threadN = Math.max(1, threadN);
+		this.budget = Math.max(1, budgetMB);
+		this.entries = new ArrayList<>();
+	}
+
+	/**
+	 * Returns the default memory budget in MB: 80% of the max heap size.
+	 *
+	 * @return the default memory budget in MB.
+	 */
+	public static int getDefaultBudgetMB() {
+		return (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 5 * 4 / UNIT);
+	}
+
+	/**
+	 * Adds the training of a leaf.
+	 *
+	 * @param leaf the name of the leaf.
+	 * @param bytes the estimated memory needed by the training.
+	 * @param job the training.
+	 */
+	public void add(String leaf, long bytes, Job job) {
+		entries.add(new Entry(leaf, bytes, job));
+	}
+
+	/**
+	 * Trains all leaves added and waits for them.
+	 *
+	 * @throws Exception the first exception thrown by a training, in the order the leaves were started.
+	 */
+	public void run() throws Exception {
+		entries.sort((a, b) -> Long.compare(b.bytes, a.bytes));
+		// Fair, so that a large leaf is not overtaken by the small ones behind it
+		Semaphore memory = new Semaphore(budget, true);
+		ExecutorService workers = Executors.newFixedThreadPool(Math.min(threadN, Math.max(1, entries.size())));
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (Entry entry : entries) {
+				int permits = (int) Math.max(1, Math.min(budget, (entry.bytes + UNIT - 1) / UNIT));
+				futures.add(workers.submit(() -> {
+					memory.acquire(permits);
+					try {
+						long start = System.currentTimeMillis();
+						timeStamp(String.format("Start leaf %s (estimated %d MB)", entry.leaf, entry.bytes / UNIT));
+						entry.job.run();
+						timeStamp(String.format("Finished leaf %s in %.3f (s)", entry.leaf,
+								(System.currentTimeMillis() - start) / 1000.0));
+					} finally {
+						memory.release(permits);
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception) {
+						throw (Exception) e.getCause();
+					}
+					throw e;
+				}
+			}
+		} finally {
+			workers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Estimates the number of rows of a data file. The rows of a columnar file are known;
+	 * the rows of a text file are estimated from the line length at the start of the file.
+	 *
+	 * @param dataPath the path of the data file.
+	 * @return the estimated number of rows.
+	 * @throws IOException
+	 */
+	public static long estimateRows(String dataPath) throws IOException {
+		if (ColumnarData.isColumnar(dataPath)) {
+			try (ColumnarData data = ColumnarData.open(dataPath)) {
+				return data.size();
+			}
+		}
+		long length = new File(dataPath).length();
+		byte[] buffer = new byte[UNIT];
+		int n = 0;
+		try (InputStream in = new FileInputStream(dataPath)) {
+			for (int r; n < buffer.length && (r = in.read(buffer, n, buffer.length - n)) > 0; ) {
+				n += r;
+			}
+		}
+		long lines = 0;
+		for (int i = 0; i < n; i++) {
+			if (buffer[i] == '\n') {
+				lines++;
+			}
+		}
+		if (n == length) {
+			return lines;
+		}
+		return lines == 0 ? 1 : (long) ((double) length * lines / n);
+	}
+
+	/**
+	 * Estimates the memory needed to train a leaf on its design matrix: the boxed rows and
+	 * labels, the design matrix and its transpose, and the matrix copies of OLS with SVD.
+	 *
+	 * @param rows the number of rows.
+	 * @param colN the number of attribute columns.
+	 * @param polyDegree the degree of the polynomials.
+	 * @return the estimated number of bytes.
+	 */
+	public static long estimateDesignBytes(long rows, int colN, int polyDegree) {
+		int p = colN * polyDegree;
+		long rowBytes = 64 + 24L * colN + 8L * colN + 8L * p + 3 * 8L * (p + 1);
+		return rows * rowBytes;
+	}
+
+	protected static void timeStamp(String msg) {
+		Date tmpDate = new Date();
+		System.out.println("TIMESTAMP >>>> ".concat(tmpDate.toString()).concat(": ").concat(msg));
+	}
+
+}
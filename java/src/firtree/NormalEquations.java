@@ -0,0 +1,206 @@
+package firtree;
+
+import smile.math.matrix.Matrix;
+import smile.math.matrix.SVD;
+
+/**
+ * Class for least squares with an intercept that sees the data one row at a time. Only
+ * the means and the centered cross-products of the features and the response are kept,
+ * so memory does not depend on the number of rows. Accumulators of disjoint parts of the
+ * data can be merged, so that the parts can be scanned in parallel.
+ *
+ * <p>Centering removes the intercept from the system and scaling the features to unit
+ * variance keeps it well conditioned for the Cholesky decomposition. If the system is
+ * (numerically) singular, the minimum-norm solution of the scaled system is found by SVD
+ * instead. Features without variance get a coefficient of 0.</p>
+ *
+ */
+public class NormalEquations {
+
+	// Relative pivot below which the scaled system is taken as singular
+	private static final double EPSILON = 1e-10;
+
+	private int p;
+	private long n;
+	// Means of the features and the response (last)
+	private double[] mean;
+	// Centered cross-products of the features and the response, row-major (p + 1) x (p + 1)
+	private double[] cross;
+
+	// Scratch for the difference from the mean
+	private double[] delta;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param p the number of features.
+	 */
+	public NormalEquations(int p) {
+		this.p = p;
+		this.mean = new double[p + 1];
+		this.cross = new double[(p + 1) * (p + 1)];
+		this.delta = new double[p + 1];
+	}
+
+	/**
+	 * Adds a row.
+	 *
+	 * @param x the features.
+	 * @param y the response.
+	 */
+	public void add(double[] x, double y) {
+		n++;
+		int m = p + 1;
+		for (int j = 0; j < p; j++) {
+			delta[j] = x[j] - mean[j];
+			mean[j] += delta[j] / n;
+		}
+		delta[p] = y - mean[p];
+		mean[p] += delta[p] / n;
+		double f = (n - 1.0) / n;
+		for (int i = 0; i < m; i++) {
+			double d = f * delta[i];
+			int offset = i * m;
+			for (int j = i; j < m; j++) {
+				cross[offset + j] += d * delta[j];
+			}
+		}
+	}
+
+	/**
+	 * Merges the rows of another accumulator into this one.
+	 *
+	 * @param other the other accumulator.
+	 */
+	public void merge(NormalEquations other) {
+		if (other.p != p) {
+			throw new IllegalArgumentException("The numbers of features do not match: " + p + " != " + other.p);
+		}
+		if (other.n == 0) {
+			return;
+		}
+		long total = n + other.n;
+		double f = (double) n * other.n / total;
+		int m = p + 1;
+		for (int i = 0; i < m; i++) {
+			delta[i] = other.mean[i] - mean[i];
+		}
+		for (int i = 0; i < m; i++) {
+			int offset = i * m;
+			for (int j = i; j < m; j++) {
+				cross[offset + j] += other.cross[offset + j] + f * delta[i] * delta[j];
+			}
+			mean[i] += delta[i] * other.n / total;
+		}
+		n = total;
+	}
+
+	/**
+	 * Returns the number of rows added.
+	 *
+	 * @return the number of rows added.
+	 */
+	public long size() {
+		return n;
+	}
+
+	/**
+	 * Solves the least squares problem.
+	 *
+	 * @return the coefficients of the features followed by the intercept.
+	 * @throws IllegalArgumentException if there are not more rows than features.
+	 */
+	public double[] solve() {
+		if (n <= p) {
+			throw new IllegalArgumentException(String.format("The input matrix is not over determined: %d rows, %d columns", n, p));
+		}
+		int m = p + 1;
+		double[] scale = new double[p];
+		for (int j = 0; j < p; j++) {
+			double var = cross[j * m + j];
+			scale[j] = var > 0 ? Math.sqrt(var) : 0;
+		}
+		double[][] a = new double[p][p];
+		double[] b = new double[p];
+		for (int i = 0; i < p; i++) {
+			if (scale[i] == 0) {
+				continue;
+			}
+			for (int j = i; j < p; j++) {
+				if (scale[j] > 0) {
+					a[i][j] = cross[i * m + j] / (scale[i] * scale[j]);
+					a[j][i] = a[i][j];
+				}
+			}
+			b[i] = cross[i * m + p] / scale[i];
+		}
+
+		double[] v = cholesky(a, b, scale);
+		if (v == null) {
+			v = new double[p];
+			SVD svd = Matrix.newInstance(a).svd();
+			svd.solve(b, v);
+		}
+
+		double[] w = new double[m];
+		double intercept = mean[p];
+		for (int j = 0; j < p; j++) {
+			w[j] = scale[j] > 0 ? v[j] / scale[j] : 0;
+			intercept -= mean[j] * w[j];
+		}
+		w[p] = intercept;
+		return w;
+	}
+
+	// Solves a x = b, skipping the features without variance; null if a is singular
+	private static double[] cholesky(double[][] a, double[] b, double[] scale) {
+		int p = b.length;
+		double[][] l = new double[p][p];
+		for (int j = 0; j < p; j++) {
+			if (scale[j] == 0) {
+				continue;
+			}
+			double d = a[j][j];
+			for (int k = 0; k < j; k++) {
+				d -= l[j][k] * l[j][k];
+			}
+			if (d <= EPSILON) {
+				return null;
+			}
+			l[j][j] = Math.sqrt(d);
+			for (int i = j + 1; i < p; i++) {
+				if (scale[i] == 0) {
+					continue;
+				}
+				double s = a[i][j];
+				for (int k = 0; k < j; k++) {
+					s -= l[i][k] * l[j][k];
+				}
+				l[i][j] = s / l[j][j];
+			}
+		}
+		double[] x = new double[p];
+		for (int i = 0; i < p; i++) {
+			if (scale[i] == 0) {
+				continue;
+			}
+			double s = b[i];
+			for (int k = 0; k < i; k++) {
+				s -= l[i][k] * x[k];
+			}
+			x[i] = s / l[i][i];
+		}
+		for (int i = p - 1; i >= 0; i--) {
+			if (scale[i] == 0) {
+				continue;
+			}
+			double s = x[i];
+			for (int k = i + 1; k < p; k++) {
+				s -= l[k][i] * x[k];
+			}
+			x[i] = s / l[i][i];
+		}
+		return x;
+	}
+
+}
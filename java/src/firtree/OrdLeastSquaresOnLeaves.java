@@ -12,11 +12,20 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import firtree.data.ChunkReader;
+import firtree.data.RowStore;
 import mltk.cmdline.Argument;
 import mltk.cmdline.CmdLineParser;
 import mltk.core.io.AttrInfo;
 import mltk.core.io.AttributesReader;
+import mltk.core.io.ColumnarData;
+import mltk.core.io.Row;
+import mltk.core.io.RowReader;
+import mltk.core.io.Tokenizer;
 import smile.regression.*;
 
 public class OrdLeastSquaresOnLeaves {
@@ -43,6 +52,18 @@ public class OrdLeastSquaresOnLeaves {
 		
 		@Argument(name = "-o", description = "Override the results of OLS")
 		int override = 1;
+
+		@Argument(name = "-s", description = "solve streamed normal equations instead of building the design matrix; no subsampling is needed (default: false)")
+		boolean streaming = false;
+
+		@Argument(name = "-n", description = "number of threads scanning a leaf in the streaming mode (default: #cores / max number of leaves trained at the same time)")
+		int threadN = 0;
+
+		@Argument(name = "-w", description = "max number of leaves trained at the same time (default: #cores)")
+		int leafN = Runtime.getRuntime().availableProcessors();
+
+		@Argument(name = "-mem", description = "memory budget in MB shared by the leaves trained at the same time (default: 80% of max heap)")
+		int budgetMB = LeafExecutor.getDefaultBudgetMB();
 	}
 
 
@@ -55,6 +76,10 @@ public class OrdLeastSquaresOnLeaves {
 			parser.printUsage();
 			System.exit(1);
 		}
+		if (opts.threadN <= 0) {
+			// The leaves trained at the same time share the cores
+			opts.threadN = Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, opts.leafN));
+		}
 
 		long start = System.currentTimeMillis();
 
@@ -82,59 +107,91 @@ public class OrdLeastSquaresOnLeaves {
 		// Train model on each regression leaf
 		timeStamp("-------------- Train model on each regression leaf --------------");
 
-		for(int i_leaf = 0; i_leaf < leavesModel.size(); i_leaf++){
-			String leafName = leavesModel.get(i_leaf);
-			
-			int nodeIndex = model.nodeIndexes.get(leafName);
-			
-			timeStamp("------------Processing leaf "+ leafName + "------------");
+		LeafExecutor executor = new LeafExecutor(opts.leafN, opts.budgetMB);
+		for (String leafName : leavesModel) {
+			executor.add(leafName, estimateBytes(leafName, model, opts), () -> trainModelLeaf(leafName, model, ainfo, opts));
+		}
+		executor.run();
 
-			long start_load = System.currentTimeMillis();
-			timeStamp("Scan data");
+		// Get constant for each leafConst;
 
-			String dataPath = getNodeDir(model.dir, leafName).toString() + "/fir.dta";
-			// read the data, save labels and values of selected features
-			BufferedReader br_dta = new BufferedReader(new FileReader(dataPath));
+		timeStamp("-------------- Get constant for each leafConst ---------------");
 
-			
-			int col_num = model.nodeAttIdList.get(nodeIndex).size(); //col refers to the columns in the matrix, not in the data file
+		executor = new LeafExecutor(opts.leafN, opts.budgetMB);
+		for (String leafName : leavesConst) {
+			executor.add(leafName, 0, () -> trainConstLeaf(leafName, model, ainfo));
+		}
+		executor.run();
+		
+		long end = System.currentTimeMillis();
+		timeStamp("Finished all in " + (end - start) / 1000.0 + " (s).");
+	}
+
+	static void trainModelLeaf(String leafName, FirTree model, AttrInfo ainfo, Options opts) throws Exception {
+		int nodeIndex = model.nodeIndexes.get(leafName);
+		
+		timeStamp("------------Processing leaf "+ leafName + "------------");
+
+		long start_load = System.currentTimeMillis();
+		timeStamp(leafName + ": Scan data");
+
+		String dataPath = CoorAscentOnLeaves.getNodeDataPath(model.dir, leafName);
+		int col_num = model.nodeAttIdList.get(nodeIndex).size(); //col refers to the columns in the matrix, not in the data file
+
+		double[] ols_trans_coef;
+		double ols_trans_intercept;
+		ArrayList<ArrayList<Double>> attr_range;
+		long end_load;
+		if (opts.streaming) {
+			LeafStats stats = LeafStats.scan(dataPath, model, nodeIndex, ainfo, opts.polyDegree, opts.threadN);
+			end_load = System.currentTimeMillis();
+			timeStamp(leafName + ": Number of data points: "  + stats.size());
+			attr_range = stats.getRanges();
+
+			timeStamp(leafName + ": Solving normal equations with transformed features");
+			double[] w = stats.equations.solve();
+			ols_trans_coef = Arrays.copyOf(w, w.length - 1);
+			ols_trans_intercept = w[w.length - 1];
+		} else {
+			// read the data, save labels and values of selected features
+			RowReader reader = RowReader.open(dataPath, true);
 
 			boolean crash = checkCrash(col_num, ainfo, opts, dataPath);
 			Set<String> groupIdSet = null;
 			if (crash) {
 				groupIdSet = subsample(col_num, ainfo, opts, dataPath);
 			} else {
-				timeStamp("No need to subsample data points");
+				timeStamp(leafName + ": No need to subsample data points");
 			}
 			
 			List<List<Double>> xMat_arraylist = new ArrayList<List<Double>>(); //dynamic memory for temp data storage - features
 			ArrayList<Double> y_double_arraylist = new ArrayList<Double>(); //dynamic memory for temp data storage - labels
 
-			for(String line = br_dta.readLine(); line != null; line = br_dta.readLine()) {
-				String[] data = line.split("\t+");
+			while (reader.next()) {
+				Row data = reader.row();
 
 				if (crash) {
 					// Skip the group ids that are not subsampled, i.e., not included in the set
-					String groupId = data[ainfo.nameToCol.get(opts.group)];
+					String groupId = data.getString(ainfo.nameToCol.get(opts.group));
 					if (! groupIdSet.contains(groupId))
 						continue;
 				}
 				
-				y_double_arraylist.add(Double.parseDouble(data[ainfo.getClsCol()]));
+				y_double_arraylist.add(data.getDoubleStrict(ainfo.getClsCol()));
 				ArrayList<Double> current_selected_attr = new ArrayList<Double>();
 				for(int attIndex = 0; attIndex < col_num; attIndex ++){
 					int id = model.nodeAttIdList.get(nodeIndex).get(attIndex);
-					double value = Double.parseDouble(data[ainfo.idToCol(id)]);
+					double value = data.getDoubleStrict(ainfo.idToCol(id));
 					current_selected_attr.add(model.truncate(nodeIndex, attIndex, value));
 				}
 				xMat_arraylist.add(current_selected_attr);
 			}
-			br_dta.close();
+			reader.close();
 
-			long end_load = System.currentTimeMillis();
+			end_load = System.currentTimeMillis();
 
 			int row_num = y_double_arraylist.size(); // number of data points
-			timeStamp("Number of data points: "  + row_num);
+			timeStamp(leafName + ": Number of data points: "  + row_num);
 
 			//copy the data into regular arrays, as required for regression model input
 			double[] y_double = new double[row_num];
@@ -148,7 +205,7 @@ public class OrdLeastSquaresOnLeaves {
 			}
 			
 			// get the range of each selected feature for thresholding
-			ArrayList<ArrayList<Double>> attr_range = new ArrayList<ArrayList<Double>>();
+			attr_range = new ArrayList<ArrayList<Double>>();
 			for(int j = 0; j < col_num; j++){
 				ArrayList<Double> current_attr_range = new ArrayList<Double>();
 				double current_attr_min = Double.POSITIVE_INFINITY;
@@ -167,7 +224,7 @@ public class OrdLeastSquaresOnLeaves {
 			}
 
 			// Train OLS with polynomial terms
-			timeStamp("Training OLS with transformed features");
+			timeStamp(leafName + ": Training OLS with transformed features");
 			double[][] xMat_trans = new double[xMat.length][xMat[0].length * opts.polyDegree];
 			for(int i = 0; i < xMat.length; i++){
 				for(int j = 0; j < xMat[0].length; j++){
@@ -180,74 +237,80 @@ public class OrdLeastSquaresOnLeaves {
 			// Setting the last parameter to True to use SVD decomposition as part of the regression
 			OLS ols_trans = new OLS(xMat_trans, y_double, true);
 
-			double[] ols_trans_coef = ols_trans.coefficients();
-			double ols_trans_intercept = ols_trans.intercept();
+			ols_trans_coef = ols_trans.coefficients();
+			ols_trans_intercept = ols_trans.intercept();
+		}
 
-			timeStamp("Save the model");
+		timeStamp(leafName + ": Save the model");
 
-			String paramPath = model.getParamPath(leafName);
-			BufferedWriter modelTrans_out = new BufferedWriter(new FileWriter(paramPath));
+		String paramPath = model.getParamPath(leafName);
+		BufferedWriter modelTrans_out = new BufferedWriter(new FileWriter(paramPath));
 
-			modelTrans_out.write("intercept\t" + ols_trans_intercept + "\n");
+		modelTrans_out.write("intercept\t" + ols_trans_intercept + "\n");
 
-			for (int i_attr = 0; i_attr < col_num; i_attr++) {
-				int id = model.nodeAttIdList.get(nodeIndex).get(i_attr);
-				modelTrans_out.write(ainfo.idToName(id) + "\t");
-				for(int i_poly = 0; i_poly < opts.polyDegree; i_poly++){
-					modelTrans_out.write(ols_trans_coef[i_attr * opts.polyDegree + i_poly] + "\t" );
-				}
-				modelTrans_out.write(attr_range.get(i_attr).get(0) + "\t" + attr_range.get(i_attr).get(1) + "\n");
+		for (int i_attr = 0; i_attr < col_num; i_attr++) {
+			int id = model.nodeAttIdList.get(nodeIndex).get(i_attr);
+			modelTrans_out.write(ainfo.idToName(id) + "\t");
+			for(int i_poly = 0; i_poly < opts.polyDegree; i_poly++){
+				modelTrans_out.write(ols_trans_coef[i_attr * opts.polyDegree + i_poly] + "\t" );
 			}
-			modelTrans_out.flush();
-			modelTrans_out.close();
-
-			long end_train = System.currentTimeMillis();
-
-			timeStamp("Finished training OLS on this node in " + (end_train - start_load) / 1000.0 + " (s).");
-			timeStamp("Without loading data, the model training step takes " + (end_train - end_load) / 1000.0 + " (s).");
+			modelTrans_out.write(attr_range.get(i_attr).get(0) + "\t" + attr_range.get(i_attr).get(1) + "\n");
 		}
+		modelTrans_out.flush();
+		modelTrans_out.close();
 
-		// Get constant for each leafConst;
+		long end_train = System.currentTimeMillis();
 
-		timeStamp("-------------- Get constant for each leafConst ---------------");
+		timeStamp(leafName + ": Finished training OLS on this node in " + (end_train - start_load) / 1000.0 + " (s).");
+		timeStamp(leafName + ": Without loading data, the model training step takes " + (end_train - end_load) / 1000.0 + " (s).");
+	}
 
-		for(int i_const = 0; i_const < leavesConst.size(); i_const++){
-			String leafName = leavesConst.get(i_const);
+	static void trainConstLeaf(String leafName, FirTree model, AttrInfo ainfo) throws Exception {
 
-			String dataNodePath = model.dir + "/Node_" + leafName;
-			System.out.println("------------Processing leaf " + leafName + "------------");
+		timeStamp("------------Processing leaf " + leafName + "------------");
 
-			// read dta file, only need to read the target column
+		// read dta file, only need to read the target column
 
-			timeStamp("Load data");
+		timeStamp(leafName + ": Load data");
 
-			BufferedReader br_dta = new BufferedReader(new FileReader(dataNodePath + "/fir.dta"));
-			ArrayList<Double> y_double_arraylist = new ArrayList<Double>();
-			double y_sum = 0;
-			for(String line = br_dta.readLine(); line != null; line = br_dta.readLine()){
-				String[] data = line.split("\t+");
-				double y_current = Double.parseDouble(data[ainfo.getClsCol()]);
-				y_double_arraylist.add(y_current);
-				y_sum += y_current;
-			}
-			br_dta.close();
+		RowReader reader = RowReader.open(CoorAscentOnLeaves.getNodeDataPath(model.dir, leafName), true);
+		long row_num = 0;
+		double y_sum = 0;
+		while (reader.next()) {
+			double y_current = reader.row().getDoubleStrict(ainfo.getClsCol());
+			row_num++;
+			y_sum += y_current;
+		}
+		reader.close();
 
-			double y_mean = y_sum / y_double_arraylist.size();
-			System.out.println(y_mean);
+		double y_mean = y_sum / row_num;
+		timeStamp(leafName + ": Const " + y_mean);
 
-			timeStamp("Saving the const");
+		timeStamp(leafName + ": Saving the const");
 
-			String paramPath = model.getParamPath(leafName);
-			BufferedWriter const_out = new BufferedWriter(new FileWriter(paramPath));
-			const_out.write("Const: " + y_mean);
-			const_out.flush();
-			const_out.close();
-		}
-		
-		long end = System.currentTimeMillis();
-		timeStamp("Finished all in " + (end - start) / 1000.0 + " (s).");
+		String paramPath = model.getParamPath(leafName);
+		BufferedWriter const_out = new BufferedWriter(new FileWriter(paramPath));
+		const_out.write("Const: " + y_mean);
+		const_out.flush();
+		const_out.close();
 	}
+
 	
+	/**
+	 * Estimates the memory needed to train a regression leaf from the number of rows and
+	 * the number of columns of its design matrix. The streaming mode holds only the blocks
+	 * in flight.
+	 */
+	static long estimateBytes(String leafName, FirTree model, Options opts) throws IOException {
+		if (opts.streaming) {
+			return 2L * Math.max(opts.threadN, 1) * RowStore.BLOCK_SIZE;
+		}
+		int nodeIndex = model.nodeIndexes.get(leafName);
+		int col_num = model.nodeAttIdList.get(nodeIndex).size();
+		long rows = LeafExecutor.estimateRows(CoorAscentOnLeaves.getNodeDataPath(model.dir, leafName));
+		return LeafExecutor.estimateDesignBytes(rows, col_num, opts.polyDegree);
+	}
+
 	static String getNodeDir(String dir, String node) {
 		return Paths.get(dir, "Node_" + node).toString();
 	}
@@ -288,10 +351,10 @@ public class OrdLeastSquaresOnLeaves {
 		// Use this magic number instead of using max integer value 2147483647
 		int max = 2147000000 / (nAtt * opts.polyDegree + 1);
 		
-		BufferedReader br = new BufferedReader(new FileReader(dataPath));
 		int num = 0;
-		while (br.readLine() != null) num ++;
-		br.close();
+		RowReader reader = RowReader.open(dataPath, true);
+		while (reader.next()) num ++;
+		reader.close();
 		
 		if (num > max)
 			return true;
@@ -310,13 +373,12 @@ public class OrdLeastSquaresOnLeaves {
 		int max = 2147000000 / (nAtt * opts.polyDegree + 1);
 		
 		Map<String, Integer> groupSizes = new HashMap<String, Integer>();
-		BufferedReader br = new BufferedReader(new FileReader(dataPath));
-		for (String line = br.readLine(); line != null; line = br.readLine()) {
-			String[] data = line.split("\t");
-			String groupId = data[ainfo.nameToCol.get(opts.group)];
+		RowReader reader = RowReader.open(dataPath, false);
+		while (reader.next()) {
+			String groupId = reader.row().getString(ainfo.nameToCol.get(opts.group));
 			groupSizes.put(groupId, groupSizes.getOrDefault(groupId, 0) + 1);
 		}
-		br.close();
+		reader.close();
 		List<String> groupIdList = new ArrayList<String>(groupSizes.keySet());
 		Collections.shuffle(groupIdList);
 		int num = 0;
@@ -334,6 +396,139 @@ public class OrdLeastSquaresOnLeaves {
 		return groupIdSet;
 	}
 
+	/**
+	 * Normal equations and feature ranges of the data of a leaf, accumulated row by row.
+	 * Features are truncated and expanded into polynomial terms as in the design matrix.
+	 */
+	static class LeafStats {
+
+		// Minimum number of rows of a part of a columnar scan
+		static final int MIN_PART_ROWS = 1 << 14;
+
+		final NormalEquations equations;
+		private int[] cols;
+		private int clsCol;
+		private int polyDegree;
+		private FirTree model;
+		private int nodeIndex;
+		private double[] min;
+		private double[] max;
+		private double[] x;
+
+		LeafStats(FirTree model, int nodeIndex, AttrInfo ainfo, int polyDegree) {
+			List<Integer> attIds = model.nodeAttIdList.get(nodeIndex);
+			this.model = model;
+			this.nodeIndex = nodeIndex;
+			this.polyDegree = polyDegree;
+			this.clsCol = ainfo.getClsCol();
+			cols = new int[attIds.size()];
+			for (int j = 0; j < cols.length; j++) {
+				cols[j] = ainfo.idToCol(attIds.get(j));
+			}
+			min = new double[cols.length];
+			max = new double[cols.length];
+			Arrays.fill(min, Double.POSITIVE_INFINITY);
+			Arrays.fill(max, Double.NEGATIVE_INFINITY);
+			x = new double[cols.length * polyDegree];
+			equations = new NormalEquations(x.length);
+		}
+
+		void add(Row data) {
+			double y = data.getDoubleStrict(clsCol);
+			for (int j = 0; j < cols.length; j++) {
+				double value = model.truncate(nodeIndex, j, data.getDoubleStrict(cols[j]));
+				if (value < min[j]) {
+					min[j] = value;
+				}
+				if (value > max[j]) {
+					max[j] = value;
+				}
+				for (int i_trans = 0; i_trans < polyDegree; i_trans++) {
+					x[j * polyDegree + i_trans] = Math.pow(value, i_trans + 1);
+				}
+			}
+			equations.add(x, y);
+		}
+
+		void merge(LeafStats other) {
+			for (int j = 0; j < cols.length; j++) {
+				min[j] = Math.min(min[j], other.min[j]);
+				max[j] = Math.max(max[j], other.max[j]);
+			}
+			equations.merge(other.equations);
+		}
+
+		long size() {
+			return equations.size();
+		}
+
+		ArrayList<ArrayList<Double>> getRanges() {
+			ArrayList<ArrayList<Double>> ranges = new ArrayList<ArrayList<Double>>();
+			for (int j = 0; j < cols.length; j++) {
+				ranges.add(new ArrayList<Double>(Arrays.asList(min[j], max[j])));
+			}
+			return ranges;
+		}
+
+		/**
+		 * Scans the data of a leaf with a number of threads. Parts are merged in file
+		 * order, so the result does not depend on thread timing.
+		 */
+		static LeafStats scan(String dataPath, FirTree model, int nodeIndex, AttrInfo ainfo,
+				int polyDegree, int threadN) throws Exception {
+			LeafStats stats = new LeafStats(model, nodeIndex, ainfo, polyDegree);
+			threadN = Math.max(threadN, 1);
+			if (ColumnarData.isColumnar(dataPath)) {
+				try (ColumnarData data = ColumnarData.open(dataPath)) {
+					long size = data.size();
+					int partN = (int) Math.max(1, Math.min(threadN, size / MIN_PART_ROWS));
+					ExecutorService workers = Executors.newFixedThreadPool(partN);
+					try {
+						List<Future<LeafStats>> parts = new ArrayList<>();
+						for (int k = 0; k < partN; k++) {
+							long from = size * k / partN;
+							long to = size * (k + 1) / partN;
+							parts.add(workers.submit(() -> {
+								LeafStats part = new LeafStats(model, nodeIndex, ainfo, polyDegree);
+								ColumnarData.Cursor cursor = data.cursor();
+								for (long row = from; row < to; row++) {
+									cursor.seek(row);
+									part.add(cursor);
+								}
+								return part;
+							}));
+						}
+						for (Future<LeafStats> part : parts) {
+							stats.merge(part.get());
+						}
+					} finally {
+						workers.shutdownNow();
+					}
+				}
+			} else {
+				try (ChunkReader reader = new ChunkReader(new FileInputStream(dataPath), RowStore.BLOCK_SIZE)) {
+					reader.process(threadN, chunk -> {
+						LeafStats part = new LeafStats(model, nodeIndex, ainfo, polyDegree);
+						Tokenizer tokenizer = new Tokenizer(true);
+						byte[] b = chunk.data;
+						for (int pos = 0; pos < chunk.length; ) {
+							int end = pos;
+							while (b[end] != '\n') {
+								end++;
+							}
+							int lineEnd = end > pos && b[end - 1] == '\r' ? end - 1 : end;
+							part.add(tokenizer.reset(b, pos, lineEnd));
+							pos = end + 1;
+						}
+						return part;
+					}, (chunk, part) -> stats.merge(part));
+				}
+			}
+			return stats;
+		}
+
+	}
+
 	protected static void timeStamp(String msg){
 		Date tmpDate = new Date();
 		System.out.println("TIMESTAMP >>>> ".concat(tmpDate.toString()).concat(": ").concat(msg));
@@ -12,6 +12,7 @@ import mltk.cmdline.Argument;
 import mltk.cmdline.CmdLineParser;
 import mltk.core.io.AttrInfo;
 import mltk.core.io.AttributesReader;
+import mltk.core.io.Tokenizer;
 
 public class Prediction {
 	
@@ -62,12 +63,32 @@ public class Prediction {
 		BufferedReader testData = new BufferedReader(new FileReader(opts.testPath), 65535);
 		BufferedWriter pred_fir_out = new BufferedWriter(new FileWriter(opts.outputPath));
 
+		// Predict in batches with the compiled model, parsing only the columns it reads
+		CompiledFirTree compiled = model.compile();
+		int[] usedColumns = compiled.getUsedColumns();
+		int colN = ainfo.getColN();
+		double[][] rows = new double[BATCH_SIZE][colN];
+		double[] preds = new double[BATCH_SIZE];
+		int n = 0;
+		Tokenizer data = new Tokenizer(false);
 		String line_test = testData.readLine();
 		while(line_test != null) {
-			double val = model.predict(line_test); 
-			pred_fir_out.write(val + "\n");
+			data.reset(line_test);
+			if(data.size() != colN) {
+				System.err.println("The number of columns in the data does not match the number of attributes in the file.");
+				System.exit(1);
+			}
+			for (int col : usedColumns) {
+				rows[n][col] = data.getDoubleStrict(col);
+			}
+			n++;
+			if (n == BATCH_SIZE) {
+				write(compiled, rows, n, preds, pred_fir_out);
+				n = 0;
+			}
 			line_test = testData.readLine();
 		}
+		write(compiled, rows, n, preds, pred_fir_out);
 		testData.close();
 		pred_fir_out.flush();
 		pred_fir_out.close();
@@ -76,6 +97,16 @@ public class Prediction {
 		System.out.println("Finished all in " + (end - start) / 1000.0 + " (s).");
 	}
 	
+	static final int BATCH_SIZE = 4096;
+	
+	static void write(CompiledFirTree compiled, double[][] rows, int n, double[] preds, 
+			BufferedWriter out) throws IOException {
+		compiled.predict(rows, n, preds);
+		for (int i = 0; i < n; i++) {
+			out.write(preds[i] + "\n");
+		}
+	}
+	
 	protected static void timeStamp(String msg){
 		Date tmpDate = new Date();
 		System.out.println("TIMESTAMP >>>> ".concat(tmpDate.toString()).concat(": ").concat(msg));
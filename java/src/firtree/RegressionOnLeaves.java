@@ -12,6 +12,7 @@ import mltk.cmdline.Argument;
 import mltk.cmdline.CmdLineParser;
 import mltk.core.io.AttrInfo;
 import mltk.core.io.AttributesReader;
+import mltk.core.io.Tokenizer;
 import smile.regression.*;
 
 @Deprecated
@@ -33,6 +34,12 @@ public class RegressionOnLeaves {
 		
 		@Argument(name = "-m", description = "Prefix of name of output parameter files (default: model)")
 		String modelPrefix = "model";
+
+		@Argument(name = "-w", description = "max number of leaves trained at the same time (default: #cores)")
+		int leafN = Runtime.getRuntime().availableProcessors();
+
+		@Argument(name = "-mem", description = "memory budget in MB shared by the leaves trained at the same time (default: 80% of max heap)")
+		int budgetMB = LeafExecutor.getDefaultBudgetMB();
 	}
 
 
@@ -59,161 +66,182 @@ public class RegressionOnLeaves {
 		// Train model on each regression leaf
 		timeStamp("-------------- Train model on each regression leaf --------------");
 
-		for(int i_leaf = 0; i_leaf < leavesModel.size(); i_leaf++){
-			String leafName = leavesModel.get(i_leaf);
-			
-			String dataNodePath = opts.dir + "/Node_" + leafName;
-			System.out.println("------------Processing leaf "+ leafName + "------------");
-
-			long start_load = System.currentTimeMillis();
-			timeStamp("Scan data");
+		LeafExecutor executor = new LeafExecutor(opts.leafN, opts.budgetMB);
+		for (String leafName : leavesModel) {
+			executor.add(leafName, estimateBytes(leafName, opts), () -> trainModelLeaf(leafName, model, ainfo, opts));
+		}
+		executor.run();
 
-			AttrInfo ainfo_leaf = AttributesReader.read(dataNodePath + "/fir.fs.fs.attr");
+		// Get constant for each leafConst;
 
-			String dataPath = dataNodePath + "/fir.dta";
-			// read the data, save labels and values of selected features
-			BufferedReader br_dta = new BufferedReader(new FileReader(dataPath));
+		timeStamp("-------------- Get constant for each leafConst ---------------");
 
-			int col_num = ainfo_leaf.attributes.size(); //col refers to the columns in the matrix, not in the data file
+		executor = new LeafExecutor(opts.leafN, opts.budgetMB);
+		for (String leafName : leavesConst) {
+			executor.add(leafName, 0, () -> trainConstLeaf(leafName, model, ainfo, opts));
+		}
+		executor.run();
 
-			Set<String> groupIdSet = subsample(ainfo_leaf, opts, dataPath);
-			
-			List<List<Double>> xMat_arraylist = new ArrayList<List<Double>>(); //dynamic memory for temp data storage - features
-			ArrayList<Double> y_double_arraylist = new ArrayList<Double>(); //dynamic memory for temp data storage - labels
-
-			for(String line = br_dta.readLine(); line != null; line = br_dta.readLine()) {
-				String[] data = line.split("\t+");
-
-				// Skip the group ids that are not subsampled, i.e., not included in the set
-				String groupId = data[ainfo_leaf.nameToCol.get(opts.group)];
-				if (! groupIdSet.contains(groupId))
-					continue;
-				
-				y_double_arraylist.add(Double.parseDouble(data[ainfo.getClsCol()]));
-				ArrayList<Double> current_selected_attr = new ArrayList<Double>();
-				for(int j = 0; j < col_num; j++){
-					current_selected_attr.add(Double.parseDouble(data[ainfo_leaf.attributes.get(j).getColumn()]));
-				}
-				xMat_arraylist.add(current_selected_attr);
-			}
-			br_dta.close();
+		long end = System.currentTimeMillis();
+		System.out.println("Finished all in " + (end - start) / 1000.0 + " (s).");
+	}
 
-			long end_load = System.currentTimeMillis();
+	static void trainModelLeaf(String leafName, FirTree model, AttrInfo ainfo, Options opts) throws Exception {
+		String dataNodePath = opts.dir + "/Node_" + leafName;
+		System.out.println("------------Processing leaf "+ leafName + "------------");
 
-			int row_num = y_double_arraylist.size(); // number of data points
-			System.out.println("Number of data points: "  + row_num);
+		long start_load = System.currentTimeMillis();
+		timeStamp(leafName + ": Scan data");
 
-			//copy the data into regular arrays, as required for regression model input
-			double[] y_double = new double[row_num];
-			double[][] xMat = new double[row_num][col_num];
+		AttrInfo ainfo_leaf = AttributesReader.read(dataNodePath + "/fir.fs.fs.attr");
 
-			for(int i = 0; i < row_num; i++){
-				y_double[i] = y_double_arraylist.get(i);
-				for(int j = 0; j < col_num; j++){
-					xMat[i][j] = xMat_arraylist.get(i).get(j);
-				}
-			}
+		String dataPath = dataNodePath + "/fir.dta";
+		// read the data, save labels and values of selected features
+		BufferedReader br_dta = new BufferedReader(new FileReader(dataPath));
 
-			// Train OLS with polynomial terms
-			timeStamp("Training OLS with transformed features");
-			double[][] xMat_trans = new double[xMat.length][xMat[0].length * opts.polyDegree];
-			for(int i = 0; i < xMat.length; i++){
-				for(int j = 0; j < xMat[0].length; j++){
-					for(int i_trans = 0; i_trans < opts.polyDegree; i_trans++){
-						xMat_trans[i][j * opts.polyDegree + i_trans] = Math.pow(xMat[i][j], i_trans + 1);
-					}
-				}
-			}
+		int col_num = ainfo_leaf.attributes.size(); //col refers to the columns in the matrix, not in the data file
 
-			// Setting the last parameter to True to use SVD decomposition as part of the regression
-			OLS ols_trans = new OLS(xMat_trans, y_double, true);
+		Set<String> groupIdSet = subsample(ainfo_leaf, opts, dataPath);
+		
+		List<List<Double>> xMat_arraylist = new ArrayList<List<Double>>(); //dynamic memory for temp data storage - features
+		ArrayList<Double> y_double_arraylist = new ArrayList<Double>(); //dynamic memory for temp data storage - labels
 
-			double[] ols_trans_coef = ols_trans.coefficients();
-			double ols_trans_intercept = ols_trans.intercept();
+		Tokenizer data = new Tokenizer(true);
+		for(String line = br_dta.readLine(); line != null; line = br_dta.readLine()) {
+			data.reset(line);
 
-			// get the range of each selected feature for thresholding
-			ArrayList<ArrayList<Double>> attr_range = new ArrayList<ArrayList<Double>>();
+			// Skip the group ids that are not subsampled, i.e., not included in the set
+			String groupId = data.getString(ainfo_leaf.nameToCol.get(opts.group));
+			if (! groupIdSet.contains(groupId))
+				continue;
+			
+			y_double_arraylist.add(data.getDoubleStrict(ainfo.getClsCol()));
+			ArrayList<Double> current_selected_attr = new ArrayList<Double>();
 			for(int j = 0; j < col_num; j++){
-				ArrayList<Double> current_attr_range = new ArrayList<Double>();
-				double current_attr_min = Double.POSITIVE_INFINITY;
-				double current_attr_max = Double.NEGATIVE_INFINITY;
-				for(int i = 0; i < row_num; i++){
-					if(xMat[i][j] < current_attr_min){
-						current_attr_min = xMat[i][j];
-					}
-					if(xMat[i][j] > current_attr_max){
-						current_attr_max = xMat[i][j];
-					}
-				}
-				current_attr_range.add(current_attr_min);
-				current_attr_range.add(current_attr_max);
-				attr_range.add(current_attr_range);
+				current_selected_attr.add(data.getDoubleStrict(ainfo_leaf.attributes.get(j).getColumn()));
 			}
+			xMat_arraylist.add(current_selected_attr);
+		}
+		br_dta.close();
 
-			timeStamp("Save the model");
+		long end_load = System.currentTimeMillis();
 
-			String paramPath = model.getParamPath(leafName);
-			BufferedWriter modelTrans_out = new BufferedWriter(new FileWriter(paramPath));
+		int row_num = y_double_arraylist.size(); // number of data points
+		System.out.println(leafName + ": Number of data points: "  + row_num);
 
-			modelTrans_out.write("intercept\t" + ols_trans_intercept + "\n");
+		//copy the data into regular arrays, as required for regression model input
+		double[] y_double = new double[row_num];
+		double[][] xMat = new double[row_num][col_num];
 
-			for (int i_attr = 0; i_attr < col_num; i_attr++) {
-				modelTrans_out.write(ainfo_leaf.idToName(i_attr) + "\t");
-				for(int i_poly = 0; i_poly < opts.polyDegree; i_poly++){
-					modelTrans_out.write(ols_trans_coef[i_attr * opts.polyDegree + i_poly] + "\t" );
+		for(int i = 0; i < row_num; i++){
+			y_double[i] = y_double_arraylist.get(i);
+			for(int j = 0; j < col_num; j++){
+				xMat[i][j] = xMat_arraylist.get(i).get(j);
+			}
+		}
+
+		// Train OLS with polynomial terms
+		timeStamp(leafName + ": Training OLS with transformed features");
+		double[][] xMat_trans = new double[xMat.length][xMat[0].length * opts.polyDegree];
+		for(int i = 0; i < xMat.length; i++){
+			for(int j = 0; j < xMat[0].length; j++){
+				for(int i_trans = 0; i_trans < opts.polyDegree; i_trans++){
+					xMat_trans[i][j * opts.polyDegree + i_trans] = Math.pow(xMat[i][j], i_trans + 1);
 				}
-				modelTrans_out.write(attr_range.get(i_attr).get(0) + "\t" + attr_range.get(i_attr).get(1) + "\n");
 			}
-			modelTrans_out.flush();
-			modelTrans_out.close();
+		}
+
+		// Setting the last parameter to True to use SVD decomposition as part of the regression
+		OLS ols_trans = new OLS(xMat_trans, y_double, true);
 
-			long end_train = System.currentTimeMillis();
+		double[] ols_trans_coef = ols_trans.coefficients();
+		double ols_trans_intercept = ols_trans.intercept();
 
-			System.out.println("Finished training OLS on this node in " + (end_train - start_load) / 1000.0 + " (s).");
-			System.out.println("Without loading data, the model training step takes " + (end_train - end_load) / 1000.0 + " (s).");
+		// get the range of each selected feature for thresholding
+		ArrayList<ArrayList<Double>> attr_range = new ArrayList<ArrayList<Double>>();
+		for(int j = 0; j < col_num; j++){
+			ArrayList<Double> current_attr_range = new ArrayList<Double>();
+			double current_attr_min = Double.POSITIVE_INFINITY;
+			double current_attr_max = Double.NEGATIVE_INFINITY;
+			for(int i = 0; i < row_num; i++){
+				if(xMat[i][j] < current_attr_min){
+					current_attr_min = xMat[i][j];
+				}
+				if(xMat[i][j] > current_attr_max){
+					current_attr_max = xMat[i][j];
+				}
+			}
+			current_attr_range.add(current_attr_min);
+			current_attr_range.add(current_attr_max);
+			attr_range.add(current_attr_range);
 		}
 
-		// Get constant for each leafConst;
+		timeStamp(leafName + ": Save the model");
 
-		timeStamp("-------------- Get constant for each leafConst ---------------");
+		String paramPath = model.getParamPath(leafName);
+		BufferedWriter modelTrans_out = new BufferedWriter(new FileWriter(paramPath));
 
-		for(int i_const = 0; i_const < leavesConst.size(); i_const++){
-			String leafName = leavesConst.get(i_const);
+		modelTrans_out.write("intercept\t" + ols_trans_intercept + "\n");
 
-			String dataNodePath = opts.dir + "/Node_" + leafName;
-			System.out.println("------------Processing leaf " + leafName + "------------");
+		for (int i_attr = 0; i_attr < col_num; i_attr++) {
+			modelTrans_out.write(ainfo_leaf.idToName(i_attr) + "\t");
+			for(int i_poly = 0; i_poly < opts.polyDegree; i_poly++){
+				modelTrans_out.write(ols_trans_coef[i_attr * opts.polyDegree + i_poly] + "\t" );
+			}
+			modelTrans_out.write(attr_range.get(i_attr).get(0) + "\t" + attr_range.get(i_attr).get(1) + "\n");
+		}
+		modelTrans_out.flush();
+		modelTrans_out.close();
 
-			// read dta file, only need to read the target column
+		long end_train = System.currentTimeMillis();
 
-			timeStamp("Load data");
+		System.out.println(leafName + ": Finished training OLS on this node in " + (end_train - start_load) / 1000.0 + " (s).");
+		System.out.println(leafName + ": Without loading data, the model training step takes " + (end_train - end_load) / 1000.0 + " (s).");
+	}
 
-			BufferedReader br_dta = new BufferedReader(new FileReader(dataNodePath + "/fir.dta"));
-			ArrayList<Double> y_double_arraylist = new ArrayList<Double>();
-			double y_sum = 0;
-			for(String line = br_dta.readLine(); line != null; line = br_dta.readLine()){
-				String[] data = line.split("\t+");
-				double y_current = Double.parseDouble(data[ainfo.getClsCol()]);
-				y_double_arraylist.add(y_current);
-				y_sum += y_current;
-			}
-			br_dta.close();
+	static void trainConstLeaf(String leafName, FirTree model, AttrInfo ainfo, Options opts) throws Exception {
+		String dataNodePath = opts.dir + "/Node_" + leafName;
+		System.out.println("------------Processing leaf " + leafName + "------------");
 
-			double y_mean = y_sum / y_double_arraylist.size();
-			System.out.println(y_mean);
+		// read dta file, only need to read the target column
 
-			timeStamp("Saving the const");
+		timeStamp(leafName + ": Load data");
 
-			String paramPath = model.getParamPath(leafName);
-			BufferedWriter const_out = new BufferedWriter(new FileWriter(paramPath));
-			const_out.write("Const: " + y_mean);
-			const_out.flush();
-			const_out.close();
+		BufferedReader br_dta = new BufferedReader(new FileReader(dataNodePath + "/fir.dta"));
+		ArrayList<Double> y_double_arraylist = new ArrayList<Double>();
+		double y_sum = 0;
+		Tokenizer data = new Tokenizer(true);
+		for(String line = br_dta.readLine(); line != null; line = br_dta.readLine()){
+			data.reset(line);
+			double y_current = data.getDoubleStrict(ainfo.getClsCol());
+			y_double_arraylist.add(y_current);
+			y_sum += y_current;
 		}
+		br_dta.close();
 
-		long end = System.currentTimeMillis();
-		System.out.println("Finished all in " + (end - start) / 1000.0 + " (s).");
+		double y_mean = y_sum / y_double_arraylist.size();
+		System.out.println(leafName + ": " + y_mean);
+
+		timeStamp(leafName + ": Saving the const");
+
+		String paramPath = model.getParamPath(leafName);
+		BufferedWriter const_out = new BufferedWriter(new FileWriter(paramPath));
+		const_out.write("Const: " + y_mean);
+		const_out.flush();
+		const_out.close();
 	}
 	
+	/**
+	 * Estimates the memory needed to train a regression leaf from the number of rows and
+	 * the number of columns of its design matrix.
+	 */
+	static long estimateBytes(String leafName, Options opts) throws IOException {
+		String dataNodePath = opts.dir + "/Node_" + leafName;
+		int col_num = AttributesReader.read(dataNodePath + "/fir.fs.fs.attr").attributes.size();
+		long rows = LeafExecutor.estimateRows(dataNodePath + "/fir.dta");
+		return LeafExecutor.estimateDesignBytes(rows, col_num, opts.polyDegree);
+	}
+
 	static Set<String> subsample(AttrInfo ainfo, Options opts, String dataPath) 
 			throws Exception {
 		Set<String> groupIdSet = new HashSet<String>();
@@ -226,9 +254,10 @@ public class RegressionOnLeaves {
 		
 		Map<String, Integer> groupSizes = new HashMap<String, Integer>();
 		BufferedReader br = new BufferedReader(new FileReader(dataPath));
+		Tokenizer data = new Tokenizer(false);
 		for (String line = br.readLine(); line != null; line = br.readLine()) {
-			String[] data = line.split("\t");
-			String groupId = data[ainfo.nameToCol.get(opts.group)];
+			data.reset(line);
+			String groupId = data.getString(ainfo.nameToCol.get(opts.group));
 			groupSizes.put(groupId, groupSizes.getOrDefault(groupId, 0) + 1);
 		}
 		br.close();
@@ -1,36 +1,59 @@
 package firtree;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
+import firtree.data.ChunkReader;
+import firtree.data.RowStore;
 import mltk.cmdline.Argument;
 import mltk.cmdline.CmdLineParser;
 import mltk.core.io.AttrInfo;
 import mltk.core.io.AttributesReader;
+import mltk.core.io.ColumnarData;
+import mltk.core.io.Row;
+import mltk.core.io.RowReader;
+import mltk.core.io.Tokenizer;
 
+/**
+ * Splits a training set into the leaves of a tree. Rows are streamed from the training
+ * set to the output of their leaf in file order; only a write buffer per leaf and the
+ * blocks in flight are held in memory. Blocks of a text training set are routed by
+ * several threads.
+ *
+ */
 public class SplitDataIntoLeaves {
-	
+
+	/**
+	 * The size of the write buffer of a leaf.
+	 */
+	static final int BUFFER_SIZE = 1 << 20;
+
 	static class Options {
 		@Argument(name="-l", description="(cropped) treelog.txt which specifies a tree structure", required=true)
 		String logPath = "";
-		
+
 		@Argument(name = "-r", description = "attribute file", required = true)
 		String attPath = "";
-		
-		@Argument(name = "-t", description = "training set", required = true)
+
+		@Argument(name = "-t", description = "training set (text or columnar)", required = true)
 		String trainPath = "";
+
+		@Argument(name = "-b", description = "write leaf data in the columnar format (fir.col) instead of fir.dta (default: false)")
+		boolean binary = false;
+
+		@Argument(name = "-n", description = "number of threads routing rows of a text training set (default: #cores)")
+		int threadN = Runtime.getRuntime().availableProcessors();
 	}
-	
+
 	public static void main(String[] args) throws Exception {
 		Options opts = new Options();
 		CmdLineParser parser = new CmdLineParser(SplitDataIntoLeaves.class, opts);
@@ -40,41 +63,232 @@ public class SplitDataIntoLeaves {
 			parser.printUsage();
 			System.exit(1);
 		}
-		
+
 		// Load attribute file
 		AttrInfo ainfo = AttributesReader.read(opts.attPath);
-		
+
 		// Load tree structure and initial parameter values
 		FirTree model = new FirTree(ainfo, opts.logPath, -1, "");
-		
+		CompiledFirTree router = model.compileSplits();
+
 		System.out.printf("Read data from %s\n", opts.trainPath);
-		Map<String, List<String>> leafToLines = new HashMap<>();
-		BufferedReader br = new BufferedReader(new FileReader(opts.trainPath));
-		for (String line = br.readLine(); line != null; line = br.readLine()) {
-			String[] data = line.split("\t");
-			
-			// Predict index of the node (must be a leaf) the instance falls in
-			int nodeIndex = model.indexLeaf(data);
-			String leaf = model.getNodeName(nodeIndex);
-			if (! leafToLines.containsKey(leaf)) {
-				leafToLines.put(leaf, new ArrayList<>());
+		String attText = opts.binary ? new String(Files.readAllBytes(Paths.get(opts.attPath))) : null;
+		LeafOutput[] outputs = new LeafOutput[model.getNumNodes()];
+		if (ColumnarData.isColumnar(opts.trainPath)) {
+			double[] values = new double[ainfo.getColN()];
+			try (RowReader reader = RowReader.open(opts.trainPath, false)) {
+				while (reader.next()) {
+					Row data = reader.row();
+					int nodeIndex = route(router, ainfo.getColN(), data, values);
+					output(outputs, model, nodeIndex, opts.binary, attText).write(reader);
+				}
+			}
+		} else {
+			try (ChunkReader reader = new ChunkReader(new FileInputStream(opts.trainPath), RowStore.BLOCK_SIZE)) {
+				reader.process(Math.max(opts.threadN, 1),
+						chunk -> new Routing(chunk, router, ainfo.getColN(), outputs.length),
+						(chunk, routing) -> {
+							for (int node = 0; node < outputs.length; node++) {
+								if (routing.start[node] < routing.start[node + 1]) {
+									output(outputs, model, node, opts.binary, attText)
+										.write(routing.data, routing.start[node], routing.start[node + 1]);
+								}
+							}
+						});
+			}
+		}
+
+		for (LeafOutput output : outputs) {
+			if (output != null) {
+				output.close();
+				System.out.printf("Save %d instances into %s\n", output.size, output.path);
+				// A stale file in the other format must not be read instead
+				Files.deleteIfExists(output.path.resolveSibling(opts.binary ? "fir.dta" : "fir" + ColumnarData.EXTENSION));
+			}
+		}
+	}
+
+	/**
+	 * Returns the leaf a row falls in, as {@link FirTree#indexLeaf(Row)} does.
+	 * Only the split columns are parsed into <code>values</code>.
+	 */
+	static int route(CompiledFirTree router, int colN, Row data, double[] values) {
+		if (data.size() != colN) {
+			System.err.println("FirTree.indexLeaf: The number of columns in the data does not match the number of attributes in the file");
+			System.exit(1);
+		}
+		for (int col : router.getUsedColumns()) {
+			values[col] = data.getDoubleStrict(col);
+		}
+		return router.indexLeaf(values);
+	}
+
+	private static LeafOutput output(LeafOutput[] outputs, FirTree model, int node,
+			boolean binary, String attText) throws IOException {
+		if (outputs[node] == null) {
+			String dir = createDir(model, model.getNodeName(node));
+			outputs[node] = binary ? new ColumnarOutput(Paths.get(dir, "fir" + ColumnarData.EXTENSION), attText)
+					: new TextOutput(Paths.get(dir, "fir.dta"));
+		}
+		return outputs[node];
+	}
+
+	private static String createDir(FirTree model, String leaf) {
+		File dir = new File(CoorAscentOnLeaves.getNodeDir(model.dir, leaf));
+		if (! dir.exists()) {
+			dir.mkdirs();
+		}
+		return dir.getAbsolutePath();
+	}
+
+	/**
+	 * The lines of a block grouped by leaf, in file order within a leaf. The lines of
+	 * leaf <code>k</code> are <code>data[start[k]..start[k + 1])</code>, each ended by '\n'.
+	 */
+	static class Routing {
+
+		final byte[] data;
+		final int[] start;
+
+		Routing(ChunkReader.Chunk chunk, CompiledFirTree router, int colN, int nodeN) {
+			Tokenizer tokenizer = new Tokenizer(false);
+			double[] values = new double[colN];
+			byte[] b = chunk.data;
+			int lineN = 0;
+			for (int i = 0; i < chunk.length; i++) {
+				if (b[i] == '\n') {
+					lineN++;
+				}
+			}
+			int[] lineStart = new int[lineN];
+			int[] lineEnd = new int[lineN];
+			int[] lineNode = new int[lineN];
+			int[] count = new int[nodeN + 1];
+			int length = 0;
+			for (int pos = 0, line = 0; line < lineN; line++) {
+				int end = pos;
+				while (b[end] != '\n') {
+					end++;
+				}
+				lineStart[line] = pos;
+				// Lines are written as BufferedReader.readLine() returns them
+				lineEnd[line] = end > pos && b[end - 1] == '\r' ? end - 1 : end;
+				tokenizer.reset(b, pos, lineEnd[line]);
+				lineNode[line] = route(router, colN, tokenizer, values);
+				count[lineNode[line] + 1] += lineEnd[line] - pos + 1;
+				length += lineEnd[line] - pos + 1;
+				pos = end + 1;
+			}
+			for (int node = 0; node < nodeN; node++) {
+				count[node + 1] += count[node];
+			}
+			start = count.clone();
+			data = new byte[length];
+			for (int line = 0; line < lineN; line++) {
+				int len = lineEnd[line] - lineStart[line];
+				int at = count[lineNode[line]];
+				System.arraycopy(b, lineStart[line], data, at, len);
+				data[at + len] = '\n';
+				count[lineNode[line]] += len + 1;
 			}
-			leafToLines.get(leaf).add(line);
-		}
-		br.close();
-		
-		for (String leaf : leafToLines.keySet()) {
-			List<String> lines = leafToLines.get(leaf);
-			File dir = new File(CoorAscentOnLeaves.getNodeDir(model.dir, leaf));
-			if (! dir.exists()) {
-				dir.mkdirs();
+		}
+
+	}
+
+	/**
+	 * The output file of a leaf.
+	 */
+	static abstract class LeafOutput implements Closeable {
+
+		final Path path;
+		long size;
+
+		LeafOutput(Path path) {
+			this.path = path;
+		}
+
+		/**
+		 * Writes lines, each ended by '\n'.
+		 */
+		abstract void write(byte[] data, int start, int end) throws IOException;
+
+		/**
+		 * Writes the current row of a reader.
+		 */
+		abstract void write(RowReader reader) throws IOException;
+
+	}
+
+	static class TextOutput extends LeafOutput {
+
+		private OutputStream out;
+
+		TextOutput(Path path) throws IOException {
+			this(path, path);
+		}
+
+		TextOutput(Path path, Path filePath) throws IOException {
+			super(path);
+			out = new BufferedOutputStream(new FileOutputStream(filePath.toFile()), BUFFER_SIZE);
+		}
+
+		@Override
+		void write(byte[] data, int start, int end) throws IOException {
+			out.write(data, start, end - start);
+			for (int i = start; i < end; i++) {
+				if (data[i] == '\n') {
+					size++;
+				}
 			}
-			
-			Path outPath = Paths.get(dir.getAbsolutePath(), "fir.dta");
-			System.out.printf("Save %d instances into %s\n", lines.size(), outPath);
-			Files.deleteIfExists(outPath);
-			Files.write(outPath, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE);
 		}
+
+		@Override
+		void write(RowReader reader) throws IOException {
+			out.write(reader.getLine().getBytes(StandardCharsets.UTF_8));
+			out.write('\n');
+			size++;
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+
+	}
+
+	/**
+	 * Columnar output. While rows are routed, the lines of the leaf go through the write
+	 * buffer to a temporary text file; the columnar file is built from it when the output
+	 * is closed, so only one leaf is converted at a time.
+	 */
+	static class ColumnarOutput extends TextOutput {
+
+		private final Path tmpPath;
+		private final String attText;
+
+		ColumnarOutput(Path path, String attText) throws IOException {
+			this(path, Paths.get(path + ".tmp"), attText);
+		}
+
+		private ColumnarOutput(Path path, Path tmpPath, String attText) throws IOException {
+			super(path, tmpPath);
+			this.tmpPath = tmpPath;
+			this.attText = attText;
+		}
+
+		@Override
+		public void close() throws IOException {
+			super.close();
+			try (ColumnarData.Writer writer = new ColumnarData.Writer(path.toString(), attText, AttrInfo.GROUP_UNSET);
+					RowReader reader = RowReader.open(tmpPath.toString(), false)) {
+				while (reader.next()) {
+					writer.add(reader.row());
+				}
+			} finally {
+				Files.deleteIfExists(tmpPath);
+			}
+		}
+
 	}
 
 }
@@ -0,0 +1,173 @@
+package firtree;
+
+import java.util.Arrays;
+
+import mltk.core.BinStats;
+import mltk.core.FeatureIndex;
+import mltk.core.Instances;
+import mltk.core.Pointers;
+
+/**
+ * Class for evaluating all the split points of one candidate feature. The rank of
+ * every instance among the split points is computed once for the feature, so the
+ * data for each split point is a single pass over integer ranks. The per-bin
+ * statistics of the parent are shared: the smaller child of a split computes its
+ * own, and the larger child gets them by subtraction from the parent.
+ *
+ */
+public class SplitSweep {
+
+	/**
+	 * Class for the data of both children of one split.
+	 */
+	public static class Split {
+
+		public Pointers trainLeft;
+		public Pointers trainRight;
+		public Pointers validLeft;
+		public Pointers validRight;
+		public BinStats leftStats;
+		public BinStats rightStats;
+
+	}
+
+	private Instances trainSet;
+	private Instances validSet;
+	private BinStats parentStats;
+	private int attIndex;
+	private double[] splitPoints;
+	private double[] searchPoints;
+	private boolean sorted;
+	private int[] trainRanks;
+	private int[] validRanks;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param trainSet the training set of the node.
+	 * @param validSet the validation set of the node.
+	 * @param parentStats the per-bin statistics of the whole training set.
+	 * @param attIndex the index of the split feature.
+	 * @param splitPoints the split points.
+	 */
+	public SplitSweep(Instances trainSet, Instances validSet, BinStats parentStats, int attIndex, double[] splitPoints) {
+		this.trainSet = trainSet;
+		this.validSet = validSet;
+		this.parentStats = parentStats;
+		this.attIndex = attIndex;
+		this.splitPoints = splitPoints;
+		// Maps -0.0 to 0.0, binary search would order them
+		searchPoints = new double[splitPoints.length];
+		for (int j = 0; j < splitPoints.length; j++) {
+			searchPoints[j] = splitPoints[j] + 0.0;
+		}
+		sorted = true;
+		for (int j = 0; j < splitPoints.length; j++) {
+			if (Double.isNaN(splitPoints[j]) || (j > 0 && splitPoints[j - 1] >= splitPoints[j])) {
+				sorted = false;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of split points.
+	 *
+	 * @return the number of split points.
+	 */
+	public int size() {
+		return splitPoints.length;
+	}
+
+	/**
+	 * Returns a split point.
+	 *
+	 * @param j the index of the split point.
+	 * @return the split point.
+	 */
+	public double getSplitPoint(int j) {
+		return splitPoints[j];
+	}
+
+	/**
+	 * Returns the data of the children of a split. An instance goes left if its value is
+	 * not greater than the split point, or if both are missing.
+	 *
+	 * @param j the index of the split point.
+	 * @return the data of the children.
+	 */
+	public Split getSplit(int j) {
+		Split split = new Split();
+		split.trainLeft = new Pointers();
+		split.trainRight = new Pointers();
+		split.validLeft = new Pointers();
+		split.validRight = new Pointers();
+		if (sorted) {
+			computeRanks();
+			partition(trainRanks, j, split.trainLeft, split.trainRight);
+			partition(validRanks, j, split.validLeft, split.validRight);
+		} else {
+			InteractionTreeLearnerGAMMC.split(trainSet, attIndex, splitPoints[j], split.trainLeft, split.trainRight);
+			InteractionTreeLearnerGAMMC.split(validSet, attIndex, splitPoints[j], split.validLeft, split.validRight);
+		}
+		
+		FeatureIndex index = parentStats.getFeatureIndex();
+		if (split.trainLeft.size() <= split.trainRight.size()) {
+			split.leftStats = BinStats.compute(index, split.trainLeft);
+			split.rightStats = parentStats.subtract(split.leftStats, split.trainRight);
+		} else {
+			split.rightStats = BinStats.compute(index, split.trainRight);
+			split.leftStats = parentStats.subtract(split.rightStats, split.trainLeft);
+		}
+		return split;
+	}
+
+	private static void partition(int[] ranks, int j, Pointers left, Pointers right) {
+		for (int i = 0; i < ranks.length; i++) {
+			if (ranks[i] <= j) {
+				left.add(i);
+			} else {
+				right.add(i);
+			}
+		}
+	}
+
+	/**
+	 * Computes for every instance the index of the first split point not less than its value.
+	 */
+	private synchronized void computeRanks() {
+		if (trainRanks != null) {
+			return;
+		}
+		FeatureIndex index = parentStats.getFeatureIndex();
+		int[] ranks = new int[trainSet.size()];
+		if (index.isIndexed(trainSet, attIndex)) {
+			double[] values = index.getValues(attIndex);
+			int[] binRanks = new int[values.length];
+			for (int bin = 0; bin < values.length; bin++) {
+				binRanks[bin] = rank(values[bin]);
+			}
+			int[] bins = index.getBins(attIndex);
+			for (int i = 0; i < ranks.length; i++) {
+				ranks[i] = binRanks[bins[i]];
+			}
+		} else {
+			for (int i = 0; i < ranks.length; i++) {
+				ranks[i] = rank(trainSet.get(i).getValue(attIndex));
+			}
+		}
+		validRanks = new int[validSet.size()];
+		for (int i = 0; i < validRanks.length; i++) {
+			validRanks[i] = rank(validSet.get(i).getValue(attIndex));
+		}
+		trainRanks = ranks;
+	}
+
+	private int rank(double value) {
+		if (Double.isNaN(value)) {
+			return splitPoints.length;
+		}
+		int pos = Arrays.binarySearch(searchPoints, value + 0.0);
+		return pos >= 0 ? pos : -pos - 1;
+	}
+
+}
@@ -0,0 +1,174 @@
+package firtree;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mltk.util.WorkerPool;
+
+/**
+ * Work-stealing scheduler shared by all the nodes of a FirTree build. Tasks are
+ * submitted in phases (e.g. split evaluation of one node); results of a phase are
+ * returned in completion order, and every phase tracks how busy the cores were
+ * while it was running.
+ *
+ */
+public class TaskScheduler {
+
+	private ForkJoinPool pool;
+	private AtomicLong busyNanos;
+	private long startNanos;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param parallelism the number of worker threads.
+	 */
+	public TaskScheduler(int parallelism) {
+		pool = new ForkJoinPool(Math.max(1, parallelism));
+		busyNanos = new AtomicLong();
+		startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Returns the number of worker threads.
+	 *
+	 * @return the number of worker threads.
+	 */
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Starts a new phase.
+	 *
+	 * @param name the name of the phase used in reports.
+	 * @return a new phase.
+	 */
+	public <T> Phase<T> newPhase(String name) {
+		return new Phase<>(name);
+	}
+
+	/**
+	 * Returns the utilization of the cores since the scheduler was created.
+	 *
+	 * @return the report.
+	 */
+	public String report() {
+		return report("Total", busyNanos.get(), System.nanoTime() - startNanos, -1);
+	}
+
+	/**
+	 * Shuts down the scheduler and waits for running tasks.
+	 *
+	 * @throws InterruptedException
+	 */
+	public void shutdown() throws InterruptedException {
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	private String report(String name, long busy, long wall, int tasks) {
+		double utilization = wall > 0 ? 100.0 * busy / ((double) wall * getParallelism()) : 0;
+		return String.format("%s: %s%.2f (s) wall, %.2f (s) busy, %.1f%% of %d cores", name,
+				tasks >= 0 ? tasks + " tasks, " : "", wall / 1e9, busy / 1e9, utilization, getParallelism());
+	}
+
+	/**
+	 * Class for a group of tasks whose results are consumed together.
+	 *
+	 * @param <T> the type of the results.
+	 */
+	public class Phase<T> {
+
+		private String name;
+		private ExecutorCompletionService<T> completion;
+		private AtomicLong phaseBusyNanos;
+		private long phaseStartNanos;
+		private long phaseEndNanos;
+		private int submitted;
+		private int pending;
+
+		Phase(String name) {
+			this.name = name;
+			completion = new ExecutorCompletionService<>(pool);
+			phaseBusyNanos = new AtomicLong();
+			phaseStartNanos = System.nanoTime();
+		}
+
+		/**
+		 * Submits a task.
+		 *
+		 * @param task the task.
+		 * @return the future of the task, as returned later by {@link #take()}.
+		 */
+		public Future<T> submit(Callable<T> task) {
+			submitted++;
+			pending++;
+			return completion.submit(() -> {
+				long start = System.nanoTime();
+				// Parallel loops inside the task only add threads while cores are idle
+				WorkerPool.enter();
+				try {
+					return task.call();
+				} finally {
+					WorkerPool.exit();
+					long elapsed = System.nanoTime() - start;
+					phaseBusyNanos.addAndGet(elapsed);
+					busyNanos.addAndGet(elapsed);
+				}
+			});
+		}
+
+		/**
+		 * Returns whether some submitted tasks have not been taken yet.
+		 *
+		 * @return whether some submitted tasks have not been taken yet.
+		 */
+		public boolean hasPending() {
+			return pending > 0;
+		}
+
+		/**
+		 * Waits for the next completed task.
+		 *
+		 * @return the future of the completed task.
+		 * @throws InterruptedException
+		 */
+		public Future<T> take() throws InterruptedException {
+			Future<T> future = completion.take();
+			pending--;
+			if (pending == 0) {
+				phaseEndNanos = System.nanoTime();
+			}
+			return future;
+		}
+
+		/**
+		 * Waits for the next completed task and returns its result.
+		 *
+		 * @return the result of the completed task.
+		 * @throws InterruptedException
+		 * @throws ExecutionException if the task threw an exception.
+		 */
+		public T takeResult() throws InterruptedException, ExecutionException {
+			return take().get();
+		}
+
+		/**
+		 * Returns the utilization of the cores by this phase. Phases of different
+		 * nodes run concurrently, so each of them reports its own share.
+		 *
+		 * @return the report.
+		 */
+		public String report() {
+			long end = pending == 0 && phaseEndNanos > 0 ? phaseEndNanos : System.nanoTime();
+			return TaskScheduler.this.report(name, phaseBusyNanos.get(), end - phaseStartNanos, submitted);
+		}
+	}
+
+}
@@ -0,0 +1,214 @@
+package firtree.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Class for reading a text file in large blocks of complete lines. Blocks can be
+ * processed by several threads while the next ones are read; the results are handed
+ * back in file order.
+ *
+ * <p>Every block ends with '\n'; a last line without a line terminator gets one.</p>
+ *
+ */
+public class ChunkReader implements Closeable {
+
+	/**
+	 * Class for a block of complete lines.
+	 */
+	public static class Chunk {
+
+		/**
+		 * The bytes of the block. Bytes after <code>length</code> are not part of it.
+		 */
+		public final byte[] data;
+
+		/**
+		 * The number of bytes in the block.
+		 */
+		public final int length;
+
+		/**
+		 * The position of the block in the file, starting from 0.
+		 */
+		public final long index;
+
+		Chunk(byte[] data, int length, long index) {
+			this.data = data;
+			this.length = length;
+			this.index = index;
+		}
+
+	}
+
+	/**
+	 * Interface for processing a block. It is called from worker threads.
+	 *
+	 * @param <T> the type of the result.
+	 */
+	public interface Processor<T> {
+
+		T process(Chunk chunk) throws Exception;
+
+	}
+
+	/**
+	 * Interface for receiving the results. It is called from the calling thread in file order.
+	 *
+	 * @param <T> the type of the result.
+	 */
+	public interface Sink<T> {
+
+		void accept(Chunk chunk, T result) throws Exception;
+
+	}
+
+	private InputStream in;
+	private int blockSize;
+	private byte[] carry;
+	private int carryLength;
+	private boolean eof;
+	private long index;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param in the input stream.
+	 * @param blockSize the size of a block; a longer line gets a larger block.
+	 */
+	public ChunkReader(InputStream in, int blockSize) {
+		this.in = in;
+		this.blockSize = blockSize;
+		this.carry = new byte[0];
+	}
+
+	/**
+	 * Reads the next block. A new array is allocated for every block, so that blocks can
+	 * be kept (e.g. by {@link RowStore#addBlock(byte[], int[], int, int)}).
+	 *
+	 * @return the next block, or <code>null</code> at the end of the stream.
+	 * @throws IOException
+	 */
+	public Chunk next() throws IOException {
+		if (eof && carryLength == 0) {
+			return null;
+		}
+		byte[] block = new byte[Math.max(blockSize, carryLength * 2)];
+		System.arraycopy(carry, 0, block, 0, carryLength);
+		int length = carryLength;
+		for (;;) {
+			while (!eof && length < block.length) {
+				int n = in.read(block, length, block.length - length);
+				if (n < 0) {
+					eof = true;
+				} else {
+					length += n;
+				}
+			}
+			int end = length;
+			while (end > 0 && block[end - 1] != '\n') {
+				end--;
+			}
+			if (eof) {
+				carryLength = 0;
+				if (length == 0) {
+					return null;
+				}
+				if (end < length) {
+					if (length == block.length) {
+						block = Arrays.copyOf(block, length + 1);
+					}
+					block[length++] = '\n';
+				}
+				return new Chunk(block, length, index++);
+			}
+			if (end > 0) {
+				carryLength = length - end;
+				if (carry.length < carryLength) {
+					carry = new byte[Math.max(carryLength, blockSize >> 4)];
+				}
+				System.arraycopy(block, end, carry, 0, carryLength);
+				return new Chunk(block, end, index++);
+			}
+			// A line longer than the block
+			block = Arrays.copyOf(block, block.length * 2);
+		}
+	}
+
+	/**
+	 * Reads all blocks and processes them with a number of threads. While blocks are
+	 * processed, the next ones are read by a separate thread; at most
+	 * <code>2 * nThreads</code> blocks are in flight.
+	 *
+	 * @param nThreads the number of worker threads.
+	 * @param processor the processor of a block.
+	 * @param sink the receiver of the results, called in file order.
+	 * @throws Exception the first exception thrown while reading or processing.
+	 */
+	public <T> void process(int nThreads, Processor<T> processor, Sink<T> sink) throws Exception {
+		ExecutorService workers = Executors.newFixedThreadPool(nThreads);
+		BlockingQueue<Future<Object[]>> queue = new ArrayBlockingQueue<>(2 * nThreads);
+		Future<Object[]> endOfStream = workers.submit(() -> null);
+		Thread reader = new Thread(() -> {
+			try {
+				for (;;) {
+					Chunk chunk;
+					try {
+						chunk = next();
+					} catch (IOException e) {
+						queue.put(workers.submit(() -> {
+							throw e;
+						}));
+						break;
+					}
+					if (chunk == null) {
+						break;
+					}
+					queue.put(workers.submit(() -> new Object[] { chunk, processor.process(chunk) }));
+				}
+				queue.put(endOfStream);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, "ChunkReader");
+		reader.setDaemon(true);
+		reader.start();
+		try {
+			for (;;) {
+				Future<Object[]> future = queue.take();
+				if (future == endOfStream) {
+					break;
+				}
+				Object[] result;
+				try {
+					result = future.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception) {
+						throw (Exception) e.getCause();
+					}
+					throw e;
+				}
+				@SuppressWarnings("unchecked")
+				T value = (T) result[1];
+				sink.accept((Chunk) result[0], value);
+			}
+		} finally {
+			reader.interrupt();
+			workers.shutdownNow();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+}
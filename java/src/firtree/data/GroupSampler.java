@@ -0,0 +1,337 @@
+package firtree.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import mltk.util.tuple.Pair;
+
+/**
+ * Class for drawing train and validation samples from the rows of a node, keeping the
+ * rows of a group together. Several samples can be drawn in one pass over the node.
+ *
+ * <p>A group is assigned to a sample by a hash of its id and the seed of the sample, so
+ * samples are reproducible for a seed and independent of the number of threads or the
+ * order of groups in the data. Two modes are supported:</p>
+ * <ul>
+ * <li>{@link Mode#BERNOULLI}: every group is taken independently with the requested
+ * portion as its probability.</li>
+ * <li>{@link Mode#RESERVOIR}: groups are ranked by their hash and taken in this order
+ * until the requested number of rows is reached, so sample sizes are exact up to the
+ * size of the last group.</li>
+ * </ul>
+ *
+ * <p>When the portions differ for rows with zero and non-zero response, groups are
+ * selected with the larger of the two portions and rows are then kept with the ratio
+ * of their own portion to it.</p>
+ *
+ */
+public class GroupSampler {
+
+	/**
+	 * Enumeration of sampling modes.
+	 */
+	public enum Mode {
+
+		BERNOULLI("bernoulli"), RESERVOIR("reservoir");
+
+		String mode;
+
+		Mode(String mode) {
+			this.mode = mode;
+		}
+
+		public String toString() {
+			return mode;
+		}
+
+		/**
+		 * Parses a mode from its name.
+		 *
+		 * @param mode the name of the mode.
+		 * @return a parsed mode.
+		 * @throws IllegalArgumentException if the name is not a mode.
+		 */
+		public static Mode get(String mode) {
+			for (Mode m : Mode.values()) {
+				if (m.mode.equals(mode)) {
+					return m;
+				}
+			}
+			throw new IllegalArgumentException("Invalid sampling mode: " + mode);
+		}
+
+	}
+
+	/**
+	 * Class for the portions of a sample.
+	 */
+	public static class Spec {
+
+		double train;
+		double valid;
+		double zeroTrain;
+		double zeroValid;
+		boolean byTarget;
+		long seed;
+
+		/**
+		 * Constructs a sample that takes the same portion of all rows.
+		 *
+		 * @param train the portion of rows in the train set.
+		 * @param valid the portion of rows in the validation set.
+		 * @param seed the random seed.
+		 */
+		public Spec(double train, double valid, long seed) {
+			this(train, valid, train, valid, seed);
+			this.byTarget = false;
+		}
+
+		/**
+		 * Constructs a sample with different portions for rows with zero response.
+		 *
+		 * @param train the portion of rows with non-zero response in the train set.
+		 * @param valid the portion of rows with non-zero response in the validation set.
+		 * @param zeroTrain the portion of rows with zero response in the train set.
+		 * @param zeroValid the portion of rows with zero response in the validation set.
+		 * @param seed the random seed.
+		 */
+		public Spec(double train, double valid, double zeroTrain, double zeroValid, long seed) {
+			this.train = train;
+			this.valid = valid;
+			this.zeroTrain = zeroTrain;
+			this.zeroValid = zeroValid;
+			this.byTarget = true;
+			this.seed = seed;
+		}
+
+	}
+
+	private int groupCol;
+	private int clsCol;
+	private Mode mode;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param groupCol the column of the group id, -1 if every row is its own group.
+	 * @param clsCol the column of the response.
+	 * @param mode the sampling mode.
+	 */
+	public GroupSampler(int groupCol, int clsCol, Mode mode) {
+		this.groupCol = groupCol;
+		this.clsCol = clsCol;
+		this.mode = mode;
+	}
+
+	/**
+	 * Draws samples from a node. The rows of a sample keep their order in the node.
+	 *
+	 * @param node the node.
+	 * @param specs the portions of each sample.
+	 * @return the train and validation sets of each sample.
+	 */
+	public List<Pair<NodeData, NodeData>> sample(NodeData node, Spec... specs) {
+		int n = node.size();
+		RowStore store = node.getStore();
+		double[] cls = store.getColumn(clsCol);
+
+		// Group ids
+		int[] groupOf = new int[n];
+		int numGroups;
+		long[] groupKey;
+		if (groupCol < 0) {
+			groupKey = new long[n];
+			for (int i = 0; i < n; i++) {
+				groupOf[i] = i;
+				groupKey[i] = node.getRow(i);
+			}
+			numGroups = n;
+		} else {
+			Map<Long, Integer> index = new HashMap<>();
+			long[] keys = new long[16];
+			for (int i = 0; i < n; i++) {
+				long key = store.hashField(node.getRow(i), groupCol);
+				Integer g = index.get(key);
+				if (g == null) {
+					g = index.size();
+					index.put(key, g);
+					if (g == keys.length) {
+						keys = Arrays.copyOf(keys, keys.length * 2);
+					}
+					keys[g] = key;
+				}
+				groupOf[i] = g;
+			}
+			numGroups = index.size();
+			groupKey = keys;
+		}
+
+		List<Pair<NodeData, NodeData>> samples = new ArrayList<>(specs.length);
+		for (int s = 0; s < specs.length; s++) {
+			byte[] assignment = mode == Mode.BERNOULLI ?
+					assignBernoulli(node, cls, groupOf, groupKey, numGroups, specs[s]) :
+					assignReservoir(node, cls, groupOf, groupKey, numGroups, specs[s]);
+			samples.add(new Pair<>(node.subset(assignment, TRAIN), node.subset(assignment, VALID)));
+		}
+		return samples;
+	}
+
+	static final byte NONE = 0;
+	static final byte TRAIN = 1;
+	static final byte VALID = 2;
+
+	private byte[] assignBernoulli(NodeData node, double[] cls, int[] groupOf, long[] groupKey,
+			int numGroups, Spec spec) {
+		double maxTrain = Math.max(spec.train, spec.zeroTrain);
+		double maxValid = Math.max(spec.valid, spec.zeroValid);
+		byte[] groupSet = new byte[numGroups];
+		for (int g = 0; g < numGroups; g++) {
+			double u = unit(mix(spec.seed, groupKey[g]));
+			if (u < maxTrain) {
+				groupSet[g] = TRAIN;
+			} else if (u < maxTrain + maxValid) {
+				groupSet[g] = VALID;
+			}
+		}
+		byte[] assignment = new byte[node.size()];
+		long rowSeed = mix(spec.seed, 0x5851f42d4c957f2dL);
+		for (int i = 0; i < assignment.length; i++) {
+			byte set = groupSet[groupOf[i]];
+			if (set == NONE) {
+				continue;
+			}
+			if (spec.byTarget) {
+				int row = node.getRow(i);
+				boolean zero = cls[row] == 0;
+				double keep = set == TRAIN ?
+						(zero ? spec.zeroTrain : spec.train) / maxTrain :
+						(zero ? spec.zeroValid : spec.valid) / maxValid;
+				if (keep < 1 && unit(mix(rowSeed, row)) >= keep) {
+					continue;
+				}
+			}
+			assignment[i] = set;
+		}
+		return assignment;
+	}
+
+	private byte[] assignReservoir(NodeData node, double[] cls, int[] groupOf, long[] groupKey,
+			int numGroups, Spec spec) {
+		int n = node.size();
+		int[] groupSize = new int[numGroups];
+		int[] groupNonzero = new int[numGroups];
+		int nonzero = 0;
+		for (int i = 0; i < n; i++) {
+			groupSize[groupOf[i]]++;
+			if (cls[node.getRow(i)] != 0) {
+				groupNonzero[groupOf[i]]++;
+				nonzero++;
+			}
+		}
+
+		// Rank groups by hash; the lower 31 bits hold the group to break ties
+		long[] ranked = new long[numGroups];
+		for (int g = 0; g < numGroups; g++) {
+			ranked[g] = (mix(spec.seed, groupKey[g]) >>> 1 & ~0x7fffffffL) | g;
+		}
+		Arrays.sort(ranked);
+
+		// Groups are filled by non-zero rows when portions differ by response
+		int[] counts = spec.byTarget ? groupNonzero : groupSize;
+		long total = spec.byTarget ? nonzero : n;
+		long trainBudget = Math.round(spec.train * total);
+		long validBudget = Math.round(spec.valid * total);
+		byte[] groupSet = new byte[numGroups];
+		long trainRows = 0;
+		long validRows = 0;
+		for (long r : ranked) {
+			int g = (int) (r & 0x7fffffffL);
+			if (trainRows < trainBudget) {
+				groupSet[g] = TRAIN;
+				trainRows += counts[g];
+			} else if (validRows < validBudget) {
+				groupSet[g] = VALID;
+				validRows += counts[g];
+			} else {
+				break;
+			}
+		}
+
+		byte[] assignment = new byte[n];
+		for (int i = 0; i < n; i++) {
+			assignment[i] = groupSet[groupOf[i]];
+		}
+		if (spec.byTarget) {
+			int zero = n - nonzero;
+			long rowSeed = mix(spec.seed, 0x5851f42d4c957f2dL);
+			keepZeros(node, cls, assignment, TRAIN, Math.round(spec.zeroTrain * zero), rowSeed);
+			keepZeros(node, cls, assignment, VALID, Math.round(spec.zeroValid * zero), rowSeed);
+		}
+		return assignment;
+	}
+
+	/**
+	 * Keeps the k rows with zero response of a set that have the smallest hash, or all
+	 * of them if there are fewer.
+	 */
+	private static void keepZeros(NodeData node, double[] cls, byte[] assignment, byte set, long k,
+			long rowSeed) {
+		int m = 0;
+		for (int i = 0; i < assignment.length; i++) {
+			if (assignment[i] == set && cls[node.getRow(i)] == 0) {
+				m++;
+			}
+		}
+		if (m <= k) {
+			return;
+		}
+		long[] hashes = new long[m];
+		m = 0;
+		for (int i = 0; i < assignment.length; i++) {
+			if (assignment[i] == set && cls[node.getRow(i)] == 0) {
+				hashes[m++] = mix(rowSeed, node.getRow(i));
+			}
+		}
+		long[] sorted = hashes.clone();
+		Arrays.sort(sorted);
+		long threshold = k == 0 ? Long.MIN_VALUE : sorted[(int) k - 1];
+		long below = 0;
+		for (long h : sorted) {
+			if (h >= threshold) {
+				break;
+			}
+			below++;
+		}
+		long ties = k - below;
+		m = 0;
+		for (int i = 0; i < assignment.length; i++) {
+			if (assignment[i] == set && cls[node.getRow(i)] == 0) {
+				long h = hashes[m++];
+				if (k == 0 || h > threshold || h == threshold && ties-- <= 0) {
+					assignment[i] = NONE;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Mixes a key with a seed (the SplitMix64 finalizer).
+	 */
+	static long mix(long seed, long key) {
+		long z = seed * 0x9e3779b97f4a7c15L + key;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Maps a hash to a uniform value in [0, 1).
+	 */
+	static double unit(long hash) {
+		return (hash >>> 11) * 0x1.0p-53;
+	}
+
+}
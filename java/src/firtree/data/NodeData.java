@@ -0,0 +1,217 @@
+package firtree.data;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import mltk.core.Instances;
+import mltk.core.io.AttrInfo;
+import mltk.util.tuple.Pair;
+
+/**
+ * Class for the data of a FirTree node. A node is a view on the rows of the
+ * root {@link RowStore}; splitting a node partitions its row indices, the rows
+ * themselves are never copied.
+ *
+ */
+public class NodeData {
+
+	private RowStore store;
+	private int clsCol;
+	private int[] rows;
+	private int size;
+	private int zeroSize;
+
+	/**
+	 * Constructs the root node covering all rows of the store.
+	 *
+	 * @param store the row store.
+	 * @param clsCol the column of the response.
+	 */
+	public NodeData(RowStore store, int clsCol) {
+		this.store = store;
+		this.clsCol = clsCol;
+		this.size = store.size();
+		this.rows = new int[size];
+		double[] cls = store.getColumn(clsCol);
+		for (int i = 0; i < size; i++) {
+			rows[i] = i;
+			if (cls[i] == 0) {
+				zeroSize++;
+			}
+		}
+	}
+
+	/**
+	 * Constructs the root node covering all rows of the store, with the number of rows
+	 * with zero response counted while the rows were added.
+	 *
+	 * @param store the row store.
+	 * @param clsCol the column of the response.
+	 * @param zeroSize the number of rows with zero response.
+	 */
+	public NodeData(RowStore store, int clsCol, int zeroSize) {
+		this.store = store;
+		this.clsCol = clsCol;
+		this.size = store.size();
+		this.rows = new int[size];
+		for (int i = 0; i < size; i++) {
+			rows[i] = i;
+		}
+		this.zeroSize = zeroSize;
+	}
+
+	private NodeData(RowStore store, int clsCol, int[] rows, int size, int zeroSize) {
+		this.store = store;
+		this.clsCol = clsCol;
+		this.rows = rows;
+		this.size = size;
+		this.zeroSize = zeroSize;
+	}
+
+	/**
+	 * Returns the number of rows in this node.
+	 *
+	 * @return the number of rows in this node.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of rows with zero response in this node.
+	 *
+	 * @return the number of rows with zero response in this node.
+	 */
+	public int zeroSize() {
+		return zeroSize;
+	}
+
+	/**
+	 * Returns the row store this node is a view of.
+	 *
+	 * @return the row store.
+	 */
+	public RowStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Returns the row at a position of this node.
+	 *
+	 * @param i the position.
+	 * @return the row index in the store.
+	 */
+	public int getRow(int i) {
+		return rows[i];
+	}
+
+	/**
+	 * Splits this node. A row goes left if its value is not greater than the split point,
+	 * or if both the value and the split point are missing. The order of rows is preserved.
+	 *
+	 * @param splitCol the column of the split feature.
+	 * @param splitPoint the split point.
+	 * @return the left and right child nodes.
+	 */
+	public Pair<NodeData, NodeData> split(int splitCol, double splitPoint) {
+		double[] values = store.getColumn(splitCol);
+		double[] cls = store.getColumn(clsCol);
+		int leftN = 0;
+		for (int i = 0; i < size; i++) {
+			double value = values[rows[i]];
+			if ((value <= splitPoint) || Double.isNaN(splitPoint) && Double.isNaN(value)) {
+				leftN++;
+			}
+		}
+		int[] left = new int[leftN];
+		int[] right = new int[size - leftN];
+		int l = 0;
+		int r = 0;
+		int leftZero = 0;
+		int rightZero = 0;
+		for (int i = 0; i < size; i++) {
+			int row = rows[i];
+			double value = values[row];
+			if ((value <= splitPoint) || Double.isNaN(splitPoint) && Double.isNaN(value)) {
+				left[l++] = row;
+				if (cls[row] == 0)
+					leftZero++;
+			} else {
+				right[r++] = row;
+				if (cls[row] == 0)
+					rightZero++;
+			}
+		}
+		return new Pair<>(new NodeData(store, clsCol, left, leftN, leftZero),
+				new NodeData(store, clsCol, right, size - leftN, rightZero));
+	}
+
+	/**
+	 * Returns the rows of this node with a given assignment as a new node.
+	 *
+	 * @param assignment the assignment of each position of this node.
+	 * @param set the assignment to select.
+	 * @return the selected rows.
+	 */
+	NodeData subset(byte[] assignment, byte set) {
+		double[] cls = store.getColumn(clsCol);
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			if (assignment[i] == set) {
+				n++;
+			}
+		}
+		int[] selected = new int[n];
+		int k = 0;
+		int zero = 0;
+		for (int i = 0; i < size; i++) {
+			if (assignment[i] == set) {
+				selected[k++] = rows[i];
+				if (cls[rows[i]] == 0) {
+					zero++;
+				}
+			}
+		}
+		return new NodeData(store, clsCol, selected, n, zero);
+	}
+
+	/**
+	 * Returns <code>true</code> if all rows of this node have the same response.
+	 *
+	 * @return <code>true</code> if all rows of this node have the same response.
+	 */
+	public boolean isPure() {
+		double[] cls = store.getColumn(clsCol);
+		for (int i = 1; i < size; i++) {
+			if (cls[rows[i]] != cls[rows[0]]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the rows of this node as a dataset.
+	 *
+	 * @param ainfo the attribute information.
+	 * @return the dataset.
+	 */
+	public Instances toInstances(AttrInfo ainfo) {
+		return store.toInstances(ainfo, rows, size);
+	}
+
+	/**
+	 * Writes the rows of this node in the fir.dta text format.
+	 *
+	 * @param path the output file.
+	 * @throws IOException
+	 */
+	public void write(String path) throws IOException {
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(path), 1 << 16)) {
+			store.write(rows, size, out);
+		}
+	}
+
+}
@@ -0,0 +1,354 @@
+package firtree.data;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import mltk.core.Attribute;
+import mltk.core.Instance;
+import mltk.core.Instances;
+import mltk.core.io.AttrInfo;
+import mltk.core.io.Tokenizer;
+
+/**
+ * Class for holding the root data of a FirTree in memory. The rows are kept as raw
+ * bytes, so that fir.dta files for the external tools can be written back unchanged,
+ * and the columns that are actually accessed (class, split features) are parsed once
+ * into primitive arrays.
+ *
+ * <p>Rows are stored in blocks. The location of a row is packed into a long: the block
+ * number in the upper 32 bits and the start offset within the block in the lower 32 bits.
+ * Every row is terminated by '\n' inside its block.</p>
+ *
+ */
+public class RowStore {
+
+	/**
+	 * The size of a block of rows.
+	 */
+	public static final int BLOCK_SIZE = 1 << 24;
+
+	private List<byte[]> blocks;
+	private int[] blockLength;
+	private long[] rows;
+	private int size;
+
+	private byte[] current;
+	private int currentLength;
+
+	private double[][] columns;
+	private final Charset charset;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param colN the number of columns in a row.
+	 */
+	public RowStore(int colN) {
+		this(colN, Charset.defaultCharset());
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param colN the number of columns in a row.
+	 * @param charset the charset used to encode text lines.
+	 */
+	public RowStore(int colN, Charset charset) {
+		this.blocks = new ArrayList<>();
+		this.blockLength = new int[16];
+		this.rows = new long[1024];
+		this.size = 0;
+		this.columns = new double[colN][];
+		this.charset = charset;
+	}
+
+	/**
+	 * Returns the number of rows.
+	 *
+	 * @return the number of rows.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of columns.
+	 *
+	 * @return the number of columns.
+	 */
+	public int getColN() {
+		return columns.length;
+	}
+
+	/**
+	 * Adds a text line (without the line terminator) as a new row.
+	 *
+	 * @param line the line.
+	 */
+	public void add(String line) {
+		byte[] bytes = line.getBytes(charset);
+		int len = bytes.length + 1;
+		if (current == null || currentLength + len > current.length) {
+			newBlock(Math.max(BLOCK_SIZE, len));
+		}
+		System.arraycopy(bytes, 0, current, currentLength, bytes.length);
+		current[currentLength + bytes.length] = '\n';
+		addRow(currentLength);
+		currentLength += len;
+		blockLength[blocks.size() - 1] = currentLength;
+	}
+
+	/**
+	 * Adds a block of rows. The block is owned by the store afterwards.
+	 *
+	 * @param block the block, holding complete '\n' terminated lines.
+	 * @param starts the start offsets of the rows in the block.
+	 * @param n the number of rows.
+	 * @param length the number of used bytes in the block.
+	 */
+	public void addBlock(byte[] block, int[] starts, int n, int length) {
+		current = null;
+		blocks.add(block);
+		ensureBlockCapacity();
+		blockLength[blocks.size() - 1] = length;
+		for (int i = 0; i < n; i++) {
+			addRow(starts[i]);
+		}
+	}
+
+	private void newBlock(int capacity) {
+		current = new byte[capacity];
+		currentLength = 0;
+		blocks.add(current);
+		ensureBlockCapacity();
+	}
+
+	private void ensureBlockCapacity() {
+		if (blocks.size() > blockLength.length) {
+			blockLength = Arrays.copyOf(blockLength, blockLength.length * 2);
+		}
+	}
+
+	private void addRow(int start) {
+		if (size == rows.length) {
+			rows = Arrays.copyOf(rows, rows.length + (rows.length >> 1));
+		}
+		rows[size++] = ((long) (blocks.size() - 1) << 32) | start;
+	}
+
+	/**
+	 * Returns the values of a column, parsing them on first access. Missing values
+	 * ("?") are returned as NaN.
+	 *
+	 * @param col the column.
+	 * @return the values of the column, indexed by row.
+	 * @throws NumberFormatException if the column contains a text value.
+	 */
+	public synchronized double[] getColumn(int col) {
+		if (columns[col] == null) {
+			double[] values = new double[size];
+			for (int i = 0; i < size; i++) {
+				values[i] = parseValue(i, col);
+			}
+			columns[col] = values;
+		}
+		return columns[col];
+	}
+
+	/**
+	 * Sets the values of a column that were parsed while the rows were added.
+	 *
+	 * @param col the column.
+	 * @param values the values of the column, indexed by row.
+	 */
+	public synchronized void setColumn(int col, double[] values) {
+		columns[col] = values;
+	}
+
+	/**
+	 * Parses a value of a row. Fields are separated by runs of tabs, as with
+	 * <code>split("\t+")</code>.
+	 *
+	 * @param row the row.
+	 * @param col the column.
+	 * @return the value, NaN if missing.
+	 */
+	double parseValue(int row, int col) {
+		byte[] block = blocks.get((int) (rows[row] >>> 32));
+		int pos = skipFields((int) rows[row], block, col);
+		int end = pos;
+		while (block[end] != '\t' && block[end] != '\n' && block[end] != '\r') {
+			end++;
+		}
+		if (end - pos == 1 && block[pos] == '?') {
+			return Double.NaN;
+		}
+		return Tokenizer.parseDouble(block, pos, end);
+	}
+
+	/**
+	 * Returns a 64-bit hash of the bytes of a field of a row. Fields are compared as
+	 * text, so this works for group ids that are not numbers.
+	 *
+	 * @param row the row.
+	 * @param col the column.
+	 * @return the hash of the field.
+	 */
+	public long hashField(int row, int col) {
+		byte[] block = blocks.get((int) (rows[row] >>> 32));
+		int pos = skipFields((int) rows[row], block, col);
+		// FNV-1a
+		long hash = 0xcbf29ce484222325L;
+		for (; block[pos] != '\t' && block[pos] != '\n' && block[pos] != '\r'; pos++) {
+			hash ^= block[pos] & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Parses the wanted fields of a row in one scan. Missing values ("?") are parsed as NaN.
+	 *
+	 * @param row the row.
+	 * @param wanted whether each column is wanted.
+	 * @param values the values, indexed by column; other columns are left unchanged.
+	 * @return -1 if all wanted fields are numbers, otherwise the first column with a text value.
+	 */
+	public int parseFields(int row, boolean[] wanted, double[] values) {
+		byte[] block = blocks.get((int) (rows[row] >>> 32));
+		int pos = (int) rows[row];
+		for (int col = 0; col < wanted.length; col++) {
+			int end = pos;
+			while (block[end] != '\t' && block[end] != '\n' && block[end] != '\r') {
+				end++;
+			}
+			if (wanted[col]) {
+				if (end - pos == 1 && block[pos] == '?') {
+					values[col] = Double.NaN;
+				} else {
+					try {
+						values[col] = Tokenizer.parseDouble(block, pos, end);
+					} catch (NumberFormatException e) {
+						return col;
+					}
+				}
+			}
+			pos = end;
+			while (block[pos] == '\t') {
+				pos++;
+			}
+			if (block[pos] == '\n' || block[pos] == '\r') {
+				break;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the text of a field of a row, for error messages.
+	 *
+	 * @param row the row.
+	 * @param col the column.
+	 * @return the text of the field.
+	 */
+	public String getField(int row, int col) {
+		byte[] block = blocks.get((int) (rows[row] >>> 32));
+		int pos = skipFields((int) rows[row], block, col);
+		int end = pos;
+		while (block[end] != '\t' && block[end] != '\n' && block[end] != '\r') {
+			end++;
+		}
+		return new String(block, pos, end - pos, charset);
+	}
+
+	private static int skipFields(int pos, byte[] block, int col) {
+		for (int c = 0; c < col; c++) {
+			while (block[pos] != '\t' && block[pos] != '\n') {
+				pos++;
+			}
+			while (block[pos] == '\t') {
+				pos++;
+			}
+			if (block[pos] == '\n') {
+				throw new ArrayIndexOutOfBoundsException(col);
+			}
+		}
+		return pos;
+	}
+
+	/**
+	 * Creates a dataset from rows, as {@link mltk.core.io.InstancesReader#read(AttrInfo,
+	 * String, String, boolean)} would read them from a file written by
+	 * {@link #write(int[], int, OutputStream)} with missing values allowed.
+	 *
+	 * @param ainfo the attribute information.
+	 * @param rowList the rows.
+	 * @param n the number of rows to use from the beginning of the list.
+	 * @return the dataset.
+	 */
+	public Instances toInstances(AttrInfo ainfo, int[] rowList, int n) {
+		Instances instances = new Instances(ainfo);
+		int clsCol = ainfo.clsAttr.getColumn();
+		int wtCol = ainfo.wtAttr == null ? -1 : ainfo.wtAttr.getColumn();
+		boolean[] wanted = new boolean[columns.length];
+		for (Attribute att : ainfo.attributes) {
+			wanted[att.getColumn()] = true;
+		}
+		if (clsCol >= 0) {
+			wanted[clsCol] = true;
+		}
+		if (wtCol >= 0) {
+			wanted[wtCol] = true;
+		}
+		double[] values = new double[columns.length];
+		for (int i = 0; i < n; i++) {
+			int row = rowList[i];
+			int textCol = parseFields(row, wanted, values);
+			if (textCol >= 0) {
+				for (Attribute att : ainfo.attributes) {
+					if (att.getColumn() == textCol) {
+						System.err.println("Error: The column for an active attribute " + att.getName() + " contains a text value " + getField(row, textCol));
+						System.exit(1);
+					}
+				}
+				throw new NumberFormatException(getField(row, textCol));
+			}
+			double[] vector = new double[ainfo.attributes.size()];
+			for (int j = 0; j < vector.length; j++) {
+				vector[j] = values[ainfo.attributes.get(j).getColumn()];
+			}
+			double classValue = clsCol < 0 ? Double.NaN : values[clsCol];
+			double weightValue = wtCol < 0 ? 1.0 : values[wtCol];
+			Instance instance = new Instance(vector, classValue, weightValue);
+			if (ainfo.groupCol != AttrInfo.GROUP_UNSET) {
+				instance.setGroupId(getField(row, ainfo.groupCol));
+			}
+			instances.add(instance);
+		}
+		return instances;
+	}
+
+	/**
+	 * Writes rows to an output stream in the original text form.
+	 *
+	 * @param rowList the rows to write.
+	 * @param n the number of rows to write from the beginning of the list.
+	 * @param out the output stream.
+	 * @throws IOException
+	 */
+	public void write(int[] rowList, int n, OutputStream out) throws IOException {
+		for (int i = 0; i < n; i++) {
+			int row = rowList[i];
+			int b = (int) (rows[row] >>> 32);
+			int start = (int) rows[row];
+			int end = (row + 1 < size && (int) (rows[row + 1] >>> 32) == b) ?
+					(int) rows[row + 1] : blockLength[b];
+			out.write(blocks.get(b), start, end - start);
+		}
+	}
+
+}
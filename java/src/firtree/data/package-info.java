@@ -0,0 +1,4 @@
+/**
+ * Provides in-memory storage for the data of the FirTree nodes.
+ */
+package firtree.data;
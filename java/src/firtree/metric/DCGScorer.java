@@ -22,7 +22,7 @@ import firtree.utilities.Sorter;
  * @author Xiaojie Wang
  */
 public class DCGScorer extends MetricScorer {
-	protected static double[] logrank; // Lazy cache
+	protected static volatile double[] logrank; // Lazy cache
 	protected static String gain_type = "exponential";
 	
 	public DCGScorer(int k) {
@@ -43,9 +43,8 @@ public class DCGScorer extends MetricScorer {
 		if (rl.size() == 0)
 			return 0;
 		
-		double[] targets = getTargets(rl);
-		double[] predictions = getPredictions(rl);
-		return getDCG(targets, predictions);
+		int[] order = rl.getSortedOrder();
+		return getDCG(rl.getTargetArray(), rl.getPredictionArray(), descending(order));
 	}
 	
 	@Override
@@ -63,8 +62,16 @@ public class DCGScorer extends MetricScorer {
 			System.exit(1);
 		}
 		
-		int ndcg_at = k;
 		int[] idx_to_pos = Sorter.sort(predictions, false);
+		return getDCG(targets, predictions, idx_to_pos);
+	}
+	
+	/**
+	 * Computes DCG given the positions of items by descending prediction. Tied items
+	 * share their expected gain, so the order among ties only affects rounding.
+	 */
+	protected double getDCG(double[] targets, double[] predictions, int[] idx_to_pos) {
+		int ndcg_at = k;
 		
 		double dcg_prev_score = min(predictions) - 1.;
 		// Gain values of items with the score of the current item
@@ -132,6 +139,14 @@ public class DCGScorer extends MetricScorer {
         return dcg;
 	}
 	
+	// Positions by descending prediction from positions by ascending prediction
+	protected static int[] descending(int[] order) {
+		int[] idx_to_pos = new int[order.length];
+		for (int idx = 0; idx < order.length; idx ++)
+			idx_to_pos[idx] = order[order.length - 1 - idx];
+		return idx_to_pos;
+	}
+	
 	private double min(double[] predictions) {
 		double min = predictions[0];
 		for (int i = 1; i < predictions.length; i ++)
@@ -148,6 +163,14 @@ public class DCGScorer extends MetricScorer {
 	
 	// Lazy cache: 0 -> log(2), 1 -> log(3), ...
 	protected double logrank(int index) {
+		double[] cache = logrank;
+		if (index < cache.length)
+			return cache[index];
+		return expandLogrank(index);
+	}
+	
+	// Threads scoring different groups may expand the cache at the same time
+	private static synchronized double expandLogrank(int index) {
 		if (index < logrank.length)
 			return logrank[index];
 		
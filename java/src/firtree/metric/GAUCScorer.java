@@ -16,10 +16,14 @@ public class GAUCScorer extends MetricScorer {
 		if (rankList.size() == 0)
 			return 0.;
 
-		double[] targets = getTargets(rankList);
-		double[] predictions = getPredictions(rankList);
-		double[] weights = getWeights(rankList);
-		double auc = scorer.eval(predictions, targets, weights);
+		// The sorted order is maintained incrementally by the rank list
+		int[] order = rankList.getSortedOrder();
+		double auc = scorer.eval(
+				rankList.getPredictionArray(), 
+				rankList.getTargetArray(), 
+				rankList.getWeightArray(), 
+				order
+				);
 		return auc;
 	}
 
@@ -1,7 +1,7 @@
 package firtree.metric;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import firtree.utilities.Instance;
 import firtree.utilities.RankLibError;
@@ -13,12 +13,12 @@ import firtree.utilities.Sorter;
  */
 public class NDCGScorer extends DCGScorer {
 	
-	// Cache the ideal gain corresponding to group id
+	// Cache the ideal gain corresponding to group id, shared by threads scoring different groups
 	protected Map<String, Double> group_id_to_max_dcg;
 	
 	public NDCGScorer(int k) {
 		super(k);
-		group_id_to_max_dcg = new HashMap<>();
+		group_id_to_max_dcg = new ConcurrentHashMap<>();
 	}
 	
 	@Override
@@ -26,8 +26,10 @@ public class NDCGScorer extends DCGScorer {
 		if (rankList.size() == 0)
 			return 0.;
 
-		double[] targets = getTargets(rankList);
-		double[] predictions = getPredictions(rankList);
+		// The sorted order is maintained incrementally by the rank list
+		int[] order = rankList.getSortedOrder();
+		double[] targets = rankList.getTargetArray();
+		double[] predictions = rankList.getPredictionArray();
 		
 		double max_dcg = 0.;
 		if (group_id_to_max_dcg.containsKey(rankList.getGroupId())) {
@@ -40,7 +42,7 @@ public class NDCGScorer extends DCGScorer {
 		if (max_dcg < Math.pow(10, -10))
 			return 0.;
 
-		double dcg = getDCG(targets, predictions);
+		double dcg = getDCG(targets, predictions, descending(order));
 		/*// TODO: Debug
 		System.out.printf("\tDCG=%f IDCG=%f\n", dcg, max_dcg);
 		*/
@@ -0,0 +1,111 @@
+package firtree.utilities;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Inverted index from the leaves of a FirTree model to the rank lists with instances
+ * in each leaf, and to the positions of those instances in each rank list. Changing
+ * the model of a leaf only changes the predictions of the indexed instances.
+ */
+public class LeafIndex {
+
+	protected RankList[] rankLists;
+	// Positions of rank lists (ascending) with instances in a leaf
+	protected int[][] lists;
+	// Positions of the instances in each of those rank lists
+	protected int[][][] offsets;
+
+	/**
+	 * Builds the index of rank lists, whose instances must have been assigned to leaves.
+	 *
+	 * @param rankLists the rank lists.
+	 */
+	public LeafIndex(Collection<RankList> rankLists) {
+		this.rankLists = rankLists.toArray(new RankList[0]);
+
+		int numNodes = 0;
+		for (RankList rankList : this.rankLists) {
+			for (Instance instance : rankList.getInstances()) {
+				numNodes = Math.max(numNodes, instance.getNodeIndex() + 1);
+			}
+		}
+
+		// Count the rank lists of each leaf
+		int[] counts = new int[numNodes];
+		int[] lastList = new int[numNodes];
+		Arrays.fill(lastList, -1);
+		for (int i = 0; i < this.rankLists.length; i ++) {
+			for (Instance instance : this.rankLists[i].getInstances()) {
+				int leaf = instance.getNodeIndex();
+				if (lastList[leaf] != i) {
+					lastList[leaf] = i;
+					counts[leaf] ++;
+				}
+			}
+		}
+		lists = new int[numNodes][];
+		offsets = new int[numNodes][][];
+		for (int leaf = 0; leaf < numNodes; leaf ++) {
+			lists[leaf] = new int[counts[leaf]];
+			offsets[leaf] = new int[counts[leaf]][];
+		}
+
+		// Fill the positions of rank lists and instances
+		int[] filled = new int[numNodes];
+		int[] sizes = new int[numNodes];
+		for (int i = 0; i < this.rankLists.length; i ++) {
+			RankList rankList = this.rankLists[i];
+			for (Instance instance : rankList.getInstances()) {
+				sizes[instance.getNodeIndex()] ++;
+			}
+			for (Instance instance : rankList.getInstances()) {
+				int leaf = instance.getNodeIndex();
+				if (sizes[leaf] > 0) {
+					lists[leaf][filled[leaf]] = i;
+					offsets[leaf][filled[leaf]] = new int[sizes[leaf]];
+					filled[leaf] ++;
+					sizes[leaf] = 0;
+				}
+			}
+			for (int pos = 0; pos < rankList.size(); pos ++) {
+				int leaf = rankList.get(pos).getNodeIndex();
+				offsets[leaf][filled[leaf] - 1][sizes[leaf] ++] = pos;
+			}
+			for (Instance instance : rankList.getInstances()) {
+				sizes[instance.getNodeIndex()] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Returns all rank lists.
+	 *
+	 * @return the rank lists, in the order of their positions.
+	 */
+	public RankList[] getRankLists() {
+		return rankLists;
+	}
+
+	/**
+	 * Returns the positions of the rank lists with instances in a leaf.
+	 *
+	 * @param leaf the index of the leaf.
+	 * @return the positions of the rank lists in ascending order.
+	 */
+	public int[] getLists(int leaf) {
+		return leaf < lists.length ? lists[leaf] : new int[0];
+	}
+
+	/**
+	 * Returns the positions of the instances in a leaf within the k-th rank list of the leaf.
+	 *
+	 * @param leaf the index of the leaf.
+	 * @param k the index of the rank list in {@link #getLists(int)}.
+	 * @return the positions of the instances in the rank list.
+	 */
+	public int[] getOffsets(int leaf, int k) {
+		return offsets[leaf][k];
+	}
+
+}
@@ -16,6 +16,16 @@ public class RankList {
 	
 	// Cache the previous score of a rank list by a certain metric
 	protected double score;
+	
+	// Cache the order of instances by ascending prediction (ties by position), which is
+	// updated incrementally because coordinate ascent only moves a few instances at a time
+	protected int[] order;
+	protected double[] predictions;
+	protected double[] targets;
+	protected double[] weights;
+	protected int[] buffer;
+	protected int[] stay;
+	protected int[] moved;
 
 	public RankList(String groupId) {
 		this.groupId = groupId;
@@ -45,6 +55,7 @@ public class RankList {
 	
 	public void add(Instance instance) {
 		this.instances.add(instance);
+		order = null;
 	}
 	
 	public int size() {
@@ -65,6 +76,7 @@ public class RankList {
 
 	public void setInstances(List<Instance> instances) {
 		this.instances = instances;
+		order = null;
 	}
 
 	
@@ -87,4 +99,136 @@ public class RankList {
 		this.score = score;
 	}
 	
+	/**
+	 * Returns the positions of the instances sorted by ascending prediction, where
+	 * instances with the same prediction keep their order in the list. This is the order
+	 * of a stable sort by prediction. Only the instances whose predictions changed since
+	 * the previous call are sorted again, the others are merged in linear time.
+	 * 
+	 * @return the sorted positions, valid until the next call.
+	 */
+	public int[] getSortedOrder() {
+		int n = size();
+		if (order == null) {
+			order = new int[n];
+			predictions = new double[n];
+			targets = new double[n];
+			weights = new double[n];
+			buffer = new int[n];
+			stay = new int[n];
+			moved = new int[n];
+			for (int i = 0; i < n; i ++) {
+				Instance instance = instances.get(i);
+				order[i] = i;
+				predictions[i] = instance.getPrediction();
+				targets[i] = instance.getTarget();
+				weights[i] = instance.getWeight();
+			}
+			sort(order, 0, n, buffer);
+			return order;
+		}
+		
+		boolean changed = false;
+		for (int i = 0; i < n; i ++) {
+			double prediction = instances.get(i).getPrediction();
+			if (prediction != predictions[i]) {
+				predictions[i] = prediction;
+				changed = true;
+				// Mark the position as moved
+				buffer[i] = -1;
+			} else {
+				buffer[i] = 0;
+			}
+		}
+		if (! changed) {
+			return order;
+		}
+		
+		// Unmoved instances are still sorted among themselves
+		int stayN = 0;
+		int movedN = 0;
+		for (int i = 0; i < n; i ++) {
+			int pos = order[i];
+			if (buffer[pos] == -1) {
+				moved[movedN ++] = pos;
+			} else {
+				stay[stayN ++] = pos;
+			}
+		}
+		sort(moved, 0, movedN, buffer);
+		
+		int s = 0;
+		int m = 0;
+		for (int i = 0; i < n; i ++) {
+			if (m == movedN || (s < stayN && precedes(stay[s], moved[m]))) {
+				order[i] = stay[s ++];
+			} else {
+				order[i] = moved[m ++];
+			}
+		}
+		return order;
+	}
+	
+	/**
+	 * Returns the predictions read by the last call of {@link #getSortedOrder()}.
+	 * 
+	 * @return the predictions indexed by position.
+	 */
+	public double[] getPredictionArray() {
+		return predictions;
+	}
+	
+	/**
+	 * Returns the targets cached by {@link #getSortedOrder()}.
+	 * 
+	 * @return the targets indexed by position.
+	 */
+	public double[] getTargetArray() {
+		return targets;
+	}
+	
+	/**
+	 * Returns the weights cached by {@link #getSortedOrder()}.
+	 * 
+	 * @return the weights indexed by position.
+	 */
+	public double[] getWeightArray() {
+		return weights;
+	}
+	
+	private boolean precedes(int a, int b) {
+		return predictions[a] < predictions[b] || (predictions[a] == predictions[b] && a < b);
+	}
+	
+	// Merge sort of positions in [from, to) by (prediction, position)
+	private void sort(int[] a, int from, int to, int[] tmp) {
+		if (to - from <= 16) {
+			for (int i = from + 1; i < to; i ++) {
+				int pos = a[i];
+				int j = i - 1;
+				for (; j >= from && precedes(pos, a[j]); j --) {
+					a[j + 1] = a[j];
+				}
+				a[j + 1] = pos;
+			}
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		sort(a, from, mid, tmp);
+		sort(a, mid, to, tmp);
+		if (! precedes(a[mid], a[mid - 1])) {
+			return;
+		}
+		System.arraycopy(a, from, tmp, from, to - from);
+		int l = from;
+		int r = mid;
+		for (int i = from; i < to; i ++) {
+			if (r == to || (l < mid && ! precedes(tmp[r], tmp[l]))) {
+				a[i] = tmp[l ++];
+			} else {
+				a[i] = tmp[r ++];
+			}
+		}
+	}
+	
 }
@@ -0,0 +1,149 @@
+package mltk.core;
+
+/**
+ * Class for the per-bin counts and weights of a subset of a dataset, for every
+ * attribute of a {@link FeatureIndex}. These do not change while a model is boosted
+ * on the subset, so they can be computed once per subset. The statistics of the
+ * complement of a subset are obtained by subtraction from the statistics of the
+ * whole set when the weights are integral, in which case the subtraction is exact.
+ *
+ */
+public class BinStats {
+
+	/**
+	 * Sums of integral weights below this bound are exact in double precision.
+	 */
+	static final double MAX_EXACT_SUM = 1L << 53;
+
+	protected FeatureIndex index;
+	protected Pointers pointers;
+	protected int[][] counts;
+	protected double[][] weights;
+	protected boolean integral;
+
+	private BinStats(FeatureIndex index, Pointers pointers) {
+		this.index = index;
+		this.pointers = pointers;
+		counts = new int[index.bins.length][];
+		weights = new double[index.bins.length][];
+	}
+
+	/**
+	 * Computes the statistics of a subset. Weights are accumulated in pointer order.
+	 *
+	 * @param index the feature index.
+	 * @param pointers the subset.
+	 * @return the statistics of the subset.
+	 */
+	public static BinStats compute(FeatureIndex index, Pointers pointers) {
+		BinStats stats = new BinStats(index, pointers);
+		double[] instanceWeights = index.getWeights();
+		double total = 0;
+		boolean integral = true;
+		for (int i = 0; i < pointers.size(); i++) {
+			double weight = pointers.getWeight(i) * instanceWeights[pointers.getIndex(i)];
+			integral = integral && weight == Math.rint(weight);
+			total += Math.abs(weight);
+		}
+		stats.integral = integral && total < MAX_EXACT_SUM;
+		for (int attIndex = 0; attIndex < index.bins.length; attIndex++) {
+			int[] bins = index.bins[attIndex];
+			if (bins == null) {
+				continue;
+			}
+			int[] c = new int[index.values[attIndex].length];
+			double[] w = new double[c.length];
+			for (int i = 0; i < pointers.size(); i++) {
+				int idx = pointers.getIndex(i);
+				int bin = bins[idx];
+				c[bin]++;
+				w[bin] += pointers.getWeight(i) * instanceWeights[idx];
+			}
+			stats.counts[attIndex] = c;
+			stats.weights[attIndex] = w;
+		}
+		return stats;
+	}
+
+	/**
+	 * Computes the statistics of the complement of a subset of this set.
+	 *
+	 * @param subset the statistics of the subset.
+	 * @param complement the pointers of the complement.
+	 * @return the statistics of the complement.
+	 */
+	public BinStats subtract(BinStats subset, Pointers complement) {
+		if (!integral) {
+			return compute(index, complement);
+		}
+		BinStats stats = new BinStats(index, complement);
+		stats.integral = true;
+		for (int attIndex = 0; attIndex < counts.length; attIndex++) {
+			if (counts[attIndex] == null) {
+				continue;
+			}
+			int[] c = counts[attIndex].clone();
+			double[] w = weights[attIndex].clone();
+			int[] sc = subset.counts[attIndex];
+			double[] sw = subset.weights[attIndex];
+			for (int bin = 0; bin < c.length; bin++) {
+				c[bin] -= sc[bin];
+				w[bin] -= sw[bin];
+			}
+			stats.counts[attIndex] = c;
+			stats.weights[attIndex] = w;
+		}
+		return stats;
+	}
+
+	/**
+	 * Returns <code>true</code> if these statistics describe a subset of a dataset.
+	 *
+	 * @param instances the dataset.
+	 * @param pointers the subset.
+	 * @param attIndex the attribute index.
+	 * @return <code>true</code> if these statistics describe the subset.
+	 */
+	public boolean isStatsOf(Instances instances, Pointers pointers, int attIndex) {
+		return this.pointers == pointers && index.isIndexed(instances, attIndex);
+	}
+
+	/**
+	 * Returns the subset these statistics describe.
+	 *
+	 * @return the subset.
+	 */
+	public Pointers getPointers() {
+		return pointers;
+	}
+
+	/**
+	 * Returns the feature index.
+	 *
+	 * @return the feature index.
+	 */
+	public FeatureIndex getFeatureIndex() {
+		return index;
+	}
+
+	/**
+	 * Returns the number of instances in each bin of an attribute.
+	 *
+	 * @param attIndex the attribute index.
+	 * @return the number of instances in each bin.
+	 */
+	public int[] getCounts(int attIndex) {
+		return counts[attIndex];
+	}
+
+	/**
+	 * Returns the total weight in each bin of an attribute.
+	 *
+	 * @param attIndex the attribute index.
+	 * @return the total weight in each bin.
+	 */
+	public double[] getWeights(int attIndex) {
+		return weights[attIndex];
+	}
+
+}
@@ -0,0 +1,134 @@
+package mltk.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class for indexing the values of numeric attributes of a dataset. For each indexed
+ * attribute, the distinct values are sorted and every instance is mapped to the bin
+ * (rank) of its value. Learners can then build histograms over bins in a linear pass
+ * instead of sorting instances again for every fit.
+ *
+ * <p>Attributes with missing values are not indexed.</p>
+ *
+ */
+public class FeatureIndex {
+
+	protected Instances instances;
+	protected int[][] bins;
+	protected double[][] values;
+	protected double[] weights;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param instances the dataset to index.
+	 */
+	public FeatureIndex(Instances instances) {
+		this.instances = instances;
+		List<Attribute> attributes = instances.getAttributes();
+		int maxIndex = -1;
+		for (Attribute attribute : attributes) {
+			maxIndex = Math.max(maxIndex, attribute.getIndex());
+		}
+		bins = new int[maxIndex + 1][];
+		values = new double[maxIndex + 1][];
+		weights = new double[instances.size()];
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = instances.get(i).getWeight();
+		}
+		for (Attribute attribute : attributes) {
+			if (attribute.getType() == Attribute.Type.NUMERIC) {
+				index(attribute.getIndex());
+			}
+		}
+	}
+
+	private void index(int attIndex) {
+		int n = instances.size();
+		double[] column = new double[n];
+		for (int i = 0; i < n; i++) {
+			double value = instances.get(i).getValue(attIndex);
+			if (Double.isNaN(value)) {
+				return;
+			}
+			// Maps -0.0 to 0.0 so that they share a bin
+			column[i] = value + 0.0;
+		}
+		double[] sorted = column.clone();
+		Arrays.sort(sorted);
+		int numBins = 0;
+		for (int i = 0; i < n; i++) {
+			if (i == 0 || sorted[i] != sorted[numBins - 1]) {
+				sorted[numBins++] = sorted[i];
+			}
+		}
+		double[] uniqueValues = Arrays.copyOf(sorted, numBins);
+		int[] rowBins = new int[n];
+		for (int i = 0; i < n; i++) {
+			rowBins[i] = Arrays.binarySearch(uniqueValues, column[i]);
+		}
+		bins[attIndex] = rowBins;
+		values[attIndex] = uniqueValues;
+	}
+
+	/**
+	 * Returns the indexed dataset.
+	 *
+	 * @return the indexed dataset.
+	 */
+	public Instances getInstances() {
+		return instances;
+	}
+
+	/**
+	 * Returns <code>true</code> if this index covers the dataset and the attribute.
+	 *
+	 * @param instances the dataset.
+	 * @param attIndex the attribute index.
+	 * @return <code>true</code> if this index covers the dataset and the attribute.
+	 */
+	public boolean isIndexed(Instances instances, int attIndex) {
+		return this.instances == instances && attIndex >= 0 && attIndex < bins.length && bins[attIndex] != null;
+	}
+
+	/**
+	 * Returns the number of bins (distinct values) of an attribute.
+	 *
+	 * @param attIndex the attribute index.
+	 * @return the number of bins of the attribute.
+	 */
+	public int getNumBins(int attIndex) {
+		return values[attIndex].length;
+	}
+
+	/**
+	 * Returns the bins of all instances for an attribute.
+	 *
+	 * @param attIndex the attribute index.
+	 * @return the bins indexed by instance.
+	 */
+	public int[] getBins(int attIndex) {
+		return bins[attIndex];
+	}
+
+	/**
+	 * Returns the weights of all instances.
+	 *
+	 * @return the weights indexed by instance.
+	 */
+	public double[] getWeights() {
+		return weights;
+	}
+
+	/**
+	 * Returns the sorted distinct values of an attribute.
+	 *
+	 * @param attIndex the attribute index.
+	 * @return the value of each bin.
+	 */
+	public double[] getValues(int attIndex) {
+		return values[attIndex];
+	}
+
+}
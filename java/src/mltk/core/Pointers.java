@@ -1,37 +1,238 @@
 package mltk.core;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
 
 /**
+ * Class for a set of pointers to a dataset. Indices and weights are kept in
+ * primitive arrays; weights are only allocated once a weight other than 1 is added.
+ *
  * @author Xiaojie Wang
- * 
+ *
  */
 
-public class Pointers implements Iterable<Pointer> {
+public class Pointers {
 
-	List<Pointer> pointers;
-	
+	/**
+	 * Interface for visiting pointers without creating {@link Pointer} objects.
+	 */
+	public interface Visitor {
+
+		/**
+		 * Visits a pointer.
+		 *
+		 * @param index the index in the dataset.
+		 * @param weight the weight.
+		 */
+		void visit(int index, int weight);
+
+	}
+
+	int[] indices;
+	int[] weights;
+	int size;
+
+	/**
+	 * Constructor.
+	 */
 	public Pointers() {
-		pointers = new ArrayList<>();
+		this(16);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity the initial capacity.
+	 */
+	public Pointers(int capacity) {
+		indices = new int[Math.max(capacity, 1)];
+		weights = null;
+		size = 0;
+	}
+
+	/**
+	 * Returns pointers to all instances 0, 1, ..., n - 1 with weight 1.
+	 *
+	 * @param n the number of instances.
+	 * @return pointers to all instances.
+	 */
+	public static Pointers range(int n) {
+		Pointers pointers = new Pointers(n);
+		for (int i = 0; i < n; i++) {
+			pointers.indices[i] = i;
+		}
+		pointers.size = n;
+		return pointers;
+	}
+
+	/**
+	 * Adds a pointer with weight 1.
+	 *
+	 * @param index the index in the dataset.
+	 */
+	public void add(int index) {
+		if (size == indices.length) {
+			grow();
+		}
+		indices[size] = index;
+		if (weights != null) {
+			weights[size] = 1;
+		}
+		size++;
+	}
+
+	/**
+	 * Adds a pointer.
+	 *
+	 * @param index the index in the dataset.
+	 * @param weight the weight.
+	 */
+	public void add(int index, int weight) {
+		if (weight != 1 && weights == null) {
+			weights = new int[indices.length];
+			Arrays.fill(weights, 0, size, 1);
+		}
+		if (size == indices.length) {
+			grow();
+		}
+		indices[size] = index;
+		if (weights != null) {
+			weights[size] = weight;
+		}
+		size++;
 	}
-	
+
+	/**
+	 * Adds a pointer.
+	 *
+	 * @param pointer the pointer.
+	 */
 	public void add(Pointer pointer) {
-		pointers.add(pointer);
+		add(pointer.getIndex(), pointer.getWeight());
 	}
 
-	@Override
-	public Iterator<Pointer> iterator() {
-		return pointers.iterator();
+	private void grow() {
+		int capacity = indices.length + (indices.length >> 1) + 1;
+		indices = Arrays.copyOf(indices, capacity);
+		if (weights != null) {
+			weights = Arrays.copyOf(weights, capacity);
+		}
 	}
-	
+
+	/**
+	 * Returns the number of pointers.
+	 *
+	 * @return the number of pointers.
+	 */
 	public final int size() {
-		return pointers.size();
+		return size;
 	}
-	
-	public Pointer get(int index) {
-		return pointers.get(index);
+
+	/**
+	 * Returns the index of the i-th pointer.
+	 *
+	 * @param i the position.
+	 * @return the index of the i-th pointer.
+	 */
+	public final int getIndex(int i) {
+		return indices[i];
 	}
-	
+
+	/**
+	 * Returns the weight of the i-th pointer.
+	 *
+	 * @param i the position.
+	 * @return the weight of the i-th pointer.
+	 */
+	public final int getWeight(int i) {
+		return weights == null ? 1 : weights[i];
+	}
+
+	/**
+	 * Returns <code>true</code> if all pointers have weight 1.
+	 *
+	 * @return <code>true</code> if all pointers have weight 1.
+	 */
+	public boolean isUnweighted() {
+		return weights == null;
+	}
+
+	/**
+	 * Returns a copy of the indices.
+	 *
+	 * @return a copy of the indices.
+	 */
+	public int[] toIndexArray() {
+		return Arrays.copyOf(indices, size);
+	}
+
+	/**
+	 * Visits all pointers in order.
+	 *
+	 * @param visitor the visitor.
+	 */
+	public void forEach(Visitor visitor) {
+		for (int i = 0; i < size; i++) {
+			visitor.visit(indices[i], weights == null ? 1 : weights[i]);
+		}
+	}
+
+	/**
+	 * Returns the pointers in positions [from, to).
+	 *
+	 * @param from the first position, inclusive.
+	 * @param to the last position, exclusive.
+	 * @return the pointers in positions [from, to).
+	 */
+	public Pointers slice(int from, int to) {
+		Pointers slice = new Pointers(to - from);
+		System.arraycopy(indices, from, slice.indices, 0, to - from);
+		if (weights != null) {
+			slice.weights = Arrays.copyOfRange(weights, from, to);
+		}
+		slice.size = to - from;
+		return slice;
+	}
+
+	/**
+	 * Partitions the pointers. The order of pointers is preserved on both sides.
+	 *
+	 * @param goesLeft the predicate on the index in the dataset.
+	 * @param left the pointers whose index satisfies the predicate.
+	 * @param right the other pointers.
+	 */
+	public void partition(IntPredicate goesLeft, Pointers left, Pointers right) {
+		boolean[] isLeft = new boolean[size];
+		int leftN = 0;
+		for (int i = 0; i < size; i++) {
+			if (goesLeft.test(indices[i])) {
+				isLeft[i] = true;
+				leftN++;
+			}
+		}
+		left.ensureCapacity(left.size + leftN, weights != null);
+		right.ensureCapacity(right.size + size - leftN, weights != null);
+		for (int i = 0; i < size; i++) {
+			Pointers dest = isLeft[i] ? left : right;
+			dest.indices[dest.size] = indices[i];
+			if (dest.weights != null) {
+				dest.weights[dest.size] = weights == null ? 1 : weights[i];
+			}
+			dest.size++;
+		}
+	}
+
+	private void ensureCapacity(int capacity, boolean weighted) {
+		if (capacity > indices.length) {
+			indices = Arrays.copyOf(indices, capacity);
+			if (weights != null) {
+				weights = Arrays.copyOf(weights, capacity);
+			}
+		}
+		if (weighted && weights == null) {
+			weights = new int[indices.length];
+			Arrays.fill(weights, 0, size, 1);
+		}
+	}
+
 }
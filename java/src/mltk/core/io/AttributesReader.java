@@ -1,8 +1,10 @@
 package mltk.core.io;
 
 import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -30,11 +32,22 @@ public class AttributesReader {
 	 * @throws IOException
 	 */
 	public static AttrInfo read(String attFile) throws IOException {
+		return parse(new String(Files.readAllBytes(Paths.get(attFile))));
+	}
+
+	/**
+	 * Parses attributes and class attribute from the content of an attribute file.
+	 * 
+	 * @param attText the content of the attribute file.
+	 * @return attribute information instance.
+	 * @throws IOException
+	 */
+	public static AttrInfo parse(String attText) throws IOException {
 		
 		Set<String> neverNames = new HashSet<String>();
 		AttrInfo ainfo = new AttrInfo();
 		
-		BufferedReader br1 = new BufferedReader(new FileReader(attFile), 65535);
+		BufferedReader br1 = new BufferedReader(new StringReader(attText));
 		String line = br1.readLine();		
 		while ((line != null) && (line.indexOf("contexts:") == -1)) {
 			line = br1.readLine();
@@ -48,7 +61,7 @@ public class AttributesReader {
 		}
 		br1.close();
 		
-		BufferedReader br2 = new BufferedReader(new FileReader(attFile), 65535);
+		BufferedReader br2 = new BufferedReader(new StringReader(attText));
 		ainfo.clsAttr = null;
 		ainfo.wtAttr = null;
 		for (int i = 0, col = 0;; i++, col++) {
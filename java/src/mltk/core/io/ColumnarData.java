@@ -0,0 +1,633 @@
+package mltk.core.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import mltk.core.Attribute;
+
+/**
+ * Class for reading and writing data in a binary column-oriented format. Columns are
+ * memory-mapped when the file is opened, so reading a value does not copy or parse
+ * anything.
+ *
+ * <p>The file starts with a header holding the content of the attribute file, the number
+ * of rows and columns, and the type and location of each column. Columns of active
+ * attributes, the class and the weight are stored as doubles, with missing values ("?")
+ * as NaN. All other columns, such as group ids, are dictionary-encoded: an int code per
+ * row and a table of distinct strings. Converting a text file to this format and back
+ * gives the same values; numbers may be written in a different form (e.g. "1.50" is
+ * written back as "1.5").</p>
+ *
+ * <p>A column is mapped in segments of {@link #SEGMENT_ROWS} rows, since a mapping holds
+ * at most 2^31 - 1 bytes, so rows are indexed by a long.</p>
+ *
+ */
+public class ColumnarData implements Closeable {
+
+	/**
+	 * The file name extension of data in this format.
+	 */
+	public static final String EXTENSION = ".col";
+
+	/**
+	 * The number of rows in a mapped segment of a column.
+	 */
+	public static final int SEGMENT_ROWS = 1 << 27;
+
+	private static final int SEGMENT_SHIFT = 27;
+	private static final int SEGMENT_MASK = SEGMENT_ROWS - 1;
+
+	private static final byte[] MAGIC = "FIRCOL01".getBytes(StandardCharsets.US_ASCII);
+	private static final byte DOUBLE = 0;
+	private static final byte DICTIONARY = 1;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private String attText;
+	private long size;
+	private byte[] types;
+	private long[] offsets;
+	private long[] dictOffsets;
+	private long[] dictLengths;
+
+	// Mapped segments of the columns, by column
+	private DoubleBuffer[][] values;
+	private IntBuffer[][] codes;
+	private String[][] dictionaries;
+
+	/**
+	 * Returns <code>true</code> if a file is in this format.
+	 *
+	 * @param path the path of the file.
+	 * @return <code>true</code> if a file is in this format.
+	 * @throws IOException
+	 */
+	public static boolean isColumnar(String path) throws IOException {
+		byte[] magic = new byte[MAGIC.length];
+		try (FileInputStream in = new FileInputStream(path)) {
+			int n = 0;
+			while (n < magic.length) {
+				int read = in.read(magic, n, magic.length - n);
+				if (read < 0) {
+					return false;
+				}
+				n += read;
+			}
+		}
+		return Arrays.equals(magic, MAGIC);
+	}
+
+	/**
+	 * Opens a file and maps its columns.
+	 *
+	 * @param path the path of the file.
+	 * @return the data.
+	 * @throws IOException
+	 */
+	public static ColumnarData open(String path) throws IOException {
+		return new ColumnarData(path);
+	}
+
+	private ColumnarData(String path) throws IOException {
+		file = new RandomAccessFile(path, "r");
+		channel = file.getChannel();
+		// The stream is not closed, as it would close the channel
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+		byte[] magic = new byte[MAGIC.length];
+		in.readFully(magic);
+		if (!Arrays.equals(magic, MAGIC)) {
+			file.close();
+			throw new IOException(path + " is not a columnar data file");
+		}
+		byte[] text = new byte[in.readInt()];
+		in.readFully(text);
+		attText = new String(text, StandardCharsets.UTF_8);
+		size = in.readLong();
+		int colN = in.readInt();
+		types = new byte[colN];
+		offsets = new long[colN];
+		dictOffsets = new long[colN];
+		dictLengths = new long[colN];
+		for (int col = 0; col < colN; col++) {
+			types[col] = in.readByte();
+			offsets[col] = in.readLong();
+			dictOffsets[col] = in.readLong();
+			dictLengths[col] = in.readLong();
+		}
+
+		values = new DoubleBuffer[colN][];
+		codes = new IntBuffer[colN][];
+		dictionaries = new String[colN][];
+		int segmentN = (int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+		for (int col = 0; col < colN; col++) {
+			if (types[col] == DOUBLE) {
+				values[col] = new DoubleBuffer[segmentN];
+			} else {
+				codes[col] = new IntBuffer[segmentN];
+			}
+			for (int k = 0; k < segmentN; k++) {
+				long from = (long) k << SEGMENT_SHIFT;
+				long rows = Math.min(SEGMENT_ROWS, size - from);
+				if (types[col] == DOUBLE) {
+					values[col][k] = channel.map(FileChannel.MapMode.READ_ONLY,
+							offsets[col] + 8 * from, 8 * rows).asDoubleBuffer();
+				} else {
+					codes[col][k] = channel.map(FileChannel.MapMode.READ_ONLY,
+							offsets[col] + 4 * from, 4 * rows).asIntBuffer();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the content of the attribute file the data was written with.
+	 *
+	 * @return the content of the attribute file.
+	 */
+	public String getAttrText() {
+		return attText;
+	}
+
+	/**
+	 * Returns a new attribute information instance parsed from the header.
+	 *
+	 * @return the attribute information.
+	 * @throws IOException
+	 */
+	public AttrInfo getAttrInfo() throws IOException {
+		return AttributesReader.parse(attText);
+	}
+
+	/**
+	 * Returns the number of rows.
+	 *
+	 * @return the number of rows.
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of columns.
+	 *
+	 * @return the number of columns.
+	 */
+	public int getColN() {
+		return types.length;
+	}
+
+	/**
+	 * Returns <code>true</code> if a column is dictionary-encoded.
+	 *
+	 * @param col the column.
+	 * @return <code>true</code> if a column is dictionary-encoded.
+	 */
+	public boolean isDictionary(int col) {
+		return types[col] == DICTIONARY;
+	}
+
+	/**
+	 * Returns a value of a double column.
+	 *
+	 * @param col the column.
+	 * @param row the row.
+	 * @return the value.
+	 */
+	public double getValue(int col, long row) {
+		return values[col][(int) (row >>> SEGMENT_SHIFT)].get((int) row & SEGMENT_MASK);
+	}
+
+	/**
+	 * Returns a code of a dictionary-encoded column.
+	 *
+	 * @param col the column.
+	 * @param row the row.
+	 * @return the code.
+	 */
+	public int getCode(int col, long row) {
+		return codes[col][(int) (row >>> SEGMENT_SHIFT)].get((int) row & SEGMENT_MASK);
+	}
+
+	/**
+	 * Returns the distinct strings of a dictionary-encoded column, indexed by code.
+	 *
+	 * @param col the column.
+	 * @return the distinct strings of the column.
+	 * @throws IOException
+	 */
+	public synchronized String[] getDictionary(int col) throws IOException {
+		if (dictionaries[col] == null) {
+			ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, dictOffsets[col], dictLengths[col]);
+			String[] dictionary = new String[buf.getInt()];
+			for (int i = 0; i < dictionary.length; i++) {
+				byte[] bytes = new byte[buf.getInt()];
+				buf.get(bytes);
+				dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+			dictionaries[col] = dictionary;
+		}
+		return dictionaries[col];
+	}
+
+	/**
+	 * Returns a cursor over the rows, positioned before the first row.
+	 *
+	 * @return a cursor over the rows.
+	 * @throws IOException
+	 */
+	public Cursor cursor() throws IOException {
+		return new Cursor();
+	}
+
+	/**
+	 * Writes the rows in the text format, fields separated by a tab.
+	 *
+	 * @param out the output stream.
+	 * @param charset the charset of the text.
+	 * @throws IOException
+	 */
+	public void writeText(OutputStream out, Charset charset) throws IOException {
+		Cursor cursor = cursor();
+		while (cursor.next()) {
+			out.write(cursor.toString().getBytes(charset));
+			out.write('\n');
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	/**
+	 * Formats a value as it is written in text: "?" for NaN, integers without a decimal point.
+	 *
+	 * @param value the value.
+	 * @return the text of the value.
+	 */
+	public static String format(double value) {
+		if (Double.isNaN(value)) {
+			return "?";
+		}
+		if (value == Math.rint(value) && Math.abs(value) < 1e15
+				&& !(value == 0 && Double.doubleToRawLongBits(value) != 0)) {
+			return Long.toString((long) value);
+		}
+		return Double.toString(value);
+	}
+
+	/**
+	 * Class for reading rows one at a time. The fields are read from the mapped columns.
+	 */
+	public class Cursor implements Row {
+
+		private long row = -1;
+		private String[][] dicts;
+
+		Cursor() throws IOException {
+			dicts = new String[types.length][];
+			for (int col = 0; col < types.length; col++) {
+				if (types[col] == DICTIONARY) {
+					dicts[col] = getDictionary(col);
+				}
+			}
+		}
+
+		/**
+		 * Moves to the next row.
+		 *
+		 * @return <code>false</code> if there are no more rows.
+		 */
+		public boolean next() {
+			if (row + 1 >= size) {
+				return false;
+			}
+			row++;
+			return true;
+		}
+
+		/**
+		 * Moves to a row.
+		 *
+		 * @param row the row.
+		 */
+		public void seek(long row) {
+			this.row = row;
+		}
+
+		@Override
+		public int size() {
+			return types.length;
+		}
+
+		@Override
+		public boolean isMissing(int i) {
+			if (types[i] == DOUBLE) {
+				return Double.isNaN(getValue(i, row));
+			}
+			return dicts[i][getCode(i, row)].equals("?");
+		}
+
+		@Override
+		public double getDouble(int i) {
+			if (types[i] == DOUBLE) {
+				return getValue(i, row);
+			}
+			String s = dicts[i][getCode(i, row)];
+			return s.equals("?") ? Double.NaN : Tokenizer.parseDouble(s, 0, s.length());
+		}
+
+		@Override
+		public double getDoubleStrict(int i) {
+			if (types[i] == DOUBLE) {
+				double value = getValue(i, row);
+				if (Double.isNaN(value)) {
+					throw new NumberFormatException("For input string: \"?\"");
+				}
+				return value;
+			}
+			String s = dicts[i][getCode(i, row)];
+			return Tokenizer.parseDouble(s, 0, s.length());
+		}
+
+		@Override
+		public String getString(int i) {
+			if (types[i] == DOUBLE) {
+				return format(getValue(i, row));
+			}
+			return dicts[i][getCode(i, row)];
+		}
+
+		/**
+		 * Returns the row in the text format, fields separated by a tab.
+		 */
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for (int col = 0; col < types.length; col++) {
+				if (col > 0) {
+					sb.append('\t');
+				}
+				sb.append(getString(col));
+			}
+			return sb.toString();
+		}
+
+	}
+
+	/**
+	 * Class for writing data in this format. Each column is streamed to a temporary file
+	 * next to the output while rows are added; the columns are copied behind the header
+	 * when the writer is closed. Only the dictionaries are kept in memory.
+	 */
+	public static class Writer implements Closeable {
+
+		private static final int BUFFER_SIZE = 1 << 14;
+
+		private String path;
+		private String attText;
+		private byte[] types;
+		private Path[] tmpPaths;
+		private DataOutputStream[] columns;
+		private List<Map<String, Integer>> dictionaries;
+		private double[] rowValues;
+		private long size;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param path the path of the file.
+		 * @param attText the content of the attribute file.
+		 * @param groupCol the column of the group id, or {@link AttrInfo#GROUP_UNSET}.
+		 * @throws IOException
+		 */
+		public Writer(String path, String attText, int groupCol) throws IOException {
+			this.path = path;
+			this.attText = attText;
+			AttrInfo ainfo = AttributesReader.parse(attText);
+			int colN = ainfo.getColN();
+			types = new byte[colN];
+			Arrays.fill(types, DICTIONARY);
+			for (Attribute att : ainfo.attributes) {
+				types[att.getColumn()] = DOUBLE;
+			}
+			if (ainfo.clsAttr != null) {
+				types[ainfo.clsAttr.getColumn()] = DOUBLE;
+			}
+			if (ainfo.wtAttr != null) {
+				types[ainfo.wtAttr.getColumn()] = DOUBLE;
+			}
+			if (groupCol != AttrInfo.GROUP_UNSET) {
+				types[groupCol] = DICTIONARY;
+			}
+			rowValues = new double[colN];
+			tmpPaths = new Path[colN];
+			columns = new DataOutputStream[colN];
+			dictionaries = new ArrayList<>();
+			Path dir = Paths.get(path).toAbsolutePath().getParent();
+			String prefix = Paths.get(path).getFileName() + ".";
+			try {
+				for (int col = 0; col < colN; col++) {
+					tmpPaths[col] = Files.createTempFile(dir, prefix, ".tmp");
+					// Also removed when a tool exits on bad input before closing the writer
+					tmpPaths[col].toFile().deleteOnExit();
+					columns[col] = new DataOutputStream(new BufferedOutputStream(
+							new FileOutputStream(tmpPaths[col].toFile()), BUFFER_SIZE));
+					dictionaries.add(types[col] == DICTIONARY ? new HashMap<>() : null);
+				}
+			} catch (IOException e) {
+				deleteColumns();
+				throw e;
+			}
+		}
+
+		/**
+		 * Adds a row.
+		 *
+		 * @param row the fields of the row.
+		 * @throws NumberFormatException if a double column contains a text value.
+		 * @throws IOException
+		 */
+		public void add(Row row) throws IOException {
+			if (row.size() != types.length) {
+				throw new IllegalArgumentException("The number of values (" + row.size()
+						+ ") does not match the number of attributes (" + types.length + ")");
+			}
+			// Parse the whole row first, so that a bad row does not leave columns uneven
+			for (int col = 0; col < types.length; col++) {
+				if (types[col] == DOUBLE) {
+					rowValues[col] = row.getDouble(col);
+				}
+			}
+			for (int col = 0; col < types.length; col++) {
+				if (types[col] == DOUBLE) {
+					columns[col].writeDouble(rowValues[col]);
+				} else {
+					Map<String, Integer> dictionary = dictionaries.get(col);
+					String s = row.getString(col);
+					Integer code = dictionary.get(s);
+					if (code == null) {
+						code = dictionary.size();
+						dictionary.put(s, code);
+					}
+					columns[col].writeInt(code);
+				}
+			}
+			size++;
+		}
+
+		/**
+		 * Returns the number of rows added.
+		 *
+		 * @return the number of rows added.
+		 */
+		public long size() {
+			return size;
+		}
+
+		/**
+		 * Writes the file and deletes the temporary column files.
+		 */
+		@Override
+		public void close() throws IOException {
+			if (columns == null) {
+				return;
+			}
+			try {
+				for (DataOutputStream column : columns) {
+					column.close();
+				}
+				write();
+			} finally {
+				deleteColumns();
+			}
+		}
+
+		private void write() throws IOException {
+			int colN = types.length;
+			List<byte[][]> dictBytes = new ArrayList<>();
+			long[] dictLengths = new long[colN];
+			for (int col = 0; col < colN; col++) {
+				if (types[col] == DICTIONARY) {
+					byte[][] entries = new byte[dictionaries.get(col).size()][];
+					for (Map.Entry<String, Integer> entry : dictionaries.get(col).entrySet()) {
+						entries[entry.getValue()] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+					}
+					long length = 4;
+					for (byte[] e : entries) {
+						length += 4 + e.length;
+					}
+					dictBytes.add(entries);
+					dictLengths[col] = length;
+				} else {
+					dictBytes.add(null);
+				}
+			}
+
+			long[] offsets = new long[colN];
+			long[] dictOffsets = new long[colN];
+			byte[] header = header(offsets, dictOffsets, dictLengths);
+			long pos = align(header.length);
+			for (int col = 0; col < colN; col++) {
+				offsets[col] = pos;
+				pos = align(pos + (types[col] == DOUBLE ? 8L : 4L) * size);
+				if (types[col] == DICTIONARY) {
+					dictOffsets[col] = pos;
+					pos = align(pos + dictLengths[col]);
+				} else {
+					dictOffsets[col] = -1;
+				}
+			}
+			header = header(offsets, dictOffsets, dictLengths);
+
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(path), 1 << 16))) {
+				out.write(header);
+				pos = header.length;
+				for (int col = 0; col < colN; col++) {
+					pos = pad(out, pos, offsets[col]);
+					pos += Files.copy(tmpPaths[col], out);
+					Files.delete(tmpPaths[col]);
+					if (types[col] == DICTIONARY) {
+						pos = pad(out, pos, dictOffsets[col]);
+						byte[][] entries = dictBytes.get(col);
+						out.writeInt(entries.length);
+						for (byte[] e : entries) {
+							out.writeInt(e.length);
+							out.write(e);
+						}
+						pos += dictLengths[col];
+					}
+				}
+			}
+		}
+
+		private void deleteColumns() throws IOException {
+			for (int col = 0; col < tmpPaths.length; col++) {
+				if (columns[col] != null) {
+					columns[col].close();
+				}
+				if (tmpPaths[col] != null) {
+					Files.deleteIfExists(tmpPaths[col]);
+				}
+			}
+			columns = null;
+		}
+
+		private byte[] header(long[] offsets, long[] dictOffsets, long[] dictLengths) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.write(MAGIC);
+			byte[] text = attText.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(text.length);
+			out.write(text);
+			out.writeLong(size);
+			out.writeInt(types.length);
+			for (int col = 0; col < types.length; col++) {
+				out.writeByte(types[col]);
+				out.writeLong(offsets[col]);
+				out.writeLong(dictOffsets[col]);
+				out.writeLong(dictLengths[col]);
+			}
+			out.flush();
+			return bytes.toByteArray();
+		}
+
+		private static long align(long pos) {
+			return (pos + 7) & ~7L;
+		}
+
+		private static long pad(DataOutputStream out, long pos, long target) throws IOException {
+			for (; pos < target; pos++) {
+				out.write(0);
+			}
+			return pos;
+		}
+
+	}
+
+}
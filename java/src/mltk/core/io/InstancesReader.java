@@ -126,6 +126,21 @@ public class InstancesReader {
 	public static Instances read(AttrInfo ainfo, String dataFile, String delimiter, boolean allowMV) throws IOException {
 		Instances instances = new Instances(ainfo.attributes, ainfo.clsAttr);
 
+		// Tab separated and columnar files are read without splitting lines into strings
+		if (Tokenizer.forDelimiter(delimiter) != null || ColumnarData.isColumnar(dataFile)) {
+			RowReader reader = RowReader.open(dataFile, !delimiter.equals("\t"));
+			while (reader.next()) {
+				Row row = reader.row();
+				Instance instance = parseDenseInstance(row, ainfo, allowMV);
+				if (ainfo.groupCol != AttrInfo.GROUP_UNSET) {
+					instance.setGroupId(row.getString(ainfo.groupCol));
+				}
+				instances.add(instance);
+			}
+			reader.close();
+			return instances;
+		}
+
 		BufferedReader br = new BufferedReader(new FileReader(dataFile), 65535);
 		for (;;) {
 			String line = br.readLine();
@@ -155,50 +170,75 @@ public class InstancesReader {
 	 * @return a dense instance from strings.
 	 */
 	public static Instance parseDenseInstance(String[] data, AttrInfo ainfo, boolean allowMV) {
-		List<Integer> attIdList = new ArrayList<>();
-		for (int i = 0; i < ainfo.attributes.size(); i ++) {
-			attIdList.add(i);
-		}
-		return parseDenseInstance(data, ainfo, attIdList, allowMV);
+		return parseDenseInstance(new ArrayRow(data), ainfo, null, allowMV);
 	}
 	
+	/**
+	 * Parses a dense instance with a subset of attributes from strings.
+	 * 
+	 * @param data the string array.
+	 * @param ainfo attribute information containing the class index.
+	 * @param attIdList the ids of the attributes, or <code>null</code> for all attributes.
+	 * @param allowMV flag set when missing values are allowed
+	 * @return a dense instance from strings.
+	 */
 	public static Instance parseDenseInstance(String[] data, AttrInfo ainfo, List<Integer> attIdList, boolean allowMV) {
-		double[] vector = new double[attIdList.size()];
-		for (int i = 0; i < attIdList.size(); i++) {
-			int attId = attIdList.get(i);
+		return parseDenseInstance(new ArrayRow(data), ainfo, attIdList, allowMV);
+	}
+	
+	/**
+	 * Parses a dense instance from the fields of a line. Only the columns of the attributes,
+	 * the class and the weight are parsed.
+	 * 
+	 * @param data the fields of the line.
+	 * @param ainfo attribute information containing the class index.
+	 * @param allowMV flag set when missing values are allowed
+	 * @return a dense instance from the fields of a line.
+	 */
+	public static Instance parseDenseInstance(Row data, AttrInfo ainfo, boolean allowMV) {
+		return parseDenseInstance(data, ainfo, null, allowMV);
+	}
+
+	/**
+	 * Parses a dense instance with a subset of attributes from the fields of a line.
+	 * 
+	 * @param data the fields of the line.
+	 * @param ainfo attribute information containing the class index.
+	 * @param attIdList the ids of the attributes, or <code>null</code> for all attributes.
+	 * @param allowMV flag set when missing values are allowed
+	 * @return a dense instance from the fields of a line.
+	 */
+	public static Instance parseDenseInstance(Row data, AttrInfo ainfo, List<Integer> attIdList, boolean allowMV) {
+		double[] vector = new double[attIdList == null ? ainfo.attributes.size() : attIdList.size()];
+		for (int i = 0; i < vector.length; i++) {
+			int attId = attIdList == null ? i : attIdList.get(i);
 			int col = ainfo.attributes.get(attId).getColumn();
-			if (col >= data.length)
+			if (col >= data.size())
 			{
 				System.err.println("Error: There are more attributes in the attribute file than columns in the data.");
 				System.exit(1);
 			}
 			try {
-				if(allowMV) {
-					vector[i] = data[col].equals("?") ?
-								Double.NaN :
-								Double.parseDouble(data[col]);
-				} else {
-					if(data[col].equals("?"))
-					{
-						System.err.println("Error: Missing values are not allowed.\n");
-						System.exit(1);
-					}
-					vector[i] = Double.parseDouble(data[col]); 
+				if(data.isMissing(col) && !allowMV)
+				{
+					System.err.println("Error: Missing values are not allowed.\n");
+					System.exit(1);
 				}
+				vector[i] = data.getDouble(col);
 			} catch(java.lang.NumberFormatException e) {
-				System.err.println("Error: The column for an active attribute " + ainfo.attributes.get(attId).getName() + " contains a text value " + data[col]);
+				System.err.println("Error: The column for an active attribute " + ainfo.attributes.get(attId).getName() + " contains a text value " + data.getString(col));
 				System.exit(1);
 			}
 		}
 		double classValue = (ainfo.clsAttr.getColumn() < 0) ? 
 							Double.NaN : 
-							Double.parseDouble(data[ainfo.clsAttr.getColumn()]);
+							data.getDoubleStrict(ainfo.clsAttr.getColumn());
 		double weightValue = (ainfo.wtAttr == null) ?
 							1.0 :
-							Double.parseDouble(data[ainfo.wtAttr.getColumn()]);
+							data.getDoubleStrict(ainfo.wtAttr.getColumn());
 		return new Instance(vector, classValue, weightValue);
 	}
-	
+
 	/**
 	 * Parses a dense instance from strings.
 	 * 
@@ -264,4 +304,42 @@ public class InstancesReader {
 		}
 	}
 
+	/**
+	 * Fields of a line that was split into strings.
+	 */
+	private static class ArrayRow implements Row {
+
+		private final String[] data;
+
+		ArrayRow(String[] data) {
+			this.data = data;
+		}
+
+		@Override
+		public int size() {
+			return data.length;
+		}
+
+		@Override
+		public boolean isMissing(int i) {
+			return data[i].equals("?");
+		}
+
+		@Override
+		public double getDouble(int i) {
+			return isMissing(i) ? Double.NaN : Double.parseDouble(data[i]);
+		}
+
+		@Override
+		public double getDoubleStrict(int i) {
+			return Double.parseDouble(data[i]);
+		}
+
+		@Override
+		public String getString(int i) {
+			return data[i];
+		}
+
+	}
+
 }
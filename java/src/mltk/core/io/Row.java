@@ -0,0 +1,51 @@
+package mltk.core.io;
+
+/**
+ * Interface for the fields of a row of a data file, read either from a text line
+ * ({@link Tokenizer}) or from a columnar file ({@link ColumnarData}).
+ *
+ */
+public interface Row {
+
+	/**
+	 * Returns the number of fields.
+	 *
+	 * @return the number of fields.
+	 */
+	int size();
+
+	/**
+	 * Returns <code>true</code> if a field is a missing value ("?").
+	 *
+	 * @param i the index of the field.
+	 * @return <code>true</code> if a field is a missing value.
+	 */
+	boolean isMissing(int i);
+
+	/**
+	 * Returns the value of a field. Missing values ("?") are returned as NaN.
+	 *
+	 * @param i the index of the field.
+	 * @return the value of a field.
+	 * @throws NumberFormatException if the field is not a number.
+	 */
+	double getDouble(int i);
+
+	/**
+	 * Returns the value of a field where missing values are not allowed.
+	 *
+	 * @param i the index of the field.
+	 * @return the value of a field.
+	 * @throws NumberFormatException if the field is not a number, "?" included.
+	 */
+	double getDoubleStrict(int i);
+
+	/**
+	 * Returns the text of a field.
+	 *
+	 * @param i the index of the field.
+	 * @return the text of a field.
+	 */
+	String getString(int i);
+
+}
@@ -0,0 +1,123 @@
+package mltk.core.io;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Class for reading the rows of a data file one at a time, from either a tab separated
+ * text file or a {@link ColumnarData} file. The format is detected from the content of
+ * the file.
+ *
+ */
+public abstract class RowReader implements Closeable {
+
+	/**
+	 * Opens a data file.
+	 *
+	 * @param path the path of the file.
+	 * @param merge <code>true</code> if runs of tabs are one delimiter in a text file.
+	 * @return a reader positioned before the first row.
+	 * @throws IOException
+	 */
+	public static RowReader open(String path, boolean merge) throws IOException {
+		if (ColumnarData.isColumnar(path)) {
+			return new Columnar(ColumnarData.open(path));
+		}
+		return new Text(new BufferedReader(new FileReader(path), 65535), merge);
+	}
+
+	/**
+	 * Moves to the next row.
+	 *
+	 * @return <code>false</code> if there are no more rows.
+	 * @throws IOException
+	 */
+	public abstract boolean next() throws IOException;
+
+	/**
+	 * Returns the fields of the current row.
+	 *
+	 * @return the fields of the current row.
+	 */
+	public abstract Row row();
+
+	/**
+	 * Returns the current row in the text format.
+	 *
+	 * @return the current row in the text format.
+	 */
+	public abstract String getLine();
+
+	static class Text extends RowReader {
+
+		private BufferedReader br;
+		private Tokenizer tokenizer;
+		private String line;
+
+		Text(BufferedReader br, boolean merge) {
+			this.br = br;
+			this.tokenizer = new Tokenizer(merge);
+		}
+
+		@Override
+		public boolean next() throws IOException {
+			line = br.readLine();
+			if (line == null) {
+				return false;
+			}
+			tokenizer.reset(line);
+			return true;
+		}
+
+		@Override
+		public Row row() {
+			return tokenizer;
+		}
+
+		@Override
+		public String getLine() {
+			return line;
+		}
+
+		@Override
+		public void close() throws IOException {
+			br.close();
+		}
+
+	}
+
+	static class Columnar extends RowReader {
+
+		private ColumnarData data;
+		private ColumnarData.Cursor cursor;
+
+		Columnar(ColumnarData data) throws IOException {
+			this.data = data;
+			this.cursor = data.cursor();
+		}
+
+		@Override
+		public boolean next() {
+			return cursor.next();
+		}
+
+		@Override
+		public Row row() {
+			return cursor;
+		}
+
+		@Override
+		public String getLine() {
+			return cursor.toString();
+		}
+
+		@Override
+		public void close() throws IOException {
+			data.close();
+		}
+
+	}
+
+}
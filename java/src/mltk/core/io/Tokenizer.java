@@ -0,0 +1,354 @@
+package mltk.core.io;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Class for splitting lines of tab separated values without creating a string for every
+ * field. The field boundaries of a line are found in one scan; fields are only converted
+ * when they are requested, so callers pay only for the columns they use.
+ *
+ * <p>Fields are split like <code>line.split("\t+")</code> or <code>line.split("\t")</code>:
+ * a leading delimiter gives an empty first field and trailing empty fields are removed.</p>
+ *
+ * <p>Numbers are parsed with a fast path for decimals with at most 15 significant digits
+ * and a decimal exponent of at most 22 in magnitude, which gives the same result as
+ * {@link Double#parseDouble(String)}. Other numbers are handed to
+ * {@link Double#parseDouble(String)}.</p>
+ *
+ */
+public class Tokenizer implements Row {
+
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	private final boolean merge;
+
+	private byte[] bytes;
+	private CharSequence chars;
+	private int[] starts;
+	private int[] ends;
+	private int size;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param merge <code>true</code> if runs of tabs are one delimiter ("\t+"),
+	 * <code>false</code> if every tab is a delimiter ("\t").
+	 */
+	public Tokenizer(boolean merge) {
+		this.merge = merge;
+		this.starts = new int[16];
+		this.ends = new int[16];
+	}
+
+	/**
+	 * Returns a tokenizer for a delimiter regex, or <code>null</code> if the delimiter is
+	 * neither "\t+" nor "\t".
+	 *
+	 * @param delimiter the delimiter regex.
+	 * @return a tokenizer for the delimiter.
+	 */
+	public static Tokenizer forDelimiter(String delimiter) {
+		if (delimiter.equals("\t+")) {
+			return new Tokenizer(true);
+		} else if (delimiter.equals("\t")) {
+			return new Tokenizer(false);
+		}
+		return null;
+	}
+
+	/**
+	 * Splits a line.
+	 *
+	 * @param line the line without the line terminator.
+	 * @return this tokenizer.
+	 */
+	public Tokenizer reset(CharSequence line) {
+		bytes = null;
+		chars = line;
+		int end = line.length();
+		size = 0;
+		int start = 0;
+		for (int i = 0; i < end; ) {
+			if (line.charAt(i) == '\t') {
+				add(start, i);
+				i++;
+				if (merge) {
+					while (i < end && line.charAt(i) == '\t') {
+						i++;
+					}
+				}
+				start = i;
+			} else {
+				i++;
+			}
+		}
+		add(start, end);
+		trim(end);
+		return this;
+	}
+
+	/**
+	 * Splits a line given as bytes in an 8-bit compatible encoding.
+	 *
+	 * @param data the bytes.
+	 * @param start the start of the line.
+	 * @param end the end of the line, excluding the line terminator.
+	 * @return this tokenizer.
+	 */
+	public Tokenizer reset(byte[] data, int start, int end) {
+		bytes = data;
+		chars = null;
+		size = 0;
+		int fieldStart = start;
+		for (int i = start; i < end; ) {
+			if (data[i] == '\t') {
+				add(fieldStart, i);
+				i++;
+				if (merge) {
+					while (i < end && data[i] == '\t') {
+						i++;
+					}
+				}
+				fieldStart = i;
+			} else {
+				i++;
+			}
+		}
+		add(fieldStart, end);
+		trim(end - start);
+		return this;
+	}
+
+	private void add(int start, int end) {
+		if (size == starts.length) {
+			starts = Arrays.copyOf(starts, size * 2);
+			ends = Arrays.copyOf(ends, size * 2);
+		}
+		starts[size] = start;
+		ends[size] = end;
+		size++;
+	}
+
+	private void trim(int length) {
+		// As String.split, an empty line has one field and trailing empty fields are removed
+		if (length > 0) {
+			while (size > 0 && starts[size - 1] == ends[size - 1]) {
+				size--;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of fields.
+	 *
+	 * @return the number of fields.
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns <code>true</code> if a field is a missing value ("?").
+	 *
+	 * @param i the index of the field.
+	 * @return <code>true</code> if a field is a missing value.
+	 */
+	@Override
+	public boolean isMissing(int i) {
+		check(i);
+		return ends[i] - starts[i] == 1 && charAt(starts[i]) == '?';
+	}
+
+	/**
+	 * Returns the value of a field. Missing values ("?") are returned as NaN.
+	 *
+	 * @param i the index of the field.
+	 * @return the value of a field.
+	 * @throws NumberFormatException if the field is not a number.
+	 */
+	@Override
+	public double getDouble(int i) {
+		if (isMissing(i)) {
+			return Double.NaN;
+		}
+		return parse(bytes, chars, starts[i], ends[i]);
+	}
+
+	/**
+	 * Returns the value of a field where missing values are not allowed, as
+	 * {@link Double#parseDouble(String)} would return it.
+	 *
+	 * @param i the index of the field.
+	 * @return the value of a field.
+	 * @throws NumberFormatException if the field is not a number, "?" included.
+	 */
+	@Override
+	public double getDoubleStrict(int i) {
+		check(i);
+		return parse(bytes, chars, starts[i], ends[i]);
+	}
+
+	/**
+	 * Returns the text of a field.
+	 *
+	 * @param i the index of the field.
+	 * @return the text of a field.
+	 */
+	@Override
+	public String getString(int i) {
+		check(i);
+		if (bytes != null) {
+			return new String(bytes, starts[i], ends[i] - starts[i], StandardCharsets.ISO_8859_1);
+		}
+		return chars.subSequence(starts[i], ends[i]).toString();
+	}
+
+	/**
+	 * Returns <code>true</code> if a field equals a string.
+	 *
+	 * @param i the index of the field.
+	 * @param s the string.
+	 * @return <code>true</code> if a field equals a string.
+	 */
+	public boolean equals(int i, String s) {
+		check(i);
+		int len = ends[i] - starts[i];
+		if (len != s.length()) {
+			return false;
+		}
+		for (int k = 0; k < len; k++) {
+			if (charAt(starts[i] + k) != s.charAt(k)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void check(int i) {
+		if (i >= size) {
+			throw new ArrayIndexOutOfBoundsException(i);
+		}
+	}
+
+	private char charAt(int pos) {
+		return bytes != null ? (char) (bytes[pos] & 0xff) : chars.charAt(pos);
+	}
+
+	/**
+	 * Parses a double as {@link Double#parseDouble(String)} does.
+	 *
+	 * @param s the characters.
+	 * @param start the start of the number.
+	 * @param end the end of the number.
+	 * @return the value.
+	 * @throws NumberFormatException if the characters are not a number.
+	 */
+	public static double parseDouble(CharSequence s, int start, int end) {
+		return parse(null, s, start, end);
+	}
+
+	/**
+	 * Parses a double from bytes in an 8-bit compatible encoding as
+	 * {@link Double#parseDouble(String)} does.
+	 *
+	 * @param b the bytes.
+	 * @param start the start of the number.
+	 * @param end the end of the number.
+	 * @return the value.
+	 * @throws NumberFormatException if the bytes are not a number.
+	 */
+	public static double parseDouble(byte[] b, int start, int end) {
+		return parse(b, null, start, end);
+	}
+
+	private static double parse(byte[] b, CharSequence s, int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end) {
+			char c = b != null ? (char) (b[i] & 0xff) : s.charAt(i);
+			if (c == '-' || c == '+') {
+				negative = c == '-';
+				i++;
+			}
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int significant = 0;
+		int scale = 0;
+		boolean point = false;
+		for (; i < end; i++) {
+			char c = b != null ? (char) (b[i] & 0xff) : s.charAt(i);
+			if (c >= '0' && c <= '9') {
+				digits++;
+				if (mantissa != 0 || c != '0') {
+					if (++significant > 15) {
+						return fallback(b, s, start, end);
+					}
+				}
+				mantissa = mantissa * 10 + (c - '0');
+				if (point) {
+					scale--;
+				}
+			} else if (c == '.' && !point) {
+				point = true;
+			} else {
+				break;
+			}
+		}
+		if (digits == 0) {
+			return fallback(b, s, start, end);
+		}
+		if (i < end) {
+			char c = b != null ? (char) (b[i] & 0xff) : s.charAt(i);
+			if (c != 'e' && c != 'E') {
+				return fallback(b, s, start, end);
+			}
+			i++;
+			boolean negativeExp = false;
+			if (i < end) {
+				c = b != null ? (char) (b[i] & 0xff) : s.charAt(i);
+				if (c == '-' || c == '+') {
+					negativeExp = c == '-';
+					i++;
+				}
+			}
+			int exp = 0;
+			int expDigits = 0;
+			for (; i < end; i++) {
+				c = b != null ? (char) (b[i] & 0xff) : s.charAt(i);
+				if (c < '0' || c > '9' || ++expDigits > 4) {
+					return fallback(b, s, start, end);
+				}
+				exp = exp * 10 + (c - '0');
+			}
+			if (expDigits == 0) {
+				return fallback(b, s, start, end);
+			}
+			scale += negativeExp ? -exp : exp;
+		}
+		double value;
+		if (mantissa == 0) {
+			value = 0.0;
+		} else if (scale >= 0 && scale <= 22) {
+			value = mantissa * POWERS_OF_TEN[scale];
+		} else if (scale < 0 && scale >= -22) {
+			value = mantissa / POWERS_OF_TEN[-scale];
+		} else {
+			return fallback(b, s, start, end);
+		}
+		return negative ? -value : value;
+	}
+
+	private static double fallback(byte[] b, CharSequence s, int start, int end) {
+		String str = b != null ?
+				new String(b, start, end - start, StandardCharsets.ISO_8859_1) :
+				s.subSequence(start, end).toString();
+		return Double.parseDouble(str);
+	}
+
+}
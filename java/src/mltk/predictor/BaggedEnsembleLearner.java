@@ -2,9 +2,14 @@ package mltk.predictor;
 
 import mltk.core.Instances;
 import mltk.core.Pointers;
+import mltk.util.Random;
+import mltk.util.WorkerPool;
 
 /**
- * Class for learning bagged ensembles.
+ * Class for learning bagged ensembles. Bags can be trained in parallel on the
+ * {@link mltk.util.WorkerPool WorkerPool}, in which case the learner must support
+ * concurrent builds. Every bag draws from its own random object, so the ensemble does
+ * not depend on the number of threads.
  * 
  * @author Yin Lou, modified by Xiaojie Wang
  * 
@@ -14,6 +19,7 @@ public class BaggedEnsembleLearner extends Learner {
 	protected int baggingIters;
 	protected Learner learner;
 	protected Instances[] bags;
+	protected int numThreads;
 
 	/**
 	 * Constructor.
@@ -24,6 +30,7 @@ public class BaggedEnsembleLearner extends Learner {
 	public BaggedEnsembleLearner(int baggingIters, Learner learner) {
 		this.baggingIters = baggingIters;
 		this.learner = learner;
+		this.numThreads = 1;
 	}
 
 	/**
@@ -44,6 +51,24 @@ public class BaggedEnsembleLearner extends Learner {
 		this.baggingIters = baggingIters;
 	}
 
+	/**
+	 * Returns the maximum number of threads training bags.
+	 * 
+	 * @return the maximum number of threads training bags.
+	 */
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * Sets the maximum number of threads training bags.
+	 * 
+	 * @param numThreads the maximum number of threads training bags.
+	 */
+	public void setNumThreads(int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+	}
+
 	/**
 	 * Returns the learner.
 	 * 
@@ -85,11 +110,7 @@ public class BaggedEnsembleLearner extends Learner {
 		// Create bags
 		bags = Bagging.createBags(instances, baggingIters);
 
-		BaggedEnsemble baggedEnsemble = new BaggedEnsemble(bags.length);
-		for (Instances bag : bags) {
-			baggedEnsemble.add(learner.build(bag));
-		}
-		return baggedEnsemble;
+		return build(bags);
 	}
 
 	/**
@@ -100,11 +121,17 @@ public class BaggedEnsembleLearner extends Learner {
 	 * @return a bagged ensemble.
 	 */
 	public BaggedEnsemble build(Instances trainSet, double[] targets, Pointers[] bags) {
-		BaggedEnsemble baggedEnsemble = new BaggedEnsemble(bags.length);
-		for (Pointers bag : bags) {
-			baggedEnsemble.add(learner.build(trainSet, targets, bag));
-		}
-		return baggedEnsemble;
+		Predictor[] predictors = new Predictor[bags.length];
+		Random[] rands = Bagging.createRandoms(bags.length);
+		WorkerPool.run(bags.length, numThreads, i -> {
+			Random previous = Random.setCurrent(rands[i]);
+			try {
+				predictors[i] = learner.build(trainSet, targets, bags[i]);
+			} finally {
+				Random.setCurrent(previous);
+			}
+		});
+		return createEnsemble(predictors);
 	}
 	
 	/**
@@ -114,9 +141,24 @@ public class BaggedEnsembleLearner extends Learner {
 	 * @return a bagged ensemble.
 	 */
 	public BaggedEnsemble build(Instances[] bags) {
-		BaggedEnsemble baggedEnsemble = new BaggedEnsemble(bags.length);
-		for (Instances bag : bags) {
-			baggedEnsemble.add(learner.build(bag));
+		Predictor[] predictors = new Predictor[bags.length];
+		Random[] rands = Bagging.createRandoms(bags.length);
+		WorkerPool.run(bags.length, numThreads, i -> {
+			Random previous = Random.setCurrent(rands[i]);
+			try {
+				predictors[i] = learner.build(bags[i]);
+			} finally {
+				Random.setCurrent(previous);
+			}
+		});
+		return createEnsemble(predictors);
+	}
+
+	// Adds the predictors in the order of the bags
+	protected static BaggedEnsemble createEnsemble(Predictor[] predictors) {
+		BaggedEnsemble baggedEnsemble = new BaggedEnsemble(predictors.length);
+		for (Predictor predictor : predictors) {
+			baggedEnsemble.add(predictor);
 		}
 		return baggedEnsemble;
 	}
@@ -6,7 +6,6 @@ import java.util.Map;
 
 import mltk.core.Instance;
 import mltk.core.Instances;
-import mltk.core.Pointer;
 import mltk.core.Pointers;
 import mltk.predictor.evaluation.Metric;
 import mltk.util.Random;
@@ -26,21 +25,31 @@ public class Bagging {
 	 * @return a bootstrap sample.
 	 */
 	public static Pointers createBootstrapSample(Pointers pointers) {
-		Random rand = Random.getInstance();
-		Map<Integer, Integer> map = new HashMap<>();
+		return createBootstrapSample(pointers, Random.getInstance());
+	}
+
+	/**
+	 * Returns a bootstrap sample.
+	 * 
+	 * @param pointers the pointers to original data set.
+	 * @param rand the random object to draw the sample with.
+	 * @return a bootstrap sample.
+	 */
+	public static Pointers createBootstrapSample(Pointers pointers, Random rand) {
+		int[] counts = new int[pointers.size()];
+		int distinct = 0;
 		for (int i = 0; i < pointers.size(); i++) {
 			int idx = rand.nextInt(pointers.size());
-			if (!map.containsKey(idx)) {
-				map.put(idx, 0);
+			if (counts[idx] == 0) {
+				distinct++;
 			}
-			map.put(idx, map.get(idx) + 1);
+			counts[idx]++;
 		}
-		Pointers bag = new Pointers();
-		for (Integer idx : map.keySet()) {
-			int index = pointers.get(idx).getIndex();
-			int weight = map.get(idx);
-			Pointer pointer = new Pointer(index, weight);
-			bag.add(pointer);
+		Pointers bag = new Pointers(distinct);
+		for (int idx = 0; idx < counts.length; idx++) {
+			if (counts[idx] > 0) {
+				bag.add(pointers.getIndex(idx), counts[idx]);
+			}
 		}
 		return bag;
 	}
@@ -52,7 +61,17 @@ public class Bagging {
 	 * @return a bootstrap sample.
 	 */
 	public static Instances createBootstrapSample(Instances instances) {
-		Random rand = Random.getInstance();
+		return createBootstrapSample(instances, Random.getInstance());
+	}
+
+	/**
+	 * Returns a bootstrap sample.
+	 * 
+	 * @param instances the data set.
+	 * @param rand the random object to draw the sample with.
+	 * @return a bootstrap sample.
+	 */
+	public static Instances createBootstrapSample(Instances instances, Random rand) {
 		Map<Integer, Integer> map = new HashMap<>();
 		for (int i = 0; i < instances.size(); i++) {
 			int idx = rand.nextInt(instances.size());
@@ -116,8 +135,9 @@ public class Bagging {
 			bags = new Pointers[] { pointers };
 		} else {
 			bags = new Pointers[baggingIter];
+			Random[] rands = createRandoms(baggingIter);
 			for (int i = 0; i < baggingIter; i++) {
-				bags[i] = Bagging.createBootstrapSample(pointers);
+				bags[i] = Bagging.createBootstrapSample(pointers, rands[i]);
 			}
 		}
 		return bags;
@@ -137,13 +157,31 @@ public class Bagging {
 			bags = new Instances[] { instances };
 		} else {
 			bags = new Instances[baggingIter];
+			Random[] rands = createRandoms(baggingIter);
 			for (int i = 0; i < baggingIter; i++) {
-				bags[i] = Bagging.createBootstrapSample(instances);
+				bags[i] = Bagging.createBootstrapSample(instances, rands[i]);
 			}
 		}
 		return bags;
 	}
 	
+	/**
+	 * Returns a random object for every bag, split from the current random object in the
+	 * order of the bags, so that the bags do not depend on the order they are drawn or
+	 * trained in.
+	 * 
+	 * @param baggingIter the number of bagging iterations.
+	 * @return a random object for every bag.
+	 */
+	public static Random[] createRandoms(int baggingIter) {
+		Random rand = Random.getInstance();
+		Random[] rands = new Random[baggingIter];
+		for (int i = 0; i < baggingIter; i++) {
+			rands[i] = rand.split();
+		}
+		return rands;
+	}
+
 	/**
 	 * Returns <code>true</code> if the bagging converges.
 	 *
@@ -1,6 +1,10 @@
 package mltk.predictor;
 
+import mltk.core.FeatureIndex;
 import mltk.core.Instance;
+import mltk.core.Instances;
+import mltk.core.Pointers;
+import mltk.predictor.function.Function1D;
 
 /**
  * Class for boosted ensembles.
@@ -36,6 +40,32 @@ public class BoostedEnsemble extends Ensemble {
 		return prediction;
 	}
 
+	/**
+	 * Returns the predictions of this ensemble for a batch of instances, the same as
+	 * {@link #regress(Instance)} for every instance. 1D functions on attributes covered by
+	 * the feature index take one lookup by bin per instance.
+	 * 
+	 * @param instances the dataset.
+	 * @param pointers the pointers to the instances, or <code>null</code> for all instances.
+	 * @param index the feature index, or <code>null</code>.
+	 * @return the predictions, indexed as the pointers.
+	 */
+	public double[] regress(Instances instances, Pointers pointers, FeatureIndex index) {
+		int n = pointers != null ? pointers.size() : instances.size();
+		double[] preds = new double[n];
+		for (Predictor predictor : predictors) {
+			if (predictor instanceof Function1D) {
+				((Function1D) predictor).addPredictions(instances, pointers, index, preds);
+			} else {
+				Regressor regressor = (Regressor) predictor;
+				for (int i = 0; i < n; i++) {
+					preds[i] += regressor.regress(instances.get(pointers != null ? pointers.getIndex(i) : i));
+				}
+			}
+		}
+		return preds;
+	}
+
 	@Override
 	public int classify(Instance instance) {
 		double pred = regress(instance);
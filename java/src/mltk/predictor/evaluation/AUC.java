@@ -53,6 +53,35 @@ public class AUC extends Metric {
 
 	}
 
+	/**
+	 * Scratch buffers of the primitive kernel; kept per thread, since metrics are shared
+	 * by threads that evaluate in parallel.
+	 */
+	private static class Scratch {
+
+		long[] keys = new long[0];
+		long[] keysTmp = new long[0];
+		int[] order = new int[0];
+		int[] orderTmp = new int[0];
+		double[] targets = new double[0];
+		double[] weights = new double[0];
+		int[] count = new int[256];
+
+		void ensureCapacity(int n) {
+			if (keys.length < n) {
+				keys = new long[n];
+				keysTmp = new long[n];
+				order = new int[n];
+				orderTmp = new int[n];
+				targets = new double[n];
+				weights = new double[n];
+			}
+		}
+
+	}
+
+	private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
 	/**
 	 * Constructor.
 	 */
@@ -119,32 +148,83 @@ public class AUC extends Metric {
 
 	@Override
 	public double eval(double[] preds, double[] targets, double[] weights) {
-		DoubleTriple[] a = new DoubleTriple[preds.length];
-		for (int i = 0; i < preds.length; i++) {
-			a[i] = new DoubleTriple(preds[i], targets[i], weights[i]);
-		}
-		return eval(a);
+		int n = preds.length;
+		Scratch scratch = SCRATCH.get();
+		scratch.ensureCapacity(n);
+		int[] order = sort(preds, n, scratch);
+		return eval(preds, targets, weights, order, n);
 	}
 
 	@Override
 	public double eval(double[] preds, Instances instances, Pointers pointers) {
-		DoubleTriple[] a = new DoubleTriple[preds.length];
-		for (int i = 0; i < preds.length; i++) {
-			Instance instance = instances.get(pointers.get(i).getIndex());
-			a[i] = new DoubleTriple(preds[i], instance.getTarget(), instance.getWeight());
+		int n = preds.length;
+		Scratch scratch = SCRATCH.get();
+		scratch.ensureCapacity(n);
+		for (int i = 0; i < n; i++) {
+			Instance instance = instances.get(pointers.getIndex(i));
+			scratch.targets[i] = instance.getTarget();
+			scratch.weights[i] = instance.getWeight();
 		}
-		return eval(a);
+		int[] order = sort(preds, n, scratch);
+		return eval(preds, scratch.targets, scratch.weights, order, n);
 	}
 	
 	@Override
 	public double eval(double[] preds, Instances instances) {
-//		DoublePair[] a = new DoublePair[preds.length];
-		DoubleTriple[] a = new DoubleTriple[preds.length];
-		for (int i = 0; i < preds.length; i++) {
-//			a[i] = new DoublePair(preds[i], instances.get(i).getTarget());
-			a[i] = new DoubleTriple(preds[i], instances.get(i).getTarget(), instances.get(i).getWeight());
+		int n = preds.length;
+		Scratch scratch = SCRATCH.get();
+		scratch.ensureCapacity(n);
+		for (int i = 0; i < n; i++) {
+			Instance instance = instances.get(i);
+			scratch.targets[i] = instance.getTarget();
+			scratch.weights[i] = instance.getWeight();
 		}
-		return eval(a);
+		int[] order = sort(preds, n, scratch);
+		return eval(preds, scratch.targets, scratch.weights, order, n);
+	}
+
+	/**
+	 * Sorts positions by ascending prediction with an LSD radix sort on the IEEE bits.
+	 * The sort is stable, so ties keep the original order as {@link Arrays#sort(Object[])}
+	 * does in {@link #eval(DoubleTriple[])}. Passes on a byte that is the same for all
+	 * predictions are skipped.
+	 */
+	private static int[] sort(double[] preds, int n, Scratch scratch) {
+		return sort(preds, n, scratch.keys, scratch.keysTmp, scratch.order, scratch.orderTmp, scratch.count);
+	}
+
+	private static int[] sort(double[] preds, int n, long[] keys, long[] keysTmp, int[] order, int[] orderTmp,
+			int[] count) {
+		for (int i = 0; i < n; i++) {
+			keys[i] = key(preds[i]);
+			order[i] = i;
+		}
+		for (int shift = 0; shift < 64; shift += 8) {
+			Arrays.fill(count, 0);
+			for (int i = 0; i < n; i++) {
+				count[(int) (keys[i] >>> shift) & 0xff]++;
+			}
+			if (n == 0 || count[(int) (keys[0] >>> shift) & 0xff] == n) {
+				continue;
+			}
+			for (int b = 0, sum = 0; b < 256; b++) {
+				int c = count[b];
+				count[b] = sum;
+				sum += c;
+			}
+			for (int i = 0; i < n; i++) {
+				int pos = count[(int) (keys[i] >>> shift) & 0xff]++;
+				keysTmp[pos] = keys[i];
+				orderTmp[pos] = order[i];
+			}
+			long[] k = keys;
+			keys = keysTmp;
+			keysTmp = k;
+			int[] o = order;
+			order = orderTmp;
+			orderTmp = o;
+		}
+		return order;
 	}
 	
 	// TODO: Deal with tied items
@@ -210,6 +290,213 @@ public class AUC extends Metric {
 		return area;
 	}
 
+	/**
+	 * Returns the area under ROC curve of instances that are already sorted by ascending
+	 * prediction. If ties keep the original order of instances, the result is identical
+	 * to {@link #eval(double[], double[], double[])}, without sorting or allocating.
+	 *
+	 * @param preds the predictions.
+	 * @param targets the targets.
+	 * @param weights the weights.
+	 * @param order the positions of instances by ascending prediction.
+	 * @return the area under ROC curve.
+	 */
+	public double eval(double[] preds, double[] targets, double[] weights, int[] order) {
+		return eval(preds, targets, weights, order, order.length);
+	}
+
+	// Sort key with the order of the prediction; -0.0 and 0.0 are tied, as with the == of the comparator
+	private static long key(double pred) {
+		long bits = Double.doubleToLongBits(pred + 0.0);
+		return bits ^ ((bits >> 63) | Long.MIN_VALUE);
+	}
+
+	/**
+	 * Returns an evaluator that keeps the instances sorted by prediction across updates.
+	 * The instances of segments shifted by the same constant keep their order, so after
+	 * an update only these groups are merged, in about log2(#groups) passes, instead of
+	 * sorting from scratch. The order, and so the measure, is the same as that of
+	 * {@link #eval(double[], Instances, Pointers)}.
+	 */
+	@Override
+	public IncrementalEvaluator newIncrementalEvaluator(Instances instances, Pointers pointers) {
+		int n = pointers != null ? pointers.size() : instances.size();
+		double[] targets = new double[n];
+		double[] weights = new double[n];
+		for (int i = 0; i < n; i++) {
+			Instance instance = instances.get(pointers != null ? pointers.getIndex(i) : i);
+			targets[i] = instance.getTarget();
+			weights[i] = instance.getWeight();
+		}
+		return new IncrementalEvaluator(n) {
+
+			long[] keys = new long[n];
+			int[] order = new int[n];
+			int[] tmp = new int[n];
+			int[] group = new int[0];
+			int[] start = new int[0];
+
+			{
+				reset(preds);
+			}
+
+			@Override
+			public void reset(double[] preds) {
+				super.reset(preds);
+				long[] keysTmp = new long[n];
+				int[] sorted = sort(this.preds, n, keys, keysTmp, order, tmp, new int[256]);
+				if (sorted != order) {
+					tmp = order;
+					order = sorted;
+				}
+				for (int i = 0; i < n; i++) {
+					keys[i] = key(this.preds[i]);
+				}
+			}
+
+			@Override
+			public void update(int[] segments, double[] deltas) {
+				super.update(segments, deltas);
+				if (group.length < deltas.length) {
+					group = new int[deltas.length];
+				}
+				int groupN = groupSegments(deltas, group);
+				if (start.length < groupN + 1) {
+					start = new int[groupN + 1];
+				}
+				Arrays.fill(start, 0, groupN + 1, 0);
+				for (int i = 0; i < n; i++) {
+					keys[i] = key(preds[i]);
+					start[group[segments[i]] + 1]++;
+				}
+				for (int g = 0; g < groupN; g++) {
+					start[g + 1] += start[g];
+				}
+
+				// Stable partition of the sorted order by group
+				for (int i = 0; i < n; i++) {
+					int pos = order[i];
+					tmp[start[group[segments[pos]]]++] = pos;
+				}
+				for (int g = groupN; g > 0; g--) {
+					start[g] = start[g - 1];
+				}
+				start[0] = 0;
+
+				// Shifting by a constant keeps the order, but rounding can tie neighbors
+				for (int g = 0; g < groupN; g++) {
+					for (int i = start[g] + 1; i < start[g + 1]; i++) {
+						int pos = tmp[i];
+						int j = i - 1;
+						for (; j >= start[g] && keys[tmp[j]] == keys[pos] && tmp[j] > pos; j--) {
+							tmp[j + 1] = tmp[j];
+						}
+						tmp[j + 1] = pos;
+					}
+				}
+
+				// Merge groups pairwise
+				int[] src = tmp;
+				int[] dst = order;
+				for (int width = 1; width < groupN; width *= 2) {
+					for (int g = 0; g < groupN; g += 2 * width) {
+						int lo = start[g];
+						int mid = start[Math.min(g + width, groupN)];
+						int hi = start[Math.min(g + 2 * width, groupN)];
+						merge(src, dst, lo, mid, hi);
+					}
+					int[] t = src;
+					src = dst;
+					dst = t;
+				}
+				order = src;
+				tmp = dst;
+			}
+
+			private void merge(int[] src, int[] dst, int lo, int mid, int hi) {
+				int i = lo;
+				int j = mid;
+				int k = lo;
+				if (mid == lo || mid == hi || precedes(src[mid - 1], src[mid])) {
+					System.arraycopy(src, lo, dst, lo, hi - lo);
+					return;
+				}
+				while (i < mid && j < hi) {
+					dst[k++] = precedes(src[j], src[i]) ? src[j++] : src[i++];
+				}
+				while (i < mid) {
+					dst[k++] = src[i++];
+				}
+				while (j < hi) {
+					dst[k++] = src[j++];
+				}
+			}
+
+			// Order of a stable sort: by prediction, then by position
+			private boolean precedes(int a, int b) {
+				long ka = keys[a] ^ Long.MIN_VALUE;
+				long kb = keys[b] ^ Long.MIN_VALUE;
+				return ka < kb || (ka == kb && a < b);
+			}
+
+			@Override
+			public double eval() {
+				return AUC.eval(preds, targets, weights, order, n);
+			}
+
+		};
+	}
+
+	private static double eval(double[] preds, double[] targets, double[] weights, int[] order, int n) {
+		double tp = 0;
+		double fp = 0;
+		double tp_fn = 0;
+		double fp_tn = 0;
+
+		for (int i = 0; i < n; i++) {
+			int pos = order[i];
+			tp_fn += targets[pos] * weights[pos];
+			fp_tn += (1 - targets[pos]) * weights[pos];
+		}
+
+		double area = 0;
+		double tprPrev = 0;
+		double fprPrev = 0;
+		int end = n - 1;
+		while (end >= 0) {
+			double threshold = preds[order[end]];
+			int begin = end;
+			while (begin > 0 && preds[order[begin - 1]] == threshold) {
+				begin--;
+			}
+
+			// Fraction of positives among tied items, summed in sorted order
+			double posV = 0;
+			double tieV = 0;
+			for (int i = begin; i <= end; i++) {
+				int pos = order[i];
+				posV += targets[pos] * weights[pos];
+				tieV += weights[pos];
+			}
+			double curFrac = posV / tieV;
+
+			for (int i = end; i >= begin; i--) {
+				int pos = order[i];
+				tp += curFrac * weights[pos];
+				fp += (1 - curFrac) * weights[pos];
+			}
+			end = begin - 1;
+
+			double tpr = tp / tp_fn;
+			double fpr = fp / fp_tn;
+			area += 0.5 * (tpr + tprPrev) * (fpr - fprPrev);
+			tprPrev = tpr;
+			fprPrev = fpr;
+		}
+
+		return area;
+	}
+
 	public String toString() {
 		return "AUC";
 	}
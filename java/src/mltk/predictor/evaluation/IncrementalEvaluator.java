@@ -0,0 +1,89 @@
+package mltk.predictor.evaluation;
+
+import java.util.Arrays;
+
+/**
+ * Class for evaluating a metric on a fixed dataset while the predictions are updated
+ * step by step, as in boosting. An update adds a constant per segment to the
+ * predictions, as a piecewise-constant function does; implementations can use this to
+ * evaluate faster than from scratch. The measure is the same as
+ * {@link Metric#eval(double[], mltk.core.Instances, mltk.core.Pointers)} on the current
+ * predictions.
+ *
+ */
+public abstract class IncrementalEvaluator {
+
+	protected double[] preds;
+
+	/**
+	 * Constructor. Predictions start at 0.
+	 *
+	 * @param n the number of instances.
+	 */
+	protected IncrementalEvaluator(int n) {
+		preds = new double[n];
+	}
+
+	/**
+	 * Returns the current predictions. They must not be modified.
+	 *
+	 * @return the current predictions.
+	 */
+	public double[] getPredictions() {
+		return preds;
+	}
+
+	/**
+	 * Sets the predictions.
+	 *
+	 * @param preds the predictions, which are copied.
+	 */
+	public void reset(double[] preds) {
+		System.arraycopy(preds, 0, this.preds, 0, this.preds.length);
+	}
+
+	/**
+	 * Adds a constant per segment to the predictions.
+	 *
+	 * @param segments the segment of every instance.
+	 * @param deltas the constant of every segment.
+	 */
+	public void update(int[] segments, double[] deltas) {
+		for (int i = 0; i < preds.length; i++) {
+			preds[i] += deltas[segments[i]];
+		}
+	}
+
+	/**
+	 * Evaluates the current predictions.
+	 *
+	 * @return the evaluation measure.
+	 */
+	public abstract double eval();
+
+	/**
+	 * Returns the groups of segments with equal constants, so that the instances of a
+	 * group are shifted by the same amount.
+	 *
+	 * @param deltas the constant of every segment.
+	 * @param group the group of every segment, filled by this method.
+	 * @return the number of groups.
+	 */
+	protected static int groupSegments(double[] deltas, int[] group) {
+		int s = deltas.length;
+		Integer[] byDelta = new Integer[s];
+		for (int j = 0; j < s; j++) {
+			byDelta[j] = j;
+		}
+		Arrays.sort(byDelta, (a, b) -> Double.compare(deltas[a], deltas[b]));
+		int groupN = 0;
+		for (int j = 0; j < s; j++) {
+			if (j > 0 && Double.compare(deltas[byDelta[j]], deltas[byDelta[j - 1]]) != 0) {
+				groupN++;
+			}
+			group[byDelta[j]] = groupN;
+		}
+		return s == 0 ? 0 : groupN + 1;
+	}
+
+}
@@ -81,4 +81,27 @@ public abstract class Metric {
 	 * @return the evaluation measure.
 	 */
 	public abstract double eval(double[] preds, double[] targets, double[] weights);
+
+	/**
+	 * Returns an evaluator of predictions on a dataset that are updated step by step.
+	 * The default evaluator evaluates from scratch every time.
+	 *
+	 * @param instances the dataset.
+	 * @param pointers the pointers to the instances, or <code>null</code> for all instances.
+	 * @return an evaluator with all predictions at 0.
+	 */
+	public IncrementalEvaluator newIncrementalEvaluator(Instances instances, Pointers pointers) {
+		int n = pointers != null ? pointers.size() : instances.size();
+		return new IncrementalEvaluator(n) {
+
+			@Override
+			public double eval() {
+				if (pointers != null) {
+					return Metric.this.eval(preds, instances, pointers);
+				}
+				return Metric.this.eval(preds, instances);
+			}
+
+		};
+	}
 }
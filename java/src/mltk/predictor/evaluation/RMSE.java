@@ -49,7 +49,7 @@ public class RMSE extends Metric {
 		double rmse = 0;
 		double length = 0;
 		for (int i = 0; i < preds.length; i ++) {
-			Instance instance = instances.get(pointers.get(i).getIndex());
+			Instance instance = instances.get(pointers.getIndex(i));
 			double d = instance.getTarget() - preds[i];
 			double w = instance.getWeight();
 			rmse += d * d * w;
@@ -73,6 +73,61 @@ public class RMSE extends Metric {
 		return rmse;
 	}
 
+	/**
+	 * Returns an evaluator that sums the squared errors while the predictions are
+	 * updated, in the same order as {@link #eval(double[], Instances, Pointers)}.
+	 */
+	@Override
+	public IncrementalEvaluator newIncrementalEvaluator(Instances instances, Pointers pointers) {
+		int n = pointers != null ? pointers.size() : instances.size();
+		double[] targets = new double[n];
+		double[] weights = new double[n];
+		double length = 0;
+		for (int i = 0; i < n; i++) {
+			Instance instance = instances.get(pointers != null ? pointers.getIndex(i) : i);
+			targets[i] = instance.getTarget();
+			weights[i] = instance.getWeight();
+			length += weights[i];
+		}
+		double totalWeight = length;
+		return new IncrementalEvaluator(n) {
+
+			double rmse = sum();
+
+			private double sum() {
+				double sum = 0;
+				for (int i = 0; i < preds.length; i++) {
+					double d = targets[i] - preds[i];
+					sum += d * d * weights[i];
+				}
+				return sum;
+			}
+
+			@Override
+			public void reset(double[] preds) {
+				super.reset(preds);
+				rmse = sum();
+			}
+
+			@Override
+			public void update(int[] segments, double[] deltas) {
+				double sum = 0;
+				for (int i = 0; i < preds.length; i++) {
+					preds[i] += deltas[segments[i]];
+					double d = targets[i] - preds[i];
+					sum += d * d * weights[i];
+				}
+				rmse = sum;
+			}
+
+			@Override
+			public double eval() {
+				return Math.sqrt(rmse / totalWeight);
+			}
+
+		};
+	}
+
 	public String toString() {
 		return "RMSE";
 	}
@@ -1,5 +1,9 @@
 package mltk.predictor.function;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import mltk.predictor.BaggedEnsemble;
 import mltk.predictor.BoostedEnsemble;
 import mltk.predictor.Predictor;
@@ -21,7 +25,7 @@ public class CompressionUtils {
 	 * @return a single compressed 1D function.
 	 */
 	public static Function1D compress(int attIndex, BaggedEnsemble baggedEnsemble) {
-		Function1D function = Function1D.getConstantFunction(attIndex, 0);
+		List<Function1D> functions = new ArrayList<>(baggedEnsemble.size());
 		for (int i = 0; i < baggedEnsemble.size(); i++) {
 			Predictor predictor = baggedEnsemble.get(i);
 			Function1D func = null;
@@ -30,8 +34,9 @@ public class CompressionUtils {
 			} else {
 				throw new IllegalArgumentException();
 			}
-			function.add(func);
+			functions.add(func);
 		}
+		Function1D function = sum(attIndex, functions);
 		function.divide(baggedEnsemble.size());
 		return function;
 	}
@@ -44,7 +49,7 @@ public class CompressionUtils {
 	 * @return a single compressed 1D function.
 	 */
 	public static Function1D compress(int attIndex, BoostedEnsemble boostedEnsemble) {
-		Function1D function = Function1D.getConstantFunction(attIndex, 0);
+		List<Function1D> functions = new ArrayList<>(boostedEnsemble.size());
 		for (int i = 0; i < boostedEnsemble.size(); i++) {
 			Predictor predictor = boostedEnsemble.get(i);
 			Function1D func = null;
@@ -55,9 +60,52 @@ public class CompressionUtils {
 			} else {
 				throw new IllegalArgumentException();
 			}
-			function.add(func);
+			functions.add(func);
 		}
-		return function;
+		return sum(attIndex, functions);
+	}
+
+	/**
+	 * Sums 1D functions, the same as adding them one by one to a constant 0 function with
+	 * {@link Function1D#add(Function1D)}. The splits of all functions are merged once and
+	 * every function is evaluated at all of them by {@link Function1D#getSegmentIndices(double[])}.
+	 * 
+	 * @param attIndex the attribute index.
+	 * @param functions the 1D functions.
+	 * @return the sum of the functions.
+	 */
+	static Function1D sum(int attIndex, List<Function1D> functions) {
+		int n = 1;
+		for (Function1D func : functions) {
+			if (func.attIndex != attIndex) {
+				throw new IllegalArgumentException("Cannot add functions on different terms");
+			}
+			n += func.splits.length;
+		}
+		double[] splits = new double[n];
+		splits[0] = Double.POSITIVE_INFINITY;
+		int k = 1;
+		for (Function1D func : functions) {
+			System.arraycopy(func.splits, 0, splits, k, func.splits.length);
+			k += func.splits.length;
+		}
+		Arrays.sort(splits);
+		int numSplits = 0;
+		for (int i = 0; i < n; i++) {
+			if (numSplits == 0 || Double.compare(splits[i], splits[numSplits - 1]) != 0) {
+				splits[numSplits++] = splits[i];
+			}
+		}
+		splits = Arrays.copyOf(splits, numSplits);
+
+		double[] predictions = new double[numSplits];
+		for (Function1D func : functions) {
+			int[] segments = func.getSegmentIndices(splits);
+			for (int i = 0; i < numSplits; i++) {
+				predictions[i] += func.predictions[segments[i]];
+			}
+		}
+		return new Function1D(attIndex, splits, predictions);
 	}
 
 	/**
@@ -4,7 +4,10 @@ import java.io.BufferedReader;
 import java.io.PrintWriter;
 import java.util.Arrays;
 
+import mltk.core.FeatureIndex;
 import mltk.core.Instance;
+import mltk.core.Instances;
+import mltk.core.Pointers;
 import mltk.predictor.Regressor;
 import mltk.util.ArrayUtils;
 import mltk.util.VectorUtils;
@@ -290,6 +293,85 @@ public class Function1D implements Regressor, UnivariateFunction {
 		return idx;
 	}
 
+	/**
+	 * Returns the segment indices of sorted values, as {@link #getSegmentIndex(double)} returns
+	 * them, by a single merge of the values with the splits.
+	 * 
+	 * @param values the values sorted in ascending order.
+	 * @return the segment index of every value.
+	 */
+	public int[] getSegmentIndices(double[] values) {
+		int[] segments = new int[values.length];
+		int idx = 0;
+		for (int i = 0; i < values.length; i++) {
+			while (idx < splits.length && Double.compare(splits[idx], values[i]) < 0) {
+				idx++;
+			}
+			segments[i] = idx;
+		}
+		return segments;
+	}
+
+	/**
+	 * Returns the segment index of every bin of the attribute of this function in a feature
+	 * index, so that the segment of an indexed instance is one lookup by its bin.
+	 * 
+	 * @param index the feature index.
+	 * @return the segment index of every bin, or <code>null</code> if the attribute is not
+	 *         indexed or a split is -0.0 (-0.0 and 0.0 share a bin but not a segment).
+	 */
+	public int[] getSegmentIndices(FeatureIndex index) {
+		if (! index.isIndexed(index.getInstances(), attIndex) || Arrays.binarySearch(splits, -0.0) >= 0) {
+			return null;
+		}
+		return getSegmentIndices(index.getValues(attIndex));
+	}
+
+	/**
+	 * Returns the prediction for every bin of the attribute of this function in a feature
+	 * index, so that the prediction of an indexed instance is one lookup by its bin.
+	 * 
+	 * @param index the feature index.
+	 * @return the prediction for every bin, or <code>null</code> if the bins cannot be used.
+	 * @see #getSegmentIndices(FeatureIndex)
+	 */
+	public double[] getBinPredictions(FeatureIndex index) {
+		int[] segments = getSegmentIndices(index);
+		if (segments == null) {
+			return null;
+		}
+		double[] binPreds = new double[segments.length];
+		for (int i = 0; i < segments.length; i++) {
+			binPreds[i] = predictions[segments[i]];
+		}
+		return binPreds;
+	}
+
+	/**
+	 * Adds the predictions of this function to the predictions of a batch of instances.
+	 * If the feature index covers the dataset and the attribute, an instance takes one
+	 * lookup by its bin instead of a search of the splits.
+	 * 
+	 * @param instances the dataset.
+	 * @param pointers the pointers to the instances, or <code>null</code> for all instances.
+	 * @param index the feature index, or <code>null</code>.
+	 * @param preds the predictions to add to, indexed as the pointers.
+	 */
+	public void addPredictions(Instances instances, Pointers pointers, FeatureIndex index, double[] preds) {
+		int n = pointers != null ? pointers.size() : instances.size();
+		double[] binPreds = index != null && index.isIndexed(instances, attIndex) ? getBinPredictions(index) : null;
+		if (binPreds != null) {
+			int[] bins = index.getBins(attIndex);
+			for (int i = 0; i < n; i++) {
+				preds[i] += binPreds[bins[pointers != null ? pointers.getIndex(i) : i]];
+			}
+		} else {
+			for (int i = 0; i < n; i++) {
+				preds[i] += regress(instances.get(pointers != null ? pointers.getIndex(i) : i));
+			}
+		}
+	}
+
 	@Override
 	public double regress(Instance instance) {
 		return predictions[getSegmentIndex(instance)];
@@ -6,11 +6,12 @@ import java.util.List;
 import java.util.PriorityQueue;
 
 import mltk.core.Attribute;
+import mltk.core.BinStats;
 import mltk.core.BinnedAttribute;
+import mltk.core.FeatureIndex;
 import mltk.core.Instance;
 import mltk.core.Instances;
 import mltk.core.NominalAttribute;
-import mltk.core.Pointer;
 import mltk.core.Pointers;
 import mltk.predictor.Learner;
 import mltk.util.Random;
@@ -223,6 +224,60 @@ public class LineCutter extends Learner {
 		stats.add(new DoublePair(totalWeight, sum));
 	}
 
+	/**
+	 * Computes the statistics for each distinct value from the bins of a feature index.
+	 * Instances are accumulated in pointer order, which gives the same sums as sorting
+	 * them by value with a stable sort.
+	 */
+	protected static void getStats(FeatureIndex index, double[] targets, Pointers pointers, 
+			int attIndex, List<Double> uniqueValues, List<DoublePair> stats) {
+		int[] bins = index.getBins(attIndex);
+		double[] values = index.getValues(attIndex);
+		double[] instanceWeights = index.getWeights();
+		double[] weights = new double[values.length];
+		double[] sums = new double[values.length];
+		boolean[] present = new boolean[values.length];
+		for (int i = 0; i < pointers.size(); i++) {
+			int idx = pointers.getIndex(i);
+			int bin = bins[idx];
+			double weight = pointers.getWeight(i) * instanceWeights[idx];
+			weights[bin] += weight;
+			sums[bin] += targets[idx] * weight;
+			present[bin] = true;
+		}
+		for (int bin = 0; bin < values.length; bin++) {
+			if (present[bin]) {
+				uniqueValues.add(values[bin]);
+				stats.add(new DoublePair(weights[bin], sums[bin]));
+			}
+		}
+	}
+
+	/**
+	 * Computes the statistics for each distinct value when the per-bin weights of the
+	 * subset are known, so only the weighted targets are accumulated.
+	 */
+	protected static void getStats(BinStats binStats, double[] targets, Pointers pointers, 
+			int attIndex, List<Double> uniqueValues, List<DoublePair> stats) {
+		FeatureIndex index = binStats.getFeatureIndex();
+		int[] bins = index.getBins(attIndex);
+		double[] values = index.getValues(attIndex);
+		double[] instanceWeights = index.getWeights();
+		int[] counts = binStats.getCounts(attIndex);
+		double[] weights = binStats.getWeights(attIndex);
+		double[] sums = new double[values.length];
+		for (int i = 0; i < pointers.size(); i++) {
+			int idx = pointers.getIndex(i);
+			sums[bins[idx]] += targets[idx] * (pointers.getWeight(i) * instanceWeights[idx]);
+		}
+		for (int bin = 0; bin < values.length; bin++) {
+			if (counts[bin] > 0) {
+				uniqueValues.add(values[bin]);
+				stats.add(new DoublePair(weights[bin], sums[bin]));
+			}
+		}
+	}
+
 	protected static void inorder(Interval parent, List<Double> splits, List<Double> predictions) {
 		if (parent.isFinalized()) {
 			inorder(parent.left, splits, predictions);
@@ -244,12 +299,13 @@ public class LineCutter extends Learner {
 		double[] predictions = func.getPredictions();
 		double[] numerator = new double[predictions.length];
 		double[] denominator = new double[numerator.length];
-		for (Pointer pointer : pointers) {
-			Instance instance = instances.get(pointer.getIndex());
+		for (int i = 0; i < pointers.size(); i++) {
+			int index = pointers.getIndex(i);
+			Instance instance = instances.get(index);
 			int idx = func.getSegmentIndex(instance);
-			double weight = pointer.getWeight() * instance.getWeight();
-			numerator[idx] += targets[pointer.getIndex()] * weight;
-			double t = Math.abs(targets[pointer.getIndex()]);
+			double weight = pointers.getWeight(i) * instance.getWeight();
+			numerator[idx] += targets[index] * weight;
+			double t = Math.abs(targets[index]);
 			denominator[idx] += t * (1 - t) * weight;
 		}
 		for (int i = 0; i < predictions.length; i++) {
@@ -355,6 +411,10 @@ public class LineCutter extends Learner {
 
 	private double alpha;
 
+	private FeatureIndex featureIndex;
+
+	private BinStats binStats;
+
 	/**
 	 * Constructor.
 	 */
@@ -490,16 +550,33 @@ public class LineCutter extends Learner {
 		Function1D func = new Function1D();
 		func.attIndex = attribute.getIndex();
 
-		if (attribute.getType() == Attribute.Type.NUMERIC) {
+		if (attribute.getType() == Attribute.Type.NUMERIC && binStats != null
+				&& binStats.isStatsOf(instances, pointers, func.attIndex)) {
+			List<Double> uniqueValues = new ArrayList<>();
+			List<DoublePair> stats = new ArrayList<>();
+			getStats(binStats, targets, pointers, func.attIndex, uniqueValues, stats);
+
+			build(func, uniqueValues, stats, numIntervals);
+		} else if (attribute.getType() == Attribute.Type.NUMERIC && featureIndex != null
+				&& featureIndex.isIndexed(instances, func.attIndex)
+				&& pointers.size() >= featureIndex.getNumBins(func.attIndex) / 8) {
+			// Linear pass over the pre-sorted bins; too sparse subsets fall back to sorting
+			List<Double> uniqueValues = new ArrayList<>();
+			List<DoublePair> stats = new ArrayList<>();
+			getStats(featureIndex, targets, pointers, func.attIndex, uniqueValues, stats);
+
+			build(func, uniqueValues, stats, numIntervals);
+		} else if (attribute.getType() == Attribute.Type.NUMERIC) {
 			// weight: attribute value
 			// DoublePair.v1: target value
 			// DoublePair.v2: instance weight
 			List<Element<DoublePair>> pairs = new ArrayList<>(pointers.size());
-			for (Pointer pointer : pointers) {
-				Instance instance = instances.get(pointer.getIndex());
-				double weight = pointer.getWeight() * instance.getWeight();
+			for (int i = 0; i < pointers.size(); i++) {
+				int index = pointers.getIndex(i);
+				Instance instance = instances.get(index);
+				double weight = pointers.getWeight(i) * instance.getWeight();
 				double value = instance.getValue(func.attIndex);
-				double target = targets[pointer.getIndex()];
+				double target = targets[index];
 				pairs.add(new Element<DoublePair>(new DoublePair(target, weight), value));
 			}
 			Collections.sort(pairs);
@@ -516,11 +593,12 @@ public class LineCutter extends Learner {
 			for (int i = 0; i < histogram.length; i++) {
 				histogram[i] = new DoublePair(0, 0);
 			}
-			for (Pointer pointer : pointers) {
-				Instance instance = instances.get(pointer.getIndex());
+			for (int i = 0; i < pointers.size(); i++) {
+				int index = pointers.getIndex(i);
+				Instance instance = instances.get(index);
 				int idx = (int) instance.getValue(func.attIndex);
-				double weight = pointer.getWeight() * instance.getWeight();
-				histogram[idx].v2 += targets[pointer.getIndex()] * weight;
+				double weight = pointers.getWeight(i) * instance.getWeight();
+				histogram[idx].v2 += targets[index] * weight;
 				histogram[idx].v1 += weight;
 			}
 
@@ -542,11 +620,12 @@ public class LineCutter extends Learner {
 			for (int i = 0; i < histogram.length; i++) {
 				histogram[i] = new DoublePair(0, 0);
 			}
-			for (Pointer pointer : pointers) {
-				Instance instance = instances.get(pointer.getIndex());
+			for (int i = 0; i < pointers.size(); i++) {
+				int index = pointers.getIndex(i);
+				Instance instance = instances.get(index);
 				int idx = (int) instance.getValue(func.attIndex);
-				double weight = pointer.getWeight() * instance.getWeight();
-				histogram[idx].v2 += targets[pointer.getIndex()] * weight;
+				double weight = pointers.getWeight(i) * instance.getWeight();
+				histogram[idx].v2 += targets[index] * weight;
 				histogram[idx].v1 += weight;
 			}
 
@@ -731,6 +810,26 @@ public class LineCutter extends Learner {
 		this.alpha = alpha;
 	}
 
+	/**
+	 * Sets the feature index of the training set. It is used by
+	 * {@link #build(Instances, double[], Pointers)} when it covers the training set.
+	 * 
+	 * @param featureIndex the feature index.
+	 */
+	public void setFeatureIndex(FeatureIndex featureIndex) {
+		this.featureIndex = featureIndex;
+	}
+
+	/**
+	 * Sets the per-bin statistics of a training subset. They are used by
+	 * {@link #build(Instances, double[], Pointers)} when called on that subset.
+	 * 
+	 * @param binStats the per-bin statistics.
+	 */
+	public void setBinStats(BinStats binStats) {
+		this.binStats = binStats;
+	}
+
 	/**
 	 * Sets the index in the attribute list of the training set.
 	 * 
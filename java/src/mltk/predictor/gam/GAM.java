@@ -7,9 +7,14 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
+import mltk.core.FeatureIndex;
 import mltk.core.Instance;
+import mltk.core.Instances;
+import mltk.core.Pointers;
+import mltk.predictor.BoostedEnsemble;
 import mltk.predictor.ProbabilisticClassifier;
 import mltk.predictor.Regressor;
+import mltk.predictor.function.Function1D;
 import mltk.util.ArrayUtils;
 
 /**
@@ -135,6 +140,37 @@ public class GAM implements ProbabilisticClassifier, Regressor {
 		return pred;
 	}
 
+	/**
+	 * Returns the predictions of this GAM for a batch of instances, the same as
+	 * {@link #regress(Instance)} for every instance. 1D components on attributes covered by
+	 * the feature index take one lookup by bin per instance.
+	 * 
+	 * @param instances the dataset.
+	 * @param pointers the pointers to the instances, or <code>null</code> for all instances.
+	 * @param index the feature index, or <code>null</code>.
+	 * @return the predictions, indexed as the pointers.
+	 */
+	public double[] regress(Instances instances, Pointers pointers, FeatureIndex index) {
+		int n = pointers != null ? pointers.size() : instances.size();
+		double[] preds = new double[n];
+		Arrays.fill(preds, intercept);
+		for (Regressor regressor : regressors) {
+			if (regressor instanceof Function1D) {
+				((Function1D) regressor).addPredictions(instances, pointers, index, preds);
+			} else if (regressor instanceof BoostedEnsemble) {
+				double[] p = ((BoostedEnsemble) regressor).regress(instances, pointers, index);
+				for (int i = 0; i < n; i++) {
+					preds[i] += p[i];
+				}
+			} else {
+				for (int i = 0; i < n; i++) {
+					preds[i] += regressor.regress(instances.get(pointers != null ? pointers.getIndex(i) : i));
+				}
+			}
+		}
+		return preds;
+	}
+
 	@Override
 	public int classify(Instance instance) {
 		double pred = regress(instance);
@@ -6,7 +6,9 @@ import java.util.List;
 import mltk.cmdline.Argument;
 import mltk.cmdline.CmdLineParser;
 import mltk.core.Attribute;
+import mltk.core.BinStats;
 import mltk.core.BinnedAttribute;
+import mltk.core.FeatureIndex;
 import mltk.core.Pointers;
 import mltk.core.Instance;
 import mltk.core.Instances;
@@ -19,6 +21,7 @@ import mltk.predictor.Bagging;
 import mltk.predictor.BoostedEnsemble;
 import mltk.predictor.HoldoutValidatedLearner;
 import mltk.predictor.Regressor;
+import mltk.predictor.evaluation.IncrementalEvaluator;
 import mltk.predictor.evaluation.Metric;
 import mltk.predictor.evaluation.MetricFactory;
 import mltk.predictor.function.CompressionUtils;
@@ -27,6 +30,7 @@ import mltk.predictor.function.LineCutter;
 import mltk.predictor.io.PredictorWriter;
 import mltk.util.OptimUtils;
 import mltk.util.Random;
+import mltk.util.WorkerPool;
 
 /**
  * Class for learning GAMs via gradient tree boosting.
@@ -48,6 +52,10 @@ public class GAMLearner extends HoldoutValidatedLearner {
 	private int maxNumLeaves;
 	private Task task;
 	private double learningRate;
+	private FeatureIndex featureIndex;
+	private FeatureIndex validIndex;
+	private int evalInterval;
+	private int numThreads;
 
 	/**
 	 * Constructor.
@@ -58,6 +66,8 @@ public class GAMLearner extends HoldoutValidatedLearner {
 		maxNumIters = -1;
 		maxNumLeaves = 3;
 		learningRate = 1;
+		evalInterval = 1;
+		numThreads = WorkerPool.getNumCores();
 		task = Task.REGRESSION;
 		metric = task.getDefaultMetric();
 	}
@@ -152,6 +162,86 @@ public class GAMLearner extends HoldoutValidatedLearner {
 		this.learningRate = learningRate;
 	}
 
+	/**
+	 * Returns the feature index of the training set.
+	 * 
+	 * @return the feature index of the training set.
+	 */
+	public FeatureIndex getFeatureIndex() {
+		return featureIndex;
+	}
+
+	/**
+	 * Sets the feature index of the training set. Memory-efficient builds on this
+	 * training set reuse it for every line cut instead of sorting again.
+	 * 
+	 * @param featureIndex the feature index of the training set.
+	 */
+	public void setFeatureIndex(FeatureIndex featureIndex) {
+		this.featureIndex = featureIndex;
+	}
+
+	/**
+	 * Returns the feature index of the validation set.
+	 * 
+	 * @return the feature index of the validation set.
+	 */
+	public FeatureIndex getValidFeatureIndex() {
+		return validIndex;
+	}
+
+	/**
+	 * Sets the feature index of the validation set. Without it, an index of the
+	 * validation set is built for every model.
+	 * 
+	 * @param validIndex the feature index of the validation set.
+	 */
+	public void setValidFeatureIndex(FeatureIndex validIndex) {
+		this.validIndex = validIndex;
+	}
+
+	/**
+	 * Returns the number of updates between evaluations on the validation set.
+	 * 
+	 * @return the number of updates between evaluations on the validation set.
+	 */
+	public int getEvalInterval() {
+		return evalInterval;
+	}
+
+	/**
+	 * Sets the number of updates between evaluations on the validation set. With an
+	 * interval k &gt; 1, the validation set is evaluated after every k-th update and after
+	 * the last one; the updates around the best evaluated one are then evaluated exactly,
+	 * so that the best model is searched among them.
+	 * 
+	 * @param evalInterval the number of updates between evaluations on the validation set.
+	 */
+	public void setEvalInterval(int evalInterval) {
+		this.evalInterval = Math.max(1, evalInterval);
+	}
+
+	/**
+	 * Returns the maximum number of threads training the bags of a 1D function.
+	 * 
+	 * @return the maximum number of threads training the bags of a 1D function.
+	 */
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * Sets the maximum number of threads training the bags of a 1D function. The threads
+	 * come from the {@link mltk.util.WorkerPool WorkerPool}, which keeps no more threads busy
+	 * than there are cores, also when GAMs are built in parallel. The GAM does not depend on
+	 * the number of threads.
+	 * 
+	 * @param numThreads the maximum number of threads.
+	 */
+	public void setNumThreads(int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+	}
+
 	/**
 	 * Returns the task of this learner.
 	 * 
@@ -203,6 +293,23 @@ public class GAMLearner extends HoldoutValidatedLearner {
 	 * @return a classifier.
 	 */
 	public GAM buildClassifier(Instances trainSet, Pointers trainPtr, Instances validSet, Pointers validPtr, int maxNumIters, int maxNumLeaves) {
+		return buildClassifier(trainSet, trainPtr, null, validSet, validPtr, maxNumIters, maxNumLeaves);
+	}
+
+	/**
+	 * Builds a memory-efficient classifier with known per-bin statistics of the training subset.
+	 * 
+	 * @param trainSet only keep one copy of original training set.
+	 * @param trainPtr the pointers to the original training set.
+	 * @param trainStats the per-bin statistics of the training subset, can be null.
+	 * @param validSet only keep one copy of original validation set.
+	 * @param validPtr the pointers to the original validation set.
+	 * @param maxNumIters the maximum number of iterations.
+	 * @param maxNumLeaves the maximum number of leaves.
+	 * @return a classifier.
+	 */
+	public GAM buildClassifier(Instances trainSet, Pointers trainPtr, BinStats trainStats, Instances validSet, Pointers validPtr, 
+			int maxNumIters, int maxNumLeaves) {
 		GAM gam = new GAM();
 
 		// Copy targets
@@ -222,15 +329,17 @@ public class GAMLearner extends HoldoutValidatedLearner {
 
 		LineCutter lineCutter = new LineCutter(true);
 		lineCutter.setNumIntervals(maxNumLeaves);
+		lineCutter.setFeatureIndex(featureIndex);
+		lineCutter.setBinStats(trainStats);
 		BaggedEnsembleLearner learner = new BaggedEnsembleLearner(bags.length, lineCutter);
+		learner.setNumThreads(numThreads);
 
 		// Initialize predictions and residuals
 		double[] pTrain = new double[trainPtr.size()];
 		double[] rTrain = new double[trainPtr.size()];
 		OptimUtils.computePseudoResidual(pTrain, trainSet, trainPtr, rTrain);
-		double[] pValid = new double[validPtr.size()];
 
-		List<Double> measureList = new ArrayList<>(maxNumIters);
+		ValidationTracker tracker = new ValidationTracker(validSet, validPtr, maxNumIters * attributes.size());
 
 		// Gradient boosting
 		for (int iter = 0; iter < maxNumIters; iter++) {
@@ -238,7 +347,7 @@ public class GAMLearner extends HoldoutValidatedLearner {
 				// Derivitive to attribute k
 				// Minimizes the loss function: log(1 + exp(-yF))
 				for (int i = 0; i < trainPtr.size(); i++) {
-					target[trainPtr.get(i).getIndex()] = rTrain[i];
+					target[trainPtr.getIndex(i)] = rTrain[i];
 				}
 
 				BoostedEnsemble boostedEnsemble = regressors.get(k);
@@ -257,36 +366,24 @@ public class GAMLearner extends HoldoutValidatedLearner {
 				baggedEnsemble = null;
 
 				// Update predictions
+				double[] binPreds = getBinPredictions(func, trainSet);
+				int[] bins = binPreds != null ? featureIndex.getBins(func.getAttributeIndex()) : null;
 				for (int i = 0; i < trainPtr.size(); i++) {
-					Instance instance = trainSet.get(trainPtr.get(i).getIndex());
-					double pred = func.regress(instance);
+					int row = trainPtr.getIndex(i);
+					double pred = binPreds != null ? binPreds[bins[row]] : func.regress(trainSet.get(row));
 					pTrain[i] += pred;
 					rTrain[i] = OptimUtils.getPseudoResidual(pTrain[i], 
-							trainSet.get(trainPtr.get(i).getIndex()).getTarget());
+							trainSet.get(trainPtr.getIndex(i)).getTarget());
 				}
-				for (int i = 0; i < validPtr.size(); i++) {
-					Instance instance = validSet.get(validPtr.get(i).getIndex());
-					double pred = func.regress(instance);
-					pValid[i] += pred;
-				}
-
-				double measure = metric.eval(pValid, validSet, validPtr);
-				measureList.add(measure);
-				if (verbose) {
+				double measure = tracker.update(func);
+				if (verbose && ! Double.isNaN(measure)) {
 					System.out.println("Iteration " + iter + " Feature " + k + ": " + measure);
 				}
 			}
 		}
 
 		// Search the best model on validation set
-		double bestSoFar = metric.worstValue();
-		int idx = -1;
-		for (int i = 0; i < measureList.size(); i++) {
-			if (metric.isFirstBetter(measureList.get(i), bestSoFar)) {
-				bestSoFar = measureList.get(i);
-				idx = i;
-			}
-		}
+		int idx = tracker.getBestIndex(regressors);
 
 		// Remove trees
 		int n = idx / attributes.size();
@@ -351,14 +448,14 @@ public class GAMLearner extends HoldoutValidatedLearner {
 		LineCutter lineCutter = new LineCutter(true);
 		lineCutter.setNumIntervals(maxNumLeaves);
 		BaggedEnsembleLearner learner = new BaggedEnsembleLearner(bags.length, lineCutter);
+		learner.setNumThreads(numThreads);
 
 		// Initialize predictions and residuals
 		double[] pTrain = new double[trainSet.size()];
 		double[] rTrain = new double[trainSet.size()];
 		OptimUtils.computePseudoResidual(pTrain, target, rTrain);
-		double[] pValid = new double[validSet.size()];
 
-		List<Double> measureList = new ArrayList<>(maxNumIters);
+		ValidationTracker tracker = new ValidationTracker(validSet, null, maxNumIters * attributes.size());
 
 		// Gradient boosting
 		for (int iter = 0; iter < maxNumIters; iter++) {
@@ -385,35 +482,22 @@ public class GAMLearner extends HoldoutValidatedLearner {
 				baggedEnsemble = null;
 
 				// Update predictions
+				double[] binPreds = getBinPredictions(func, trainSet);
+				int[] bins = binPreds != null ? featureIndex.getBins(func.getAttributeIndex()) : null;
 				for (int i = 0; i < trainSet.size(); i++) {
-					Instance instance = trainSet.get(i);
-					double pred = func.regress(instance);
+					double pred = binPreds != null ? binPreds[bins[i]] : func.regress(trainSet.get(i));
 					pTrain[i] += pred;
 					rTrain[i] = OptimUtils.getPseudoResidual(pTrain[i], target[i]);
 				}
-				for (int i = 0; i < validSet.size(); i++) {
-					Instance instance = validSet.get(i);
-					double pred = func.regress(instance);
-					pValid[i] += pred;
-				}
-
-				double measure = metric.eval(pValid, validSet);
-				measureList.add(measure);
-				if (verbose) {
+				double measure = tracker.update(func);
+				if (verbose && ! Double.isNaN(measure)) {
 					System.out.println("Iteration " + iter + " Feature " + k + ": " + measure);
 				}
 			}
 		}
 
 		// Search the best model on validation set
-		double bestSoFar = metric.worstValue();
-		int idx = -1;
-		for (int i = 0; i < measureList.size(); i++) {
-			if (metric.isFirstBetter(measureList.get(i), bestSoFar)) {
-				bestSoFar = measureList.get(i);
-				idx = i;
-			}
-		}
+		int idx = tracker.getBestIndex(regressors);
 
 		// Remove trees
 		int n = idx / attributes.size();
@@ -482,6 +566,7 @@ public class GAMLearner extends HoldoutValidatedLearner {
 		LineCutter lineCutter = new LineCutter(true);
 		lineCutter.setNumIntervals(maxNumLeaves);
 		BaggedEnsembleLearner learner = new BaggedEnsembleLearner(bags.length, lineCutter);
+		learner.setNumThreads(numThreads);
 
 		// Initialize predictions and residuals
 		double[] pTrain = new double[trainSet.size()];
@@ -513,9 +598,10 @@ public class GAMLearner extends HoldoutValidatedLearner {
 				baggedEnsemble = null;
 
 				// Update predictions
+				double[] binPreds = getBinPredictions(func, trainSet);
+				int[] bins = binPreds != null ? featureIndex.getBins(func.getAttributeIndex()) : null;
 				for (int i = 0; i < trainSet.size(); i++) {
-					Instance instance = trainSet.get(i);
-					double pred = func.regress(instance);
+					double pred = binPreds != null ? binPreds[bins[i]] : func.regress(trainSet.get(i));
 					pTrain[i] += pred;
 					rTrain[i] = OptimUtils.getPseudoResidual(pTrain[i], target[i]);
 				}
@@ -564,6 +650,23 @@ public class GAMLearner extends HoldoutValidatedLearner {
 	 * @return a regressor.
 	 */
 	public GAM buildRegressor(Instances trainSet, Pointers trainPtr, Instances validSet, Pointers validPtr, int maxNumIters, int maxNumLeaves) {
+		return buildRegressor(trainSet, trainPtr, null, validSet, validPtr, maxNumIters, maxNumLeaves);
+	}
+
+	/**
+	 * Builds a memory-efficient regressor with known per-bin statistics of the training subset.
+	 * 
+	 * @param trainSet only keep one copy of original training set.
+	 * @param trainPtr the pointers to the original training set.
+	 * @param trainStats the per-bin statistics of the training subset, can be null.
+	 * @param validSet only keep one copy of original validation set.
+	 * @param validPtr the pointers to the original validation set.
+	 * @param maxNumIters the maximum number of iterations.
+	 * @param maxNumLeaves the maximum number of leaves.
+	 * @return a regressor.
+	 */
+	public GAM buildRegressor(Instances trainSet, Pointers trainPtr, BinStats trainStats, Instances validSet, Pointers validPtr, 
+			int maxNumIters, int maxNumLeaves) {
 		GAM gam = new GAM();
 
 		List<Attribute> attributes = trainSet.getAttributes();
@@ -583,22 +686,19 @@ public class GAMLearner extends HoldoutValidatedLearner {
 
 		LineCutter lineCutter = new LineCutter();
 		lineCutter.setNumIntervals(maxNumLeaves);
+		lineCutter.setFeatureIndex(featureIndex);
+		lineCutter.setBinStats(trainStats);
 		BaggedEnsembleLearner learner = new BaggedEnsembleLearner(bags.length, lineCutter);
+		learner.setNumThreads(numThreads);
 
 		// Initialize predictions and residuals
 		double[] rTrain = new double[trainPtr.size()];
-		double[] pValid = new double[validPtr.size()];
-		double[] rValid = new double[validPtr.size()];
 		for (int i = 0; i < trainPtr.size(); i++) {
-			Instance instance = trainSet.get(trainPtr.get(i).getIndex());
+			Instance instance = trainSet.get(trainPtr.getIndex(i));
 			rTrain[i] = instance.getTarget();
 		}
-		for (int i = 0; i < validPtr.size(); i++) {
-			Instance instance = validSet.get(validPtr.get(i).getIndex());
-			rValid[i] = instance.getTarget();
-		}
 
-		List<Double> measureList = new ArrayList<>(maxNumIters);
+		ValidationTracker tracker = new ValidationTracker(validSet, validPtr, maxNumIters * attributes.size());
 
 		// Gradient boosting
 		for (int iter = 0; iter < maxNumIters; iter++) {
@@ -608,7 +708,7 @@ public class GAMLearner extends HoldoutValidatedLearner {
 				BoostedEnsemble boostedEnsemble = regressors.get(k);
 				// Prepare training set
 				for (int i = 0; i < rTrain.length; i++) {
-					target[trainPtr.get(i).getIndex()] = rTrain[i];
+					target[trainPtr.getIndex(i)] = rTrain[i];
 				}
 				// Train model
 				lineCutter.setAttributeIndex(k);
@@ -624,35 +724,22 @@ public class GAMLearner extends HoldoutValidatedLearner {
 				baggedEnsemble = null;
 
 				// Update residuals
+				double[] binPreds = getBinPredictions(func, trainSet);
+				int[] bins = binPreds != null ? featureIndex.getBins(func.getAttributeIndex()) : null;
 				for (int i = 0; i < rTrain.length; i++) {
-					Instance instance = trainSet.get(trainPtr.get(i).getIndex());
-					double pred = func.regress(instance);
+					int row = trainPtr.getIndex(i);
+					double pred = binPreds != null ? binPreds[bins[row]] : func.regress(trainSet.get(row));
 					rTrain[i] -= pred;
 				}
-				for (int i = 0; i < rValid.length; i++) {
-					Instance instance = validSet.get(validPtr.get(i).getIndex());
-					double pred = func.regress(instance);
-					pValid[i] += pred;
-					rValid[i] -= pred;
-				}
-
-				double measure = metric.eval(pValid, validSet, validPtr);
-				measureList.add(measure);
-				if (verbose) {
+				double measure = tracker.update(func);
+				if (verbose && ! Double.isNaN(measure)) {
 					System.out.println("Iteration " + iter + " Feature " + k + ": " + measure);
 				}
 			}
 		}
 
 		// Search the best model on validation set
-		double bestSoFar = metric.worstValue();
-		int idx = -1;
-		for (int i = 0; i < measureList.size(); i++) {
-			if (metric.isFirstBetter(measureList.get(i), bestSoFar)) {
-				bestSoFar = measureList.get(i);
-				idx = i;
-			}
-		}
+		int idx = tracker.getBestIndex(regressors);
 
 		// Prune tree ensembles
 		int n = idx / attributes.size();
@@ -717,21 +804,16 @@ public class GAMLearner extends HoldoutValidatedLearner {
 		LineCutter lineCutter = new LineCutter();
 		lineCutter.setNumIntervals(maxNumLeaves);
 		BaggedEnsembleLearner learner = new BaggedEnsembleLearner(bags.length, lineCutter);
+		learner.setNumThreads(numThreads);
 
 		// Initialize predictions and residuals
 		double[] rTrain = new double[trainSet.size()];
-		double[] pValid = new double[validSet.size()];
-		double[] rValid = new double[validSet.size()];
 		for (int i = 0; i < trainSet.size(); i++) {
 			Instance instance = trainSet.get(i);
 			rTrain[i] = instance.getTarget();
 		}
-		for (int i = 0; i < validSet.size(); i++) {
-			Instance instance = validSet.get(i);
-			rValid[i] = instance.getTarget();
-		}
 
-		List<Double> measureList = new ArrayList<>(maxNumIters);
+		ValidationTracker tracker = new ValidationTracker(validSet, null, maxNumIters * attributes.size());
 
 		// Gradient boosting
 		for (int iter = 0; iter < maxNumIters; iter++) {
@@ -757,35 +839,21 @@ public class GAMLearner extends HoldoutValidatedLearner {
 				baggedEnsemble = null;
 
 				// Update residuals
+				double[] binPreds = getBinPredictions(func, trainSet);
+				int[] bins = binPreds != null ? featureIndex.getBins(func.getAttributeIndex()) : null;
 				for (int i = 0; i < rTrain.length; i++) {
-					Instance instance = trainSet.get(i);
-					double pred = func.regress(instance);
+					double pred = binPreds != null ? binPreds[bins[i]] : func.regress(trainSet.get(i));
 					rTrain[i] -= pred;
 				}
-				for (int i = 0; i < rValid.length; i++) {
-					Instance instance = validSet.get(i);
-					double pred = func.regress(instance);
-					pValid[i] += pred;
-					rValid[i] -= pred;
-				}
-
-				double measure = metric.eval(pValid, validSet);
-				measureList.add(measure);
-				if (verbose) {
+				double measure = tracker.update(func);
+				if (verbose && ! Double.isNaN(measure)) {
 					System.out.println("Iteration " + iter + " Feature " + k + ": " + measure);
 				}
 			}
 		}
 
 		// Search the best model on validation set
-		double bestSoFar = metric.worstValue();
-		int idx = -1;
-		for (int i = 0; i < measureList.size(); i++) {
-			if (metric.isFirstBetter(measureList.get(i), bestSoFar)) {
-				bestSoFar = measureList.get(i);
-				idx = i;
-			}
-		}
+		int idx = tracker.getBestIndex(regressors);
 
 		// Prune tree ensembles
 		int n = idx / attributes.size();
@@ -854,6 +922,7 @@ public class GAMLearner extends HoldoutValidatedLearner {
 		LineCutter lineCutter = new LineCutter();
 		lineCutter.setNumIntervals(maxNumLeaves);
 		BaggedEnsembleLearner learner = new BaggedEnsembleLearner(bags.length, lineCutter);
+		learner.setNumThreads(numThreads);
 
 		// Initialize predictions and residuals
 		double[] pTrain = new double[trainSet.size()];
@@ -887,9 +956,10 @@ public class GAMLearner extends HoldoutValidatedLearner {
 				baggedEnsemble = null;
 
 				// Update residuals
+				double[] binPreds = getBinPredictions(func, trainSet);
+				int[] bins = binPreds != null ? featureIndex.getBins(func.getAttributeIndex()) : null;
 				for (int i = 0; i < rTrain.length; i++) {
-					Instance instance = trainSet.get(i);
-					double pred = func.regress(instance);
+					double pred = binPreds != null ? binPreds[bins[i]] : func.regress(trainSet.get(i));
 					pTrain[i] += pred;
 					rTrain[i] -= pred;
 				}
@@ -956,6 +1026,134 @@ public class GAMLearner extends HoldoutValidatedLearner {
 		return gam;
 	}
 
+	/**
+	 * Returns the predictions of a function for every bin of the training set, or
+	 * <code>null</code> if the feature index does not cover the training set and the attribute.
+	 */
+	private double[] getBinPredictions(Function1D func, Instances trainSet) {
+		if (featureIndex == null || ! featureIndex.isIndexed(trainSet, func.getAttributeIndex())) {
+			return null;
+		}
+		return func.getBinPredictions(featureIndex);
+	}
+
+	/**
+	 * Class for tracking the measure on the validation set after every update of the
+	 * boosting. Every update of a function is one step of an {@link IncrementalEvaluator}.
+	 */
+	private class ValidationTracker {
+
+		private Instances validSet;
+		private Pointers validPtr;
+		private FeatureIndex index;
+		private IncrementalEvaluator evaluator;
+		private int[] segments;
+		private List<Double> measureList;
+		private int numUpdates;
+
+		// Predictions at the last evaluation and at the evaluation before the best one
+		private double[] lastPreds;
+		private double[] windowPreds;
+		private int lastIndex;
+		private int windowIndex;
+		private int bestIndex;
+		private double best;
+
+		ValidationTracker(Instances validSet, Pointers validPtr, int numUpdates) {
+			this.validSet = validSet;
+			this.validPtr = validPtr;
+			this.numUpdates = numUpdates;
+			index = validIndex != null && validIndex.getInstances() == validSet ? validIndex : new FeatureIndex(validSet);
+			evaluator = metric.newIncrementalEvaluator(validSet, validPtr);
+			segments = new int[validPtr != null ? validPtr.size() : validSet.size()];
+			measureList = new ArrayList<>(numUpdates);
+			lastIndex = -1;
+			windowIndex = -1;
+			bestIndex = -1;
+			best = metric.worstValue();
+			if (evalInterval > 1) {
+				lastPreds = new double[segments.length];
+				windowPreds = new double[segments.length];
+			}
+		}
+
+		/**
+		 * Adds a function to the predictions.
+		 * 
+		 * @param func the function.
+		 * @return the measure, or NaN if this update is not evaluated.
+		 */
+		double update(Function1D func) {
+			apply(func);
+			int index = measureList.size();
+			if ((index + 1) % evalInterval != 0 && index != numUpdates - 1) {
+				measureList.add(Double.NaN);
+				return Double.NaN;
+			}
+			double measure = evaluator.eval();
+			measureList.add(measure);
+			if (evalInterval > 1) {
+				if (metric.isFirstBetter(measure, best)) {
+					best = measure;
+					bestIndex = index;
+					double[] t = windowPreds;
+					windowPreds = lastPreds;
+					lastPreds = t;
+					windowIndex = lastIndex;
+				}
+				System.arraycopy(evaluator.getPredictions(), 0, lastPreds, 0, lastPreds.length);
+				lastIndex = index;
+			}
+			return measure;
+		}
+
+		private void apply(Function1D func) {
+			int[] binSegments = func.getSegmentIndices(index);
+			int[] bins = binSegments != null ? index.getBins(func.getAttributeIndex()) : null;
+			for (int i = 0; i < segments.length; i++) {
+				int row = validPtr != null ? validPtr.getIndex(i) : i;
+				segments[i] = binSegments != null ? binSegments[bins[row]] : func.getSegmentIndex(validSet.get(row));
+			}
+			evaluator.update(segments, func.getPredictions());
+		}
+
+		/**
+		 * Returns the index of the update with the best measure.
+		 * 
+		 * @param regressors the functions added so far, by attribute.
+		 * @return the index of the update with the best measure.
+		 */
+		int getBestIndex(List<BoostedEnsemble> regressors) {
+			if (evalInterval > 1 && bestIndex >= 0) {
+				// Replay the updates between the neighboring evaluations of the best one
+				if (windowIndex >= 0) {
+					evaluator.reset(windowPreds);
+				} else {
+					evaluator.reset(new double[segments.length]);
+				}
+				int end = Math.min(bestIndex + evalInterval, measureList.size());
+				for (int index = windowIndex + 1; index < end; index++) {
+					int iter = index / regressors.size();
+					int k = index % regressors.size();
+					apply((Function1D) regressors.get(k).get(iter));
+					if (Double.isNaN(measureList.get(index))) {
+						measureList.set(index, evaluator.eval());
+					}
+				}
+			}
+			double bestSoFar = metric.worstValue();
+			int idx = -1;
+			for (int i = 0; i < measureList.size(); i++) {
+				if (metric.isFirstBetter(measureList.get(i), bestSoFar)) {
+					bestSoFar = measureList.get(i);
+					idx = i;
+				}
+			}
+			return idx;
+		}
+
+	}
+
 	static class Options {
 
 		@Argument(name = "-r", description = "attribute file path")
@@ -988,6 +1186,12 @@ public class GAMLearner extends HoldoutValidatedLearner {
 		@Argument(name = "-l", description = "learning rate (default: 0.01)")
 		double learningRate = 0.01;
 
+		@Argument(name = "-k", description = "number of updates between evaluations on the validation set (default: 1)")
+		int evalInterval = 1;
+
+		@Argument(name = "-n", description = "number of threads training bags (default: #cores)")
+		int numThreads = WorkerPool.getNumCores();
+
 	}
 
 	/**
@@ -1005,6 +1209,8 @@ public class GAMLearner extends HoldoutValidatedLearner {
 	 * [-b]	base learner (default: tr:3:100)
 	 * [-s]	seed of the random number generator (default: 0)
 	 * [-l]	learning rate (default: 0.01)
+	 * [-k]	number of updates between evaluations on the validation set (default: 1)
+	 * [-n]	number of threads training bags (default: #cores)
 	 * </pre>
 	 * 
 	 * </p>
@@ -1038,6 +1244,8 @@ public class GAMLearner extends HoldoutValidatedLearner {
 		learner.setBaseLearner(opts.baseLearner);
 		learner.setMaxNumIters(opts.maxNumIters);
 		learner.setLearningRate(opts.learningRate);
+		learner.setEvalInterval(opts.evalInterval);
+		learner.setNumThreads(opts.numThreads);
 		learner.setTask(task);
 		learner.setMetric(metric);
 		learner.setVerbose(true);
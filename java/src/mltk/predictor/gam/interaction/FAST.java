@@ -4,6 +4,7 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -20,6 +21,7 @@ import mltk.core.processor.Discretizer;
 import mltk.predictor.function.CHistogram;
 import mltk.predictor.function.Histogram2D;
 import mltk.util.Element;
+import mltk.util.WorkerPool;
 import mltk.util.tuple.DoublePair;
 import mltk.util.tuple.IntPair;
 
@@ -38,25 +40,30 @@ import mltk.util.tuple.IntPair;
  */
 public class FAST {
 
-	static class FASTThread extends Thread {
+	/**
+	 * Pairs sharing the first attribute whose 2D histograms are built in one pass.
+	 */
+	static class Block {
 
+		int f1;
 		List<Element<IntPair>> pairs;
-		Instances instances;
+		long cost;
 
-		FASTThread(Instances instances) {
-			this.instances = instances;
+		Block(int f1) {
+			this.f1 = f1;
 			this.pairs = new ArrayList<>();
 		}
-
-		public void add(Element<IntPair> pair) {
-			pairs.add(pair);
-		}
-
-		public void run() {
-			FAST.computeWeights(instances, pairs);
-		}
 	}
 
+	// Budget for the histograms of a block
+	static final long BLOCK_BYTES = 1 << 22;
+	// Histograms of a block up to this size are filled in row order
+	static final long CACHE_BYTES = 1 << 18;
+	// Number of rows grouped by the bin of the first attribute at a time
+	static final int CHUNK_ROWS = 1 << 14;
+	// Estimated cost of the weight computation per histogram cell, relative to a row of a pass
+	static final long CELL_COST = 8;
+
 	static class Table {
 
 		double[][][] resp;
@@ -85,8 +92,8 @@ public class FAST {
 		@Argument(name = "-b", description = "number of bins (default: 256)")
 		int maxNumBins = 256;
 
-		@Argument(name = "-p", description = "number of threads (default: 1)")
-		int numThreads = 1;
+		@Argument(name = "-p", description = "number of threads (default: #cores)")
+		int numThreads = WorkerPool.getNumCores();
 
 	}
 
@@ -100,7 +107,7 @@ public class FAST {
 	 * -o	output path
 	 * [-r]	attribute file path
 	 * [-b]	number of bins (default: 256)
-	 * [-p]	number of threads (default: 1)
+	 * [-p]	number of threads (default: #cores)
 	 * </pre>
 	 * 
 	 * </p>
@@ -147,22 +154,9 @@ public class FAST {
 			}
 		}
 
-		System.out.println("Creating threads...");
-		FASTThread[] threads = new FASTThread[opts.numThreads];
-		long start = System.currentTimeMillis();
-		for (int i = 0; i < threads.length; i++) {
-			threads[i] = new FASTThread(instances);
-		}
-		for (int i = 0; i < pairs.size(); i++) {
-			threads[i % threads.length].add(pairs.get(i));
-		}
-		for (int i = 0; i < threads.length; i++) {
-			threads[i].start();
-		}
 		System.out.println("Running FAST...");
-		for (int i = 0; i < threads.length; i++) {
-			threads[i].join();
-		}
+		long start = System.currentTimeMillis();
+		FAST.computeWeights(instances, pairs, opts.numThreads);
 		long end = System.currentTimeMillis();
 		System.out.println("Sorting pairs...");
 		Collections.sort(pairs);
@@ -186,6 +180,22 @@ public class FAST {
 	 * @param pairs the list of pairs to compute.
 	 */
 	public static void computeWeights(Instances instances, List<Element<IntPair>> pairs) {
+		computeWeights(instances, pairs, 1);
+	}
+
+	/**
+	 * Computes the weights of pairwise interactions in parallel. The attributes are read once
+	 * into columns of bin indices. Pairs are grouped by their first attribute into blocks, and
+	 * one pass over the data builds the 2D histograms of all pairs in a block, one row of the
+	 * histograms at a time. Blocks are run largest first by estimated cost, on threads of the
+	 * {@link mltk.util.WorkerPool WorkerPool}. The weights are the same as with one pass per
+	 * pair.
+	 * 
+	 * @param instances the training set.
+	 * @param pairs the list of pairs to compute.
+	 * @param numThreads the maximum number of threads.
+	 */
+	public static void computeWeights(Instances instances, List<Element<IntPair>> pairs, int numThreads) {
 		List<Attribute> attributes = instances.getAttributes();
 		boolean[] used = new boolean[attributes.size()];
 		for (Element<IntPair> pair : pairs) {
@@ -209,37 +219,93 @@ public class FAST {
 				}
 			}
 		}
-		DoublePair d = computeCHistograms(instances, used, cHist);
-		for (Element<IntPair> pair : pairs) {
-			final int f1 = pair.element.v1;
-			final int f2 = pair.element.v2;
-			final int size1 = cHist[f1].size();
-			final int size2 = cHist[f2].size();
-			Histogram2D hist2d = new Histogram2D(size1, size2);
-			computeHistogram2D(instances, f1, f2, hist2d);
-			computeWeight(pair, cHist, hist2d, d.v1, d.v2);
+
+		final int n = instances.size();
+		int[][] columns = new int[attributes.size()][];
+		for (int j = 0; j < columns.length; j++) {
+			if (used[j]) {
+				columns[j] = new int[n];
+			}
 		}
+		double[] targets = new double[n];
+		double[] weights = new double[n];
+		for (int i = 0; i < n; i++) {
+			Instance instance = instances.get(i);
+			for (int j = 0; j < columns.length; j++) {
+				if (used[j]) {
+					columns[j][i] = (int) instance.getValue(j);
+				}
+			}
+			targets[i] = instance.getTarget();
+			weights[i] = instance.getWeight();
+		}
+		DoublePair d = computeCHistograms(columns, targets, weights, cHist);
+
+		List<Block> blocks = createBlocks(pairs, cHist, n, numThreads);
+		WorkerPool.run(blocks.size(), numThreads, b -> {
+			Block block = blocks.get(b);
+			double[][] hists = computeHistograms2D(columns, targets, weights, block, cHist);
+			for (int k = 0; k < hists.length; k++) {
+				Element<IntPair> pair = block.pairs.get(k);
+				Histogram2D hist2d = toHistogram2D(hists[k], cHist[pair.element.v1].size(),
+						cHist[pair.element.v2].size());
+				computeWeight(pair, cHist, hist2d, d.v1, d.v2);
+			}
+		});
+	}
+
+	/**
+	 * Groups the pairs by their first attribute into blocks. The histograms of a block fit
+	 * into {@link #BLOCK_BYTES}, and blocks are kept small enough to balance the threads.
+	 * The blocks are returned by decreasing estimated cost.
+	 */
+	protected static List<Block> createBlocks(List<Element<IntPair>> pairs, CHistogram[] cHist, int n,
+			int numThreads) {
+		List<Element<IntPair>> sorted = new ArrayList<>(pairs);
+		Collections.sort(sorted, (a, b) -> a.element.v1 != b.element.v1 ? Integer.compare(a.element.v1, b.element.v1)
+				: Integer.compare(a.element.v2, b.element.v2));
+		final int maxNumPairs = Math.max(1, Math.min(64, pairs.size() / (4 * Math.max(1, numThreads))));
+		List<Block> blocks = new ArrayList<>();
+		Block block = null;
+		long bytes = 0;
+		for (Element<IntPair> pair : sorted) {
+			long cells = (long) cHist[pair.element.v1].size() * cHist[pair.element.v2].size();
+			if (block == null || block.f1 != pair.element.v1 || block.pairs.size() >= maxNumPairs
+					|| bytes + 16 * cells > BLOCK_BYTES) {
+				block = new Block(pair.element.v1);
+				blocks.add(block);
+				bytes = 0;
+			}
+			block.pairs.add(pair);
+			// A pass costs a row per pair; the weight costs scale with the histogram size
+			block.cost += n + CELL_COST * cells;
+			bytes += 16 * cells;
+		}
+		Collections.sort(blocks, (a, b) -> Long.compare(b.cost, a.cost));
+		return blocks;
 	}
 
-	protected static DoublePair computeCHistograms(Instances instances, boolean[] used, CHistogram[] cHist) {
+	protected static DoublePair computeCHistograms(int[][] columns, double[] targets, double[] weights,
+			CHistogram[] cHist) {
 		double ySq = 0;
 		double totalWeight = 0;
 		// compute histogram
-		for (Instance instance : instances) {
-			double resp = instance.getTarget();
-			for (int j = 0; j < instances.getAttributes().size(); j++) {
-				if (used[j]) {
-					int idx = (int) instance.getValue(j);
-					cHist[j].sum[idx] += resp * instance.getWeight();
-					cHist[j].count[idx] += instance.getWeight();
+		for (int i = 0; i < targets.length; i++) {
+			double resp = targets[i];
+			double weight = weights[i];
+			for (int j = 0; j < columns.length; j++) {
+				if (columns[j] != null) {
+					int idx = columns[j][i];
+					cHist[j].sum[idx] += resp * weight;
+					cHist[j].count[idx] += weight;
 				}
 			}
-			ySq += resp * resp * instance.getWeight();
-			totalWeight += instance.getWeight();
+			ySq += resp * resp * weight;
+			totalWeight += weight;
 		}
 		// compute cumulative histogram
 		for (int j = 0; j < cHist.length; j++) {
-			if (used[j]) {
+			if (columns[j] != null) {
 				for (int idx = 1; idx < cHist[j].size(); idx++) {
 					cHist[j].sum[idx] += cHist[j].sum[idx - 1];
 					cHist[j].count[idx] += cHist[j].count[idx - 1];
@@ -249,13 +315,106 @@ public class FAST {
 		return new DoublePair(ySq, totalWeight);
 	}
 
-	protected static void computeHistogram2D(Instances instances, int f1, int f2, Histogram2D hist2d) {
-		for (Instance instance : instances) {
-			int idx1 = (int) instance.getValue(f1);
-			int idx2 = (int) instance.getValue(f2);
-			hist2d.resp[idx1][idx2] += instance.getTarget() * instance.getWeight();
-			hist2d.count[idx1][idx2] += instance.getWeight();
+	/**
+	 * Computes the 2D histograms of all pairs of a block in one pass. A histogram is stored
+	 * row-major with the response and the count of a cell next to each other, so that an
+	 * update touches a single cache line. Unless the histograms are small, the rows are
+	 * processed in chunks, grouped by the bin of the first attribute, so that only the
+	 * histogram rows of one bin are updated at a time and stay in the cache. Within a bin the
+	 * rows keep their order, so every cell is summed in the same order as in a plain pass.
+	 */
+	protected static double[][] computeHistograms2D(int[][] columns, double[] targets, double[] weights, Block block,
+			CHistogram[] cHist) {
+		final int k = block.pairs.size();
+		final int size1 = cHist[block.f1].size();
+		final int[] col1 = columns[block.f1];
+		final int[][] cols2 = new int[k][];
+		final int[] sizes2 = new int[k];
+		final double[][] hists = new double[k][];
+		long bytes = 0;
+		for (int p = 0; p < k; p++) {
+			int f2 = block.pairs.get(p).element.v2;
+			cols2[p] = columns[f2];
+			sizes2[p] = cHist[f2].size();
+			hists[p] = new double[2 * size1 * sizes2[p]];
+			bytes += 8L * hists[p].length;
+		}
+		if (bytes <= CACHE_BYTES) {
+			for (int i = 0; i < col1.length; i++) {
+				final int idx1 = col1[i];
+				final double resp = targets[i] * weights[i];
+				final double weight = weights[i];
+				for (int p = 0; p < k; p++) {
+					double[] hist = hists[p];
+					int cell = (idx1 * sizes2[p] + cols2[p][i]) << 1;
+					hist[cell] += resp;
+					hist[cell + 1] += weight;
+				}
+			}
+			return hists;
+		}
+
+		final int n = col1.length;
+		final int chunk = Math.min(n, CHUNK_ROWS);
+		final int[] start = new int[size1 + 1];
+		final int[] next = new int[size1];
+		final int[] rank = new int[chunk];
+		final double[] resp = new double[chunk];
+		final double[] weight = new double[chunk];
+		final int[][] idx2 = new int[k][chunk];
+		for (int from = 0; from < n; from += chunk) {
+			final int m = Math.min(n - from, chunk);
+			// Counting sort by the bin of the first attribute, keeping the row order within a bin
+			Arrays.fill(start, 0);
+			for (int i = 0; i < m; i++) {
+				start[col1[from + i] + 1]++;
+			}
+			for (int b = 0; b < size1; b++) {
+				start[b + 1] += start[b];
+			}
+			System.arraycopy(start, 0, next, 0, size1);
+			for (int i = 0; i < m; i++) {
+				int r = next[col1[from + i]]++;
+				rank[i] = r;
+				resp[r] = targets[from + i] * weights[from + i];
+				weight[r] = weights[from + i];
+			}
+			for (int p = 0; p < k; p++) {
+				final int[] col2 = cols2[p];
+				final int[] idx = idx2[p];
+				for (int i = 0; i < m; i++) {
+					idx[rank[i]] = col2[from + i];
+				}
+			}
+			// Only one row of each histogram is updated at a time
+			for (int b = 0; b < size1; b++) {
+				final int end = start[b + 1];
+				for (int p = 0; p < k; p++) {
+					final double[] hist = hists[p];
+					final int[] idx = idx2[p];
+					final int offset = b * sizes2[p];
+					for (int r = start[b]; r < end; r++) {
+						int cell = (offset + idx[r]) << 1;
+						hist[cell] += resp[r];
+						hist[cell + 1] += weight[r];
+					}
+				}
+			}
+		}
+		return hists;
+	}
+
+	protected static Histogram2D toHistogram2D(double[] hist, int size1, int size2) {
+		Histogram2D hist2d = new Histogram2D(size1, size2);
+		for (int i = 0, cell = 0; i < size1; i++) {
+			double[] resp = hist2d.resp[i];
+			double[] count = hist2d.count[i];
+			for (int j = 0; j < size2; j++, cell += 2) {
+				resp[j] = hist[cell];
+				count[j] = hist[cell + 1];
+			}
 		}
+		return hist2d;
 	}
 
 	protected static void computeTable(Histogram2D hist2d, CHistogram cHist1, CHistogram cHist2, Table table) {
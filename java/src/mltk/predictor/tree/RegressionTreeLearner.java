@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
@@ -11,10 +12,13 @@ import java.util.PriorityQueue;
 import mltk.cmdline.Argument;
 import mltk.cmdline.CmdLineParser;
 import mltk.core.Attribute;
+import mltk.core.Bins;
 import mltk.core.Instance;
 import mltk.core.Instances;
 import mltk.core.SparseVector;
+import mltk.core.Vector;
 import mltk.core.io.InstancesReader;
+import mltk.core.processor.Discretizer;
 import mltk.predictor.Bagging;
 import mltk.predictor.Learner;
 import mltk.predictor.evaluation.Evaluator;
@@ -97,6 +101,10 @@ public class RegressionTreeLearner extends Learner {
 			sortedLists = new ArrayList<>(instances.dimension());
 		}
 
+		Dataset createChild() {
+			return new Dataset(instances);
+		}
+
 		void split(RegressionTreeInteriorNode node, Dataset left, Dataset right) {
 			int[] leftHash = new int[instances.size()];
 			int[] rightHash = new int[instances.size()];
@@ -132,6 +140,311 @@ public class RegressionTreeLearner extends Learner {
 		}
 
 	}
+
+	/**
+	 * Class for the attribute values of a dataset quantized for the histogram mode. Each
+	 * attribute in the attribute list of the dataset is quantized by
+	 * {@link Discretizer#computeBins(double[], int)} into a column of bin indices when the
+	 * first tree is grown on the dataset; later trees on the same dataset share the columns.
+	 * Missing values get a bin of their own after the others.
+	 *
+	 * <p>Bootstrap samples whose instances share the feature vectors of the dataset, such as
+	 * those created by {@link Bagging}, take their columns from it instead of being quantized
+	 * again (see {@link RegressionTreeLearner#setBinnedColumns(BinnedColumns)}).</p>
+	 */
+	public static class BinnedColumns {
+
+		final Instances instances;
+		final int size;
+		final int maxNumBins;
+		// By attribute index; byte[] for at most 256 bins and short[] otherwise
+		Object[] columns;
+		// Smallest and largest value of each bin, by attribute index
+		double[][] binMin;
+		double[][] binMax;
+		// Row of each feature vector, built for the first sample
+		private Map<Vector, Integer> rowOf;
+
+		/**
+		 * Constructor. The attributes are quantized when they are first used.
+		 *
+		 * @param instances the dataset.
+		 * @param maxNumBins the maximum number of bins per attribute.
+		 */
+		public BinnedColumns(Instances instances, int maxNumBins) {
+			this.instances = instances;
+			this.size = instances.size();
+			this.maxNumBins = maxNumBins;
+			columns = new Object[0];
+			binMin = new double[0][];
+			binMax = new double[0][];
+		}
+
+		/**
+		 * Returns <code>true</code> if these columns were created for a dataset with a maximum
+		 * number of bins, and the dataset has not grown or shrunk since.
+		 *
+		 * @param instances the dataset.
+		 * @param maxNumBins the maximum number of bins per attribute.
+		 * @return <code>true</code> if these columns were created for the dataset.
+		 */
+		public boolean covers(Instances instances, int maxNumBins) {
+			return this.instances == instances && size == instances.size() && this.maxNumBins == maxNumBins;
+		}
+
+		/**
+		 * Returns the columns of a sample of this dataset, or <code>null</code> if an
+		 * instance of the sample does not share a feature vector of this dataset.
+		 */
+		BinnedColumns select(Instances sample) {
+			int[] rows = new int[sample.size()];
+			synchronized (this) {
+				if (rowOf == null) {
+					rowOf = new IdentityHashMap<>(2 * size);
+					for (int i = size - 1; i >= 0; i--) {
+						rowOf.put(instances.get(i).getVector(), i);
+					}
+				}
+				for (int i = 0; i < rows.length; i++) {
+					Integer row = rowOf.get(sample.get(i).getVector());
+					if (row == null) {
+						return null;
+					}
+					rows[i] = row;
+				}
+			}
+			BinnedColumns selected = new BinnedColumns(sample, maxNumBins);
+			for (Attribute attribute : sample.getAttributes()) {
+				int attIndex = attribute.getIndex();
+				Object column;
+				synchronized (this) {
+					quantize(attIndex);
+					column = columns[attIndex];
+					selected.ensureCapacity(attIndex);
+					selected.binMin[attIndex] = binMin[attIndex];
+					selected.binMax[attIndex] = binMax[attIndex];
+				}
+				if (column instanceof byte[]) {
+					byte[] from = (byte[]) column;
+					byte[] to = new byte[rows.length];
+					for (int i = 0; i < rows.length; i++) {
+						to[i] = from[rows[i]];
+					}
+					selected.columns[attIndex] = to;
+				} else {
+					short[] from = (short[]) column;
+					short[] to = new short[rows.length];
+					for (int i = 0; i < rows.length; i++) {
+						to[i] = from[rows[i]];
+					}
+					selected.columns[attIndex] = to;
+				}
+			}
+			return selected;
+		}
+
+		private void ensureCapacity(int attIndex) {
+			if (attIndex >= columns.length) {
+				int n = Math.max(attIndex + 1, 2 * columns.length);
+				columns = Arrays.copyOf(columns, n);
+				binMin = Arrays.copyOf(binMin, n);
+				binMax = Arrays.copyOf(binMax, n);
+			}
+		}
+
+		// Synchronized, as trees may be grown on the same dataset in parallel
+		synchronized void quantize(int attIndex) {
+			ensureCapacity(attIndex);
+			if (columns[attIndex] != null) {
+				return;
+			}
+			double[] values = new double[size];
+			double[] x = new double[size];
+			int m = 0;
+			for (int i = 0; i < size; i++) {
+				// Maps -0.0 to 0.0 so that they share a bin
+				values[i] = instances.get(i).getValue(attIndex) + 0.0;
+				if (!Double.isNaN(values[i])) {
+					x[m++] = values[i];
+				}
+			}
+			Bins bins = m > 0 ? Discretizer.computeBins(Arrays.copyOf(x, m), maxNumBins) : null;
+			int numValueBins = bins != null ? bins.size() : 0;
+			int numBins = numValueBins + (m < size ? 1 : 0);
+			double[] min = new double[numBins];
+			double[] max = new double[numBins];
+			Arrays.fill(min, Double.POSITIVE_INFINITY);
+			Arrays.fill(max, Double.NEGATIVE_INFINITY);
+			int[] index = new int[size];
+			for (int i = 0; i < size; i++) {
+				if (Double.isNaN(values[i])) {
+					index[i] = numValueBins;
+				} else {
+					int b = bins.getIndex(values[i]);
+					index[i] = b;
+					min[b] = Math.min(min[b], values[i]);
+					max[b] = Math.max(max[b], values[i]);
+				}
+			}
+			if (numBins > numValueBins) {
+				// Missing values never go left
+				min[numValueBins] = max[numValueBins] = Double.POSITIVE_INFINITY;
+			}
+			if (numBins <= 256) {
+				byte[] column = new byte[size];
+				for (int i = 0; i < size; i++) {
+					column[i] = (byte) index[i];
+				}
+				columns[attIndex] = column;
+			} else {
+				short[] column = new short[size];
+				for (int i = 0; i < size; i++) {
+					column[i] = (short) index[i];
+				}
+				columns[attIndex] = column;
+			}
+			binMin[attIndex] = min;
+			binMax[attIndex] = max;
+		}
+
+		int getNumBins(int attIndex) {
+			return binMin[attIndex].length;
+		}
+
+	}
+
+	/**
+	 * Class for the instances of a node in the histogram mode, with the histograms of the
+	 * weights and the responses over the bins of every attribute. When a node is split,
+	 * the histograms of the smaller child are built from its instances and those of the
+	 * larger child are the difference to the parent.
+	 */
+	protected static class BinnedDataset extends Dataset {
+
+		BinnedColumns columns;
+		// Attribute indices of the attribute list
+		int[] attIndices;
+		// Weight and contribution to the sum of responses, by instance of the root
+		double[] weights;
+		double[] sums;
+		// Instances of this node as indices into the root, aligned with the instances
+		int[] rows;
+		// Histograms by position in the attribute list and bin
+		int[][] histCounts;
+		double[][] histWeights;
+		double[][] histSums;
+
+		BinnedDataset(Instances instances) {
+			super(instances);
+		}
+
+		static BinnedDataset create(BinnedColumns columns, Instances instances, double[] weights, double[] sums) {
+			BinnedDataset dataset = new BinnedDataset(instances);
+			List<Attribute> attributes = instances.getAttributes();
+			dataset.columns = columns;
+			dataset.attIndices = new int[attributes.size()];
+			for (int j = 0; j < attributes.size(); j++) {
+				dataset.attIndices[j] = attributes.get(j).getIndex();
+				columns.quantize(dataset.attIndices[j]);
+			}
+			dataset.weights = weights;
+			dataset.sums = sums;
+			dataset.rows = new int[instances.size()];
+			for (int i = 0; i < instances.size(); i++) {
+				dataset.instances.add(instances.get(i));
+				dataset.rows[i] = i;
+			}
+			dataset.computeHistograms();
+			return dataset;
+		}
+
+		@Override
+		Dataset createChild() {
+			BinnedDataset child = new BinnedDataset(instances);
+			child.columns = columns;
+			child.attIndices = attIndices;
+			child.weights = weights;
+			child.sums = sums;
+			return child;
+		}
+
+		@Override
+		void split(RegressionTreeInteriorNode node, Dataset left, Dataset right) {
+			BinnedDataset l = (BinnedDataset) left;
+			BinnedDataset r = (BinnedDataset) right;
+			int[] leftRows = new int[rows.length];
+			int[] rightRows = new int[rows.length];
+			int leftN = 0;
+			int rightN = 0;
+			for (int i = 0; i < rows.length; i++) {
+				Instance instance = instances.get(i);
+				if (node.goLeft(instance)) {
+					l.instances.add(instance);
+					leftRows[leftN++] = rows[i];
+				} else {
+					r.instances.add(instance);
+					rightRows[rightN++] = rows[i];
+				}
+			}
+			l.rows = Arrays.copyOf(leftRows, leftN);
+			r.rows = Arrays.copyOf(rightRows, rightN);
+			BinnedDataset smaller = leftN <= rightN ? l : r;
+			BinnedDataset larger = leftN <= rightN ? r : l;
+			smaller.computeHistograms();
+			larger.histCounts = histCounts;
+			larger.histWeights = histWeights;
+			larger.histSums = histSums;
+			for (int j = 0; j < attIndices.length; j++) {
+				int[] counts = larger.histCounts[j];
+				double[] w = larger.histWeights[j];
+				double[] s = larger.histSums[j];
+				for (int b = 0; b < counts.length; b++) {
+					counts[b] -= smaller.histCounts[j][b];
+					w[b] -= smaller.histWeights[j][b];
+					s[b] -= smaller.histSums[j][b];
+				}
+			}
+			// The histograms of this node now belong to the larger child
+			histCounts = null;
+			histWeights = null;
+			histSums = null;
+		}
+
+		void computeHistograms() {
+			histCounts = new int[attIndices.length][];
+			histWeights = new double[attIndices.length][];
+			histSums = new double[attIndices.length][];
+			for (int j = 0; j < attIndices.length; j++) {
+				int attIndex = attIndices[j];
+				int numBins = columns.getNumBins(attIndex);
+				int[] counts = new int[numBins];
+				double[] w = new double[numBins];
+				double[] s = new double[numBins];
+				Object column = columns.columns[attIndex];
+				if (column instanceof byte[]) {
+					byte[] bins = (byte[]) column;
+					for (int row : rows) {
+						int b = bins[row] & 0xFF;
+						counts[b]++;
+						w[b] += weights[row];
+						s[b] += sums[row];
+					}
+				} else {
+					short[] bins = (short[]) column;
+					for (int row : rows) {
+						int b = bins[row] & 0xFFFF;
+						counts[b]++;
+						w[b] += weights[row];
+						s[b] += sums[row];
+					}
+				}
+				histCounts[j] = counts;
+				histWeights[j] = w;
+				histSums[j] = s;
+			}
+		}
+
+	}
 	
 	static class Options {
 
@@ -150,6 +463,9 @@ public class RegressionTreeLearner extends Learner {
 		@Argument(name = "-s", description = "seed of the random number generator (default: 0)")
 		long seed = 0L;
 
+		@Argument(name = "-q", description = "maximum number of bins per attribute to grow the tree from histograms, 0 to split on all values (default: 0)")
+		int maxNumBins = 0;
+
 	}
 	
 	/**
@@ -163,6 +479,8 @@ public class RegressionTreeLearner extends Learner {
 	 * -t	train set path
 	 * [-o]	output model path
 	 * [-m]	construction mode:parameter. Construction mode can be alpha limited (a), depth limited (d), number of leaves limited (l) and minimum leaf size limited (s) (default: a:0.001)
+	 * [-s]	seed of the random number generator (default: 0)
+	 * [-q]	maximum number of bins per attribute to grow the tree from histograms, 0 to split on all values (default: 0)
 	 * </pre>
 	 *
 	 * </p>
@@ -205,6 +523,7 @@ public class RegressionTreeLearner extends Learner {
 		}
 
 		Random.getInstance().setSeed(opts.seed);
+		rtLearner.setMaxNumBins(opts.maxNumBins);
 
 		Instances trainSet = InstancesReader.read(opts.attPath, opts.trainPath);
 		Instances bag = Bagging.createBootstrapSample(trainSet);
@@ -223,7 +542,10 @@ public class RegressionTreeLearner extends Learner {
 	protected int maxNumLeaves;
 	protected int minLeafSize;
 	protected double alpha;
+	protected int maxNumBins;
 	protected Mode mode;
+	protected volatile BinnedColumns binnedColumns;
+	protected BinnedColumns sharedColumns;
 	protected static final Double ZERO = Double.valueOf(0.0); //new Double(0.0);
 
 	/**
@@ -300,6 +622,40 @@ public class RegressionTreeLearner extends Learner {
 		return minLeafSize;
 	}
 
+	/**
+	 * Returns the maximum number of bins per attribute in the histogram mode.
+	 *
+	 * @return the maximum number of bins per attribute, or 0 if trees are grown on all values.
+	 */
+	public int getMaxNumBins() {
+		return maxNumBins;
+	}
+
+	/**
+	 * Sets the maximum number of bins per attribute (at most 65535). With a positive number,
+	 * trees are grown from histograms over bins of the attribute values, which are computed
+	 * once per dataset and reused by later trees on the same dataset; the feature values of
+	 * the dataset must not change between trees. With 0 (default), trees are grown on all
+	 * distinct values.
+	 *
+	 * @param maxNumBins the maximum number of bins per attribute.
+	 */
+	public void setMaxNumBins(int maxNumBins) {
+		this.maxNumBins = Math.max(0, Math.min(maxNumBins, 65535));
+	}
+
+	/**
+	 * Sets the quantized training set in the histogram mode. Trees grown on bootstrap samples
+	 * of the training set then reuse its bins instead of quantizing every sample, and the
+	 * columns can be shared by several learners. They are used only if they were created
+	 * with the same maximum number of bins.
+	 *
+	 * @param columns the quantized training set, or <code>null</code> to quantize every dataset.
+	 */
+	public void setBinnedColumns(BinnedColumns columns) {
+		this.sharedColumns = columns;
+	}
+
 	/**
 	 * Sets the alpha. Alpha is the maximum proportion of the training set in the leaf node.
 	 *
@@ -345,6 +701,40 @@ public class RegressionTreeLearner extends Learner {
 		this.minLeafSize = minLeafSize;
 	}
 
+	/**
+	 * Creates the dataset of the root. In the histogram mode, the attributes are quantized
+	 * the first time a dataset is seen, unless it is a sample of the quantized training set.
+	 *
+	 * @param instances the training set.
+	 * @return the dataset of the root.
+	 */
+	protected Dataset createDataset(Instances instances) {
+		if (maxNumBins <= 0) {
+			return Dataset.create(instances);
+		}
+		BinnedColumns columns = binnedColumns;
+		if (columns == null || !columns.covers(instances, maxNumBins)) {
+			BinnedColumns shared = sharedColumns;
+			if (shared != null && shared.maxNumBins == maxNumBins) {
+				columns = shared.covers(instances, maxNumBins) ? shared : shared.select(instances);
+			} else {
+				columns = null;
+			}
+			if (columns == null) {
+				columns = new BinnedColumns(instances, maxNumBins);
+			}
+			binnedColumns = columns;
+		}
+		double[] weights = new double[instances.size()];
+		double[] sums = new double[instances.size()];
+		for (int i = 0; i < weights.length; i++) {
+			Instance instance = instances.get(i);
+			weights[i] = instance.getWeight();
+			sums[i] = getResponseSum(instance);
+		}
+		return BinnedDataset.create(columns, instances, weights, sums);
+	}
+
 	protected RegressionTree buildAlphaLimitedTree(Instances instances, double alpha) {
 		final int limit = (int) (alpha * instances.size());
 		return buildMinLeafSizeLimitedTree(instances, limit);
@@ -364,7 +754,7 @@ public class RegressionTreeLearner extends Learner {
 		}
 		Map<RegressionTreeNode, Dataset> datasets = new HashMap<>();
 		Map<RegressionTreeNode, Integer> depths = new HashMap<>();
-		Dataset dataset = Dataset.create(instances);
+		Dataset dataset = createDataset(instances);
 		tree.root = createNode(dataset, limit, stats);
 		PriorityQueue<Element<RegressionTreeNode>> q = new PriorityQueue<>();
 		q.add(new Element<RegressionTreeNode>(tree.root, stats[2]));
@@ -378,8 +768,8 @@ public class RegressionTreeLearner extends Learner {
 			int depth = depths.get(node);
 			if (!node.isLeaf()) {
 				RegressionTreeInteriorNode interiorNode = (RegressionTreeInteriorNode) node;
-				Dataset left = new Dataset(data.instances);
-				Dataset right = new Dataset(data.instances);
+				Dataset left = data.createChild();
+				Dataset right = data.createChild();
 				data.split(interiorNode, left, right);
 
 				if (depth + 1 == maxDepth) {
@@ -410,7 +800,7 @@ public class RegressionTreeLearner extends Learner {
 	protected RegressionTree buildMinLeafSizeLimitedTree(Instances instances, int limit) {
 		RegressionTree tree = new RegressionTree();
 		double[] stats = new double[3];
-		Dataset dataset = Dataset.create(instances);
+		Dataset dataset = createDataset(instances);
 		Stack<RegressionTreeNode> nodes = new Stack<>();
 		Stack<Dataset> datasets = new Stack<>();
 		tree.root = createNode(dataset, limit, stats);
@@ -421,8 +811,8 @@ public class RegressionTreeLearner extends Learner {
 			Dataset data = datasets.pop();
 			if (!node.isLeaf()) {
 				RegressionTreeInteriorNode interiorNode = (RegressionTreeInteriorNode) node;
-				Dataset left = new Dataset(data.instances);
-				Dataset right = new Dataset(data.instances);
+				Dataset left = data.createChild();
+				Dataset right = data.createChild();
 				data.split(interiorNode, left, right);
 				interiorNode.left = createNode(left, limit, stats);
 				interiorNode.right = createNode(right, limit, stats);
@@ -444,7 +834,7 @@ public class RegressionTreeLearner extends Learner {
 		double[] stats = new double[3];
 		Map<RegressionTreeNode, Double> nodePred = new HashMap<>();
 		Map<RegressionTreeNode, Dataset> datasets = new HashMap<>();
-		Dataset dataset = Dataset.create(instances);
+		Dataset dataset = createDataset(instances);
 		PriorityQueue<Element<RegressionTreeNode>> q = new PriorityQueue<>();
 		tree.root = createNode(dataset, limit, stats);
 		q.add(new Element<RegressionTreeNode>(tree.root, stats[2]));
@@ -458,8 +848,8 @@ public class RegressionTreeLearner extends Learner {
 			Dataset data = datasets.get(node);
 			if (!node.isLeaf()) {
 				RegressionTreeInteriorNode interiorNode = (RegressionTreeInteriorNode) node;
-				Dataset left = new Dataset(data.instances);
-				Dataset right = new Dataset(data.instances);
+				Dataset left = data.createChild();
+				Dataset right = data.createChild();
 				data.split(interiorNode, left, right);
 
 				interiorNode.left = createNode(left, limit, stats);
@@ -511,7 +901,7 @@ public class RegressionTreeLearner extends Learner {
 		final double sum = totalWeights * weightedMean;
 
 		// 1. Check basic leaf conditions
-		if (dataset.instances.size() < limit || stdIs0) {
+		if (isTooSmall(dataset, totalWeights, limit) || stdIs0) {
 			RegressionTreeNode node = new RegressionTreeLeaf(weightedMean);
 			return node;
 		}
@@ -520,23 +910,32 @@ public class RegressionTreeLearner extends Learner {
 		double bestEval = Double.POSITIVE_INFINITY;
 		List<IntDoublePair> splits = new ArrayList<>();
 		List<Attribute> attributes = dataset.instances.getAttributes();
+		boolean[] selected = selectAttributes(attributes.size());
 		for (int j = 0; j < attributes.size(); j++) {
+			if (!selected[j]) {
+				continue;
+			}
 			int attIndex = attributes.get(j).getIndex();
-			List<IntDoublePair> sortedList = dataset.sortedLists.get(j);
-			List<Double> uniqueValues = new ArrayList<>(sortedList.size());
-			List<DoublePair> histogram = new ArrayList<>(sortedList.size());
-			getHistogram(dataset.instances, sortedList, uniqueValues, totalWeights, sum, histogram);
-
-			if (uniqueValues.size() > 1) {
-				DoublePair split = split(uniqueValues, histogram, totalWeights, sum);
-				if (split.v2 <= bestEval) {
-					IntDoublePair splitPoint = new IntDoublePair(attIndex, split.v1);
-					if (split.v2 < bestEval) {
-						splits.clear();
-						bestEval = split.v2;
-					}
-					splits.add(splitPoint);
+			DoublePair split = null;
+			if (dataset instanceof BinnedDataset) {
+				split = split((BinnedDataset) dataset, j, totalWeights, sum);
+			} else {
+				List<IntDoublePair> sortedList = dataset.sortedLists.get(j);
+				List<Double> uniqueValues = new ArrayList<>(sortedList.size());
+				List<DoublePair> histogram = new ArrayList<>(sortedList.size());
+				getHistogram(dataset.instances, sortedList, uniqueValues, totalWeights, sum, histogram);
+				if (uniqueValues.size() > 1) {
+					split = split(uniqueValues, histogram, totalWeights, sum);
+				}
+			}
+
+			if (split != null && split.v2 <= bestEval) {
+				IntDoublePair splitPoint = new IntDoublePair(attIndex, split.v1);
+				if (split.v2 < bestEval) {
+					splits.clear();
+					bestEval = split.v2;
 				}
+				splits.add(splitPoint);
 			}
 		}
 		if (bestEval < Double.POSITIVE_INFINITY) {
@@ -554,6 +953,99 @@ public class RegressionTreeLearner extends Learner {
 		}
 	}
 
+	/**
+	 * Returns <code>true</code> if a node is too small to split.
+	 *
+	 * @param dataset the dataset of the node.
+	 * @param totalWeights the total weights of the node.
+	 * @param limit the minimum size to split.
+	 * @return <code>true</code> if a node is too small to split.
+	 */
+	protected boolean isTooSmall(Dataset dataset, double totalWeights, int limit) {
+		return dataset.instances.size() < limit;
+	}
+
+	/**
+	 * Returns the attributes, by position in the attribute list, whose splits are searched
+	 * for a node.
+	 *
+	 * @param numAttributes the number of attributes.
+	 * @return <code>true</code> for every attribute to search.
+	 */
+	protected boolean[] selectAttributes(int numAttributes) {
+		boolean[] selected = new boolean[numAttributes];
+		Arrays.fill(selected, true);
+		return selected;
+	}
+
+	/**
+	 * Returns the contribution of an instance to the sum of responses of its node in the
+	 * histogram mode, as {@link #getHistogram} adds it.
+	 *
+	 * @param instance the instance.
+	 * @return the contribution to the sum of responses.
+	 */
+	protected double getResponseSum(Instance instance) {
+		return instance.getTarget() * instance.getWeight();
+	}
+
+	/**
+	 * Finds the best split of an attribute from the histograms of a node, as
+	 * {@link #split(List, List, double, double)} does on distinct values. A split between
+	 * two bins lies halfway between the values of the data next to it.
+	 *
+	 * @param dataset the dataset of the node.
+	 * @param j the position of the attribute in the attribute list.
+	 * @param totalWeights the total weights of the node.
+	 * @param sum the sum of responses of the node.
+	 * @return the split point and its evaluation, or <code>null</code> if the node has one bin only.
+	 */
+	protected DoublePair split(BinnedDataset dataset, int j, double totalWeights, double sum) {
+		int attIndex = dataset.attIndices[j];
+		double[] binMin = dataset.columns.binMin[attIndex];
+		double[] binMax = dataset.columns.binMax[attIndex];
+		int[] counts = dataset.histCounts[j];
+		double[] hw = dataset.histWeights[j];
+		double[] hs = dataset.histSums[j];
+
+		double weight1 = 0;
+		double sum1 = 0;
+		double bestEval = Double.POSITIVE_INFINITY;
+		List<Double> splits = new ArrayList<>();
+		int last = -1;
+		for (int b = 0; b < counts.length; b++) {
+			if (counts[b] == 0) {
+				continue;
+			}
+			if (last >= 0) {
+				double weight2 = totalWeights - weight1;
+				double sum2 = sum - sum1;
+				double eval = -sum1 * sum1 / weight1 - sum2 * sum2 / weight2;
+				if (splits.isEmpty() || eval <= bestEval) {
+					double split = (binMax[last] + binMin[b]) / 2;
+					if (split >= binMin[b]) {
+						// No double in between
+						split = binMax[last];
+					}
+					if (splits.isEmpty() || eval < bestEval) {
+						bestEval = eval;
+						splits.clear();
+					}
+					splits.add(split);
+				}
+			}
+			weight1 += hw[b];
+			sum1 += hs[b];
+			last = b;
+		}
+		if (splits.isEmpty()) {
+			return null;
+		}
+		Random rand = Random.getInstance();
+		double split = splits.get(rand.nextInt(splits.size()));
+		return new DoublePair(split, bestEval);
+	}
+
 	protected void getHistogram(Instances instances, List<IntDoublePair> pairs, List<Double> uniqueValues, double w,
 			double s, List<DoublePair> histogram) {
 		if (pairs.size() == 0) {
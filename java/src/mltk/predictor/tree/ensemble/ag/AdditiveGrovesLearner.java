@@ -1,9 +1,12 @@
 package mltk.predictor.tree.ensemble.ag;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import mltk.cmdline.Argument;
 import mltk.cmdline.CmdLineParser;
@@ -18,8 +21,10 @@ import mltk.predictor.evaluation.RMSE;
 import mltk.predictor.io.PredictorWriter;
 import mltk.predictor.tree.RegressionTree;
 import mltk.predictor.tree.RegressionTreeLearner;
+import mltk.predictor.tree.RegressionTreeLearner.BinnedColumns;
 import mltk.predictor.tree.RegressionTreeLearner.Mode;
 import mltk.util.Random;
+import mltk.util.WorkerPool;
 import mltk.util.tuple.IntPair;
 
 /**
@@ -156,6 +161,47 @@ public class AdditiveGrovesLearner extends Learner {
 
 	}
 
+	static class Workspace {
+
+		int tStart;
+		int tEnd;
+		// The most recent predictions of the trees of each grove; grove t has t + 1 trees
+		double[][][] rtPreds;
+		// The most recent residuals of each grove
+		double[][] residualTrain;
+
+		Workspace(int tStart, int tEnd, int n) {
+			this.tStart = tStart;
+			this.tEnd = tEnd;
+			rtPreds = new double[tEnd - tStart][][];
+			for (int t = tStart; t < tEnd; t++) {
+				rtPreds[t - tStart] = new double[t + 1][n];
+			}
+			residualTrain = new double[tEnd - tStart][n];
+		}
+
+		/**
+		 * Takes a workspace from the pool, or creates one, and resets it for a new bag.
+		 */
+		static Workspace acquire(Queue<Workspace> pool, int tStart, int tEnd, int n, double[] targetTrain) {
+			Workspace workspace = pool.poll();
+			if (workspace == null || workspace.tStart != tStart || workspace.tEnd != tEnd) {
+				workspace = new Workspace(tStart, tEnd, n);
+			} else {
+				for (double[][] preds : workspace.rtPreds) {
+					for (double[] p : preds) {
+						Arrays.fill(p, 0);
+					}
+				}
+			}
+			for (double[] residual : workspace.residualTrain) {
+				System.arraycopy(targetTrain, 0, residual, 0, n);
+			}
+			return workspace;
+		}
+
+	}
+
 	private int bestNumTrees;
 	private int bestBaggingIters;
 	private double bestAlpha;
@@ -164,7 +210,11 @@ public class AdditiveGrovesLearner extends Learner {
 	private int numTrees;
 	private int baggingIters;
 	private double minAlpha;
+	private int maxNumBins;
+	private int numThreads;
 	private Metric metric;
+	// Quantized training set shared by the trees of all bags in the histogram mode
+	private BinnedColumns binnedColumns;
 
 	/**
 	 * Constructor.
@@ -174,6 +224,8 @@ public class AdditiveGrovesLearner extends Learner {
 		numTrees = 6;
 		baggingIters = 60;
 		minAlpha = 0.01;
+		maxNumBins = 0;
+		numThreads = WorkerPool.getNumCores();
 		metric = new RMSE();
 	}
 
@@ -243,6 +295,44 @@ public class AdditiveGrovesLearner extends Learner {
 		this.numTrees = numTrees;
 	}
 
+	/**
+	 * Returns the maximum number of bins per attribute of the trees.
+	 * 
+	 * @return the maximum number of bins per attribute of the trees.
+	 */
+	public int getMaxNumBins() {
+		return maxNumBins;
+	}
+
+	/**
+	 * Sets the maximum number of bins per attribute of the trees. With a positive number,
+	 * trees are grown from histograms (see {@link RegressionTreeLearner#setMaxNumBins(int)}).
+	 * 
+	 * @param maxNumBins the maximum number of bins per attribute, or 0 to split on all values.
+	 */
+	public void setMaxNumBins(int maxNumBins) {
+		this.maxNumBins = maxNumBins;
+	}
+
+	/**
+	 * Returns the maximum number of threads training bags.
+	 * 
+	 * @return the maximum number of threads training bags.
+	 */
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * Sets the maximum number of threads training bags. The groves do not depend on the number
+	 * of threads.
+	 * 
+	 * @param numThreads the maximum number of threads training bags.
+	 */
+	public void setNumThreads(int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+	}
+
 	/**
 	 * Returns the minimum alpha. The minimum alpha may be adjusted during the training.
 	 * 
@@ -317,7 +407,6 @@ public class AdditiveGrovesLearner extends Learner {
 		int prevTN = 0;
 		int prevAN = 0;
 
-		// Backup targets
 		double[] targetTrain = new double[trainSet.size()];
 		for (int i = 0; i < targetTrain.length; i++) {
 			targetTrain[i] = trainSet.get(i).getTarget();
@@ -390,11 +479,6 @@ public class AdditiveGrovesLearner extends Learner {
 			}
 		}
 
-		// Restore targets
-		for (int i = 0; i < targetTrain.length; i++) {
-			trainSet.get(i).setTarget(targetTrain[i]);
-		}
-
 		System.out.println("Best model:");
 		System.out.println("Alpha = " + alphas.get(bestParams.v2));
 		System.out.println("N = " + (bestParams.v1 + 1));
@@ -417,7 +501,6 @@ public class AdditiveGrovesLearner extends Learner {
 	public AdditiveGroves runLayeredTraining(Instances trainSet, int baggingIters, int numTrees, double alpha) {
 		final int n = trainSet.size();
 
-		// Backup targets
 		double[] targetTrain = new double[trainSet.size()];
 		for (int i = 0; i < targetTrain.length; i++) {
 			targetTrain[i] = trainSet.get(i).getTarget();
@@ -426,38 +509,37 @@ public class AdditiveGrovesLearner extends Learner {
 		int bn = baggingIters;
 		int tn = numTrees;
 		int an = getAlphaIdx(alpha, trainSet.size()) + 1;
-		AdditiveGroves ag = new AdditiveGroves();
-		for (int b = 0; b < bn; b++) {
-			// The most recent predictions for regression trees
-			double[][] rtPreds = new double[tn][n];
-			// The most recent residuals
-			double[] residualTrain = new double[n];
-			for (int i = 0; i < n; i++) {
-				residualTrain[i] = targetTrain[i];
+		// groves[b][a]
+		RegressionTree[][][] groves = new RegressionTree[bn][an][];
+		Random[] rands = Bagging.createRandoms(bn);
+		Queue<Workspace> workspaces = new ConcurrentLinkedQueue<>();
+		WorkerPool.run(bn, numThreads, b -> {
+			Workspace workspace = Workspace.acquire(workspaces, tn - 1, tn, n, targetTrain);
+			Random previous = Random.setCurrent(rands[b]);
+			try {
+				for (int a = 0; a < an; a++) {
+					RegressionTree[] grove = new RegressionTree[tn];
+					backfit(trainSet, getAlpha(a), grove, workspace.rtPreds[0], workspace.residualTrain[0]);
+					groves[b][a] = grove;
+				}
+			} finally {
+				Random.setCurrent(previous);
+				workspaces.add(workspace);
 			}
+		});
 
+		AdditiveGroves ag = new AdditiveGroves();
+		for (int b = 0; b < bn; b++) {
 			if (verbose) {
 				System.out.println("Iteration " + (b + 1) + " out of " + bn);
 			}
-
 			for (int a = 0; a < an; a++) {
-				double currAlpha = getAlpha(a);
-
 				if (verbose) {
-					System.out.println("\tBuilding models with alpha = " + currAlpha);
+					System.out.println("\tBuilding models with alpha = " + getAlpha(a));
 				}
-
-				RegressionTree[] grove = new RegressionTree[tn];
-				backfit(trainSet, currAlpha, grove, rtPreds, residualTrain);
-				ag.groves.add(grove);
+				ag.groves.add(groves[b][a]);
 			}
 		}
-
-		// Restore targets
-		for (int i = 0; i < targetTrain.length; i++) {
-			trainSet.get(i).setTarget(targetTrain[i]);
-		}
-
 		return ag;
 	}
 
@@ -497,22 +579,29 @@ public class AdditiveGrovesLearner extends Learner {
 		return idx;
 	}
 
+	/**
+	 * Backfits a grove on a bootstrap sample. The trees are built on instances of the bag's
+	 * own, whose targets are set from the residuals, so that the training set is only read
+	 * and groves can be backfitted in parallel.
+	 */
 	protected void backfit(Instances trainSet, double alpha, RegressionTree[] grove, double[][] rtPreds,
 			double[] residualTrain) {
 		Map<Integer, Integer> bagIndices = new HashMap<>();
 		List<Integer> oobIndices = new ArrayList<>();
 		Bagging.createBootstrapSample(trainSet, bagIndices, oobIndices);
 		Instances bag = new Instances(trainSet.getAttributes(), trainSet.getTargetAttribute(), bagIndices.size());
+		int[] rows = new int[bagIndices.size()];
 		for (Integer idx : bagIndices.keySet()) {
 			int weight = bagIndices.get(idx);
-			Instance instance = trainSet.get(idx).clone();
-			instance.setWeight(weight);
-			bag.add(instance);
+			rows[bag.size()] = idx;
+			bag.add(new Instance(trainSet.get(idx).getVector(), 0, weight));
 		}
 
 		RegressionTreeLearner rtLearner = new RegressionTreeLearner();
 		rtLearner.setConstructionMode(Mode.ALPHA_LIMITED);
 		rtLearner.setAlpha(alpha);
+		rtLearner.setMaxNumBins(maxNumBins);
+		rtLearner.setBinnedColumns(getBinnedColumns(trainSet));
 
 		double prevRMSE = evalRMSE(oobIndices, residualTrain);
 		for (;;) {
@@ -522,7 +611,9 @@ public class AdditiveGrovesLearner extends Learner {
 				double[] treePreds = rtPreds[treeIdx];
 				for (int i = 0; i < residualTrain.length; i++) {
 					residualTrain[i] += treePreds[i];
-					trainSet.get(i).setTarget(residualTrain[i]);
+				}
+				for (int k = 0; k < rows.length; k++) {
+					bag.get(k).setTarget(residualTrain[rows[k]]);
 				}
 
 				RegressionTree rt = rtLearner.build(bag);
@@ -545,6 +636,13 @@ public class AdditiveGrovesLearner extends Learner {
 
 	}
 
+	protected synchronized BinnedColumns getBinnedColumns(Instances trainSet) {
+		if (binnedColumns == null || !binnedColumns.covers(trainSet, maxNumBins)) {
+			binnedColumns = new BinnedColumns(trainSet, maxNumBins);
+		}
+		return binnedColumns;
+	}
+
 	protected double regress(RegressionTree[] trees, Instance instance) {
 		double pred = 0;
 		for (RegressionTree rt : trees) {
@@ -553,49 +651,60 @@ public class AdditiveGrovesLearner extends Learner {
 		return pred;
 	}
 
+	/**
+	 * Runs layered training for bags [bStart, bEnd), groves of (tStart, tEnd] trees and alphas
+	 * [aStart, aEnd). Bags are trained in parallel, each with a workspace of its own; the
+	 * groves are then added and evaluated in the order of the bags.
+	 */
 	protected void runLayeredTraining(Instances trainSet, Instances validSet, int bStart, int bEnd, int tStart,
 			int tEnd, int aStart, int aEnd, List<Double> alphas, PerformanceMatrix perfMatrix, ModelMatrix modelMatrix,
 			PredictionMatrix predMatrix, double[] targetTrain, double[] targetValid) {
 		final int n = trainSet.size();
+		final int bLen = bEnd - bStart;
 		final int tLen = tEnd - tStart;
-		double[] predictionValid = new double[validSet.size()];
-
-		for (int b = bStart; b < bEnd; b++) {
-			// The most recent predictions for regression trees
-			double[][][] rtPreds = new double[tLen][tEnd][n];
-			// The most recent residuals
-			double[][] residualTrain = new double[tLen][n];
-			for (int t = 0; t < tLen; t++) {
-				double[] residual = residualTrain[t];
-				for (int i = 0; i < n; i++) {
-					residual[i] = targetTrain[i];
+		final int aLen = aEnd - aStart;
+
+		// groves[b - bStart][a - aStart][t - tStart]
+		RegressionTree[][][][] groves = new RegressionTree[bLen][aLen][tLen][];
+		Random[] rands = Bagging.createRandoms(bLen);
+		Queue<Workspace> workspaces = new ConcurrentLinkedQueue<>();
+		WorkerPool.run(bLen, numThreads, k -> {
+			int b = bStart + k;
+			Workspace workspace = Workspace.acquire(workspaces, tStart, tEnd, n, targetTrain);
+			Random previous = Random.setCurrent(rands[k]);
+			try {
+				if (aStart != 0) {
+					for (int t = tStart; t < tEnd; t++) {
+						RegressionTree[] grove = modelMatrix.groves[t][aStart - 1].groves.get(b);
+						update(trainSet, grove, workspace.rtPreds[t - tStart], workspace.residualTrain[t - tStart], t);
+					}
 				}
-			}
-
-			if (aStart != 0) {
-				for (int t = 0; t < tEnd; t++) {
-					RegressionTree[] grove = modelMatrix.groves[t][aStart - 1].groves.get(b);
-					update(trainSet, grove, rtPreds, residualTrain, t);
+				for (int a = aStart; a < aEnd; a++) {
+					double alpha = alphas.get(a);
+					for (int t = tStart; t < tEnd; t++) {
+						int tIdx = t - tStart;
+						RegressionTree[] grove = new RegressionTree[t + 1];
+						backfit(trainSet, alpha, grove, workspace.rtPreds[tIdx], workspace.residualTrain[tIdx]);
+						groves[k][a - aStart][tIdx] = grove;
+					}
 				}
+			} finally {
+				Random.setCurrent(previous);
+				workspaces.add(workspace);
 			}
+		});
 
+		double[] predictionValid = new double[validSet.size()];
+		for (int b = bStart; b < bEnd; b++) {
 			if (verbose) {
 				System.out.println("Iteration " + (b + 1) + " out of " + bEnd);
 			}
-
 			for (int a = aStart; a < aEnd; a++) {
-				double alpha = alphas.get(a);
-
 				if (verbose) {
-					System.out.println("\tBuilding models with alpha = " + alpha);
+					System.out.println("\tBuilding models with alpha = " + alphas.get(a));
 				}
-
 				for (int t = tStart; t < tEnd; t++) {
-					int numTrees = t + 1;
-					int tIdx = t - tStart;
-
-					RegressionTree[] grove = new RegressionTree[numTrees];
-					backfit(trainSet, alpha, grove, rtPreds[tIdx], residualTrain[tIdx]);
+					RegressionTree[] grove = groves[b - bStart][a - aStart][t - tStart];
 					modelMatrix.add(t, a, grove);
 
 					// Update predictions
@@ -607,6 +716,8 @@ public class AdditiveGrovesLearner extends Learner {
 					perfMatrix.eval(t, a, b, predictionValid, targetValid);
 				}
 			}
+			// Releases the groves of the bag once they are in the model matrix
+			groves[b - bStart] = null;
 		}
 	}
 
@@ -620,14 +731,17 @@ public class AdditiveGrovesLearner extends Learner {
 		return rmse;
 	}
 
-	protected void update(Instances trainSet, RegressionTree[] grove, double[][][] rtPreds, double[][] residualTrain,
-			int maxTN) {
-		for (int t = 0; t < maxTN; t++) {
+	/**
+	 * Starts a grove of numTrees + 1 trees from the first numTrees trees of a grove.
+	 */
+	protected void update(Instances trainSet, RegressionTree[] grove, double[][] rtPreds, double[] residualTrain,
+			int numTrees) {
+		for (int t = 0; t < numTrees; t++) {
 			RegressionTree rt = grove[t];
 			for (int i = 0; i < trainSet.size(); i++) {
 				double pred = rt.regress(trainSet.get(i));
-				rtPreds[maxTN][t][i] = pred;
-				residualTrain[maxTN][i] -= pred;
+				rtPreds[t][i] = pred;
+				residualTrain[i] -= pred;
 			}
 		}
 	}
@@ -661,6 +775,12 @@ public class AdditiveGrovesLearner extends Learner {
 		@Argument(name = "-s", description = "seed of the random number generator (default: 0)")
 		long seed = 0L;
 
+		@Argument(name = "-q", description = "maximum number of bins per attribute to grow trees from histograms, 0 to split on all values (default: 0)")
+		int maxNumBins = 0;
+
+		@Argument(name = "-p", description = "number of threads training bags (default: #cores)")
+		int numThreads = WorkerPool.getNumCores();
+
 	}
 
 	public static void main(String[] args) throws Exception {
@@ -688,6 +808,8 @@ public class AdditiveGrovesLearner extends Learner {
 		learner.setBaggingIters(opts.baggingIters);
 		learner.setNumTrees(opts.n);
 		learner.setMinAlpha(opts.a);
+		learner.setMaxNumBins(opts.maxNumBins);
+		learner.setNumThreads(opts.numThreads);
 		learner.setMetric(metric);
 		learner.setVerbose(true);
 
@@ -34,6 +34,7 @@ public class LADBoostLearner extends Learner {
 	private boolean verbose;
 	private int maxNumIters;
 	private int maxNumLeaves;
+	private int maxNumBins;
 	private double alpha;
 	private double learningRate;
 
@@ -44,6 +45,7 @@ public class LADBoostLearner extends Learner {
 		verbose = false;
 		maxNumIters = 3500;
 		maxNumLeaves = 100;
+		maxNumBins = 0;
 		alpha = 1;
 		learningRate = 1;
 	}
@@ -102,6 +104,25 @@ public class LADBoostLearner extends Learner {
 		this.maxNumLeaves = maxNumLeaves;
 	}
 
+	/**
+	 * Returns the maximum number of bins per attribute of the trees.
+	 *
+	 * @return the maximum number of bins per attribute of the trees.
+	 */
+	public int getMaxNumBins() {
+		return maxNumBins;
+	}
+
+	/**
+	 * Sets the maximum number of bins per attribute of the trees. With a positive number,
+	 * trees are grown from histograms (see {@link RegressionTreeLearner#setMaxNumBins(int)}).
+	 *
+	 * @param maxNumBins the maximum number of bins per attribute, or 0 to split on all values.
+	 */
+	public void setMaxNumBins(int maxNumBins) {
+		this.maxNumBins = maxNumBins;
+	}
+
 	/**
 	 * Returns the learning rate.
 	 * 
@@ -149,6 +170,7 @@ public class LADBoostLearner extends Learner {
 		RegressionTreeLearner rtLearner = new RegressionTreeLearner();
 		rtLearner.setConstructionMode(Mode.NUM_LEAVES_LIMITED);
 		rtLearner.setMaxNumLeaves(maxNumLeaves);
+		rtLearner.setMaxNumBins(maxNumBins);
 
 		double[] residualTrain = new double[trainSet.size()];
 		for (int i = 0; i < residualTrain.length; i++) {
@@ -243,6 +265,9 @@ public class LADBoostLearner extends Learner {
 		@Argument(name = "-l", description = "learning rate (default: 0.01)")
 		double learningRate = 0.01;
 
+		@Argument(name = "-q", description = "maximum number of bins per attribute to grow trees from histograms, 0 to split on all values (default: 0)")
+		int maxNumBins = 0;
+
 	}
 
 	/**
@@ -257,6 +282,7 @@ public class LADBoostLearner extends Learner {
 	 * [-c]	max number of leaves (default: 100)
 	 * [-s]	seed of the random number generator (default: 0)
 	 * [-l]	learning rate (default: 0.01)
+	 * [-q]	maximum number of bins per attribute to grow trees from histograms, 0 to split on all values (default: 0)
 	 * </pre>
 	 * 
 	 * </p>
@@ -282,6 +308,7 @@ public class LADBoostLearner extends Learner {
 		ladBoostLearner.setLearningRate(opts.learningRate);
 		ladBoostLearner.setMaxNumIters(opts.maxNumIters);
 		ladBoostLearner.setMaxNumLeaves(opts.maxNumLeaves);
+		ladBoostLearner.setMaxNumBins(opts.maxNumBins);
 		ladBoostLearner.setVerbose(true);
 
 		long start = System.currentTimeMillis();
@@ -33,6 +33,7 @@ public class LSBoostLearner extends Learner {
 	private boolean verbose;
 	private int maxNumIters;
 	private int maxNumLeaves;
+	private int maxNumBins;
 	private double learningRate;
 	private double alpha;
 
@@ -43,6 +44,7 @@ public class LSBoostLearner extends Learner {
 		verbose = false;
 		maxNumIters = 3500;
 		maxNumLeaves = 100;
+		maxNumBins = 0;
 		learningRate = 1;
 		alpha = 1;
 	}
@@ -119,6 +121,25 @@ public class LSBoostLearner extends Learner {
 		this.maxNumLeaves = maxNumLeaves;
 	}
 
+	/**
+	 * Returns the maximum number of bins per attribute of the trees.
+	 *
+	 * @return the maximum number of bins per attribute of the trees.
+	 */
+	public int getMaxNumBins() {
+		return maxNumBins;
+	}
+
+	/**
+	 * Sets the maximum number of bins per attribute of the trees. With a positive number,
+	 * trees are grown from histograms (see {@link RegressionTreeLearner#setMaxNumBins(int)}).
+	 *
+	 * @param maxNumBins the maximum number of bins per attribute, or 0 to split on all values.
+	 */
+	public void setMaxNumBins(int maxNumBins) {
+		this.maxNumBins = maxNumBins;
+	}
+
 	/**
 	 * Builds a regressor.
 	 *
@@ -145,6 +166,7 @@ public class LSBoostLearner extends Learner {
 		RegressionTreeLearner rtLearner = new RegressionTreeLearner();
 		rtLearner.setConstructionMode(Mode.NUM_LEAVES_LIMITED);
 		rtLearner.setMaxNumLeaves(maxNumLeaves);
+		rtLearner.setMaxNumBins(maxNumBins);
 
 		double[] residualTrain = new double[trainSet.size()];
 		for (int i = 0; i < residualTrain.length; i++) {
@@ -224,6 +246,8 @@ public class LSBoostLearner extends Learner {
 		RegressionTreeLearner rtLearner = new RegressionTreeLearner();
 		rtLearner.setConstructionMode(Mode.NUM_LEAVES_LIMITED);
 		rtLearner.setMaxNumLeaves(maxNumLeaves);
+		rtLearner.setMaxNumBins(maxNumBins);
+		rtLearner.setBinnedColumns(new RegressionTreeLearner.BinnedColumns(trainSet, maxNumBins));
 		BaggedEnsembleLearner btLearner = new BaggedEnsembleLearner(baggingIters, rtLearner);
 
 		double[] residualTrain = new double[trainSet.size()];
@@ -305,6 +329,9 @@ public class LSBoostLearner extends Learner {
 		@Argument(name = "-l", description = "learning rate (default: 0.01)")
 		double learningRate = 0.01;
 
+		@Argument(name = "-q", description = "maximum number of bins per attribute to grow trees from histograms, 0 to split on all values (default: 0)")
+		int maxNumBins = 0;
+
 	}
 
 	/**
@@ -319,6 +346,7 @@ public class LSBoostLearner extends Learner {
 	 * [-c]	max number of leaves (default: 100)
 	 * [-s]	seed of the random number generator (default: 0)
 	 * [-l]	learning rate (default: 0.01)
+	 * [-q]	maximum number of bins per attribute to grow trees from histograms, 0 to split on all values (default: 0)
 	 * </pre>
 	 *
 	 * </p>
@@ -344,6 +372,7 @@ public class LSBoostLearner extends Learner {
 		lsBoostLearner.setLearningRate(opts.learningRate);
 		lsBoostLearner.setMaxNumIters(opts.maxNumIters);
 		lsBoostLearner.setMaxNumLeaves(opts.maxNumLeaves);
+		lsBoostLearner.setMaxNumBins(opts.maxNumBins);
 		lsBoostLearner.setVerbose(true);
 
 		long start = System.currentTimeMillis();
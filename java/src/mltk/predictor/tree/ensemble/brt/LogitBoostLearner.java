@@ -35,6 +35,7 @@ public class LogitBoostLearner extends Learner {
 	private boolean verbose;
 	private int maxNumIters;
 	private int maxNumLeaves;
+	private int maxNumBins;
 	private double learningRate;
 	private double alpha;
 
@@ -45,6 +46,7 @@ public class LogitBoostLearner extends Learner {
 		verbose = false;
 		maxNumIters = 3500;
 		maxNumLeaves = 100;
+		maxNumBins = 0;
 		learningRate = 1;
 		alpha = 1;
 	}
@@ -121,6 +123,25 @@ public class LogitBoostLearner extends Learner {
 		this.maxNumLeaves = maxNumLeaves;
 	}
 
+	/**
+	 * Returns the maximum number of bins per attribute of the trees.
+	 *
+	 * @return the maximum number of bins per attribute of the trees.
+	 */
+	public int getMaxNumBins() {
+		return maxNumBins;
+	}
+
+	/**
+	 * Sets the maximum number of bins per attribute of the trees. With a positive number,
+	 * trees are grown from histograms (see {@link mltk.predictor.tree.RegressionTreeLearner#setMaxNumBins(int)}).
+	 *
+	 * @param maxNumBins the maximum number of bins per attribute, or 0 to split on all values.
+	 */
+	public void setMaxNumBins(int maxNumBins) {
+		this.maxNumBins = maxNumBins;
+	}
+
 	/**
 	 * Builds a classifier.
 	 * 
@@ -179,6 +200,7 @@ public class LogitBoostLearner extends Learner {
 		RobustRegressionTreeLearner rtLearner = new RobustRegressionTreeLearner();
 		rtLearner.setConstructionMode(Mode.NUM_LEAVES_LIMITED);
 		rtLearner.setMaxNumLeaves(maxNumLeaves);
+		rtLearner.setMaxNumBins(maxNumBins);
 
 		for (int iter = 0; iter < maxNumIters; iter++) {
 			// Prepare attributes
@@ -313,6 +335,7 @@ public class LogitBoostLearner extends Learner {
 		RobustRegressionTreeLearner rtLearner = new RobustRegressionTreeLearner();
 		rtLearner.setConstructionMode(Mode.NUM_LEAVES_LIMITED);
 		rtLearner.setMaxNumLeaves(maxNumLeaves);
+		rtLearner.setMaxNumBins(maxNumBins);
 
 		for (int iter = 0; iter < maxNumIters; iter++) {
 			// Prepare attributes
@@ -436,6 +459,9 @@ public class LogitBoostLearner extends Learner {
 		@Argument(name = "-l", description = "learning rate (default: 0.01)")
 		double learningRate = 0.01;
 
+		@Argument(name = "-q", description = "maximum number of bins per attribute to grow trees from histograms, 0 to split on all values (default: 0)")
+		int maxNumBins = 0;
+
 	}
 
 	/**
@@ -450,6 +476,7 @@ public class LogitBoostLearner extends Learner {
 	 * [-c]	max number of leaves (default: 100)
 	 * [-s]	seed of the random number generator (default: 0)
 	 * [-l]	learning rate (default: 0.01)
+	 * [-q]	maximum number of bins per attribute to grow trees from histograms, 0 to split on all values (default: 0)
 	 * </pre>
 	 * 
 	 * </p>
@@ -475,6 +502,7 @@ public class LogitBoostLearner extends Learner {
 		logitBoostLearner.setLearningRate(opts.learningRate);
 		logitBoostLearner.setMaxNumIters(opts.maxNumIters);
 		logitBoostLearner.setMaxNumLeaves(opts.maxNumLeaves);
+		logitBoostLearner.setMaxNumBins(opts.maxNumBins);
 		logitBoostLearner.setVerbose(true);
 
 		long start = System.currentTimeMillis();
@@ -38,6 +38,10 @@ class RobustRegressionTreeLearner extends RegressionTreeLearner {
 		return stdIs0;
 	}
 
+	protected double getResponseSum(Instance instance) {
+		return instance.getTarget();
+	}
+
 	protected void getHistogram(Instances instances, List<IntDoublePair> pairs, List<Double> uniqueValues, double w,
 			double s, List<DoublePair> histogram) {
 		if (pairs.size() == 0) {
@@ -1,27 +1,16 @@
 package mltk.predictor.tree.ensemble.rf;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-
 import mltk.cmdline.Argument;
 import mltk.cmdline.CmdLineParser;
-import mltk.core.Attribute;
 import mltk.core.Instances;
 import mltk.core.io.InstancesReader;
 import mltk.predictor.BaggedEnsemble;
 import mltk.predictor.BaggedEnsembleLearner;
 import mltk.predictor.io.PredictorWriter;
 import mltk.predictor.tree.RegressionTree;
-import mltk.predictor.tree.RegressionTreeInteriorNode;
-import mltk.predictor.tree.RegressionTreeLeaf;
 import mltk.predictor.tree.RegressionTreeLearner;
-import mltk.predictor.tree.RegressionTreeNode;
 import mltk.util.Permutation;
-import mltk.util.Random;
-import mltk.util.tuple.DoublePair;
-import mltk.util.tuple.IntDoublePair;
+import mltk.util.WorkerPool;
 
 /**
  * Class for learning random regression trees. With {@link mltk.predictor.BaggedEnsembleLearner BaggedEnsembleLearner},
@@ -33,7 +22,8 @@ import mltk.util.tuple.IntDoublePair;
 public class RandomRegressionTreeLearner extends RegressionTreeLearner {
 
 	private int numFeatures;
-	private Permutation perm;
+	// One permutation per thread, as bags may be trained in parallel
+	private ThreadLocal<Permutation> perm = new ThreadLocal<>();
 
 	/**
 	 * Constructor.
@@ -67,9 +57,8 @@ public class RandomRegressionTreeLearner extends RegressionTreeLearner {
 		if (numFeatures <= 0) {
 			numFeatures = instances.getAttributes().size() / 3;
 		}
-		if (perm == null || perm.size() != instances.getAttributes().size()) {
-			perm = new Permutation(instances.getAttributes().size());
-		}
+		// A fresh permutation per tree, so that a tree depends only on its own random object
+		perm.set(new Permutation(instances.getAttributes().size()));
 		RegressionTree rt = null;
 		switch (mode) {
 			case ALPHA_LIMITED:
@@ -89,63 +78,19 @@ public class RandomRegressionTreeLearner extends RegressionTreeLearner {
 		return rt;
 	}
 
-	protected RegressionTreeNode createNode(Dataset dataset, int limit, double[] stats) {
-		boolean stdIs0 = getStats(dataset.instances, stats);
-		final double totalWeights = stats[0];
-		final double weightedMean = stats[1];
-		final double sum = totalWeights * weightedMean;
-
-		// 1. Check basic leaf conditions
-		if (stats[0] < limit || stdIs0) {
-			RegressionTreeNode node = new RegressionTreeLeaf(weightedMean);
-			return node;
-		}
+	@Override
+	protected boolean isTooSmall(Dataset dataset, double totalWeights, int limit) {
+		return totalWeights < limit;
+	}
 
-		// 2. Find best split
-		double bestEval = Double.POSITIVE_INFINITY;
-		List<IntDoublePair> splits = new ArrayList<>();
-		List<Attribute> attributes = dataset.instances.getAttributes();
-		int[] a = perm.permute().getPermutation();
-		Set<Integer> selected = new HashSet<>(numFeatures);
+	@Override
+	protected boolean[] selectAttributes(int numAttributes) {
+		int[] a = perm.get().permute().getPermutation();
+		boolean[] selected = new boolean[numAttributes];
 		for (int i = 0; i < numFeatures; i++) {
-			selected.add(a[i]);
-		}
-		for (int i = 0; i < attributes.size(); i++) {
-			Attribute attribute = attributes.get(i);
-			if (!selected.contains(i)) {
-				continue;
-			}
-			int attIndex = attribute.getIndex();
-			List<IntDoublePair> sortedList = dataset.sortedLists.get(i);
-			List<Double> uniqueValues = new ArrayList<>(sortedList.size());
-			List<DoublePair> histogram = new ArrayList<>(sortedList.size());
-			getHistogram(dataset.instances, sortedList, uniqueValues, totalWeights, sum, histogram);
-
-			if (uniqueValues.size() > 1) {
-				DoublePair split = split(uniqueValues, histogram, totalWeights, sum);
-				if (split.v2 <= bestEval) {
-					IntDoublePair splitPoint = new IntDoublePair(attIndex, split.v1);
-					if (split.v2 < bestEval) {
-						splits.clear();
-						bestEval = split.v2;
-					}
-					splits.add(splitPoint);
-				}
-			}
-		}
-		if (bestEval < Double.POSITIVE_INFINITY) {
-			Random rand = Random.getInstance();
-			IntDoublePair splitPoint = splits.get(rand.nextInt(splits.size()));
-			int attIndex = splitPoint.v1;
-			RegressionTreeNode node = new RegressionTreeInteriorNode(attIndex, splitPoint.v2);
-			if (stats.length > 2) {
-				stats[2] = bestEval + totalWeights * weightedMean * weightedMean;
-			}
-			return node;
-		} else {
-			RegressionTreeNode node = new RegressionTreeLeaf(weightedMean);
-			return node;
+			selected[a[i]] = true;
 		}
+		return selected;
 	}
 
 	static class Options {
@@ -168,6 +113,12 @@ public class RandomRegressionTreeLearner extends RegressionTreeLearner {
 		@Argument(name = "-b", description = "bagging iterations (default: 100)")
 		int baggingIters = 100;
 
+		@Argument(name = "-q", description = "maximum number of bins per attribute to grow trees from histograms, 0 to split on all values (default: 0)")
+		int maxNumBins = 0;
+
+		@Argument(name = "-n", description = "number of threads training bags (default: #cores)")
+		int numThreads = WorkerPool.getNumCores();
+
 	}
 
 	/**
@@ -186,6 +137,8 @@ public class RandomRegressionTreeLearner extends RegressionTreeLearner {
 	 * [-m]	construction mode:parameter. Construction mode can be alpha limited (a), depth limited (d), number of leaves limited (l) and minimum leaf size limited (s) (default: a:0.001)
 	 * [-f]	number of features to consider
 	 * [-b]	bagging iterations (default: 100)
+	 * [-q]	maximum number of bins per attribute to grow trees from histograms, 0 to split on all values (default: 0)
+	 * [-n]	number of threads training bags (default: #cores)
 	 * </pre>
 	 *
 	 * </p>
@@ -230,7 +183,10 @@ public class RandomRegressionTreeLearner extends RegressionTreeLearner {
 		Instances trainSet = InstancesReader.read(opts.attPath, opts.trainPath);
 
 		rtLearner.setNumFeatures(opts.numFeatures);
+		rtLearner.setMaxNumBins(opts.maxNumBins);
+		rtLearner.setBinnedColumns(new BinnedColumns(trainSet, opts.maxNumBins));
 		BaggedEnsembleLearner rfLearner = new BaggedEnsembleLearner(opts.baggingIters, rtLearner);
+		rfLearner.setNumThreads(opts.numThreads);
 		long start = System.currentTimeMillis();
 		BaggedEnsemble rf = rfLearner.build(trainSet);
 		long end = System.currentTimeMillis();
@@ -56,7 +56,7 @@ public class OptimUtils {
 	 */
 	public static void computePseudoResidual(double[] prediction, Instances trainSet, Pointers trainPtr, double[] residual) {
 		for (int i = 0; i < residual.length; i++) {
-			residual[i] = getPseudoResidual(prediction[i], trainSet.get(trainPtr.get(i).getIndex()).getTarget());
+			residual[i] = getPseudoResidual(prediction[i], trainSet.get(trainPtr.getIndex(i)).getTarget());
 		}
 	}
 	
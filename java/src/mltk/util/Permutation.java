@@ -28,8 +28,9 @@ public class Permutation {
 	 * @return this permutation.
 	 */
 	public Permutation permute() {
+		Random rand = Random.getInstance();
 		for (int i = 0; i < a.length; i++) {
-			int idx = Random.getInstance().nextInt(i + 1);
+			int idx = rand.nextInt(i + 1);
 			int t = a[idx];
 			a[idx] = a[i];
 			a[i] = t;
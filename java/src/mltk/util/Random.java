@@ -1,45 +1,126 @@
 package mltk.util;
 
+import java.util.SplittableRandom;
+
 /**
- * Class for global random object.
- * 
+ * Class for random objects. There is a global random object and every thread may set its
+ * own current random object, which {@link #getInstance()} returns instead of the global
+ * one. A random object is not thread-safe; concurrent tasks each use their own, derived
+ * from a common root with {@link #derive(long)} or {@link #split()}, so that the results
+ * do not depend on the number of threads or on the order the tasks run in.
+ *
  * @author Yin Lou
- * 
+ *
  */
 public class Random {
 
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
 	protected static Random instance = null;
-	protected java.util.Random rand;
+	protected static final ThreadLocal<Random> current = new ThreadLocal<>();
+
+	protected long seed;
+	protected SplittableRandom rand;
+	protected Adapter adapter;
 
 	protected Random() {
-		rand = new java.util.Random();
+		this(new SplittableRandom().nextLong());
 	}
 
 	/**
-	 * Returns the random object.
-	 * 
-	 * @return the singleton random object.
+	 * Constructor.
+	 *
+	 * @param seed the random seed.
+	 */
+	public Random(long seed) {
+		adapter = new Adapter(this);
+		setSeed(seed);
+	}
+
+	/**
+	 * Returns the random object of the current thread if set, the global random object otherwise.
+	 *
+	 * @return the random object.
 	 */
 	public static Random getInstance() {
+		Random rand = current.get();
+		return rand != null ? rand : getGlobalInstance();
+	}
+
+	/**
+	 * Returns the global random object.
+	 *
+	 * @return the singleton random object.
+	 */
+	public static synchronized Random getGlobalInstance() {
 		if (instance == null) {
 			instance = new Random();
 		}
 		return instance;
 	}
 
+	/**
+	 * Sets the random object of the current thread.
+	 *
+	 * @param rand the random object, or <code>null</code> to use the global random object.
+	 * @return the previous random object of the current thread, or <code>null</code> if none.
+	 */
+	public static Random setCurrent(Random rand) {
+		Random previous = current.get();
+		if (rand == null) {
+			current.remove();
+		} else {
+			current.set(rand);
+		}
+		return previous;
+	}
+
 	/**
 	 * Sets the random seed.
-	 * 
+	 *
 	 * @param seed the random seed.
 	 */
 	public void setSeed(long seed) {
-		rand.setSeed(seed);
+		this.seed = seed;
+		rand = new SplittableRandom(seed);
+		adapter.reset();
+	}
+
+	/**
+	 * Returns the random seed.
+	 *
+	 * @return the random seed.
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Returns a new random object determined by the seed of this random object and a key.
+	 * The numbers drawn from this random object so far do not matter, so random objects can be
+	 * derived in any order and from any thread.
+	 *
+	 * @param key the key, e.g., the index of a task.
+	 * @return a new random object.
+	 */
+	public Random derive(long key) {
+		return new Random(mix64(seed + mix64(key + GOLDEN_GAMMA)));
+	}
+
+	/**
+	 * Returns a new random object seeded with the next number from this random object's
+	 * sequence.
+	 *
+	 * @return a new random object.
+	 */
+	public Random split() {
+		return new Random(rand.nextLong());
 	}
 
 	/**
 	 * Returns the next pseudorandom, uniformly distributed <code>int</code> value from this random number generator's
 	 * sequence.
-	 * 
+	 *
 	 * @return a random integer.
 	 */
 	public int nextInt() {
@@ -49,7 +130,7 @@ public class Random {
 	/**
 	 * Returns the next pseudorandom, uniformly distributed <code>int</code> value between 0 (inclusive) and n
 	 * (exclusive) from this random number generator's sequence.
-	 * 
+	 *
 	 * @param n the range.
 	 * @return a random integer in [0, n- 1].
 	 */
@@ -60,7 +141,7 @@ public class Random {
 	/**
 	 * Returns the next pseudorandom, uniformly distributed <code>double</code> value between 0.0 and 1.0 from this
 	 * random number generator's sequence.
-	 * 
+	 *
 	 * @return a random <code>double</code> value.
 	 */
 	public double nextDouble() {
@@ -70,27 +151,27 @@ public class Random {
 	/**
 	 * Returns the next pseudorandom, uniformly distributed <code>float</code> value between 0.0 and 1.0 from this
 	 * random number generator's sequence.
-	 * 
+	 *
 	 * @return a random <code>float</code> value.
 	 */
 	public float nextFloat() {
-		return rand.nextFloat();
+		return adapter.nextFloat();
 	}
 
 	/**
 	 * Returns the next pseudorandom, Gaussian ("normally") distributed <code>
 	 * double</code> value with mean 0.0 and standard deviation 1.0 from this random number generator's sequence.
-	 * 
+	 *
 	 * @return a random <code>double</code> value.
 	 */
 	public double nextGaussian() {
-		return rand.nextGaussian();
+		return adapter.nextGaussian();
 	}
 
 	/**
 	 * Returns the next pseudorandom, uniformly distributed <code>long</code> value from this random number generator's
 	 * sequence.
-	 * 
+	 *
 	 * @return a random <code>long</code> value.
 	 */
 	public long nextLong() {
@@ -100,7 +181,7 @@ public class Random {
 	/**
 	 * Returns the next pseudorandom, uniformly distributed <code>boolean</code> value from this random number
 	 * generator's sequence.
-	 * 
+	 *
 	 * @return a random <code>boolean</code> value.
 	 */
 	public boolean nextBoolean() {
@@ -111,16 +192,54 @@ public class Random {
 	 * Generates random bytes and places them into a user-supplied byte array.
 	 */
 	public void nextBytes(byte[] bytes) {
-		rand.nextBytes(bytes);
+		adapter.nextBytes(bytes);
 	}
 
 	/**
-	 * Returns the backend Java random object.
-	 * 
-	 * @return the backend Java random object.
+	 * Returns a Java random object that draws from this random object's sequence.
+	 *
+	 * @return a Java random object backed by this random object.
 	 */
 	public java.util.Random getRandom() {
-		return rand;
+		return adapter;
+	}
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Java random object drawing its bits from a {@link Random}.
+	 */
+	@SuppressWarnings("serial")
+	protected static class Adapter extends java.util.Random {
+
+		private final Random owner;
+
+		Adapter(Random owner) {
+			this.owner = owner;
+		}
+
+		@Override
+		public void setSeed(long seed) {
+			// Also called by the super constructor, before the owner is set
+			if (owner != null) {
+				owner.setSeed(seed);
+			}
+		}
+
+		// Clears the cached Gaussian
+		void reset() {
+			super.setSeed(0);
+		}
+
+		@Override
+		protected int next(int bits) {
+			return owner.rand.nextInt() >>> (32 - bits);
+		}
+
 	}
 
 }
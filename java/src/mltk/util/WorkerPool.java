@@ -0,0 +1,172 @@
+package mltk.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Class for running independent iterations in parallel on a pool shared by the whole
+ * process. The thread calling {@link #run(int, int, IntConsumer)} runs iterations
+ * itself and helper threads join it only while some cores are idle, so the busy threads
+ * never outnumber the cores. Threads of other pools can be counted as busy with
+ * {@link #enter()} and {@link #exit()}. Nested and concurrent loops therefore neither
+ * oversubscribe the cores nor wait for each other.
+ *
+ */
+public class WorkerPool {
+
+	private static final int NUM_CORES = Runtime.getRuntime().availableProcessors();
+
+	// Number of threads counted as busy
+	private static final AtomicInteger busy = new AtomicInteger();
+	// Depth of enter() calls of the current thread
+	private static final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+
+	private static final AtomicInteger helperCount = new AtomicInteger();
+	private static final ExecutorService helpers = Executors.newCachedThreadPool(r -> {
+		Thread thread = new Thread(r, "mltk-worker-" + helperCount.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Returns the number of cores.
+	 *
+	 * @return the number of cores.
+	 */
+	public static int getNumCores() {
+		return NUM_CORES;
+	}
+
+	/**
+	 * Counts the current thread as busy until {@link #exit()} is called. Calls may be nested.
+	 */
+	public static void enter() {
+		if (depth.get()[0]++ == 0) {
+			busy.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Stops counting the current thread as busy.
+	 */
+	public static void exit() {
+		if (--depth.get()[0] == 0) {
+			busy.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Runs iterations 0, ..., n - 1 with at most the given number of threads, including the
+	 * current thread, and waits for all of them. The iterations must be independent; each
+	 * should write its result to its own slot, so that the results can be reduced in order.
+	 * If an iteration throws, the iterations not started yet are skipped and the first
+	 * exception is rethrown.
+	 *
+	 * @param n the number of iterations.
+	 * @param maxNumThreads the maximum number of threads.
+	 * @param body the body of the loop.
+	 */
+	public static void run(int n, int maxNumThreads, IntConsumer body) {
+		Loop loop = new Loop(n, body);
+		int numHelpers = Math.min(maxNumThreads, n) - 1;
+		for (int i = 0; i < numHelpers && reserve(); i++) {
+			loop.fork();
+		}
+		enter();
+		try {
+			loop.work();
+		} finally {
+			exit();
+		}
+		loop.join();
+	}
+
+	// Counts a helper as busy if some core is idle
+	private static boolean reserve() {
+		for (;;) {
+			int b = busy.get();
+			if (b >= NUM_CORES) {
+				return false;
+			}
+			if (busy.compareAndSet(b, b + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private static class Loop {
+
+		final int n;
+		final IntConsumer body;
+		final AtomicInteger next;
+		int running;
+		Throwable error;
+
+		Loop(int n, IntConsumer body) {
+			this.n = n;
+			this.body = body;
+			this.next = new AtomicInteger();
+		}
+
+		void fork() {
+			synchronized (this) {
+				running++;
+			}
+			helpers.execute(() -> {
+				// Reserved by the caller
+				depth.get()[0]++;
+				try {
+					work();
+				} finally {
+					depth.get()[0]--;
+					busy.decrementAndGet();
+					synchronized (this) {
+						if (--running == 0) {
+							notifyAll();
+						}
+					}
+				}
+			});
+		}
+
+		void work() {
+			for (int i; (i = next.getAndIncrement()) < n; ) {
+				try {
+					body.accept(i);
+				} catch (Throwable e) {
+					synchronized (this) {
+						if (error == null) {
+							error = e;
+						}
+					}
+					next.set(n);
+				}
+			}
+		}
+
+		synchronized void join() {
+			boolean interrupted = false;
+			while (running > 0) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			if (error instanceof RuntimeException) {
+				throw (RuntimeException) error;
+			} else if (error instanceof Error) {
+				throw (Error) error;
+			} else if (error != null) {
+				throw new RuntimeException(error);
+			}
+		}
+
+	}
+
+}